@@ -0,0 +1,28 @@
+package com.zhai.hw.benchmarks;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs JMH with the GC profiler on unless another profiler is chosen, so every run reports
+ * bytes allocated per operation ({@code gc.alloc.rate.norm}) next to ops/s.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        boolean listing = arguments.stream().anyMatch(arg -> arg.equals("-l") || arg.equals("-lp")
+                || arg.equals("-lprof") || arg.equals("-lrf") || arg.equals("-h"));
+        if (!listing && !arguments.contains("-prof")) {
+            arguments.add("-prof");
+            arguments.add("gc");
+        }
+        Main.main(arguments.toArray(new String[0]));
+    }
+}
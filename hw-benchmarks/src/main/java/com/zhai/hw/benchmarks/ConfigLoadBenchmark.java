@@ -0,0 +1,80 @@
+package com.zhai.hw.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.zhai.hw.config.AppProperties;
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads and validates a YAML configuration file with 10, 100 and 1,000 label VM mappings.
+ * <p>
+ * {@code loadConfiguration} is the full {@link ConfigurationLoaderService} path: read the
+ * file, hash it, parse, validate and build the label index. {@code parseOnly} is the YAML
+ * databind on its own, to show how much of that is parsing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigLoadBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int mappings;
+
+    private Path file;
+    private byte[] yaml;
+    private ValidatorFactory validatorFactory;
+    private ConfigurationLoaderService loader;
+    private ObjectMapper yamlMapper;
+
+    @Setup
+    public void setUp() throws IOException {
+        yaml = LabelMappingConfigs.yaml(mappings);
+        file = Files.createTempFile("hw-config-" + mappings + "-", ".yml");
+        Files.write(file, yaml);
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        AppProperties appProperties = new AppProperties();
+        appProperties.setConfigPath("file:" + file);
+        loader = new ConfigurationLoaderService(appProperties, validatorFactory.getValidator());
+        yamlMapper = new ObjectMapper(new YAMLFactory()).registerModule(new JavaTimeModule());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        validatorFactory.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public AppConfig loadConfiguration() {
+        return loader.loadConfiguration();
+    }
+
+    @Benchmark
+    public AppConfig parseOnly() throws IOException {
+        return yamlMapper.readValue(yaml, AppConfig.class);
+    }
+}
@@ -0,0 +1,90 @@
+package com.zhai.hw.benchmarks;
+
+import com.zhai.hw.config.AppProperties;
+import com.zhai.hw.config.ConfigCacheProperties;
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.service.ConfigSnapshotCache;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Loads a configuration of 1,000 and 10,000 label VM mappings by parsing the YAML and by
+ * mapping the {@link ConfigSnapshotCache} copy of it.
+ * <p>
+ * Both go through {@link ConfigurationLoaderService#loadConfiguration()}, so both read and
+ * hash the YAML; {@code parse} then parses, validates and indexes it, {@code cached} decodes
+ * the binary copy. Run with {@code -bm ss} to see the first, JIT-cold load of a restart.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigSnapshotCacheBenchmark {
+
+    @Param({"1000", "10000"})
+    public int mappings;
+
+    private Path directory;
+    private ValidatorFactory validatorFactory;
+    private ConfigurationLoaderService parsing;
+    private ConfigurationLoaderService cached;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("hw-config-cache-");
+        Path file = directory.resolve("config.yml");
+        Files.write(file, LabelMappingConfigs.yaml(mappings));
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        AppProperties appProperties = new AppProperties();
+        appProperties.setConfigPath("file:" + file);
+        ConfigCacheProperties cacheProperties = new ConfigCacheProperties();
+        cacheProperties.setEnabled(true);
+        cacheProperties.setDirectory(directory.resolve("cache").toString());
+
+        parsing = new ConfigurationLoaderService(appProperties, validatorFactory.getValidator());
+        cached = new ConfigurationLoaderService(appProperties, validatorFactory.getValidator(),
+                new ConfigSnapshotCache(cacheProperties));
+        // Writes the copy every later load maps
+        cached.loadConfiguration();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        validatorFactory.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public AppConfig parse() {
+        return parsing.loadConfiguration();
+    }
+
+    @Benchmark
+    public AppConfig cached() {
+        return cached.loadConfiguration();
+    }
+}
@@ -0,0 +1,108 @@
+package com.zhai.hw.benchmarks;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+
+/**
+ * Builds synthetic {@code workflow_job} deliveries shaped like the ones GitHub sends.
+ * <p>
+ * Real deliveries carry the job's steps plus full repository, organization and sender
+ * objects, which is what pushes them into the 10-30 KB range; the generator pads the
+ * steps array until the requested size is reached.
+ */
+public final class GitHubPayloads {
+
+    public static final String SECRET = "benchmark-secret";
+
+    private GitHubPayloads() {
+    }
+
+    /**
+     * Returns a payload of at least {@code targetBytes} bytes for the given action.
+     */
+    public static byte[] workflowJob(String action, long jobId, String label, int targetBytes) {
+        StringBuilder steps = new StringBuilder();
+        int step = 1;
+        String head = header(action, jobId, label);
+        String tail = trailer();
+        do {
+            if (step > 1) {
+                steps.append(',');
+            }
+            steps.append("{\"name\":\"Run step ").append(step)
+                    .append(" of the android build and publish instrumentation results\",")
+                    .append("\"status\":\"").append("queued".equals(action) ? "queued" : "completed").append("\",")
+                    .append("\"conclusion\":").append("completed".equals(action) ? "\"success\"" : "null").append(',')
+                    .append("\"number\":").append(step).append(',')
+                    .append("\"started_at\":\"2025-06-03T10:00:").append(String.format("%02d", step % 60)).append("Z\",")
+                    .append("\"completed_at\":\"2025-06-03T10:01:").append(String.format("%02d", step % 60)).append("Z\"}");
+            step++;
+        } while (head.length() + steps.length() + tail.length() < targetBytes);
+        return (head + steps + tail).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the {@code X-Hub-Signature-256} header value for a payload signed with {@link #SECRET}.
+     */
+    public static String sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return "sha256=" + HexFormat.of().formatHex(mac.doFinal(payload));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String header(String action, long jobId, String label) {
+        String repoUrl = "https://api.github.com/repos/eBayMobile/andr_core";
+        return "{\"action\":\"" + action + "\","
+                + "\"workflow_job\":{"
+                + "\"id\":" + jobId + ","
+                + "\"run_id\":" + (jobId * 7 + 3) + ","
+                + "\"workflow_name\":\"Android CI\","
+                + "\"head_branch\":\"feature/benchmarks\","
+                + "\"run_url\":\"" + repoUrl + "/actions/runs/" + (jobId * 7 + 3) + "\","
+                + "\"run_attempt\":1,"
+                + "\"node_id\":\"CR_kwDOABCD1234567890\","
+                + "\"head_sha\":\"3f786850e387550fdab836ed7e6dc881de23001b\","
+                + "\"url\":\"" + repoUrl + "/actions/jobs/" + jobId + "\","
+                + "\"html_url\":\"https://github.com/eBayMobile/andr_core/actions/runs/" + (jobId * 7 + 3) + "/job/" + jobId + "\","
+                + "\"status\":\"" + ("queued".equals(action) ? "queued" : action) + "\","
+                + "\"conclusion\":null,"
+                + "\"created_at\":\"2025-06-03T10:00:00Z\","
+                + "\"started_at\":\"2025-06-03T10:00:05Z\","
+                + "\"completed_at\":null,"
+                + "\"name\":\"build (" + label + ")\","
+                + "\"labels\":[\"self-hosted\",\"linux\",\"" + label + "\"],"
+                + "\"runner_id\":null,"
+                + "\"runner_name\":null,"
+                + "\"runner_group_id\":null,"
+                + "\"runner_group_name\":null,"
+                + "\"repository\":{\"full_name\":\"eBayMobile/andr_core\"},"
+                + "\"steps\":[";
+    }
+
+    private static String trailer() {
+        StringBuilder sb = new StringBuilder("]},");
+        String repoUrl = "https://api.github.com/repos/eBayMobile/andr_core";
+        sb.append("\"repository\":{\"id\":123456789,\"node_id\":\"R_kgDOABCDEF\",\"name\":\"andr_core\",")
+                .append("\"full_name\":\"eBayMobile/andr_core\",\"private\":true,");
+        String[] urlFields = {"forks", "keys", "collaborators", "teams", "hooks", "issue_events", "events",
+                "assignees", "branches", "tags", "blobs", "git_tags", "git_refs", "trees", "statuses",
+                "languages", "stargazers", "contributors", "subscribers", "subscription", "commits",
+                "git_commits", "comments", "issue_comment", "contents", "compare", "merges", "archive",
+                "downloads", "issues", "pulls", "milestones", "notifications", "labels", "releases", "deployments"};
+        for (String field : urlFields) {
+            sb.append('"').append(field).append("_url\":\"").append(repoUrl).append('/').append(field).append("\",");
+        }
+        sb.append("\"created_at\":\"2019-01-01T00:00:00Z\",\"updated_at\":\"2025-06-01T00:00:00Z\",")
+                .append("\"size\":987654,\"default_branch\":\"main\",\"visibility\":\"private\"},")
+                .append("\"organization\":{\"login\":\"eBayMobile\",\"id\":1234567,\"url\":\"https://api.github.com/orgs/eBayMobile\"},")
+                .append("\"sender\":{\"login\":\"octocat\",\"id\":1,\"type\":\"User\",\"site_admin\":false}}");
+        return sb.toString();
+    }
+}
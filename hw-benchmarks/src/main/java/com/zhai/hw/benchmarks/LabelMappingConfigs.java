@@ -0,0 +1,64 @@
+package com.zhai.hw.benchmarks;
+
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds synthetic configurations with a given number of label VM mappings.
+ * <p>
+ * Labels are named {@code label-0} to {@code label-(n-1)}, and every field is filled in so
+ * the result passes validation.
+ */
+public final class LabelMappingConfigs {
+
+    private LabelMappingConfigs() {
+    }
+
+    /**
+     * Returns a complete YAML configuration with {@code mappings} label VM mappings.
+     */
+    public static byte[] yaml(int mappings) {
+        StringBuilder yaml = new StringBuilder(256 + mappings * 420)
+                .append("appName: \"Benchmark\"\n")
+                .append("version: \"1.0\"\n")
+                .append("server:\n  host: \"localhost\"\n  port: 8080\n")
+                .append("featureFlags:\n  newDashboard: false\n")
+                .append("vmPool:\n  maxSize: 50\n  idleTimeout: \"PT15M\"\n  defaultOs: \"ubuntu\"\n")
+                .append("labelVmMappings:\n");
+        for (int i = 0; i < mappings; i++) {
+            yaml.append("  - label: \"label-").append(i).append("\"\n")
+                    .append("    vmSeriesSize: \"Standard_D4s_v5\"\n")
+                    .append("    osImage: \"ubuntu-22.04\"\n")
+                    .append("    region: \"region-").append(i % 8).append("\"\n")
+                    .append("    vnet: \"vnet-").append(i % 8).append("\"\n")
+                    .append("    subnet: \"subnet-").append(i).append("\"\n")
+                    .append("    networkSecurityGroup: \"nsg\"\n")
+                    .append("    diskTypeSize: \"Premium_LRS-128\"\n")
+                    .append("    runnersPerVm: ").append(1 + i % 4).append('\n')
+                    .append("    poolParameters:\n")
+                    .append("      minimumWarmVms: 1\n")
+                    .append("      maximumPoolSize: 10\n")
+                    .append("      scaleUpTriggerThreshold: 1\n")
+                    .append("      idleTimeout: \"PT30M\"\n");
+        }
+        return yaml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns {@code mappings} label VM mappings as objects.
+     */
+    public static List<LabelVmMapping> mappings(int mappings) {
+        List<LabelVmMapping> list = new ArrayList<>(mappings);
+        for (int i = 0; i < mappings; i++) {
+            list.add(new LabelVmMapping("label-" + i, "Standard_D4s_v5", "ubuntu-22.04", "region-" + (i % 8),
+                    "vnet-" + (i % 8), "subnet-" + i, "nsg", "Premium_LRS-128", 1 + i % 4,
+                    new VmPoolParameters(1, 10, 1, Duration.ofMinutes(30))));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,84 @@
+package com.zhai.hw.benchmarks;
+
+import com.zhai.hw.model.LabelMatchIndex;
+import com.zhai.hw.model.LabelVmMapping;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves a job's labels to a mapping with 10, 100 and 1,000 mappings configured.
+ * <p>
+ * {@code index} uses {@link LabelMatchIndex}; {@code linearScan} checks every mapping
+ * against the job's labels, which is what a lookup without the index costs. Jobs carry the
+ * usual {@code self-hosted} and {@code linux} labels plus one mapping label, and cycle
+ * through 64 different mappings so the lookup does not always hit the same slot.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LabelMatchBenchmark {
+
+    private static final int JOBS = 64;
+
+    @Param({"10", "100", "1000"})
+    public int mappings;
+
+    private List<LabelVmMapping> mappingList;
+    private LabelMatchIndex index;
+    private List<String>[] jobs;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        mappingList = LabelMappingConfigs.mappings(mappings);
+        index = LabelMatchIndex.build(mappingList);
+        jobs = new List[JOBS];
+        for (int i = 0; i < JOBS; i++) {
+            jobs[i] = List.of("self-hosted", "linux", "label-" + (i * 7919 % mappings));
+        }
+    }
+
+    private List<String> nextJob() {
+        next = (next + 1) & (JOBS - 1);
+        return jobs[next];
+    }
+
+    @Benchmark
+    public int index() {
+        return index.resolveId(nextJob());
+    }
+
+    @Benchmark
+    public LabelVmMapping linearScan() {
+        List<String> labels = nextJob();
+        LabelVmMapping match = null;
+        for (LabelVmMapping mapping : mappingList) {
+            for (String label : labels) {
+                if (mapping.getLabel().toLowerCase(Locale.ROOT).equals(label.toLowerCase(Locale.ROOT))) {
+                    if (match != null && match != mapping) {
+                        return null;
+                    }
+                    match = mapping;
+                }
+            }
+        }
+        return match;
+    }
+}
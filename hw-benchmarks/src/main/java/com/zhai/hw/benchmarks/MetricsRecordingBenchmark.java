@@ -0,0 +1,80 @@
+package com.zhai.hw.benchmarks;
+
+import com.zhai.hw.config.AppProperties;
+import com.zhai.hw.config.MetricsProperties;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.service.metrics.HwMetrics;
+import com.zhai.hw.service.pool.VmPoolManager;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records what one webhook request records in {@link HwMetrics}: the three stage timers, an
+ * event, a rejection and a ready latency. Meters are looked up without building tags, so
+ * {@code gc.alloc.rate.norm} should stay at zero.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsRecordingBenchmark {
+
+    private Path file;
+    private ValidatorFactory validatorFactory;
+    private HwMetrics metrics;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("hw-metrics-", ".yml");
+        Files.write(file, LabelMappingConfigs.yaml(10));
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        AppProperties appProperties = new AppProperties();
+        appProperties.setConfigPath("file:" + file);
+        ConfigurationLoaderService loader = new ConfigurationLoaderService(appProperties,
+                validatorFactory.getValidator());
+        loader.loadConfiguration();
+        MetricsProperties properties = new MetricsProperties();
+        properties.setMaxLabels(10);
+        metrics = new HwMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT), new VmPoolManager(loader),
+                loader, properties, Set.of("queued", "in_progress", "completed"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        validatorFactory.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void record() {
+        long started = System.nanoTime();
+        metrics.recordStage(HwMetrics.Stage.VERIFY, started);
+        metrics.recordStage(HwMetrics.Stage.PARSE, started);
+        metrics.recordStage(HwMetrics.Stage.DISPATCH, started);
+        metrics.recordEvent("queued");
+        metrics.recordEvent("unknown");
+        metrics.recordRejection(HwMetrics.Rejection.QUEUE_FULL);
+        metrics.recordReady(started);
+    }
+}
@@ -0,0 +1,65 @@
+package com.zhai.hw.benchmarks;
+
+import com.zhai.hw.service.webhook.WebhookSignatureVerifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HMAC-SHA256 verification of the {@code X-Hub-Signature-256} header on its own.
+ * <p>
+ * {@code verifier} is {@link WebhookSignatureVerifier}, with its per-thread {@link Mac} and
+ * digest buffer; {@code freshMac} creates and keys a {@link Mac} and hex-encodes the digest
+ * on every call, as a straightforward implementation would.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SignatureVerificationBenchmark {
+
+    @Param({"1024", "10240", "30720"})
+    public int payloadBytes;
+
+    private byte[] payload;
+    private String signature;
+    private WebhookSignatureVerifier verifier;
+
+    @Setup
+    public void setUp() {
+        payload = GitHubPayloads.workflowJob("queued", 12345678L, "android-small", payloadBytes);
+        signature = GitHubPayloads.sign(payload);
+        verifier = new WebhookSignatureVerifier(GitHubPayloads.SECRET);
+    }
+
+    @Benchmark
+    public void verifier() {
+        verifier.verify(payload, payload.length, signature);
+    }
+
+    @Benchmark
+    public boolean freshMac() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(GitHubPayloads.SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        String expected = "sha256=" + HexFormat.of().formatHex(mac.doFinal(payload));
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                signature.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,87 @@
+package com.zhai.hw.benchmarks;
+
+import com.zhai.hw.service.bootstrap.Placeholder;
+import com.zhai.hw.service.bootstrap.PreparedScript;
+import com.zhai.hw.service.bootstrap.StartupScriptTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the runner startup script for 10,000 VMs per invocation, comparing a prepared
+ * per-label script with substituting every placeholder into the template text.
+ * <p>
+ * Run with {@code -prof gc} to compare the bytes allocated per script.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupScriptRenderBenchmark {
+
+    private static final int SCRIPTS = 10_000;
+    private static final String REPO_URL = "https://github.com/example/repo";
+
+    private String template;
+    private PreparedScript prepared;
+    private String[] runnerNames;
+    private String[] tokens;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = StartupScriptRenderBenchmark.class.getResourceAsStream("/runner-bootstrap.sh")) {
+            template = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        Map<Placeholder, String> values = new EnumMap<>(Placeholder.class);
+        values.put(Placeholder.RUNNER_LABELS, "android-small");
+        values.put(Placeholder.STATUS_SERVER_PORT, "8080");
+        prepared = StartupScriptTemplate.compile(template).prepare(values);
+        runnerNames = new String[SCRIPTS];
+        tokens = new String[SCRIPTS];
+        for (int i = 0; i < SCRIPTS; i++) {
+            runnerNames[i] = "android-small-" + i;
+            tokens[i] = "AABBCCDDEEFFGGHHIIJJKKLLMMNN" + i;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCRIPTS)
+    public void prepared(Blackhole blackhole) {
+        for (int i = 0; i < SCRIPTS; i++) {
+            blackhole.consume(prepared.renderBase64(runnerNames[i], REPO_URL, tokens[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCRIPTS)
+    public void stringReplace(Blackhole blackhole) {
+        for (int i = 0; i < SCRIPTS; i++) {
+            String script = template
+                    .replace("%%GITHUB_REPO_URL%%", REPO_URL)
+                    .replace("%%RUNNER_LABELS%%", "android-small")
+                    .replace("%%STATUS_SERVER_PORT%%", "8080")
+                    .replace("%%RUNNER_NAME%%", runnerNames[i])
+                    .replace("%%RUNNER_REGISTRATION_TOKEN%%", tokens[i]);
+            blackhole.consume(Base64.getEncoder().encodeToString(script.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.zhai.hw.benchmarks;
+
+import com.zhai.hw.config.StateStoreProperties;
+import com.zhai.hw.service.state.StateStore;
+import com.zhai.hw.service.state.VmRecord;
+import com.zhai.hw.service.status.RunnerStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Recovers a {@link StateStore} of 50,000 VM records: a snapshot of 40,000 and a journal of
+ * 50,000 changes written after it, as a restart after a crash would find them. The target is
+ * well under a second; run with {@code -bm ss} to see the first, JIT-cold recovery.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StateStoreRecoveryBenchmark {
+
+    private Path directory;
+    private StateStoreProperties properties;
+
+    private static VmRecord record(int i, String runnerState) {
+        return new VmRecord("vm-" + i, "android-small", "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff),
+                runnerState, runnerState == null ? null : RunnerStatus.Outcome.OK, 1_700_000_000_000L + i,
+                "eBayMobile/andr_core");
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("hw-state-");
+        properties = new StateStoreProperties();
+        properties.setDirectory(directory.toString());
+        properties.setSegmentSize(64 * 1024 * 1024);
+        properties.setCommitInterval(Duration.ofMillis(5));
+        properties.setSnapshotInterval(Duration.ofHours(1));
+        properties.setSnapshotAfter(Integer.MAX_VALUE);
+        StateStore store = new StateStore(properties);
+        for (int i = 0; i < 40_000; i++) {
+            store.put(record(i, null));
+        }
+        store.snapshot();
+        for (int i = 0; i < 50_000; i++) {
+            store.put(record(i, i % 2 == 0 ? "idle" : "busy"));
+        }
+        store.stop();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int recover() {
+        StateStore store = new StateStore(properties);
+        int recovered = store.records().size();
+        store.stop();
+        return recovered;
+    }
+}
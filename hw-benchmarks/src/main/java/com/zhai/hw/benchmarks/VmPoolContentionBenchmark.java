@@ -0,0 +1,109 @@
+package com.zhai.hw.benchmarks;
+
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+import com.zhai.hw.service.pool.ManagedVm;
+import com.zhai.hw.service.pool.VmPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Claims and releases warm VMs from 64 threads spread across several label pools.
+ * <p>
+ * {@code lockFree} uses {@link VmPool}; {@code globalLock} is the obvious alternative of a
+ * single lock around every pool, kept here as the baseline. Each operation claims a VM from
+ * a random label and, when it gets one, releases it straight back.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+public class VmPoolContentionBenchmark {
+
+    private static final String REPOSITORY = "eBayMobile/andr_core";
+
+    @State(Scope.Benchmark)
+    public static class Pools {
+
+        @Param({"1", "8"})
+        public int labels;
+
+        @Param({"16", "256"})
+        public int warmVmsPerLabel;
+
+        VmPool[] pools;
+        LockedPool[] lockedPools;
+        final Object globalLock = new Object();
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            pools = new VmPool[labels];
+            lockedPools = new LockedPool[labels];
+            for (int l = 0; l < labels; l++) {
+                LabelVmMapping mapping = new LabelVmMapping("label-" + l, "Standard_D4s_v5", "ubuntu-22.04",
+                        "eastus", "vnet", "subnet", "nsg", "Premium_LRS-128", 1,
+                        new VmPoolParameters(0, warmVmsPerLabel, 0, Duration.ofMinutes(30)));
+                pools[l] = new VmPool(mapping, (pool, warm) -> { });
+                pools[l].reserve(warmVmsPerLabel);
+                lockedPools[l] = new LockedPool();
+                for (int v = 0; v < warmVmsPerLabel; v++) {
+                    pools[l].addWarmVm("vm-" + l + "-" + v, REPOSITORY);
+                    lockedPools[l].idle.push("vm-" + l + "-" + v);
+                }
+            }
+        }
+    }
+
+    /**
+     * The baseline: plain collections guarded by one lock shared by all pools.
+     */
+    static final class LockedPool {
+        final ArrayDeque<String> idle = new ArrayDeque<>();
+        int busy;
+    }
+
+    @Benchmark
+    public boolean lockFree(Pools state) {
+        VmPool pool = state.pools[ThreadLocalRandom.current().nextInt(state.labels)];
+        ManagedVm vm = pool.claim(REPOSITORY);
+        return vm != null && pool.release(vm);
+    }
+
+    @Benchmark
+    public boolean globalLock(Pools state) {
+        LockedPool pool = state.lockedPools[ThreadLocalRandom.current().nextInt(state.labels)];
+        String vm;
+        synchronized (state.globalLock) {
+            vm = pool.idle.poll();
+            if (vm != null) {
+                pool.busy++;
+            }
+        }
+        if (vm == null) {
+            return false;
+        }
+        synchronized (state.globalLock) {
+            pool.busy--;
+            pool.idle.push(vm);
+        }
+        return true;
+    }
+}
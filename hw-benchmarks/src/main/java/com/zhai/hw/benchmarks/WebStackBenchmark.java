@@ -0,0 +1,148 @@
+package com.zhai.hw.benchmarks;
+
+import com.zhai.hw.HwApplication;
+import com.zhai.hw.service.reconcile.StartupReconciler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the servlet (Tomcat) and reactive (Netty) web stacks serving {@code /webhook/github}.
+ * <p>
+ * Each trial starts the service on a random port in the chosen stack and {@code @Threads}
+ * clients post signed {@code queued} deliveries, each for a new job, as fast as they are
+ * answered. The jobs' label matches no pool, so the whole webhook path runs but nothing is
+ * provisioned; service logging is turned down to warnings in both stacks alike. Clients run in
+ * the same JVM, so ops/s and {@code gc.alloc.rate.norm} are for the pair on the same hardware.
+ * At the end of a trial the web server's own thread count, the process's live and peak thread
+ * counts, heap in use after a GC and resident set size are printed. Raise the client count
+ * with {@code -t}; the servlet stack needs a request thread per concurrent client, the
+ * reactive stack does not.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class WebStackBenchmark {
+
+    @Param({"servlet", "reactive"})
+    public String stack;
+
+    @Param({"12288"})
+    public int payloadBytes;
+
+    private final AtomicLong jobIds = new AtomicLong(8_000_000_000L);
+    private Path workDirectory;
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private URI endpoint;
+    private String template;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workDirectory = Files.createTempDirectory("hw-web-stack-");
+        String[] args = {
+                "--spring.main.banner-mode=off",
+                "--spring.main.web-application-type=" + stack,
+                "--server.port=0",
+                "--logging.level.com.zhai.hw=warn",
+                "--GITHUB_WEBHOOK_SECRET=" + GitHubPayloads.SECRET,
+                "--app.github.api-url=http://127.0.0.1:9",
+                "--app.config.watch.enabled=false",
+                "--app.config.cache.enabled=false",
+                "--app.runner-status.enabled=false",
+                "--app.state.directory=" + workDirectory.resolve("state"),
+                "--app.dispatch.queue-capacity=65536"
+        };
+        context = new SpringApplication(HwApplication.class).run(args);
+        context.getBean(StartupReconciler.class).whenReconciled().get(1, TimeUnit.MINUTES);
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        endpoint = URI.create("http://127.0.0.1:" + port + "/webhook/github");
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        // The job id is patched into a fixed-width slot, so only the signature changes per delivery
+        template = new String(GitHubPayloads.workflowJob("queued", 8_888_888_888L, "web-stack-benchmark",
+                payloadBytes), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int postDelivery() throws IOException, InterruptedException {
+        long jobId = jobIds.incrementAndGet();
+        byte[] body = template.replace("8888888888", Long.toString(jobId))
+                .getBytes(StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .header("Content-Type", "application/json")
+                .header("X-GitHub-Event", "workflow_job")
+                .header("X-GitHub-Delivery", "web-stack-" + jobId)
+                .header("X-Hub-Signature-256", GitHubPayloads.sign(body))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status != 202) {
+            throw new IllegalStateException("Delivery for job " + jobId + " answered with " + status);
+        }
+        return status;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.gc();
+        var threads = ManagementFactory.getThreadMXBean();
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        // Tomcat's acceptor, poller and request threads, or Netty's event loops
+        long serverThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("http-nio-") || thread.getName().startsWith("reactor-http-"))
+                .count();
+        System.out.printf("%n[%s] server threads %d, live threads %d, peak threads %d, heap after GC %d MB, RSS %s%n",
+                stack, serverThreads, threads.getThreadCount(), threads.getPeakThreadCount(), heapUsed >> 20,
+                residentSetSize());
+        context.close();
+        try (var files = Files.walk(workDirectory)) {
+            files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static String residentSetSize() throws IOException {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.exists(status)) {
+            return "n/a";
+        }
+        try (var lines = Files.lines(status)) {
+            return lines.filter(line -> line.startsWith("VmRSS:"))
+                    .map(line -> line.substring("VmRSS:".length()).trim())
+                    .findFirst().orElse("n/a");
+        }
+    }
+}
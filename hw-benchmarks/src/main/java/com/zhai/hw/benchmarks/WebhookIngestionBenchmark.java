@@ -0,0 +1,95 @@
+package com.zhai.hw.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zhai.hw.model.github.WorkflowJobEvent;
+import com.zhai.hw.service.webhook.WebhookPayloadBuffer;
+import com.zhai.hw.service.webhook.WebhookSignatureVerifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original String-based webhook ingestion with the pooled byte-buffer path.
+ * <p>
+ * Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm} to see the bytes
+ * allocated per delivery. Both variants start from the request body stream, since the
+ * original path paid for Spring's String conversion before the controller ran.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WebhookIngestionBenchmark {
+
+    @Param({"10240", "30720"})
+    public int payloadBytes;
+
+    private byte[] payload;
+    private String signature;
+    private ObjectMapper objectMapper;
+    private WebhookSignatureVerifier verifier;
+
+    @Setup
+    public void setUp() {
+        payload = GitHubPayloads.workflowJob("queued", 12345678L, "android-small", payloadBytes);
+        signature = GitHubPayloads.sign(payload);
+        objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        verifier = new WebhookSignatureVerifier(GitHubPayloads.SECRET);
+    }
+
+    @Benchmark
+    public WorkflowJobEvent legacyStringPath() throws Exception {
+        String body = new String(new ByteArrayInputStream(payload).readAllBytes(), StandardCharsets.UTF_8);
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(GitHubPayloads.SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] digest = mac.doFinal(body.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            String h = Integer.toHexString(0xff & b);
+            if (h.length() == 1) {
+                hex.append('0');
+            }
+            hex.append(h);
+        }
+        String expected = "sha256=" + hex;
+        if (!MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                signature.getBytes(StandardCharsets.UTF_8))) {
+            throw new IllegalStateException("signature mismatch");
+        }
+        return objectMapper.readValue(body, WorkflowJobEvent.class);
+    }
+
+    @Benchmark
+    public WorkflowJobEvent pooledBytePath() throws IOException {
+        WebhookPayloadBuffer body = WebhookPayloadBuffer.forCurrentThread();
+        try {
+            InputStream in = new ByteArrayInputStream(payload);
+            body.readFrom(in, payload.length, Integer.MAX_VALUE);
+            verifier.verify(body.array(), body.length(), signature);
+            return objectMapper.readValue(body.array(), 0, body.length(), WorkflowJobEvent.class);
+        } finally {
+            body.release();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.zhai.hw.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zhai.hw.model.github.WorkflowJobEvent;
+import com.zhai.hw.service.webhook.WorkflowJobEventExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares full databind of {@link WorkflowJobEvent} with the streaming
+ * {@link WorkflowJobEventExtractor} on GitHub-sized payloads, from a job with a few steps
+ * to one with hundreds.
+ * <p>
+ * The {@code action} parameter covers both a handled event ({@code queued}), which is
+ * walked to the end, and an unhandled one ({@code completed}), which the extractor
+ * abandons after the first field.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkflowJobParseBenchmark {
+
+    @Param({"2048", "10240", "30720"})
+    public int payloadBytes;
+
+    @Param({"queued", "completed"})
+    public String action;
+
+    private byte[] payload;
+    private ObjectMapper objectMapper;
+    private WorkflowJobEventExtractor extractor;
+
+    @Setup
+    public void setUp() {
+        payload = GitHubPayloads.workflowJob(action, 12345678L, "android-small", payloadBytes);
+        objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        extractor = new WorkflowJobEventExtractor(objectMapper.getFactory(), Set.of("queued"));
+    }
+
+    @Benchmark
+    public WorkflowJobEvent databind() throws IOException {
+        return objectMapper.readValue(payload, 0, payload.length, WorkflowJobEvent.class);
+    }
+
+    @Benchmark
+    public WorkflowJobEvent streamingExtractor() throws IOException {
+        return extractor.extract(payload, 0, payload.length);
+    }
+}
@@ -0,0 +1,63 @@
+package com.zhai.hw.benchmarks.replay;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers runner status polls for every fake VM.
+ * <p>
+ * Fake VMs get loopback addresses such as {@code 127.1.0.7}, which all reach this server
+ * when it listens on every interface. The address a poll arrived on tells which VM it was
+ * for; each VM reports {@code online} from its first poll on.
+ */
+final class FakeRunnerStatusServer implements AutoCloseable {
+
+    private static final byte[] ONLINE = "{\"status\":\"online\",\"busy\":false}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final Map<String, Long> firstPolled = new ConcurrentHashMap<>();
+    private final AtomicLong polls = new AtomicLong();
+
+    FakeRunnerStatusServer(String path) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("0.0.0.0", 0), 1024);
+        server.createContext(path, exchange -> {
+            polls.incrementAndGet();
+            firstPolled.putIfAbsent(exchange.getLocalAddress().getAddress().getHostAddress(), System.nanoTime());
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, ONLINE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(ONLINE);
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    long polls() {
+        return polls.get();
+    }
+
+    int onlineVms() {
+        return firstPolled.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
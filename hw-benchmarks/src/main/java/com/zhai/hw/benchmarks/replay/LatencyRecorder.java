@@ -0,0 +1,43 @@
+package com.zhai.hw.benchmarks.replay;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects latency samples into a preallocated array and reports percentiles once the run is
+ * over.
+ */
+final class LatencyRecorder {
+
+    private final long[] samples;
+    private final AtomicInteger count = new AtomicInteger();
+
+    LatencyRecorder(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    void record(long nanos) {
+        int index = count.getAndIncrement();
+        if (index < samples.length) {
+            samples[index] = nanos;
+        }
+    }
+
+    int count() {
+        return Math.min(count.get(), samples.length);
+    }
+
+    /**
+     * @return The percentile in milliseconds, or {@code NaN} with no samples
+     */
+    double percentileMillis(double percentile) {
+        int n = count();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        long[] sorted = Arrays.copyOf(samples, n);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, rank))] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,13 @@
+package com.zhai.hw.benchmarks.replay;
+
+/**
+ * One {@code workflow_job} delivery in a trace.
+ *
+ * @param atMillis When it was delivered, in milliseconds from the start of the trace
+ * @param action   The workflow job action, for example {@code queued}
+ * @param jobId    The job's ID
+ * @param label    The job's mapping label; {@code self-hosted} and {@code linux} are added
+ * @param bytes    The size to pad the payload to
+ */
+public record TraceEvent(long atMillis, String action, long jobId, String label, int bytes) {
+}
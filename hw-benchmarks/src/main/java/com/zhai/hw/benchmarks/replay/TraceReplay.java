@@ -0,0 +1,269 @@
+package com.zhai.hw.benchmarks.replay;
+
+import com.zhai.hw.HwApplication;
+import com.zhai.hw.benchmarks.GitHubPayloads;
+import com.zhai.hw.service.pool.JobLifecycleTracker;
+import com.zhai.hw.service.reconcile.StartupReconciler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays a {@code workflow_job} delivery trace against the service, end to end and offline.
+ * <p>
+ * The service is started in-process with the fake VM provisioner, whose VMs get loopback
+ * addresses answered by a {@link FakeRunnerStatusServer}, and with a {@link FakeGitHubApi}
+ * for registration tokens. Each delivery is signed with the webhook secret and posted to
+ * {@code /webhook/github} at its trace time divided by the speed-up. Acknowledgement latency
+ * is measured from the time a delivery was due, not from when it was sent, so a stalled
+ * service shows up in the numbers rather than slowing the replay down. Queued-to-ready
+ * latency comes from the service's {@code hw.job.ready.latency} timer, which runs from a
+ * queued job being processed to the first poll that finds its VM's runner online, so it
+ * includes the fake provisioning latency and the poll schedule. The trace has no
+ * {@code in_progress} events, and its {@code completed} events name no runner, so a job that
+ * completes before its VM is first polled counts as cancelled and is not measured; the
+ * speed-up shortens jobs but not provisioning or the poll interval.
+ * <p>
+ * Usage, from the repository root after {@code mvn install}:
+ * <pre>
+ * java -cp hw-benchmarks/target/benchmarks.jar com.zhai.hw.benchmarks.replay.TraceReplay \
+ *     [--trace trace.jsonl | --jobs 2000 --window PT30M --labels 4] \
+ *     [--speedup 60] [--payload-bytes 12288] [--provision-latency PT2S] [--drain PT60S]
+ * </pre>
+ */
+public final class TraceReplay {
+
+    private static final String READY_TIMER = "hw.job.ready.latency";
+
+    private TraceReplay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int payloadBytes = Integer.parseInt(options.getOrDefault("payload-bytes", "12288"));
+        double speedup = Double.parseDouble(options.getOrDefault("speedup", "60"));
+        Duration provisionLatency = Duration.parse(options.getOrDefault("provision-latency", "PT2S"));
+        Duration drain = Duration.parse(options.getOrDefault("drain", "PT60S"));
+
+        List<TraceEvent> trace;
+        if (options.containsKey("trace")) {
+            trace = Traces.read(Path.of(options.get("trace")), payloadBytes);
+        } else {
+            int labelCount = Integer.parseInt(options.getOrDefault("labels", "4"));
+            List<String> labels = new ArrayList<>();
+            for (int i = 0; i < labelCount; i++) {
+                labels.add("burst-" + i);
+            }
+            trace = Traces.synthetic(Integer.parseInt(options.getOrDefault("jobs", "2000")),
+                    Duration.parse(options.getOrDefault("window", "PT30M")), labels, payloadBytes, 42);
+        }
+        Set<String> labels = new LinkedHashSet<>();
+        trace.forEach(event -> labels.add(event.label()));
+
+        Path workDirectory = Files.createTempDirectory("hw-replay-");
+        try (FakeRunnerStatusServer statusServer = new FakeRunnerStatusServer("/runner/status");
+             FakeGitHubApi gitHub = new FakeGitHubApi()) {
+            Path config = workDirectory.resolve("config.yml");
+            Files.writeString(config, config(labels));
+            ConfigurableApplicationContext context = start(config, workDirectory, statusServer, gitHub,
+                    provisionLatency);
+            try {
+                context.getBean(StartupReconciler.class).whenReconciled().get(5, TimeUnit.MINUTES);
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                Report report = replay(trace, URI.create("http://127.0.0.1:" + port + "/webhook/github"), speedup);
+                Timer ready = context.getBean(MeterRegistry.class).get(READY_TIMER).timer();
+                long queued = trace.stream().filter(event -> "queued".equals(event.action())).count();
+                JobLifecycleTracker tracker = context.getBean(JobLifecycleTracker.class);
+                long deadline = System.nanoTime() + drain.toNanos();
+                while (tracker.getAwaitingReadyCount() > 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(100);
+                }
+                report.print(ready, queued, statusServer, gitHub);
+            } finally {
+                context.close();
+            }
+        } finally {
+            try (var files = Files.walk(workDirectory)) {
+                files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(Path config, Path workDirectory,
+                                                        FakeRunnerStatusServer statusServer, FakeGitHubApi gitHub,
+                                                        Duration provisionLatency) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("server.port", "0");
+        properties.put("GITHUB_WEBHOOK_SECRET", GitHubPayloads.SECRET);
+        properties.put("GITHUB_API_TOKEN", "replay");
+        properties.put("app.config.path", "file:" + config);
+        properties.put("app.config.watch.enabled", "false");
+        properties.put("app.state.directory", workDirectory.resolve("state").toString());
+        properties.put("app.github.api-url", gitHub.url());
+        properties.put("app.provisioning.provider", "fake");
+        properties.put("app.provisioning.fake.latency", provisionLatency.toString());
+        properties.put("app.provisioning.fake.address-prefix", "127.1");
+        properties.put("app.provisioning.default-repository", "eBayMobile/andr_core");
+        properties.put("app.runner-status.port", Integer.toString(statusServer.port()));
+        properties.put("app.runner-status.path", "/runner/status");
+        properties.put("app.retry.region.calls-per-second", "1000");
+        properties.put("app.retry.region.burst", "1000");
+        properties.put("management.metrics.distribution.percentiles." + READY_TIMER, "0.5,0.99,0.999");
+        properties.put("management.metrics.distribution.expiry." + READY_TIMER, "PT24H");
+        properties.put("management.metrics.distribution.buffer-length." + READY_TIMER, "1");
+        // Passed as command-line arguments, which override the service's application.properties
+        String[] args = properties.entrySet().stream()
+                .map(entry -> "--" + entry.getKey() + "=" + entry.getValue())
+                .toArray(String[]::new);
+        return new SpringApplication(HwApplication.class).run(args);
+    }
+
+    private static String config(Set<String> labels) {
+        StringBuilder yaml = new StringBuilder()
+                .append("appName: \"Trace replay\"\nversion: \"1.0\"\n")
+                .append("server:\n  host: \"localhost\"\n  port: 8080\n")
+                .append("featureFlags: {}\n")
+                .append("vmPool:\n  maxSize: 100000\n  idleTimeout: \"PT15M\"\n  defaultOs: \"ubuntu\"\n")
+                .append("labelVmMappings:\n");
+        int i = 0;
+        for (String label : labels) {
+            yaml.append("  - label: \"").append(label).append("\"\n")
+                    .append("    vmSeriesSize: \"Standard_D4s_v5\"\n")
+                    .append("    osImage: \"ubuntu-22.04\"\n")
+                    .append("    region: \"region-").append(i++ % 4).append("\"\n")
+                    .append("    vnet: \"vnet\"\n    subnet: \"subnet\"\n    networkSecurityGroup: \"nsg\"\n")
+                    .append("    diskTypeSize: \"Premium_LRS-128\"\n")
+                    .append("    runnersPerVm: 1\n")
+                    .append("    poolParameters:\n")
+                    .append("      minimumWarmVms: 2\n")
+                    .append("      maximumPoolSize: 100000\n")
+                    .append("      scaleUpTriggerThreshold: 1\n")
+                    .append("      idleTimeout: \"PT30M\"\n");
+        }
+        return yaml.toString();
+    }
+
+    private static Report replay(List<TraceEvent> trace, URI endpoint, double speedup) throws InterruptedException {
+        ExecutorService responses = Executors.newFixedThreadPool(8);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(responses)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        Report report = new Report(trace.size());
+        CountDownLatch done = new CountDownLatch(trace.size());
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        System.out.printf(Locale.ROOT, "Replaying %d deliveries over %.1f s (speed-up %.0fx)%n", trace.size(),
+                trace.isEmpty() ? 0.0 : trace.get(trace.size() - 1).atMillis() / speedup / 1000, speedup);
+        for (TraceEvent event : trace) {
+            long dueAt = start + (long) (TimeUnit.MILLISECONDS.toNanos(event.atMillis()) / speedup);
+            scheduler.schedule(() -> send(client, endpoint, event, dueAt, report, done),
+                    dueAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        done.await();
+        report.elapsedNanos = System.nanoTime() - start;
+        scheduler.shutdown();
+        responses.shutdown();
+        return report;
+    }
+
+    private static void send(HttpClient client, URI endpoint, TraceEvent event, long dueAt, Report report,
+                             CountDownLatch done) {
+        byte[] payload = GitHubPayloads.workflowJob(event.action(), event.jobId(), event.label(), event.bytes());
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .header("Content-Type", "application/json")
+                .header("X-GitHub-Event", "workflow_job")
+                .header("X-GitHub-Delivery", event.action() + "-" + event.jobId())
+                .header("X-Hub-Signature-256", GitHubPayloads.sign(payload))
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            report.ack.record(System.nanoTime() - dueAt);
+            report.count(error == null ? Integer.toString(response.statusCode()) : error.getClass().getSimpleName());
+            done.countDown();
+        });
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value pairs, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static final class Report {
+        final LatencyRecorder ack;
+        final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        final AtomicLong errors = new AtomicLong();
+        long elapsedNanos;
+
+        Report(int deliveries) {
+            ack = new LatencyRecorder(deliveries);
+        }
+
+        void count(String outcome) {
+            outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+            if (!"200".equals(outcome) && !"202".equals(outcome)) {
+                errors.incrementAndGet();
+            }
+        }
+
+        void print(Timer ready, long queued, FakeRunnerStatusServer statusServer, FakeGitHubApi gitHub) {
+            int sent = ack.count();
+            System.out.printf(Locale.ROOT, "%nDeliveries: %d in %.1f s (%.0f/s)%n", sent, elapsedNanos / 1e9,
+                    sent / (elapsedNanos / 1e9));
+            Map<String, Long> byOutcome = new TreeMap<>();
+            outcomes.forEach((outcome, count) -> byOutcome.put(outcome, count.sum()));
+            System.out.printf(Locale.ROOT, "Responses: %s%n", byOutcome);
+            System.out.printf(Locale.ROOT, "Error rate: %.3f%%%n", sent == 0 ? 0.0 : 100.0 * errors.get() / sent);
+            System.out.printf(Locale.ROOT, "Ack latency ms:            p50 %8.2f  p99 %8.2f  p999 %8.2f%n",
+                    ack.percentileMillis(0.5), ack.percentileMillis(0.99), ack.percentileMillis(0.999));
+            double[] readyMillis = new double[3];
+            for (ValueAtPercentile value : ready.takeSnapshot().percentileValues()) {
+                int slot = value.percentile() == 0.5 ? 0 : value.percentile() == 0.99 ? 1 : 2;
+                readyMillis[slot] = value.value(TimeUnit.MILLISECONDS);
+            }
+            System.out.printf(Locale.ROOT, "Queued-to-ready latency ms: p50 %8.2f  p99 %8.2f  p999 %8.2f"
+                    + "  (%d of %d queued jobs had a runner up before completing)%n", readyMillis[0], readyMillis[1], readyMillis[2],
+                    ready.count(), queued);
+            System.out.printf(Locale.ROOT, "Fake cloud: %d VMs answered status polls (%d polls), %d registration tokens%n",
+                    statusServer.onlineVms(), statusServer.polls(), gitHub.tokensIssued());
+        }
+    }
+}
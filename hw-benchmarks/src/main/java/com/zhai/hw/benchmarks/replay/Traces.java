@@ -0,0 +1,73 @@
+package com.zhai.hw.benchmarks.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reads recorded traces and builds synthetic ones.
+ * <p>
+ * A recorded trace is JSON lines, one delivery per line:
+ * <pre>{"at": 1250, "action": "queued", "jobId": 42, "label": "android-small", "bytes": 12288}</pre>
+ * {@code at} is milliseconds from the start of the trace and {@code bytes} is optional.
+ */
+public final class Traces {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Traces() {
+    }
+
+    public static List<TraceEvent> read(Path file, int defaultBytes) throws IOException {
+        List<TraceEvent> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode node = MAPPER.readTree(line);
+                events.add(new TraceEvent(node.path("at").asLong(), node.path("action").asText(),
+                        node.path("jobId").asLong(), node.path("label").asText(),
+                        node.path("bytes").asInt(defaultBytes)));
+            }
+        }
+        events.sort(Comparator.comparingLong(TraceEvent::atMillis));
+        return events;
+    }
+
+    /**
+     * Builds a Monday-morning burst: 60% of the jobs are queued in the first 15% of the window
+     * and the rest spread over the remainder. Every job is completed two to ten minutes after
+     * it was queued. Labels are skewed, the first one getting the most jobs.
+     */
+    public static List<TraceEvent> synthetic(int jobs, Duration window, List<String> labels, int bytes, long seed) {
+        Random random = new Random(seed);
+        long windowMillis = window.toMillis();
+        long burstMillis = windowMillis * 15 / 100;
+        List<TraceEvent> events = new ArrayList<>(jobs * 2);
+        for (int i = 0; i < jobs; i++) {
+            long queuedAt = random.nextDouble() < 0.6
+                    ? (long) (random.nextDouble() * burstMillis)
+                    : burstMillis + (long) (random.nextDouble() * (windowMillis - burstMillis));
+            // Square the draw so low indexes are picked more often
+            double draw = random.nextDouble();
+            String label = labels.get((int) (draw * draw * labels.size()));
+            long jobId = 1_000_000L + i;
+            events.add(new TraceEvent(queuedAt, "queued", jobId, label, bytes));
+            long runMillis = Duration.ofMinutes(2).toMillis() + (long) (random.nextDouble() * Duration.ofMinutes(8).toMillis());
+            events.add(new TraceEvent(queuedAt + runMillis, "completed", jobId, label, bytes));
+        }
+        events.sort(Comparator.comparingLong(TraceEvent::atMillis));
+        return events;
+    }
+}
@@ -1,6 +1,5 @@
 package com.zhai.hw;
 
-import com.zhai.hw.exception.InvalidConfigurationException;
 import com.zhai.hw.model.AppConfig;
 import com.zhai.hw.service.ConfigurationLoaderService;
 import org.slf4j.Logger;
@@ -8,7 +7,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.ApplicationContext;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 
@@ -22,34 +22,33 @@ public class HwApplication {
 	}
 
 	@Bean
-	public CommandLineRunner commandLineRunner(ApplicationContext ctx, ConfigurationLoaderService configurationLoaderService) {
+	public CommandLineRunner commandLineRunner(AppConfig appConfig) {
+		// The configuration was loaded and validated when the appConfig bean was created; an
+		// invalid one has already failed the startup, so there is nothing left to parse here
 		return args -> {
-			try {
-				logger.info("Attempting to load application configuration...");
-				AppConfig appConfig = configurationLoaderService.loadConfiguration();
-				// Optionally, log some loaded configuration details or store it for application-wide access
-				logger.info("Successfully loaded application configuration. App Name: {}", appConfig.getAppName());
-				logger.info("Server configuration: host={}, port={}", appConfig.getServer().getHost(), appConfig.getServer().getPort());
-				logger.info("VM Pool configuration: maxSize={}, idleTimeout={}, defaultOs={}", 
-					appConfig.getVmPool().getMaxSize(), 
-					appConfig.getVmPool().getIdleTimeout(), 
-					appConfig.getVmPool().getDefaultOs());
-				logger.info("Number of label VM mappings: {}", appConfig.getLabelVmMappings().size());
-				// You can store the loaded AppConfig in a bean or make it accessible globally if needed
-			} catch (InvalidConfigurationException e) {
-				logger.error("Failed to load application configuration: {}", e.getMessage(), e);
-				// Exit the application
-				SpringApplication.exit(ctx, () -> 1);
-			} catch (Exception e) {
-				logger.error("An unexpected error occurred during application startup while loading configuration: {}", e.getMessage(), e);
-				SpringApplication.exit(ctx, () -> 1);
-			}
+			logger.info("Successfully loaded application configuration. App Name: {}", appConfig.getAppName());
+			logger.info("Server configuration: host={}, port={}", appConfig.getServer().getHost(), appConfig.getServer().getPort());
+			logger.info("VM Pool configuration: maxSize={}, idleTimeout={}, defaultOs={}",
+				appConfig.getVmPool().getMaxSize(),
+				appConfig.getVmPool().getIdleTimeout(),
+				appConfig.getVmPool().getDefaultOs());
+			logger.info("Number of label VM mappings: {}", appConfig.getLabelVmMappings().size());
 		};
 	}
-	
+
 	@Bean
 	@Primary
 	public AppConfig appConfig(ConfigurationLoaderService configurationLoaderService) {
-		return configurationLoaderService.loadConfiguration();
+		return configurationLoaderService.getConfiguration();
+	}
+
+	/**
+	 * Serves the reactive stack on Netty. Tomcat is on the classpath for the servlet stack,
+	 * and Spring Boot would otherwise run the reactive stack on it too.
+	 */
+	@Bean
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+	public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+		return new NettyReactiveWebServerFactory();
 	}
 }
@@ -0,0 +1,34 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for the startup script passed to every new VM as custom data.
+ */
+@Component
+public class BootstrapProperties {
+
+    @Value("${app.bootstrap.template:classpath:runner-bootstrap.sh}")
+    private String template;
+
+    /** The GitHub server runners register with; each runner's repository is appended to it. */
+    @Value("${app.bootstrap.github-url:https://github.com}")
+    private String githubUrl;
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public void setTemplate(String template) {
+        this.template = template;
+    }
+
+    public String getGithubUrl() {
+        return githubUrl;
+    }
+
+    public void setGithubUrl(String githubUrl) {
+        this.githubUrl = githubUrl;
+    }
+}
@@ -0,0 +1,33 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for the binary cache of the validated configuration.
+ */
+@Component
+public class ConfigCacheProperties {
+
+    @Value("${app.config.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.config.cache.directory:data/config-cache}")
+    private String directory;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+}
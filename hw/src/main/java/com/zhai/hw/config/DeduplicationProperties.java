@@ -0,0 +1,35 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings for the webhook delivery deduplication cache.
+ */
+@Component
+public class DeduplicationProperties {
+
+    @Value("${app.webhook.dedup.ttl:PT1H}")
+    private Duration ttl;
+
+    @Value("${app.webhook.dedup.max-entries:250000}")
+    private int maxEntries;
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
@@ -0,0 +1,78 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for the in-memory queue between the webhook endpoint and the dispatch workers.
+ */
+@Component
+public class DispatchProperties {
+
+    @Value("${app.dispatch.shards:4}")
+    private int shards;
+
+    /** {@code repository} or {@code labels}: what events are routed to a shard by. */
+    @Value("${app.dispatch.shard-key:repository}")
+    private String shardKey;
+
+    @Value("${app.dispatch.tracked-jobs-per-shard:16384}")
+    private int trackedJobsPerShard;
+
+    @Value("${app.dispatch.queue-capacity:1024}")
+    private int queueCapacity;
+
+    @Value("${app.dispatch.retry-after-seconds:5}")
+    private int retryAfterSeconds;
+
+    @Value("${app.dispatch.shutdown-timeout-seconds:10}")
+    private int shutdownTimeoutSeconds;
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public String getShardKey() {
+        return shardKey;
+    }
+
+    public void setShardKey(String shardKey) {
+        this.shardKey = shardKey;
+    }
+
+    public int getTrackedJobsPerShard() {
+        return trackedJobsPerShard;
+    }
+
+    public void setTrackedJobsPerShard(int trackedJobsPerShard) {
+        this.trackedJobsPerShard = trackedJobsPerShard;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getShutdownTimeoutSeconds() {
+        return shutdownTimeoutSeconds;
+    }
+
+    public void setShutdownTimeoutSeconds(int shutdownTimeoutSeconds) {
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+    }
+}
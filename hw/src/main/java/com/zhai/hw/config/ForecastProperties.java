@@ -0,0 +1,68 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings for forecasting queued-job demand per label and pre-warming VMs for it.
+ */
+@Component
+public class ForecastProperties {
+
+    @Value("${app.forecast.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.forecast.step:PT1M}")
+    private Duration step;
+
+    @Value("${app.forecast.lead-time:PT5M}")
+    private Duration leadTime;
+
+    @Value("${app.forecast.ewma-alpha:0.3}")
+    private double ewmaAlpha;
+
+    @Value("${app.forecast.profile-alpha:0.3}")
+    private double profileAlpha;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getStep() {
+        return step;
+    }
+
+    public void setStep(Duration step) {
+        this.step = step;
+    }
+
+    public Duration getLeadTime() {
+        return leadTime;
+    }
+
+    public void setLeadTime(Duration leadTime) {
+        this.leadTime = leadTime;
+    }
+
+    public double getEwmaAlpha() {
+        return ewmaAlpha;
+    }
+
+    public void setEwmaAlpha(double ewmaAlpha) {
+        this.ewmaAlpha = ewmaAlpha;
+    }
+
+    public double getProfileAlpha() {
+        return profileAlpha;
+    }
+
+    public void setProfileAlpha(double profileAlpha) {
+        this.profileAlpha = profileAlpha;
+    }
+}
@@ -0,0 +1,101 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings for calls to the GitHub REST API and for caching runner registration tokens.
+ */
+@Component
+public class GitHubProperties {
+
+    @Value("${app.github.api-url:https://api.github.com}")
+    private String apiUrl;
+
+    @Value("${GITHUB_API_TOKEN:}")
+    private String apiToken;
+
+    @Value("${app.github.request-timeout:PT10S}")
+    private Duration requestTimeout;
+
+    @Value("${app.github.registration-token.refresh-before:PT10M}")
+    private Duration refreshBefore;
+
+    @Value("${app.github.registration-token.min-remaining:PT5M}")
+    private Duration minRemaining;
+
+    @Value("${app.github.registration-token.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.github.registration-token.max-retry-after:PT1M}")
+    private Duration maxRetryAfter;
+
+    @Value("${app.github.registration-token.refresh-retry:PT30S}")
+    private Duration refreshRetry;
+
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    public void setApiUrl(String apiUrl) {
+        this.apiUrl = apiUrl;
+    }
+
+    public String getApiToken() {
+        return apiToken;
+    }
+
+    public void setApiToken(String apiToken) {
+        this.apiToken = apiToken;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public Duration getRefreshBefore() {
+        return refreshBefore;
+    }
+
+    public void setRefreshBefore(Duration refreshBefore) {
+        this.refreshBefore = refreshBefore;
+    }
+
+    public Duration getMinRemaining() {
+        return minRemaining;
+    }
+
+    public void setMinRemaining(Duration minRemaining) {
+        this.minRemaining = minRemaining;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public Duration getMaxRetryAfter() {
+        return maxRetryAfter;
+    }
+
+    public void setMaxRetryAfter(Duration maxRetryAfter) {
+        this.maxRetryAfter = maxRetryAfter;
+    }
+
+    public Duration getRefreshRetry() {
+        return refreshRetry;
+    }
+
+    public void setRefreshRetry(Duration refreshRetry) {
+        this.refreshRetry = refreshRetry;
+    }
+}
@@ -0,0 +1,38 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings for following jobs through their {@code in_progress} and {@code completed}
+ * events, and for the runner status poll that stands in for events that never arrive.
+ */
+@Component
+public class LifecycleProperties {
+
+    /** How long a VM claimed for a queued job is held before an idle poll may release it. */
+    @Value("${app.lifecycle.claim-timeout:PT10M}")
+    private Duration claimTimeout;
+
+    /** How long after a job started an idle poll is taken as a missed {@code completed}. */
+    @Value("${app.lifecycle.completed-grace:PT1M}")
+    private Duration completedGrace;
+
+    public Duration getClaimTimeout() {
+        return claimTimeout;
+    }
+
+    public void setClaimTimeout(Duration claimTimeout) {
+        this.claimTimeout = claimTimeout;
+    }
+
+    public Duration getCompletedGrace() {
+        return completedGrace;
+    }
+
+    public void setCompletedGrace(Duration completedGrace) {
+        this.completedGrace = completedGrace;
+    }
+}
@@ -0,0 +1,22 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for the exported metrics.
+ */
+@Component
+public class MetricsProperties {
+
+    @Value("${app.metrics.max-labels:200}")
+    private int maxLabels;
+
+    public int getMaxLabels() {
+        return maxLabels;
+    }
+
+    public void setMaxLabels(int maxLabels) {
+        this.maxLabels = maxLabels;
+    }
+}
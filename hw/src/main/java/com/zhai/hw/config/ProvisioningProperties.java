@@ -0,0 +1,47 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings for batching VM creation per label.
+ */
+@Component
+public class ProvisioningProperties {
+
+    @Value("${app.provisioning.coalesce-window:PT0.2S}")
+    private Duration coalesceWindow;
+
+    @Value("${app.provisioning.top-up-interval:PT30S}")
+    private Duration topUpInterval;
+
+    /** Repository warm VMs register with until a job of their label has been queued; empty for none. */
+    @Value("${app.provisioning.default-repository:}")
+    private String defaultRepository;
+
+    public Duration getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    public void setCoalesceWindow(Duration coalesceWindow) {
+        this.coalesceWindow = coalesceWindow;
+    }
+
+    public Duration getTopUpInterval() {
+        return topUpInterval;
+    }
+
+    public void setTopUpInterval(Duration topUpInterval) {
+        this.topUpInterval = topUpInterval;
+    }
+
+    public String getDefaultRepository() {
+        return defaultRepository;
+    }
+
+    public void setDefaultRepository(String defaultRepository) {
+        this.defaultRepository = defaultRepository;
+    }
+}
@@ -0,0 +1,33 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings for reconciling the provider's inventory with the stored state at startup.
+ */
+@Component
+public class ReconcileProperties {
+
+    @Value("${app.reconcile.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.reconcile.parallelism:8}")
+    private int parallelism;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+}
@@ -0,0 +1,79 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings for retrying cloud operations and throttling them per region.
+ */
+@Component
+public class RetryProperties {
+
+    @Value("${app.retry.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${app.retry.initial-backoff:PT10S}")
+    private Duration initialBackoff;
+
+    @Value("${app.retry.max-backoff:PT5M}")
+    private Duration maxBackoff;
+
+    @Value("${app.retry.jitter:0.1}")
+    private double jitter;
+
+    @Value("${app.retry.region.calls-per-second:5}")
+    private double regionCallsPerSecond;
+
+    @Value("${app.retry.region.burst:10}")
+    private int regionBurst;
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public void setInitialBackoff(Duration initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(Duration maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public void setJitter(double jitter) {
+        this.jitter = jitter;
+    }
+
+    public double getRegionCallsPerSecond() {
+        return regionCallsPerSecond;
+    }
+
+    public void setRegionCallsPerSecond(double regionCallsPerSecond) {
+        this.regionCallsPerSecond = regionCallsPerSecond;
+    }
+
+    public int getRegionBurst() {
+        return regionBurst;
+    }
+
+    public void setRegionBurst(int regionBurst) {
+        this.regionBurst = regionBurst;
+    }
+}
@@ -0,0 +1,193 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings for polling the status endpoint of the runner on every managed VM.
+ */
+@Component
+public class RunnerStatusProperties {
+
+    @Value("${app.runner-status.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.runner-status.port:8080}")
+    private int port;
+
+    @Value("${app.runner-status.path:/runner/status}")
+    private String path;
+
+    /**
+     * The fixed interval every VM is polled at when {@code adaptive} is off, and the schedule
+     * adaptive polling is measured against.
+     */
+    @Value("${app.runner-status.interval:PT30S}")
+    private Duration interval;
+
+    /** Whether each VM's next poll is timed by its state, within the interval bounds. */
+    @Value("${app.runner-status.adaptive:true}")
+    private boolean adaptive;
+
+    /**
+     * Shortest adaptive interval, for mappings that do not set their own. At {@code interval}
+     * or above, adaptive polling never polls a VM more often than fixed polling would.
+     */
+    @Value("${app.runner-status.min-interval:PT30S}")
+    private Duration minInterval;
+
+    /**
+     * First adaptive interval for a booting runner, doubling with each probe up to the
+     * minimum interval until the runner answers or {@code boot-window} has passed.
+     */
+    @Value("${app.runner-status.boot-interval:PT5S}")
+    private Duration bootInterval;
+
+    /** How long after registration a runner that has not answered is probed as booting. */
+    @Value("${app.runner-status.boot-window:PT3M}")
+    private Duration bootWindow;
+
+    /** Longest adaptive interval, for mappings that do not set their own. */
+    @Value("${app.runner-status.max-interval:PT5M}")
+    private Duration maxInterval;
+
+    @Value("${app.runner-status.tick:PT0.1S}")
+    private Duration tick;
+
+    @Value("${app.runner-status.max-in-flight:256}")
+    private int maxInFlight;
+
+    @Value("${app.runner-status.connect-timeout:PT1S}")
+    private Duration connectTimeout;
+
+    @Value("${app.runner-status.request-timeout:PT2S}")
+    private Duration requestTimeout;
+
+    @Value("${app.runner-status.worker-threads:4}")
+    private int workerThreads;
+
+    @Value("${app.runner-status.batch-size:512}")
+    private int batchSize;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    public void setInterval(Duration interval) {
+        this.interval = interval;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public Duration getMinInterval() {
+        return minInterval;
+    }
+
+    public void setMinInterval(Duration minInterval) {
+        this.minInterval = minInterval;
+    }
+
+    public Duration getBootInterval() {
+        return bootInterval;
+    }
+
+    public void setBootInterval(Duration bootInterval) {
+        this.bootInterval = bootInterval;
+    }
+
+    public Duration getBootWindow() {
+        return bootWindow;
+    }
+
+    public void setBootWindow(Duration bootWindow) {
+        this.bootWindow = bootWindow;
+    }
+
+    public Duration getMaxInterval() {
+        return maxInterval;
+    }
+
+    public void setMaxInterval(Duration maxInterval) {
+        this.maxInterval = maxInterval;
+    }
+
+    public Duration getTick() {
+        return tick;
+    }
+
+    public void setTick(Duration tick) {
+        this.tick = tick;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+}
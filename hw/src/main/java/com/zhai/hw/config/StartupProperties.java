@@ -0,0 +1,25 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings for the startup timeline.
+ */
+@Component
+public class StartupProperties {
+
+    /** Time from JVM start until webhooks are accepted, above which startup is reported as slow. */
+    @Value("${app.startup.budget:PT15S}")
+    private Duration budget;
+
+    public Duration getBudget() {
+        return budget;
+    }
+
+    public void setBudget(Duration budget) {
+        this.budget = budget;
+    }
+}
@@ -0,0 +1,68 @@
+package com.zhai.hw.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings for the journal and snapshots that persist VM and runner state.
+ */
+@Component
+public class StateStoreProperties {
+
+    @Value("${app.state.directory:data/state}")
+    private String directory;
+
+    @Value("${app.state.segment-size:67108864}")
+    private int segmentSize;
+
+    @Value("${app.state.commit-interval:PT0.01S}")
+    private Duration commitInterval;
+
+    @Value("${app.state.snapshot-interval:PT5M}")
+    private Duration snapshotInterval;
+
+    @Value("${app.state.snapshot-after:100000}")
+    private int snapshotAfter;
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public Duration getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setCommitInterval(Duration commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(Duration snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public int getSnapshotAfter() {
+        return snapshotAfter;
+    }
+
+    public void setSnapshotAfter(int snapshotAfter) {
+        this.snapshotAfter = snapshotAfter;
+    }
+}
@@ -0,0 +1,230 @@
+package com.zhai.hw.controller;
+
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.service.WorkflowJobService;
+import com.zhai.hw.service.forecast.DemandForecaster;
+import com.zhai.hw.service.github.RegistrationTokenCache;
+import com.zhai.hw.service.pool.JobLifecycleTracker;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmPoolManager;
+import com.zhai.hw.service.retry.RetryScheduler;
+import com.zhai.hw.service.reconcile.StartupReconciler;
+import com.zhai.hw.service.startup.StartupTimeline;
+import com.zhai.hw.service.state.StateStore;
+import com.zhai.hw.service.status.RunnerStatusPoller;
+import com.zhai.hw.service.webhook.DeliveryDeduplicator;
+import com.zhai.hw.service.webhook.WebhookDispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Read-only runtime state of the service's internal components.
+ * <p>
+ * Requests must carry an {@code access-token} header matching {@code RUNNER_DIAG_API_TOKEN}.
+ */
+@RestController
+@RequestMapping("/diagnostics")
+public class DiagnosticsController {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiagnosticsController.class);
+    private static final String TOKEN_HEADER = "access-token";
+
+    private final DeliveryDeduplicator deduplicator;
+    private final ConfigurationLoaderService configurationLoaderService;
+    private final VmPoolManager vmPoolManager;
+    private final RunnerStatusPoller runnerStatusPoller;
+    private final DemandForecaster demandForecaster;
+    private final RetryScheduler retryScheduler;
+    private final RegistrationTokenCache registrationTokenCache;
+    private final StateStore stateStore;
+    private final StartupReconciler startupReconciler;
+    private final StartupTimeline startupTimeline;
+    private final WebhookDispatcher dispatcher;
+    private final WorkflowJobService workflowJobService;
+    private final JobLifecycleTracker jobLifecycleTracker;
+
+    @Value("${RUNNER_DIAG_API_TOKEN:}")
+    private String diagnosticsToken;
+
+    public DiagnosticsController(DeliveryDeduplicator deduplicator,
+                                 ConfigurationLoaderService configurationLoaderService,
+                                 VmPoolManager vmPoolManager,
+                                 RunnerStatusPoller runnerStatusPoller,
+                                 DemandForecaster demandForecaster,
+                                 RetryScheduler retryScheduler,
+                                 RegistrationTokenCache registrationTokenCache,
+                                 StateStore stateStore, StartupReconciler startupReconciler,
+                                 StartupTimeline startupTimeline, WebhookDispatcher dispatcher,
+                                 WorkflowJobService workflowJobService,
+                                 JobLifecycleTracker jobLifecycleTracker) {
+        this.deduplicator = deduplicator;
+        this.configurationLoaderService = configurationLoaderService;
+        this.vmPoolManager = vmPoolManager;
+        this.runnerStatusPoller = runnerStatusPoller;
+        this.demandForecaster = demandForecaster;
+        this.retryScheduler = retryScheduler;
+        this.registrationTokenCache = registrationTokenCache;
+        this.stateStore = stateStore;
+        this.startupReconciler = startupReconciler;
+        this.startupTimeline = startupTimeline;
+        this.dispatcher = dispatcher;
+        this.workflowJobService = workflowJobService;
+        this.jobLifecycleTracker = jobLifecycleTracker;
+    }
+
+    /**
+     * Returns the version of the configuration snapshot in use and the last reload failure, if any.
+     */
+    @GetMapping("/config")
+    public ResponseEntity<?> config(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, () -> {
+            Map<String, Object> body = new LinkedHashMap<>();
+            ConfigSnapshot snapshot = configurationLoaderService.getSnapshot();
+            if (snapshot != null) {
+                body.put("version", snapshot.version());
+                body.put("source", snapshot.source());
+                body.put("contentHash", snapshot.contentHash());
+                body.put("loadedAt", snapshot.loadedAt().toString());
+                body.put("labelVmMappings", snapshot.labelMatchIndex().size());
+            }
+            ConfigurationLoaderService.ReloadFailure failure = configurationLoaderService.getLastReloadFailure();
+            if (failure != null) {
+                body.put("lastReloadFailedAt", failure.at().toString());
+                body.put("lastReloadFailure", failure.message());
+            }
+            return body;
+        });
+    }
+
+    /**
+     * Returns the webhook deduplication cache counters.
+     */
+    @GetMapping("/dedup")
+    public ResponseEntity<?> dedup(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, deduplicator::stats);
+    }
+
+    /**
+     * Returns the warm, busy and used capacity of every VM pool.
+     */
+    @GetMapping("/pools")
+    public ResponseEntity<?> pools(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, () -> {
+            Map<String, Object> body = new LinkedHashMap<>();
+            for (VmPool pool : vmPoolManager.getPools()) {
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("warm", pool.getWarmCount());
+                stats.put("busy", pool.getBusyCount());
+                stats.put("warmTarget", pool.getWarmTarget());
+                stats.put("usedCapacity", pool.getUsedCapacity());
+                stats.put("maximumPoolSize", pool.getMapping().getPoolParameters().getMaximumPoolSize());
+                body.put(pool.getLabel(), stats);
+            }
+            return body;
+        });
+    }
+
+    /**
+     * Returns the runner status poller counters.
+     */
+    @GetMapping("/runner-status")
+    public ResponseEntity<?> runnerStatus(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, runnerStatusPoller::stats);
+    }
+
+    /**
+     * Returns the demand forecast and warm target of every VM pool.
+     */
+    @GetMapping("/forecast")
+    public ResponseEntity<?> forecast(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, demandForecaster::snapshot);
+    }
+
+    /**
+     * Returns the retry counters, the operations waiting for a retry and every region's token bucket.
+     */
+    @GetMapping("/retries")
+    public ResponseEntity<?> retries(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, retryScheduler::snapshot);
+    }
+
+    /**
+     * Returns the registration token cache counters and the expiry of every cached token.
+     */
+    @GetMapping("/registration-tokens")
+    public ResponseEntity<?> registrationTokens(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, registrationTokenCache::stats);
+    }
+
+    /**
+     * Returns the VM state store's record count, journal position and recovery statistics.
+     */
+    @GetMapping("/state")
+    public ResponseEntity<?> state(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, stateStore::stats);
+    }
+
+    /**
+     * Returns each label's startup reconciliation progress and adopted, orphaned and missing counts.
+     */
+    @GetMapping("/reconcile")
+    public ResponseEntity<?> reconcile(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, startupReconciler::stats);
+    }
+
+    /**
+     * Returns the startup milestones, in milliseconds since JVM start, and the startup budget.
+     */
+    @GetMapping("/startup")
+    public ResponseEntity<?> startup(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, startupTimeline::stats);
+    }
+
+    /**
+     * Returns the dispatch shards' queue depths and processed counts, and the job events
+     * dropped because their job had already moved on.
+     */
+    @GetMapping("/dispatch")
+    public ResponseEntity<?> dispatch(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, () -> {
+            Map<String, Object> body = dispatcher.stats();
+            body.put("jobEvents", workflowJobService.ledgerStats());
+            return body;
+        });
+    }
+
+    /**
+     * Returns the VMs and jobs the lifecycle tracker follows, and how often each event or poll
+     * outcome occurred, including late and missing events.
+     */
+    @GetMapping("/lifecycle")
+    public ResponseEntity<?> lifecycle(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        return authorized(token, jobLifecycleTracker::stats);
+    }
+
+    private ResponseEntity<?> authorized(String token, Supplier<?> body) {
+        // If the token is not configured, log warning and proceed
+        if (!StringUtils.hasText(diagnosticsToken)) {
+            logger.warn("Diagnostics token not configured. Skipping access-token validation.");
+        } else if (token == null || !MessageDigest.isEqual(
+                diagnosticsToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid access token");
+        }
+        return ResponseEntity.ok(body.get());
+    }
+}
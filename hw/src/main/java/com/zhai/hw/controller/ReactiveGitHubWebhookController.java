@@ -0,0 +1,104 @@
+package com.zhai.hw.controller;
+
+import com.zhai.hw.model.github.WorkflowJobEvent;
+import com.zhai.hw.service.webhook.WebhookPayloadBuffer;
+import com.zhai.hw.service.webhook.WebhookSignatureVerifier;
+import com.zhai.hw.service.webhook.WorkflowJobEventExtractor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Controller for handling GitHub webhook events on the reactive stack, selected with
+ * {@code spring.main.web-application-type=reactive}.
+ * <p>
+ * Serves the same contract as {@link GitHubWebhookController} from Netty's event loops, so
+ * an in-flight delivery holds a few buffers instead of a request thread. The body's chunks
+ * are joined without copying as they arrive; signature verification and parsing then read
+ * the pooled buffers directly. Nothing downstream blocks: a full dispatch queue is answered
+ * with 503 and a Retry-After header, which is how the service pushes back on GitHub.
+ *
+ * @see WebhookDeliveryHandler
+ */
+@RestController
+@RequestMapping("/webhook")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveGitHubWebhookController {
+
+    private static final WebhookDeliveryHandler.Payload EMPTY = WebhookDeliveryHandler.payload(new byte[0], 0);
+
+    private final WebhookDeliveryHandler deliveries;
+
+    @Value("${app.webhook.max-payload-bytes:26214400}")
+    private int maxPayloadBytes;
+
+    ReactiveGitHubWebhookController(WebhookDeliveryHandler deliveries) {
+        this.deliveries = deliveries;
+    }
+
+    /**
+     * Handles GitHub webhook events. See {@link WebhookDeliveryHandler#handle} for how the
+     * delivery is answered.
+     *
+     * @param request    The incoming request, whose body is the raw JSON payload from GitHub
+     * @param signature  The signature from the X-Hub-Signature-256 header
+     * @param deliveryId The delivery ID from the X-GitHub-Delivery header
+     * @return Response entity with status and message, once the body has been read
+     */
+    @PostMapping(value = "/github", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<String>> handleGitHubWebhook(
+            ServerHttpRequest request,
+            @RequestHeader(value = WebhookDeliveryHandler.SIGNATURE_HEADER, required = false) String signature,
+            @RequestHeader(value = WebhookDeliveryHandler.DELIVERY_HEADER, required = false) String deliveryId) {
+
+        long declaredLength = request.getHeaders().getContentLength();
+        if (declaredLength > maxPayloadBytes) {
+            return Mono.just(deliveries.failed(
+                    new WebhookPayloadBuffer.PayloadTooLargeException(declaredLength, maxPayloadBytes)));
+        }
+        // Bodies sent without a Content-Length are cut off as soon as they pass the limit
+        return DataBufferUtils.join(request.getBody(), maxPayloadBytes)
+                .map(body -> {
+                    try {
+                        return deliveries.handle(new BufferPayload(body), signature, deliveryId);
+                    } finally {
+                        DataBufferUtils.release(body);
+                    }
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> deliveries.handle(EMPTY, signature, deliveryId)))
+                .onErrorResume(DataBufferLimitException.class, e -> Mono.just(deliveries.tooLarge(e.getMessage())));
+    }
+
+    /**
+     * A body held in the server's buffers, read in place.
+     */
+    private record BufferPayload(DataBuffer body) implements WebhookDeliveryHandler.Payload {
+
+        @Override
+        public void verify(WebhookSignatureVerifier verifier, String signature) {
+            try (DataBuffer.ByteBufferIterator buffers = body.readableByteBuffers()) {
+                verifier.verify(buffers, signature);
+            }
+        }
+
+        @Override
+        public WorkflowJobEvent extract(WorkflowJobEventExtractor extractor) throws IOException {
+            try (InputStream in = body.asInputStream()) {
+                return extractor.extract(in);
+            }
+        }
+    }
+}
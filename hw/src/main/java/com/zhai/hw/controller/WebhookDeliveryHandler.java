@@ -0,0 +1,218 @@
+package com.zhai.hw.controller;
+
+import com.zhai.hw.config.DispatchProperties;
+import com.zhai.hw.exception.InvalidWebhookPayloadException;
+import com.zhai.hw.exception.WebhookValidationException;
+import com.zhai.hw.model.github.WorkflowJobEvent;
+import com.zhai.hw.service.metrics.HwMetrics;
+import com.zhai.hw.service.reconcile.StartupReconciler;
+import com.zhai.hw.service.startup.StartupTimeline;
+import com.zhai.hw.service.webhook.DeliveryDeduplicator;
+import com.zhai.hw.service.webhook.WebhookDispatcher;
+import com.zhai.hw.service.webhook.WebhookPayloadBuffer;
+import com.zhai.hw.service.webhook.WebhookSignatureVerifier;
+import com.zhai.hw.service.webhook.WorkflowJobEventExtractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Decides the response to a GitHub webhook delivery whose body has been read.
+ * <p>
+ * Shared by the servlet and the reactive endpoint, so both verify, deduplicate, parse and
+ * dispatch deliveries in the same order and answer GitHub with the same statuses. Nothing
+ * here blocks: a full dispatch queue is answered with 503 and a Retry-After header rather
+ * than waited on.
+ */
+@Component
+class WebhookDeliveryHandler {
+
+    static final String SIGNATURE_HEADER = "X-Hub-Signature-256";
+    static final String DELIVERY_HEADER = "X-GitHub-Delivery";
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookDeliveryHandler.class);
+
+    private final WorkflowJobEventExtractor eventExtractor;
+    private final WebhookSignatureVerifier signatureVerifier;
+    private final WebhookDispatcher dispatcher;
+    private final DeliveryDeduplicator deduplicator;
+    private final StartupReconciler startupReconciler;
+    private final HwMetrics metrics;
+    private final StartupTimeline startupTimeline;
+    private final String retryAfterSeconds;
+
+    WebhookDeliveryHandler(WorkflowJobEventExtractor eventExtractor, WebhookSignatureVerifier signatureVerifier,
+                           WebhookDispatcher dispatcher, DeliveryDeduplicator deduplicator,
+                           StartupReconciler startupReconciler, HwMetrics metrics,
+                           StartupTimeline startupTimeline, DispatchProperties dispatchProperties) {
+        this.eventExtractor = eventExtractor;
+        this.signatureVerifier = signatureVerifier;
+        this.dispatcher = dispatcher;
+        this.deduplicator = deduplicator;
+        this.startupReconciler = startupReconciler;
+        this.metrics = metrics;
+        this.startupTimeline = startupTimeline;
+        this.retryAfterSeconds = Integer.toString(dispatchProperties.getRetryAfterSeconds());
+    }
+
+    /**
+     * A request body that has been read in full, in whatever form the server holds it.
+     */
+    interface Payload {
+
+        /**
+         * @throws WebhookValidationException if the signature does not match the body
+         */
+        void verify(WebhookSignatureVerifier verifier, String signature);
+
+        /**
+         * Extracts the event. Called at most once, after {@link #verify}.
+         */
+        WorkflowJobEvent extract(WorkflowJobEventExtractor extractor) throws IOException;
+    }
+
+    /**
+     * Returns a payload over the first {@code length} bytes of an array.
+     */
+    static Payload payload(byte[] array, int length) {
+        return new Payload() {
+            @Override
+            public void verify(WebhookSignatureVerifier verifier, String signature) {
+                verifier.verify(array, length, signature);
+            }
+
+            @Override
+            public WorkflowJobEvent extract(WorkflowJobEventExtractor extractor) throws IOException {
+                return extractor.extract(array, 0, length);
+            }
+        };
+    }
+
+    /**
+     * Handles a delivery. Valid events are queued for the dispatch workers and acknowledged
+     * with 202; a full queue, or a queued job whose pool is still being reconciled at
+     * startup, is answered with 503 and a Retry-After header. Redelivered events and events
+     * whose action is not handled are acknowledged with 200 and dropped.
+     *
+     * @param body       The request body
+     * @param signature  The signature from the X-Hub-Signature-256 header
+     * @param deliveryId The delivery ID from the X-GitHub-Delivery header
+     * @return Response entity with status and message
+     */
+    ResponseEntity<String> handle(Payload body, String signature, String deliveryId) {
+        try {
+            // Validate webhook signature if secret is configured
+            long started = System.nanoTime();
+            validateSignature(body, signature);
+            metrics.recordStage(HwMetrics.Stage.VERIFY, started);
+
+            // Drop redeliveries before spending anything on parsing
+            if (deduplicator.isDuplicateDelivery(deliveryId)) {
+                logger.debug("Ignoring duplicate delivery: {}", deliveryId);
+                metrics.recordRejection(HwMetrics.Rejection.DUPLICATE);
+                return ResponseEntity.ok("Duplicate delivery ignored");
+            }
+
+            // Extract the fields we use; unhandled actions stop after the first token
+            started = System.nanoTime();
+            WorkflowJobEvent event = body.extract(eventExtractor);
+            metrics.recordStage(HwMetrics.Stage.PARSE, started);
+            if (event == null) {
+                logger.debug("Ignoring workflow job event with unhandled action");
+                metrics.recordRejection(HwMetrics.Rejection.UNHANDLED_ACTION);
+                return ResponseEntity.ok("Event ignored");
+            }
+
+            if (deduplicator.isDuplicateJobAction(event.getWorkflowJob().getId(), event.getAction())) {
+                logger.debug("Ignoring duplicate workflow job event: job_id={}, action={}",
+                        event.getWorkflowJob().getId(), event.getAction());
+                metrics.recordRejection(HwMetrics.Rejection.DUPLICATE);
+                return ResponseEntity.ok("Duplicate delivery ignored");
+            }
+
+            if ("queued".equals(event.getAction())
+                    && !startupReconciler.accepts(event.getWorkflowJob().getLabels())) {
+                deduplicator.forget(deliveryId, event.getWorkflowJob().getId(), event.getAction());
+                logger.info("Pool not reconciled yet, rejecting workflow job event: job_id={}",
+                        event.getWorkflowJob().getId());
+                metrics.recordRejection(HwMetrics.Rejection.RECONCILING);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                        .body("Pool is being reconciled");
+            }
+
+            started = System.nanoTime();
+            boolean offered = dispatcher.offer(event);
+            metrics.recordStage(HwMetrics.Stage.DISPATCH, started);
+            if (!offered) {
+                // Let GitHub's redelivery of this event through
+                deduplicator.forget(deliveryId, event.getWorkflowJob().getId(), event.getAction());
+                logger.warn("Dispatch queue full, rejecting workflow job event: job_id={}",
+                        event.getWorkflowJob().getId());
+                metrics.recordRejection(HwMetrics.Rejection.QUEUE_FULL);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                        .body("Dispatch queue is full");
+            }
+
+            metrics.recordEvent(event.getAction());
+            startupTimeline.webhookAccepted();
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body("Webhook accepted");
+        } catch (Exception e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * Maps a failure to read or handle a delivery to its response.
+     */
+    ResponseEntity<String> failed(Exception e) {
+        if (e instanceof WebhookValidationException) {
+            logger.error("Webhook validation failed: {}", e.getMessage());
+            metrics.recordRejection(HwMetrics.Rejection.SIGNATURE);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
+        }
+        if (e instanceof InvalidWebhookPayloadException) {
+            logger.error("Invalid webhook payload: {}", e.getMessage());
+            metrics.recordRejection(HwMetrics.Rejection.INVALID_PAYLOAD);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid payload: " + e.getMessage());
+        }
+        if (e instanceof WebhookPayloadBuffer.PayloadTooLargeException) {
+            return tooLarge(e.getMessage());
+        }
+        logger.error("Error processing GitHub webhook", e);
+        metrics.recordRejection(HwMetrics.Rejection.ERROR);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid payload format: " + e.getMessage());
+    }
+
+    /**
+     * Rejects a body larger than {@code app.webhook.max-payload-bytes}.
+     */
+    ResponseEntity<String> tooLarge(String message) {
+        logger.error("Rejecting oversized webhook payload: {}", message);
+        metrics.recordRejection(HwMetrics.Rejection.TOO_LARGE);
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(message);
+    }
+
+    /**
+     * Validates the webhook signature.
+     *
+     * @param body      The raw payload
+     * @param signature The signature from the X-Hub-Signature-256 header
+     * @throws WebhookValidationException if validation fails
+     */
+    private void validateSignature(Payload body, String signature) {
+        // If secret is not configured, log warning and proceed
+        if (!signatureVerifier.isEnabled()) {
+            logger.warn("GitHub webhook secret not configured. Skipping signature validation.");
+            return;
+        }
+
+        body.verify(signatureVerifier, signature);
+    }
+}
@@ -0,0 +1,39 @@
+package com.zhai.hw.exception;
+
+import java.time.Duration;
+
+/**
+ * Exception thrown when a GitHub REST API call fails.
+ */
+public class GitHubApiException extends RuntimeException {
+
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public GitHubApiException(String message, int statusCode, Duration retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public GitHubApiException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = 0;
+        this.retryAfter = null;
+    }
+
+    /**
+     * @return The HTTP status of the response, or {@code 0} if there was none
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return How long GitHub asked to wait before calling again, or {@code null} if the call
+     *         was not rate limited
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,15 @@
+package com.zhai.hw.exception;
+
+/**
+ * Exception thrown when a correctly signed webhook payload lacks required fields.
+ */
+public class InvalidWebhookPayloadException extends RuntimeException {
+
+    public InvalidWebhookPayloadException(String message) {
+        super(message);
+    }
+
+    public InvalidWebhookPayloadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
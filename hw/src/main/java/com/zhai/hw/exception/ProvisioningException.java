@@ -0,0 +1,15 @@
+package com.zhai.hw.exception;
+
+/**
+ * Exception thrown when a cloud provider call to create or delete VMs fails.
+ */
+public class ProvisioningException extends RuntimeException {
+
+    public ProvisioningException(String message) {
+        super(message);
+    }
+
+    public ProvisioningException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,15 @@
+package com.zhai.hw.exception;
+
+/**
+ * Exception thrown when the VM state store cannot read or write its files.
+ */
+public class StateStoreException extends RuntimeException {
+
+    public StateStoreException(String message) {
+        super(message);
+    }
+
+    public StateStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,21 @@
+package com.zhai.hw.model;
+
+import java.time.Instant;
+
+/**
+ * One validated configuration together with every structure derived from it.
+ * <p>
+ * Snapshots are immutable and published through a single reference, so a reader that
+ * takes a snapshot once per unit of work sees a consistent configuration even while a
+ * reload is in progress.
+ *
+ * @param version           Increases by one with every successful load
+ * @param source            The path the configuration was loaded from
+ * @param contentHash       SHA-256 of the configuration file, as lowercase hex
+ * @param loadedAt          When the snapshot was published
+ * @param config            The validated configuration
+ * @param labelMatchIndex   The label lookup built from {@code config}
+ */
+public record ConfigSnapshot(long version, String source, String contentHash, Instant loadedAt,
+                             AppConfig config, LabelMatchIndex labelMatchIndex) {
+}
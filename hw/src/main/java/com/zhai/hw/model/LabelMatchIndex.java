@@ -0,0 +1,198 @@
+package com.zhai.hw.model;
+
+import com.zhai.hw.exception.InvalidConfigurationException;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Immutable lookup from a job's runner labels to the {@link LabelVmMapping} that serves it.
+ * <p>
+ * Built once per loaded configuration. Every configured label is interned to a small
+ * integer ID in an open-addressed table that hashes and compares case-insensitively
+ * in place (GitHub treats runner labels case-insensitively), so resolving a job's
+ * labels costs one probe per label and allocates nothing. Labels the configuration
+ * does not know about, such as {@code self-hosted} or {@code linux}, are skipped.
+ */
+public final class LabelMatchIndex {
+
+    /** The job carries no configured label. */
+    public static final int NO_MATCH = -1;
+    /** The job carries labels of more than one mapping. */
+    public static final int AMBIGUOUS = -2;
+
+    /**
+     * Labels GitHub attaches to self-hosted runners on its own. A mapping keyed on one of
+     * them would overlap every other mapping, so they are rejected at load time.
+     */
+    static final Set<String> RESERVED_LABELS = Set.of("self-hosted", "linux", "windows", "macos", "x64", "arm", "arm64");
+
+    private final LabelVmMapping[] mappings;
+    private final String[] keys;
+    private final int[] ids;
+    private final int mask;
+
+    private LabelMatchIndex(LabelVmMapping[] mappings, String[] keys, int[] ids) {
+        this.mappings = mappings;
+        this.keys = keys;
+        this.ids = ids;
+        this.mask = keys.length - 1;
+    }
+
+    /**
+     * Builds the index for a validated list of mappings.
+     *
+     * @param labelVmMappings The configured mappings
+     * @return The index
+     * @throws InvalidConfigurationException if two mappings share a label or a mapping
+     *                                       uses a label GitHub assigns to every runner
+     */
+    public static LabelMatchIndex build(List<LabelVmMapping> labelVmMappings) {
+        int count = labelVmMappings.size();
+        int capacity = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;
+        String[] keys = new String[capacity];
+        int[] ids = new int[capacity];
+        LabelVmMapping[] mappings = labelVmMappings.toArray(new LabelVmMapping[0]);
+        int mask = capacity - 1;
+
+        for (int id = 0; id < count; id++) {
+            String label = mappings[id].getLabel();
+            String key = label.toLowerCase(Locale.ROOT);
+            if (RESERVED_LABELS.contains(key)) {
+                throw new InvalidConfigurationException("Invalid configuration: labelVmMappings[" + id
+                        + "].label '" + label + "' is assigned to every self-hosted runner and would match all jobs");
+            }
+            int slot = hash(label) & mask;
+            while (keys[slot] != null) {
+                if (keys[slot].equals(key)) {
+                    throw new InvalidConfigurationException("Invalid configuration: labelVmMappings[" + id
+                            + "].label '" + label + "' duplicates labelVmMappings[" + ids[slot] + "].label");
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            ids[slot] = id;
+        }
+        return new LabelMatchIndex(mappings, keys, ids);
+    }
+
+    /**
+     * Rebuilds an index from the {@link #slots()} of one built over the same mappings, without
+     * hashing or checking the labels again. Used to restore a persisted configuration.
+     *
+     * @param labelVmMappings The mappings, in the order the index was built with
+     * @param slots           The mapping ID in each slot of the table, {@link #NO_MATCH} if empty
+     * @return The index
+     * @throws IllegalArgumentException if the slots cannot belong to these mappings
+     */
+    public static LabelMatchIndex restore(List<LabelVmMapping> labelVmMappings, int[] slots) {
+        if (Integer.bitCount(slots.length) != 1) {
+            throw new IllegalArgumentException("Index table size " + slots.length + " is not a power of two");
+        }
+        LabelVmMapping[] mappings = labelVmMappings.toArray(new LabelVmMapping[0]);
+        String[] keys = new String[slots.length];
+        int[] ids = new int[slots.length];
+        int used = 0;
+        for (int slot = 0; slot < slots.length; slot++) {
+            int id = slots[slot];
+            if (id == NO_MATCH) {
+                continue;
+            }
+            if (id < 0 || id >= mappings.length) {
+                throw new IllegalArgumentException("Index slot " + slot + " refers to mapping " + id);
+            }
+            keys[slot] = mappings[id].getLabel().toLowerCase(Locale.ROOT);
+            ids[slot] = id;
+            used++;
+        }
+        if (used != mappings.length) {
+            throw new IllegalArgumentException("Index has " + used + " labels for " + mappings.length + " mappings");
+        }
+        return new LabelMatchIndex(mappings, keys, ids);
+    }
+
+    /**
+     * Returns the mapping ID in each slot of the table, or {@link #NO_MATCH} for an empty slot,
+     * so the index can be persisted and {@link #restore restored}.
+     */
+    public int[] slots() {
+        int[] slots = new int[keys.length];
+        for (int slot = 0; slot < keys.length; slot++) {
+            slots[slot] = keys[slot] == null ? NO_MATCH : ids[slot];
+        }
+        return slots;
+    }
+
+    /**
+     * Resolves a job's labels to a mapping ID.
+     *
+     * @param labels The job's labels
+     * @return The mapping ID, {@link #NO_MATCH} or {@link #AMBIGUOUS}
+     */
+    public int resolveId(List<String> labels) {
+        int match = NO_MATCH;
+        for (int i = 0, n = labels.size(); i < n; i++) {
+            int id = idOf(labels.get(i));
+            if (id < 0 || id == match) {
+                continue;
+            }
+            if (match != NO_MATCH) {
+                return AMBIGUOUS;
+            }
+            match = id;
+        }
+        return match;
+    }
+
+    /**
+     * Resolves a job's labels to a mapping.
+     *
+     * @param labels The job's labels
+     * @return The mapping, or {@code null} if none or more than one matches
+     */
+    public LabelVmMapping resolve(List<String> labels) {
+        int id = resolveId(labels);
+        return id >= 0 ? mappings[id] : null;
+    }
+
+    /**
+     * Returns the interned ID of a label, or {@link #NO_MATCH} if it is not configured.
+     */
+    public int idOf(String label) {
+        if (label == null) {
+            return NO_MATCH;
+        }
+        int slot = hash(label) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (key.length() == label.length() && key.regionMatches(true, 0, label, 0, label.length())) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * Returns the mapping with the given ID.
+     */
+    public LabelVmMapping mapping(int id) {
+        return mappings[id];
+    }
+
+    /**
+     * Returns the number of mappings in the index.
+     */
+    public int size() {
+        return mappings.length;
+    }
+
+    private static int hash(String label) {
+        int h = 0;
+        for (int i = 0, n = label.length(); i < n; i++) {
+            h = 31 * h + Character.toLowerCase(label.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -24,4 +24,30 @@ public class VmPoolParameters {
 
     @NotNull(message = "Idle timeout must be specified")
     private Duration idleTimeout;
+
+    /**
+     * Whether the demand forecast may raise the warm target above {@code minimumWarmVms}.
+     */
+    private boolean forecastEnabled = true;
+
+    /**
+     * Shortest time between runner status polls of a VM in this pool, or {@code null} for
+     * {@code app.runner-status.min-interval}.
+     */
+    private Duration minimumPollInterval;
+
+    /**
+     * Longest time between runner status polls of a VM in this pool, or {@code null} for
+     * {@code app.runner-status.max-interval}.
+     */
+    private Duration maximumPollInterval;
+
+    public VmPoolParameters(int minimumWarmVms, int maximumPoolSize, int scaleUpTriggerThreshold, Duration idleTimeout) {
+        this(minimumWarmVms, maximumPoolSize, scaleUpTriggerThreshold, idleTimeout, true);
+    }
+
+    public VmPoolParameters(int minimumWarmVms, int maximumPoolSize, int scaleUpTriggerThreshold, Duration idleTimeout,
+                            boolean forecastEnabled) {
+        this(minimumWarmVms, maximumPoolSize, scaleUpTriggerThreshold, idleTimeout, forecastEnabled, null, null);
+    }
 }
@@ -30,4 +30,12 @@ public class WorkflowJob {
     @NotNull(message = "Repository cannot be null")
     @Valid
     private Repository repository;
+
+    /** The runner the job was started on; {@code null} until the job is in progress. */
+    @JsonProperty("runner_name")
+    private String runnerName;
+
+    public WorkflowJob(long id, long runId, String status, List<String> labels, Repository repository) {
+        this(id, runId, status, labels, repository, null);
+    }
 }
@@ -0,0 +1,358 @@
+package com.zhai.hw.service;
+
+import com.zhai.hw.config.ConfigCacheProperties;
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.model.LabelMatchIndex;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A binary copy of the last validated configuration, keyed by the SHA-256 of its YAML.
+ * <p>
+ * After a configuration has been parsed and validated, it is written here together with
+ * its label index. When the next start reads YAML with the same hash, the copy is
+ * memory-mapped and decoded instead, and both the YAML parse and Bean Validation are
+ * skipped. A missing, damaged or outdated copy is ignored and the YAML is parsed as usual.
+ * <p>
+ * The file is a header, a table of every distinct string, the configuration with strings
+ * as table indexes, the index slots, and a CRC32 of everything before it. The header
+ * carries a fingerprint of the model classes' fields and constraints, so a copy written
+ * before a field or a validation rule was added or changed no longer matches. It is written to a temporary file and renamed, so it
+ * is either complete or absent; copies for other hashes are deleted.
+ */
+@Component
+public class ConfigSnapshotCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfigSnapshotCache.class);
+    private static final String PREFIX = "config-";
+    private static final String SUFFIX = ".bin";
+    private static final int MAGIC = 0x48574343;
+    private static final int VERSION = 1;
+    private static final int SCHEMA = schemaFingerprint(AppConfig.class, AppConfig.ServerConfig.class,
+            AppConfig.VmPoolConfig.class, LabelVmMapping.class, VmPoolParameters.class);
+
+    private final ConfigCacheProperties properties;
+
+    public ConfigSnapshotCache(ConfigCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * A configuration restored from the cache.
+     */
+    public record Cached(AppConfig config, LabelMatchIndex labelMatchIndex) {
+    }
+
+    /**
+     * Returns the cached configuration for a YAML content hash.
+     *
+     * @param contentHash SHA-256 of the YAML, as lowercase hex
+     * @return The configuration and its index, or {@code null} if there is no usable copy
+     */
+    public Cached load(String contentHash) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        Path path = path(contentHash);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(map, contentHash);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring cached configuration {}: {}", path.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Caches a validated configuration under its YAML content hash, replacing any other copy.
+     * Failures are logged; the cache is only an optimisation.
+     */
+    public void store(String contentHash, AppConfig config, LabelMatchIndex labelMatchIndex) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Path directory = Path.of(properties.getDirectory());
+        Path target = path(contentHash);
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                encode(Channels.newOutputStream(channel), contentHash, config, labelMatchIndex);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            deleteOthers(directory, target);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not cache the configuration in {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private Path path(String contentHash) {
+        return Path.of(properties.getDirectory()).resolve(PREFIX + contentHash + SUFFIX);
+    }
+
+    private static void deleteOthers(Path directory, Path keep) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(p -> !p.equals(keep) && p.getFileName().toString().startsWith(PREFIX))
+                    .toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    static void encode(OutputStream target, String contentHash, AppConfig config,
+                       LabelMatchIndex labelMatchIndex) throws IOException {
+        StringTable strings = new StringTable();
+        strings.add(config.getAppName());
+        strings.add(config.getVersion());
+        strings.add(config.getServer().getHost());
+        config.getFeatureFlags().keySet().forEach(strings::add);
+        strings.add(config.getVmPool().getDefaultOs());
+        for (LabelVmMapping mapping : config.getLabelVmMappings()) {
+            strings.add(mapping.getLabel());
+            strings.add(mapping.getVmSeriesSize());
+            strings.add(mapping.getOsImage());
+            strings.add(mapping.getRegion());
+            strings.add(mapping.getVNet());
+            strings.add(mapping.getSubnet());
+            strings.add(mapping.getNetworkSecurityGroup());
+            strings.add(mapping.getDiskTypeSize());
+        }
+
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(target, 64 * 1024), crc));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(SCHEMA);
+        out.write(contentHash.getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(strings.values.size());
+        for (String value : strings.values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        out.writeInt(strings.id(config.getAppName()));
+        out.writeInt(strings.id(config.getVersion()));
+        out.writeInt(strings.id(config.getServer().getHost()));
+        writeInteger(out, config.getServer().getPort());
+        out.writeInt(config.getFeatureFlags().size());
+        for (Map.Entry<String, Boolean> flag : config.getFeatureFlags().entrySet()) {
+            out.writeInt(strings.id(flag.getKey()));
+            out.writeByte(flag.getValue() == null ? 2 : flag.getValue() ? 1 : 0);
+        }
+        writeInteger(out, config.getVmPool().getMaxSize());
+        writeDuration(out, config.getVmPool().getIdleTimeout());
+        out.writeInt(strings.id(config.getVmPool().getDefaultOs()));
+        out.writeInt(config.getLabelVmMappings().size());
+        for (LabelVmMapping mapping : config.getLabelVmMappings()) {
+            out.writeInt(strings.id(mapping.getLabel()));
+            out.writeInt(strings.id(mapping.getVmSeriesSize()));
+            out.writeInt(strings.id(mapping.getOsImage()));
+            out.writeInt(strings.id(mapping.getRegion()));
+            out.writeInt(strings.id(mapping.getVNet()));
+            out.writeInt(strings.id(mapping.getSubnet()));
+            out.writeInt(strings.id(mapping.getNetworkSecurityGroup()));
+            out.writeInt(strings.id(mapping.getDiskTypeSize()));
+            out.writeInt(mapping.getRunnersPerVm());
+            VmPoolParameters pool = mapping.getPoolParameters();
+            out.writeInt(pool.getMinimumWarmVms());
+            out.writeInt(pool.getMaximumPoolSize());
+            out.writeInt(pool.getScaleUpTriggerThreshold());
+            writeDuration(out, pool.getIdleTimeout());
+            out.writeBoolean(pool.isForecastEnabled());
+            writeDuration(out, pool.getMinimumPollInterval());
+            writeDuration(out, pool.getMaximumPollInterval());
+        }
+        int[] slots = labelMatchIndex.slots();
+        out.writeInt(slots.length);
+        for (int slot : slots) {
+            out.writeInt(slot);
+        }
+        out.flush();
+        new DataOutputStream(target).writeLong(crc.getValue());
+    }
+
+    static Cached decode(ByteBuffer map, String contentHash) throws IOException {
+        if (map.limit() < 20 + contentHash.length()) {
+            throw new IOException("too short");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(map.slice(0, map.limit() - 8));
+        if (crc.getValue() != map.getLong(map.limit() - 8)) {
+            throw new IOException("checksum mismatch");
+        }
+        ByteBuffer buffer = map.slice(0, map.limit() - 8);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not a configuration cache file");
+        }
+        if (buffer.getInt() != SCHEMA) {
+            throw new IOException("written for a different configuration model");
+        }
+        byte[] hash = new byte[contentHash.length()];
+        buffer.get(hash);
+        if (!contentHash.equals(new String(hash, StandardCharsets.US_ASCII))) {
+            throw new IOException("written for different YAML");
+        }
+        String[] strings = new String[buffer.getInt()];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < strings.length; i++) {
+            int length = buffer.getInt();
+            if (length > scratch.length) {
+                scratch = new byte[length];
+            }
+            buffer.get(scratch, 0, length);
+            strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        String appName = string(strings, buffer);
+        String version = string(strings, buffer);
+        AppConfig.ServerConfig server = new AppConfig.ServerConfig(string(strings, buffer), readInteger(buffer));
+        int flagCount = buffer.getInt();
+        Map<String, Boolean> featureFlags = new LinkedHashMap<>(Math.max(16, flagCount * 4 / 3 + 1));
+        for (int i = 0; i < flagCount; i++) {
+            String key = string(strings, buffer);
+            byte value = buffer.get();
+            featureFlags.put(key, value == 2 ? null : value == 1);
+        }
+        AppConfig.VmPoolConfig vmPool = new AppConfig.VmPoolConfig(readInteger(buffer), readDuration(buffer),
+                string(strings, buffer));
+        int mappingCount = buffer.getInt();
+        List<LabelVmMapping> mappings = new ArrayList<>(mappingCount);
+        for (int i = 0; i < mappingCount; i++) {
+            LabelVmMapping mapping = new LabelVmMapping(string(strings, buffer), string(strings, buffer),
+                    string(strings, buffer), string(strings, buffer), string(strings, buffer),
+                    string(strings, buffer), string(strings, buffer), string(strings, buffer), buffer.getInt(),
+                    null);
+            mapping.setPoolParameters(new VmPoolParameters(buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                    readDuration(buffer), buffer.get() != 0, readDuration(buffer), readDuration(buffer)));
+            mappings.add(mapping);
+        }
+        int[] slots = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(slots);
+        buffer.position(buffer.position() + slots.length * Integer.BYTES);
+        if (buffer.hasRemaining()) {
+            throw new IOException(buffer.remaining() + " trailing bytes");
+        }
+        AppConfig config = new AppConfig(appName, version, server, featureFlags, vmPool, mappings);
+        return new Cached(config, LabelMatchIndex.restore(mappings, slots));
+    }
+
+    private static String string(String[] strings, ByteBuffer buffer) {
+        int id = buffer.getInt();
+        return id < 0 ? null : strings[id];
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        out.writeInt(value == null ? 0 : value);
+    }
+
+    private static Integer readInteger(ByteBuffer buffer) {
+        boolean present = buffer.get() != 0;
+        int value = buffer.getInt();
+        return present ? value : null;
+    }
+
+    private static void writeDuration(DataOutputStream out, Duration value) throws IOException {
+        out.writeBoolean(value != null);
+        out.writeLong(value == null ? 0 : value.getSeconds());
+        out.writeInt(value == null ? 0 : value.getNano());
+    }
+
+    private static Duration readDuration(ByteBuffer buffer) {
+        boolean present = buffer.get() != 0;
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+        return present ? Duration.ofSeconds(seconds, nanos) : null;
+    }
+
+    /**
+     * Folds the model classes' fields, with their types and annotations, and every annotated
+     * method into one number. A cached copy skips Bean Validation, so a changed constraint must
+     * invalidate it just like an added, removed or retyped field.
+     */
+    private static int schemaFingerprint(Class<?>... types) {
+        CRC32 crc = new CRC32();
+        for (Class<?> type : types) {
+            crc.update((type.getName() + annotations(type)).getBytes(StandardCharsets.UTF_8));
+            Arrays.stream(type.getDeclaredFields())
+                    .filter(field -> !Modifier.isStatic(field.getModifiers()))
+                    .sorted(Comparator.comparing(Field::getName))
+                    .forEach(field -> crc.update((field.getName() + ':' + field.getGenericType().getTypeName()
+                            + annotations(field)).getBytes(StandardCharsets.UTF_8)));
+            // Class-level checks such as @AssertTrue sit on methods
+            Arrays.stream(type.getDeclaredMethods())
+                    .filter(method -> !Modifier.isStatic(method.getModifiers()) && method.getAnnotations().length > 0)
+                    .sorted(Comparator.comparing(Method::toGenericString))
+                    .forEach(method -> crc.update((method.toGenericString() + annotations(method))
+                            .getBytes(StandardCharsets.UTF_8)));
+        }
+        return (int) crc.getValue();
+    }
+
+    private static String annotations(AnnotatedElement element) {
+        return Arrays.stream(element.getAnnotations())
+                .map(Annotation::toString)
+                .sorted()
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    /**
+     * Distinct strings in first-seen order. Labels, regions and images repeat across mappings,
+     * so each is stored and decoded once.
+     */
+    private static final class StringTable {
+        final List<String> values = new ArrayList<>();
+        final Map<String, Integer> ids = new HashMap<>();
+
+        void add(String value) {
+            if (value != null && !ids.containsKey(value)) {
+                ids.put(value, values.size());
+                values.add(value);
+            }
+        }
+
+        int id(String value) {
+            return value == null ? -1 : ids.get(value);
+        }
+    }
+}
@@ -7,33 +7,61 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.zhai.hw.config.AppProperties;
 import com.zhai.hw.exception.InvalidConfigurationException;
 import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.model.LabelMatchIndex;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Validator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.stereotype.Service;
+import org.yaml.snakeyaml.LoaderOptions;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class ConfigurationLoaderService {
 
     private static final Logger logger = LoggerFactory.getLogger(ConfigurationLoaderService.class);
+    private static final int MAX_CODE_POINTS = 64 * 1024 * 1024;
 
     private final AppProperties appProperties;
-    private final ObjectMapper objectMapper;
+    /** Created on the first parse, so a start served from the cache never builds it. Guarded by this. */
+    private ObjectMapper objectMapper;
     private final Validator validator;
+    private final ConfigSnapshotCache cache;
+    private final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final List<Consumer<ConfigSnapshot>> listeners = new CopyOnWriteArrayList<>();
+    private volatile ReloadFailure lastReloadFailure;
 
     public ConfigurationLoaderService(AppProperties appProperties, Validator validator) {
+        this(appProperties, validator, null);
+    }
+
+    /**
+     * @param cache Binary copies of validated configurations to load instead of parsing, or
+     *              {@code null} to always parse
+     */
+    @Autowired
+    public ConfigurationLoaderService(AppProperties appProperties, Validator validator, ConfigSnapshotCache cache) {
         this.appProperties = appProperties;
         this.validator = validator;
-        this.objectMapper = new ObjectMapper(new YAMLFactory());
-        this.objectMapper.registerModule(new JavaTimeModule());
+        this.cache = cache;
     }
 
     /**
@@ -48,13 +76,150 @@ public class ConfigurationLoaderService {
     }
 
     /**
-     * Loads configuration from the specified path.
+     * Loads configuration from the specified path and publishes it, with its derived
+     * structures, as the current snapshot.
      * 
      * @param filePath The path to the configuration file
      * @return The loaded and validated AppConfig object
      * @throws InvalidConfigurationException if the configuration is invalid or cannot be loaded
      */
-    public AppConfig loadConfiguration(String filePath) {
+    public synchronized AppConfig loadConfiguration(String filePath) {
+        byte[] content = readConfigBytes(filePath);
+        ConfigSnapshot loaded = buildSnapshot(filePath, content, sha256(content));
+        publish(loaded);
+        logger.info("Successfully loaded configuration for application: {}", loaded.config().getAppName());
+        return loaded.config();
+    }
+
+    /**
+     * Reloads the configuration from the path specified in AppProperties if its content
+     * has changed. A configuration that fails to load or validate is not published; the
+     * previous snapshot stays current and the failure is kept for {@link #getLastReloadFailure()}.
+     *
+     * @return {@code true} if a new snapshot was published
+     */
+    public synchronized boolean reload() {
+        String configPath = appProperties.getConfigPath();
+        try {
+            byte[] content = readConfigBytes(configPath);
+            String contentHash = sha256(content);
+            ConfigSnapshot current = snapshot.get();
+            if (current != null && current.contentHash().equals(contentHash)) {
+                logger.debug("Configuration at {} is unchanged, skipping reload", configPath);
+                return false;
+            }
+            ConfigSnapshot loaded = buildSnapshot(configPath, content, contentHash);
+            publish(loaded);
+            lastReloadFailure = null;
+            logger.info("Reloaded configuration from {} (version {}, {} label VM mappings)",
+                    configPath, loaded.version(), loaded.config().getLabelVmMappings().size());
+            return true;
+        } catch (InvalidConfigurationException e) {
+            lastReloadFailure = new ReloadFailure(Instant.now(), e.getMessage());
+            logger.error("Configuration reload from {} failed, keeping version {}: {}", configPath,
+                    snapshot.get() == null ? 0 : snapshot.get().version(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the current configuration, loading it from the path specified in AppProperties
+     * if nothing has been loaded yet. Unlike {@link #loadConfiguration()}, the file is parsed
+     * and validated at most once however many callers ask for it.
+     *
+     * @return The current AppConfig object
+     * @throws InvalidConfigurationException if the configuration has to be loaded and is invalid
+     */
+    public AppConfig getConfiguration() {
+        ConfigSnapshot current = snapshot.get();
+        if (current != null) {
+            return current.config();
+        }
+        synchronized (this) {
+            current = snapshot.get();
+            return current != null ? current.config() : loadConfiguration();
+        }
+    }
+
+    /**
+     * Returns the current configuration snapshot. Never blocks.
+     *
+     * @return The snapshot, or {@code null} if no configuration has been loaded yet
+     */
+    public ConfigSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Returns the label match index of the current snapshot.
+     *
+     * @return The index, or {@code null} if no configuration has been loaded yet
+     */
+    public LabelMatchIndex getLabelMatchIndex() {
+        ConfigSnapshot current = snapshot.get();
+        return current == null ? null : current.labelMatchIndex();
+    }
+
+    /**
+     * Returns why the most recent reload was rejected, or {@code null} if it succeeded.
+     */
+    public ReloadFailure getLastReloadFailure() {
+        return lastReloadFailure;
+    }
+
+    /**
+     * Registers a callback that is invoked with every newly published snapshot.
+     */
+    public void addSnapshotListener(Consumer<ConfigSnapshot> listener) {
+        listeners.add(listener);
+    }
+
+    private ConfigSnapshot buildSnapshot(String filePath, byte[] content, String contentHash) {
+        ConfigSnapshotCache.Cached cached = cache == null ? null : cache.load(contentHash);
+        if (cached != null) {
+            // The same bytes were parsed and validated before the copy was written
+            logger.debug("Loaded configuration {} from the cache", filePath);
+            return new ConfigSnapshot(versions.incrementAndGet(), filePath, contentHash, Instant.now(),
+                    cached.config(), cached.labelMatchIndex());
+        }
+        if (objectMapper == null) {
+            // SnakeYAML stops at 3M code points by default, about 9,000 label VM mappings
+            LoaderOptions loaderOptions = new LoaderOptions();
+            loaderOptions.setCodePointLimit(MAX_CODE_POINTS);
+            objectMapper = new ObjectMapper(YAMLFactory.builder().loaderOptions(loaderOptions).build())
+                    .registerModule(new JavaTimeModule());
+        }
+        try {
+            AppConfig appConfig = objectMapper.readValue(content, AppConfig.class);
+            validateConfig(appConfig);
+            LabelMatchIndex labelMatchIndex = LabelMatchIndex.build(appConfig.getLabelVmMappings());
+            if (cache != null) {
+                cache.store(contentHash, appConfig, labelMatchIndex);
+            }
+            return new ConfigSnapshot(versions.incrementAndGet(), filePath, contentHash, Instant.now(),
+                    appConfig, labelMatchIndex);
+        } catch (JsonProcessingException e) {
+            // Log at debug level to avoid cluttering test output with expected errors
+            logger.debug("Error parsing YAML configuration file: {}", filePath, e);
+            throw new InvalidConfigurationException("Error parsing YAML configuration file: " + filePath, e);
+        } catch (IOException e) {
+            logger.debug("Error reading configuration file: {}", filePath, e);
+            throw new InvalidConfigurationException("Error reading configuration file: " + filePath, e);
+        }
+    }
+
+    private void publish(ConfigSnapshot loaded) {
+        snapshot.set(loaded);
+        for (Consumer<ConfigSnapshot> listener : listeners) {
+            try {
+                listener.accept(loaded);
+            } catch (RuntimeException e) {
+                logger.error("Configuration snapshot listener failed for version {}", loaded.version(), e);
+            }
+        }
+    }
+
+    private byte[] readConfigBytes(String filePath) {
         if (filePath == null || filePath.isBlank()) {
             throw new InvalidConfigurationException("Configuration file path is not defined.");
         }
@@ -65,14 +230,7 @@ public class ConfigurationLoaderService {
             if (inputStream == null) {
                 throw new InvalidConfigurationException("Cannot find configuration file at: " + filePath);
             }
-            AppConfig appConfig = objectMapper.readValue(inputStream, AppConfig.class);
-            validateConfig(appConfig);
-            logger.info("Successfully loaded configuration for application: {}", appConfig.getAppName());
-            return appConfig;
-        } catch (JsonProcessingException e) {
-            // Log at debug level to avoid cluttering test output with expected errors
-            logger.debug("Error parsing YAML configuration file: {}", filePath, e);
-            throw new InvalidConfigurationException("Error parsing YAML configuration file: " + filePath, e);
+            return inputStream.readAllBytes();
         } catch (IOException e) {
             // Log at debug level to avoid cluttering test output with expected errors
             logger.debug("Error reading configuration file: {}", filePath, e);
@@ -80,6 +238,14 @@ public class ConfigurationLoaderService {
         }
     }
 
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
     private InputStream getInputStream(String path) throws IOException {
         if (path.startsWith("classpath:")) {
             String resourcePath = path.substring("classpath:".length());
@@ -106,4 +272,13 @@ public class ConfigurationLoaderService {
             throw new InvalidConfigurationException("Invalid configuration: " + errorMessages);
         }
     }
+
+    /**
+     * A rejected configuration reload.
+     *
+     * @param at      When the reload was attempted
+     * @param message Why it was rejected
+     */
+    public record ReloadFailure(Instant at, String message) {
+    }
 }
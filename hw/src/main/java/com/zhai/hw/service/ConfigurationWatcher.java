@@ -0,0 +1,119 @@
+package com.zhai.hw.service;
+
+import com.zhai.hw.config.AppProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the configuration when a {@code file:} configuration path changes on disk.
+ * <p>
+ * Watches the file's directory rather than the file itself, so editors that write a
+ * temporary file and rename it, and mounts that swap a symlink, are both noticed.
+ * Events are debounced and the reload itself skips content that has not changed.
+ * Reloading happens on the watcher thread; request threads keep reading the previous
+ * snapshot until the new one is published.
+ */
+@Component
+public class ConfigurationWatcher implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationWatcher.class);
+    private static final String FILE_PREFIX = "file:";
+
+    private final AppProperties appProperties;
+    private final ConfigurationLoaderService configurationLoaderService;
+
+    @Value("${app.config.watch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.config.watch.debounce:PT0.5S}")
+    private Duration debounce;
+
+    private volatile WatchService watchService;
+    private volatile Thread watcher;
+
+    public ConfigurationWatcher(AppProperties appProperties, ConfigurationLoaderService configurationLoaderService) {
+        this.appProperties = appProperties;
+        this.configurationLoaderService = configurationLoaderService;
+    }
+
+    @Override
+    public void start() {
+        String configPath = appProperties.getConfigPath();
+        if (!enabled || configPath == null || !configPath.startsWith(FILE_PREFIX)) {
+            logger.debug("Configuration watching disabled for {}", configPath);
+            return;
+        }
+        Path directory = Paths.get(configPath.substring(FILE_PREFIX.length())).toAbsolutePath().getParent();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            logger.error("Cannot watch configuration directory {}; hot reload is disabled", directory, e);
+            return;
+        }
+        watcher = new Thread(this::watch, "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.info("Watching {} for configuration changes", directory);
+    }
+
+    @Override
+    public void stop() {
+        WatchService service = watchService;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                logger.debug("Error closing configuration watch service", e);
+            }
+            watchService = null;
+        }
+        Thread thread = watcher;
+        if (thread != null) {
+            thread.interrupt();
+            watcher = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return watcher != null;
+    }
+
+    private void watch() {
+        WatchService service = watchService;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                key.pollEvents();
+                key.reset();
+                // Wait for the writer to go quiet before reading the file
+                WatchKey more;
+                while ((more = service.poll(debounce.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    more.pollEvents();
+                    more.reset();
+                }
+                configurationLoaderService.reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("Configuration watcher stopped");
+        } catch (RuntimeException e) {
+            logger.error("Configuration watcher failed; hot reload is disabled", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.zhai.hw.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The workflow jobs one dispatch shard has seen, with the furthest action each has reached.
+ * <p>
+ * Owned by the shard's worker, the only thread that calls {@link #advance}, so it needs no
+ * locking; the counters are only read from elsewhere. At most {@code capacity} jobs are
+ * remembered, the least recently advanced forgotten first.
+ */
+final class JobLedger {
+
+    private static final byte UNKNOWN = -1;
+
+    private final Map<Long, Byte> stages;
+    private volatile long advanced;
+    private volatile long stale;
+
+    JobLedger(int capacity) {
+        this.stages = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Byte> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Records that a job reached the stage of an action.
+     *
+     * @return {@code false} if the job already reached that stage or a later one, so the
+     *         event is a late or repeated delivery and must not be acted on
+     */
+    boolean advance(long jobId, String action) {
+        byte stage = stageOf(action);
+        if (stage == UNKNOWN) {
+            return true;
+        }
+        Byte reached = stages.get(jobId);
+        if (reached != null && reached >= stage) {
+            stale++;
+            return false;
+        }
+        stages.put(jobId, stage);
+        advanced++;
+        return true;
+    }
+
+    int size() {
+        return stages.size();
+    }
+
+    long advanced() {
+        return advanced;
+    }
+
+    long stale() {
+        return stale;
+    }
+
+    private static byte stageOf(String action) {
+        if (action == null) {
+            return UNKNOWN;
+        }
+        return switch (action) {
+            case "waiting" -> 0;
+            case "queued" -> 1;
+            case "in_progress" -> 2;
+            case "completed" -> 3;
+            default -> UNKNOWN;
+        };
+    }
+}
@@ -0,0 +1,150 @@
+package com.zhai.hw.service;
+
+import com.zhai.hw.config.DispatchProperties;
+import com.zhai.hw.model.LabelMatchIndex;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.github.WorkflowJobEvent;
+import com.zhai.hw.service.forecast.DemandForecaster;
+import com.zhai.hw.service.pool.JobLifecycleTracker;
+import com.zhai.hw.service.pool.ManagedVm;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmPoolManager;
+import com.zhai.hw.service.provision.ProvisioningCoalescer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Processes workflow job events once they have been accepted by the webhook endpoint.
+ * <p>
+ * Runs on the dispatch workers, never on the request thread. Every event of a job reaches
+ * the same dispatch shard, and each shard keeps its own {@link JobLedger} that only its
+ * worker touches, so an event for a job that has already moved past it is dropped without
+ * any locking. A queued job claims a VM; its {@code in_progress} and {@code completed}
+ * events are handed to the {@link JobLifecycleTracker}, which gives the VM back to its pool.
+ */
+@Service
+public class WorkflowJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowJobService.class);
+
+    private final ConfigurationLoaderService configurationLoaderService;
+    private final VmPoolManager vmPoolManager;
+    private final DemandForecaster demandForecaster;
+    private final ProvisioningCoalescer provisioningCoalescer;
+    private final JobLifecycleTracker jobLifecycleTracker;
+    /** Indexed by dispatch shard; each is only used by that shard's worker. */
+    private final JobLedger[] ledgers;
+
+    public WorkflowJobService(ConfigurationLoaderService configurationLoaderService, VmPoolManager vmPoolManager,
+                              DemandForecaster demandForecaster, ProvisioningCoalescer provisioningCoalescer,
+                              JobLifecycleTracker jobLifecycleTracker,
+                              DispatchProperties dispatchProperties) {
+        this.configurationLoaderService = configurationLoaderService;
+        this.vmPoolManager = vmPoolManager;
+        this.demandForecaster = demandForecaster;
+        this.provisioningCoalescer = provisioningCoalescer;
+        this.jobLifecycleTracker = jobLifecycleTracker;
+        this.ledgers = new JobLedger[Math.max(1, dispatchProperties.getShards())];
+        for (int i = 0; i < ledgers.length; i++) {
+            ledgers[i] = new JobLedger(dispatchProperties.getTrackedJobsPerShard());
+        }
+    }
+
+    /**
+     * Handles a single workflow job event on the worker of its dispatch shard.
+     *
+     * @param event The parsed event
+     * @param shard The dispatch shard the event was routed to
+     */
+    public void handle(WorkflowJobEvent event, int shard) {
+        logger.info("Received GitHub webhook event: action={}, job_id={}, labels={}",
+                event.getAction(), event.getWorkflowJob().getId(), event.getWorkflowJob().getLabels());
+        if (!ledgers[shard].advance(event.getWorkflowJob().getId(), event.getAction())) {
+            logger.info("Ignoring {} for job {}: the job has already reached that stage or a later one",
+                    event.getAction(), event.getWorkflowJob().getId());
+            return;
+        }
+
+        if ("queued".equals(event.getAction())) {
+            long queuedAt = System.nanoTime();
+            LabelMatchIndex index = configurationLoaderService.getLabelMatchIndex();
+            int mappingId = index.resolveId(event.getWorkflowJob().getLabels());
+            if (mappingId == LabelMatchIndex.AMBIGUOUS) {
+                logger.warn("Ignoring job {}: labels {} match more than one label VM mapping",
+                        event.getWorkflowJob().getId(), event.getWorkflowJob().getLabels());
+                return;
+            }
+            if (mappingId == LabelMatchIndex.NO_MATCH) {
+                logger.info("Ignoring job {}: no label VM mapping for labels {}",
+                        event.getWorkflowJob().getId(), event.getWorkflowJob().getLabels());
+                return;
+            }
+            LabelVmMapping mapping = index.mapping(mappingId);
+            logger.info("Processing queued workflow job event for repository: {}, mapping: {}",
+                    event.getWorkflowJob().getRepository().getFullName(), mapping.getLabel());
+            demandForecaster.recordQueued(mapping.getLabel());
+            VmPool pool = vmPoolManager.getPool(mapping.getLabel());
+            if (pool == null) {
+                return;
+            }
+            String repository = event.getWorkflowJob().getRepository().getFullName();
+            provisioningCoalescer.jobQueued(pool, repository);
+            long jobId = event.getWorkflowJob().getId();
+            ManagedVm vm = pool.claim(repository);
+            if (vm != null) {
+                jobLifecycleTracker.claimed(jobId, vm, queuedAt);
+                logger.info("Job {} claimed warm VM {}", jobId, vm.getName());
+                return;
+            }
+            logger.info("No warm VM for job {} in pool {}; requesting one", jobId, mapping.getLabel());
+            jobLifecycleTracker.provisioning(jobId, queuedAt);
+            provisioningCoalescer.requestVm(pool, repository).whenComplete((provisioned, error) -> {
+                if (error != null) {
+                    jobLifecycleTracker.abandoned(jobId);
+                    logger.error("Could not provision a VM for job {}: {}", jobId, error.getMessage());
+                } else {
+                    jobLifecycleTracker.claimed(jobId, provisioned, queuedAt);
+                    logger.info("Job {} got VM {}", jobId, provisioned.getName());
+                }
+            });
+        } else if ("in_progress".equals(event.getAction()) || "completed".equals(event.getAction())) {
+            int mappingId = configurationLoaderService.getLabelMatchIndex()
+                    .resolveId(event.getWorkflowJob().getLabels());
+            if (mappingId == LabelMatchIndex.AMBIGUOUS || mappingId == LabelMatchIndex.NO_MATCH) {
+                // Not one of our runners
+                return;
+            }
+            long jobId = event.getWorkflowJob().getId();
+            String runnerName = event.getWorkflowJob().getRunnerName();
+            if ("in_progress".equals(event.getAction())) {
+                logger.info("Job {} started on runner {}", jobId, runnerName);
+                jobLifecycleTracker.started(jobId, runnerName);
+            } else {
+                logger.info("Job {} completed on runner {}", jobId, runnerName);
+                jobLifecycleTracker.completed(jobId, runnerName);
+            }
+        } else {
+            logger.info("Ignoring workflow job event: {}", event.getAction());
+        }
+    }
+
+    /**
+     * Returns how many job events the shards' ledgers applied and dropped as stale, over all shards.
+     */
+    public Map<String, Object> ledgerStats() {
+        long advanced = 0;
+        long stale = 0;
+        for (JobLedger ledger : ledgers) {
+            advanced += ledger.advanced();
+            stale += ledger.stale();
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("applied", advanced);
+        body.put("stale", stale);
+        return body;
+    }
+}
@@ -0,0 +1,33 @@
+package com.zhai.hw.service.bootstrap;
+
+/**
+ * The values a startup script template can refer to, written {@code %%NAME%%} in the template.
+ */
+public enum Placeholder {
+
+    RUNNER_REGISTRATION_TOKEN(true),
+    RUNNER_NAME(true),
+    RUNNER_LABELS(false),
+    GITHUB_REPO_URL(true),
+    STATUS_SERVER_PORT(false);
+
+    private final boolean perVm;
+
+    Placeholder(boolean perVm) {
+        this.perVm = perVm;
+    }
+
+    /**
+     * @return {@code true} if the value differs for every VM, {@code false} if it is fixed per label
+     */
+    public boolean isPerVm() {
+        return perVm;
+    }
+
+    /**
+     * @return The placeholder as it appears in a template
+     */
+    public String token() {
+        return "%%" + name() + "%%";
+    }
+}
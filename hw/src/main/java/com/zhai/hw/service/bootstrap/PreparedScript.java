@@ -0,0 +1,100 @@
+package com.zhai.hw.service.bootstrap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * A startup script with every per-label value substituted, rendered once per VM.
+ * <p>
+ * The literals are kept as UTF-8 bytes, so rendering a VM's script only sizes one buffer,
+ * copies the literals and the VM's values into it and base64-encodes it.
+ */
+public final class PreparedScript {
+
+    private static final Base64.Encoder BASE64 = Base64.getEncoder();
+
+    private final byte[][] literals;
+    private final Placeholder[] slots;
+    private final int literalBytes;
+
+    PreparedScript(byte[][] literals, Placeholder[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+        int total = 0;
+        for (byte[] literal : literals) {
+            total += literal.length;
+        }
+        this.literalBytes = total;
+    }
+
+    /**
+     * Renders the script for one VM.
+     *
+     * @return The script, base64-encoded for use as VM custom data
+     * @throws IllegalArgumentException if the script uses a value that is missing
+     */
+    public byte[] renderBase64(String runnerName, String repositoryUrl, String registrationToken) {
+        return BASE64.encode(render(runnerName, repositoryUrl, registrationToken));
+    }
+
+    /**
+     * Renders the script for one VM, without encoding it.
+     *
+     * @throws IllegalArgumentException if the script uses a value that is missing
+     */
+    public byte[] render(String runnerName, String repositoryUrl, String registrationToken) {
+        int length = literalBytes;
+        for (Placeholder slot : slots) {
+            length += encodedLength(value(slot, runnerName, repositoryUrl, registrationToken));
+        }
+        byte[] script = new byte[length];
+        int position = copy(literals[0], script, 0);
+        for (int i = 0; i < slots.length; i++) {
+            position = write(value(slots[i], runnerName, repositoryUrl, registrationToken), script, position);
+            position = copy(literals[i + 1], script, position);
+        }
+        return script;
+    }
+
+    private static String value(Placeholder slot, String runnerName, String repositoryUrl,
+                                String registrationToken) {
+        String value = switch (slot) {
+            case RUNNER_NAME -> runnerName;
+            case GITHUB_REPO_URL -> repositoryUrl;
+            default -> registrationToken;
+        };
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("No value for " + slot.token());
+        }
+        return value;
+    }
+
+    private static int copy(byte[] literal, byte[] script, int position) {
+        System.arraycopy(literal, 0, script, position, literal.length);
+        return position + literal.length;
+    }
+
+    private static int encodedLength(String value) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                // Runner names, URLs and tokens are ASCII; anything else takes the slow path
+                return value.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return length;
+    }
+
+    private static int write(String value, byte[] script, int position) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                return copy(value.getBytes(StandardCharsets.UTF_8), script, position);
+            }
+        }
+        for (int i = 0; i < value.length(); i++) {
+            script[position++] = (byte) value.charAt(i);
+        }
+        return position;
+    }
+}
@@ -0,0 +1,129 @@
+package com.zhai.hw.service.bootstrap;
+
+import com.zhai.hw.config.BootstrapProperties;
+import com.zhai.hw.config.RunnerStatusProperties;
+import com.zhai.hw.exception.InvalidConfigurationException;
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders the runner startup script for new VMs.
+ * <p>
+ * The template is read and parsed once at startup, and a {@link PreparedScript} is built for
+ * every label whenever a configuration snapshot is published, so a VM's script only needs its
+ * runner name, repository and registration token. The repository is given per VM because
+ * registration tokens are issued per repository, and a runner must register against the
+ * repository its token is for. A template that refers to a value that is not configured
+ * fails startup rather than the first VM.
+ */
+@Service
+public class StartupScriptRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupScriptRenderer.class);
+
+    private final StartupScriptTemplate template;
+    private final BootstrapProperties bootstrapProperties;
+    private final RunnerStatusProperties runnerStatusProperties;
+    private volatile Map<String, PreparedScript> scripts = Map.of();
+    private long appliedVersion;
+
+    public StartupScriptRenderer(BootstrapProperties bootstrapProperties,
+                                 RunnerStatusProperties runnerStatusProperties,
+                                 ResourceLoader resourceLoader,
+                                 ConfigurationLoaderService configurationLoaderService) {
+        this.bootstrapProperties = bootstrapProperties;
+        this.runnerStatusProperties = runnerStatusProperties;
+        this.template = StartupScriptTemplate.compile(read(resourceLoader, bootstrapProperties.getTemplate()));
+        configurationLoaderService.addSnapshotListener(snapshot -> {
+            try {
+                apply(snapshot);
+            } catch (InvalidConfigurationException e) {
+                logger.error("Keeping the startup scripts of the previous configuration: {}", e.getMessage());
+            }
+        });
+        ConfigSnapshot current = configurationLoaderService.getSnapshot();
+        if (current != null) {
+            apply(current);
+        }
+    }
+
+    /**
+     * Returns the prepared script for a mapping's label, ignoring case.
+     *
+     * @return The script, or {@code null} if the label is not configured
+     */
+    public PreparedScript getScript(String label) {
+        return scripts.get(label.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Renders the script for one VM of a label.
+     *
+     * @param repository        The repository the runner registers with, as {@code owner/name}
+     * @param registrationToken A registration token issued for that repository
+     * @return The script, base64-encoded for use as VM custom data
+     * @throws IllegalArgumentException if the label is not configured or a value is missing
+     */
+    public byte[] renderBase64(String label, String runnerName, String repository, String registrationToken) {
+        PreparedScript script = getScript(label);
+        if (script == null) {
+            throw new IllegalArgumentException("No startup script for label " + label);
+        }
+        return script.renderBase64(runnerName, repositoryUrl(repository), registrationToken);
+    }
+
+    /**
+     * @return The URL of a repository on the configured GitHub server
+     */
+    String repositoryUrl(String repository) {
+        if (repository == null || repository.isEmpty()) {
+            return null;
+        }
+        String server = bootstrapProperties.getGithubUrl();
+        return (server.endsWith("/") ? server : server + "/") + repository;
+    }
+
+    synchronized void apply(ConfigSnapshot snapshot) {
+        if (snapshot.version() <= appliedVersion) {
+            return;
+        }
+        Map<String, PreparedScript> prepared = new HashMap<>();
+        for (LabelVmMapping mapping : snapshot.config().getLabelVmMappings()) {
+            prepared.put(mapping.getLabel().toLowerCase(Locale.ROOT), template.prepare(labelValues(mapping)));
+        }
+        scripts = Map.copyOf(prepared);
+        appliedVersion = snapshot.version();
+        logger.debug("Prepared startup scripts for {} labels (configuration version {})", prepared.size(),
+                snapshot.version());
+    }
+
+    private Map<Placeholder, String> labelValues(LabelVmMapping mapping) {
+        Map<Placeholder, String> values = new EnumMap<>(Placeholder.class);
+        values.put(Placeholder.RUNNER_LABELS, mapping.getLabel());
+        values.put(Placeholder.STATUS_SERVER_PORT, String.valueOf(runnerStatusProperties.getPort()));
+        return values;
+    }
+
+    private static String read(ResourceLoader resourceLoader, String location) {
+        Resource resource = resourceLoader.getResource(location);
+        try (InputStream in = resource.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new InvalidConfigurationException("Cannot read startup script template " + location, e);
+        }
+    }
+}
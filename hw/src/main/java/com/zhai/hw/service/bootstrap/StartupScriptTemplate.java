@@ -0,0 +1,93 @@
+package com.zhai.hw.service.bootstrap;
+
+import com.zhai.hw.exception.InvalidConfigurationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A startup script template parsed into literal segments and placeholder slots.
+ * <p>
+ * The template is parsed once. {@link #prepare(Map)} then folds the per-label values into the
+ * literals, leaving a {@link PreparedScript} whose only slots are the per-VM placeholders.
+ */
+public final class StartupScriptTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("%%([A-Z0-9_]+)%%");
+
+    private final List<String> literals;
+    private final List<Placeholder> slots;
+
+    private StartupScriptTemplate(List<String> literals, List<Placeholder> slots) {
+        this.literals = literals;
+        this.slots = slots;
+    }
+
+    /**
+     * Parses a template.
+     *
+     * @throws InvalidConfigurationException if the template refers to an unknown placeholder
+     */
+    public static StartupScriptTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> slots = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        int literalStart = 0;
+        while (matcher.find()) {
+            Placeholder placeholder;
+            try {
+                placeholder = Placeholder.valueOf(matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidConfigurationException("Unknown placeholder " + matcher.group()
+                        + " in startup script template");
+            }
+            literals.add(template.substring(literalStart, matcher.start()));
+            slots.add(placeholder);
+            literalStart = matcher.end();
+        }
+        literals.add(template.substring(literalStart));
+        return new StartupScriptTemplate(List.copyOf(literals), List.copyOf(slots));
+    }
+
+    /**
+     * @return {@code true} if the template refers to the placeholder at least once
+     */
+    public boolean uses(Placeholder placeholder) {
+        return slots.contains(placeholder);
+    }
+
+    /**
+     * Substitutes every per-label placeholder, leaving only the per-VM ones.
+     *
+     * @param values The per-label values; per-VM placeholders in it are ignored
+     * @throws InvalidConfigurationException if the template uses a per-label placeholder that
+     *                                       has no value
+     */
+    public PreparedScript prepare(Map<Placeholder, String> values) {
+        List<byte[]> preparedLiterals = new ArrayList<>();
+        List<Placeholder> perVmSlots = new ArrayList<>();
+        StringBuilder literal = new StringBuilder(literals.get(0));
+        for (int i = 0; i < slots.size(); i++) {
+            Placeholder slot = slots.get(i);
+            if (slot.isPerVm()) {
+                preparedLiterals.add(literal.toString().getBytes(StandardCharsets.UTF_8));
+                perVmSlots.add(slot);
+                literal.setLength(0);
+            } else {
+                String value = values.get(slot);
+                if (value == null || value.isBlank()) {
+                    throw new InvalidConfigurationException("No value for " + slot.token()
+                            + " in startup script template");
+                }
+                literal.append(value);
+            }
+            literal.append(literals.get(i + 1));
+        }
+        preparedLiterals.add(literal.toString().getBytes(StandardCharsets.UTF_8));
+        return new PreparedScript(preparedLiterals.toArray(new byte[0][]), perVmSlots.toArray(new Placeholder[0]));
+    }
+}
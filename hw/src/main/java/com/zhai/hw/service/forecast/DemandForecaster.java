@@ -0,0 +1,222 @@
+package com.zhai.hw.service.forecast;
+
+import com.zhai.hw.config.ForecastProperties;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmPoolManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Forecasts the rate of queued jobs per label and raises each pool's warm target to match.
+ * <p>
+ * Queued events are counted per label as they are handled. Once per step the count is
+ * turned into a rate per minute and folded into an EWMA of the recent rate. The step's jobs
+ * and minutes are also added up over the hour, and when the hour closes its average rate is
+ * folded into an hour-of-week profile, once per week, so the profile remembers the rate
+ * usually seen at this hour on this day over the last few weeks.
+ * The forecast is the larger of the EWMA and the profile for the hour the lead time reaches
+ * into, so pools warm up before a regular morning rush rather than during it. The warm
+ * target is the number of VMs needed to absorb the forecast over the lead time, kept
+ * between {@code minimumWarmVms} and {@code maximumPoolSize}.
+ * <p>
+ * Labels whose pool parameters set {@code forecastEnabled: false}, and every label when
+ * {@code app.forecast.enabled} is off, keep their configured minimum.
+ */
+@Component
+public class DemandForecaster implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(DemandForecaster.class);
+    static final int HOURS_PER_WEEK = 7 * 24;
+
+    private final ForecastProperties properties;
+    private final VmPoolManager vmPoolManager;
+    private final Clock clock;
+    private final Map<String, LabelDemand> demand = new ConcurrentHashMap<>();
+    private ScheduledExecutorService ticker;
+    private Instant lastUpdate;
+
+    @Autowired
+    public DemandForecaster(ForecastProperties properties, VmPoolManager vmPoolManager) {
+        this(properties, vmPoolManager, Clock.systemUTC());
+    }
+
+    DemandForecaster(ForecastProperties properties, VmPoolManager vmPoolManager, Clock clock) {
+        this.properties = properties;
+        this.vmPoolManager = vmPoolManager;
+        this.clock = clock;
+        this.lastUpdate = clock.instant();
+    }
+
+    /**
+     * Counts a queued job for a label. Called once per accepted queued event.
+     */
+    public void recordQueued(String label) {
+        demand.computeIfAbsent(label.toLowerCase(Locale.ROOT), key -> new LabelDemand()).queued.incrementAndGet();
+    }
+
+    /**
+     * Closes the current step: updates every label's estimates and applies the new warm targets.
+     */
+    synchronized void update() {
+        Instant now = clock.instant();
+        double minutes = Math.max(1e-3, (now.toEpochMilli() - lastUpdate.toEpochMilli()) / 60_000.0);
+        int hourOfWeek = hourOfWeek(lastUpdate);
+        int leadHourOfWeek = hourOfWeek(now.plus(properties.getLeadTime()));
+        lastUpdate = now;
+        for (VmPool pool : vmPoolManager.getPools()) {
+            LabelDemand labelDemand = demand.computeIfAbsent(pool.getLabel().toLowerCase(Locale.ROOT),
+                    key -> new LabelDemand());
+            labelDemand.observe(labelDemand.queued.getAndSet(0), minutes, hourOfWeek,
+                    properties.getEwmaAlpha(), properties.getProfileAlpha());
+            if (!isEnabled(pool.getMapping())) {
+                pool.setForecastWarmTarget(-1);
+                continue;
+            }
+            double forecast = labelDemand.forecast(leadHourOfWeek);
+            double leadMinutes = properties.getLeadTime().toMillis() / 60_000.0;
+            int target = (int) Math.ceil(forecast * leadMinutes / pool.getMapping().getRunnersPerVm());
+            pool.setForecastWarmTarget(target);
+            if (target != labelDemand.lastTarget) {
+                logger.info("Warm target for {} is now {} (forecast {} jobs/min)", pool.getLabel(),
+                        pool.getWarmTarget(), String.format(Locale.ROOT, "%.2f", forecast));
+            }
+            labelDemand.lastTarget = target;
+        }
+    }
+
+    private boolean isEnabled(LabelVmMapping mapping) {
+        return properties.isEnabled() && mapping.getPoolParameters().isForecastEnabled();
+    }
+
+    /**
+     * Returns the forecast and the resulting warm target of every pool.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        int leadHourOfWeek = hourOfWeek(clock.instant().plus(properties.getLeadTime()));
+        for (VmPool pool : vmPoolManager.getPools()) {
+            LabelDemand labelDemand = demand.get(pool.getLabel().toLowerCase(Locale.ROOT));
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("enabled", isEnabled(pool.getMapping()));
+            if (labelDemand != null) {
+                entry.put("recentJobsPerMinute", labelDemand.ewma);
+                entry.put("usualJobsPerMinute", labelDemand.profile[leadHourOfWeek]);
+                entry.put("forecastJobsPerMinute", labelDemand.forecast(leadHourOfWeek));
+            }
+            entry.put("minimumWarmVms", pool.getMapping().getPoolParameters().getMinimumWarmVms());
+            entry.put("maximumPoolSize", pool.getMapping().getPoolParameters().getMaximumPoolSize());
+            entry.put("warmTarget", pool.getWarmTarget());
+            body.put(pool.getLabel(), entry);
+        }
+        return body;
+    }
+
+    static int hourOfWeek(Instant instant) {
+        ZonedDateTime time = instant.atZone(ZoneOffset.UTC);
+        return (time.getDayOfWeek().getValue() - 1) * 24 + time.getHour();
+    }
+
+    @Override
+    public void start() {
+        if (!properties.isEnabled()) {
+            logger.info("Demand forecasting is disabled; pools keep their configured minimum");
+            return;
+        }
+        long stepMillis = properties.getStep().toMillis();
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "demand-forecaster");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                update();
+            } catch (RuntimeException e) {
+                logger.error("Demand forecast update failed", e);
+            }
+        }, stepMillis, stepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return ticker != null;
+    }
+
+    /**
+     * Demand estimates for one label. The counter is written by dispatch workers; the
+     * estimates only by the forecaster thread and read for diagnostics.
+     */
+    static final class LabelDemand {
+
+        final AtomicInteger queued = new AtomicInteger();
+        final double[] profile = new double[HOURS_PER_WEEK];
+        final boolean[] profileSeen = new boolean[HOURS_PER_WEEK];
+        volatile double ewma;
+        int lastTarget = -1;
+        /** The hour of week being added up, or -1 before the first step. */
+        int hour = -1;
+        long hourJobs;
+        double hourMinutes;
+
+        /**
+         * Folds one step into the estimates.
+         *
+         * @param jobs       Jobs queued during the step
+         * @param minutes    The step's length
+         * @param hourOfWeek The hour of week the step belongs to
+         */
+        void observe(long jobs, double minutes, int hourOfWeek, double ewmaAlpha, double profileAlpha) {
+            ewma = ewmaAlpha * (jobs / minutes) + (1 - ewmaAlpha) * ewma;
+            if (hourOfWeek != hour) {
+                closeHour(profileAlpha);
+                hour = hourOfWeek;
+            }
+            hourJobs += jobs;
+            hourMinutes += minutes;
+        }
+
+        private void closeHour(double profileAlpha) {
+            if (hour < 0 || hourMinutes <= 0) {
+                return;
+            }
+            double ratePerMinute = hourJobs / hourMinutes;
+            if (profileSeen[hour]) {
+                profile[hour] = profileAlpha * ratePerMinute + (1 - profileAlpha) * profile[hour];
+            } else {
+                profile[hour] = ratePerMinute;
+                profileSeen[hour] = true;
+            }
+            hourJobs = 0;
+            hourMinutes = 0;
+        }
+
+        double forecast(int hourOfWeek) {
+            return Math.max(ewma, profile[hourOfWeek]);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.zhai.hw.service.github;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.zhai.hw.config.GitHubProperties;
+import com.zhai.hw.exception.GitHubApiException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Calls the GitHub REST API asynchronously.
+ */
+@Component
+public class GitHubApiClient {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final GitHubProperties properties;
+    private final Clock clock;
+    private final HttpClient httpClient;
+
+    public GitHubApiClient(GitHubProperties properties) {
+        this.properties = properties;
+        this.clock = Clock.systemUTC();
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(properties.getRequestTimeout())
+                .build();
+    }
+
+    /**
+     * Creates a runner registration token for a repository.
+     *
+     * @param repositoryFullName The repository, as {@code owner/name}
+     * @return A future failed with a {@link GitHubApiException} if GitHub refuses the call
+     */
+    public CompletableFuture<RegistrationToken> createRegistrationToken(String repositoryFullName) {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(properties.getApiUrl() + "/repos/" + repositoryFullName
+                        + "/actions/runners/registration-token"))
+                .timeout(properties.getRequestTimeout())
+                .header("Accept", "application/vnd.github+json")
+                .header("X-GitHub-Api-Version", "2022-11-28")
+                .POST(HttpRequest.BodyPublishers.noBody());
+        if (StringUtils.hasText(properties.getApiToken())) {
+            request.header("Authorization", "Bearer " + properties.getApiToken());
+        }
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() != 201 && response.statusCode() != 200) {
+                        throw failure(repositoryFullName, response);
+                    }
+                    return parseToken(repositoryFullName, response.body());
+                });
+    }
+
+    private GitHubApiException failure(String repositoryFullName, HttpResponse<byte[]> response) {
+        String message = "Creating a registration token for " + repositoryFullName + " failed with HTTP "
+                + response.statusCode();
+        return new GitHubApiException(message, response.statusCode(), retryAfter(response));
+    }
+
+    /**
+     * Reads how long to back off from a rate-limited response: {@code Retry-After} on secondary
+     * rate limits, or the reset time when the primary limit is used up.
+     *
+     * @return The delay, or {@code null} if the response is not rate limited
+     */
+    Duration retryAfter(HttpResponse<?> response) {
+        HttpHeaders headers = response.headers();
+        String retryAfter = headers.firstValue("Retry-After").orElse(null);
+        if (retryAfter != null) {
+            try {
+                return Duration.ofSeconds(Math.max(0, Long.parseLong(retryAfter.trim())));
+            } catch (NumberFormatException e) {
+                return Duration.ofMinutes(1);
+            }
+        }
+        if (headers.firstValue("X-RateLimit-Remaining").map("0"::equals).orElse(false)) {
+            long reset = headers.firstValueAsLong("X-RateLimit-Reset").orElse(0);
+            return Duration.ofSeconds(Math.max(0, reset - clock.instant().getEpochSecond()));
+        }
+        if (response.statusCode() == 429) {
+            return Duration.ofMinutes(1);
+        }
+        return null;
+    }
+
+    static RegistrationToken parseToken(String repositoryFullName, byte[] body) {
+        String token = null;
+        Instant expiresAt = null;
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    if ("token".equals(field)) {
+                        token = parser.getValueAsString();
+                    } else if ("expires_at".equals(field)) {
+                        expiresAt = OffsetDateTime.parse(parser.getValueAsString()).toInstant();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new GitHubApiException("Unreadable registration token response for " + repositoryFullName, e);
+        }
+        if (token == null || expiresAt == null) {
+            throw new GitHubApiException("Registration token response for " + repositoryFullName
+                    + " has no token or expiry", 0, null);
+        }
+        return new RegistrationToken(token, expiresAt);
+    }
+}
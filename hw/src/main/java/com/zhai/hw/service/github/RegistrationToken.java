@@ -0,0 +1,17 @@
+package com.zhai.hw.service.github;
+
+import java.time.Instant;
+
+/**
+ * A token a new runner uses once to register with a repository.
+ *
+ * @param token     The token; never logged
+ * @param expiresAt When GitHub stops accepting it
+ */
+public record RegistrationToken(String token, Instant expiresAt) {
+
+    @Override
+    public String toString() {
+        return "RegistrationToken[expiresAt=" + expiresAt + "]";
+    }
+}
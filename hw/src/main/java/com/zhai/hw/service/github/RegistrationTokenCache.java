@@ -0,0 +1,249 @@
+package com.zhai.hw.service.github;
+
+import com.zhai.hw.config.GitHubProperties;
+import com.zhai.hw.exception.GitHubApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches runner registration tokens per repository and refreshes them before they expire.
+ * <p>
+ * A token is handed out while it has at least {@code minRemaining} left, which leaves a new
+ * VM time to boot and register. Requests for a repository with no usable token share one
+ * fetch. Once fetched, a token is refreshed {@code refreshBefore} its expiry, so a steady
+ * stream of jobs never waits on GitHub; a repository that asked for no token since the last
+ * fetch is not refreshed, and its next request fetches on demand. Rate-limited calls are
+ * retried after the delay GitHub asks for, up to {@code maxAttempts} calls per fetch.
+ */
+@Component
+public class RegistrationTokenCache implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistrationTokenCache.class);
+
+    private final GitHubApiClient client;
+    private final GitHubProperties properties;
+    private final Clock clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    public RegistrationTokenCache(GitHubApiClient client, GitHubProperties properties) {
+        this(client, properties, Clock.systemUTC());
+    }
+
+    RegistrationTokenCache(GitHubApiClient client, GitHubProperties properties, Clock clock) {
+        this.client = client;
+        this.properties = properties;
+        this.clock = clock;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "registration-tokens");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns a registration token for a repository, fetching one if none is cached.
+     *
+     * @param repositoryFullName The repository, as {@code owner/name}
+     * @return A future failed with a {@link GitHubApiException} if no token could be fetched
+     */
+    public CompletableFuture<RegistrationToken> getToken(String repositoryFullName) {
+        Entry entry = entries.computeIfAbsent(repositoryFullName, Entry::new);
+        entry.used = true;
+        RegistrationToken token = entry.token;
+        if (token != null && isUsable(token)) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(token);
+        }
+        misses.incrementAndGet();
+        return fetch(entry);
+    }
+
+    /**
+     * Starts fetching a token for a repository if none is cached, without waiting for it.
+     * Called when a job is queued, so the token is ready by the time its VM boots.
+     */
+    public void prefetch(String repositoryFullName) {
+        getToken(repositoryFullName).exceptionally(error -> null);
+    }
+
+    private boolean isUsable(RegistrationToken token) {
+        return token.expiresAt().isAfter(clock.instant().plus(properties.getMinRemaining()));
+    }
+
+    private CompletableFuture<RegistrationToken> fetch(Entry entry) {
+        CompletableFuture<RegistrationToken> result;
+        synchronized (entry) {
+            if (entry.inFlight != null) {
+                joined.incrementAndGet();
+                return entry.inFlight;
+            }
+            result = new CompletableFuture<>();
+            entry.inFlight = result;
+        }
+        attempt(entry, result, 1);
+        return result;
+    }
+
+    private void attempt(Entry entry, CompletableFuture<RegistrationToken> result, int attempt) {
+        fetches.incrementAndGet();
+        CompletableFuture<RegistrationToken> call;
+        try {
+            call = client.createRegistrationToken(entry.repository);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((token, error) -> {
+            if (error == null) {
+                entry.token = token;
+                synchronized (entry) {
+                    entry.inFlight = null;
+                }
+                scheduleRefresh(entry, token.expiresAt().minus(properties.getRefreshBefore()));
+                result.complete(token);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            Duration retryAfter = cause instanceof GitHubApiException apiError ? apiError.getRetryAfter() : null;
+            if (retryAfter != null) {
+                rateLimited.incrementAndGet();
+                if (attempt < properties.getMaxAttempts()) {
+                    Duration delay = retryAfter.compareTo(properties.getMaxRetryAfter()) > 0
+                            ? properties.getMaxRetryAfter() : retryAfter;
+                    logger.warn("Registration token call for {} was rate limited, retrying in {}",
+                            entry.repository, delay);
+                    if (schedule(() -> attempt(entry, result, attempt + 1), delay)) {
+                        return;
+                    }
+                }
+            }
+            failures.incrementAndGet();
+            logger.error("Could not fetch a registration token for {}: {}", entry.repository, cause.getMessage());
+            synchronized (entry) {
+                entry.inFlight = null;
+            }
+            RegistrationToken current = entry.token;
+            if (current != null && isUsable(current)) {
+                // A background refresh failed; the cached token still works for a while
+                scheduleRefresh(entry, clock.instant().plus(properties.getRefreshRetry()));
+            }
+            result.completeExceptionally(cause);
+        });
+    }
+
+    private void scheduleRefresh(Entry entry, Instant at) {
+        Duration delay = Duration.between(clock.instant(), at);
+        synchronized (entry) {
+            if (entry.refresh != null) {
+                entry.refresh.cancel(false);
+            }
+            try {
+                entry.refresh = scheduler.schedule(() -> refresh(entry), Math.max(0, delay.toMillis()),
+                        TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // The cache has been stopped
+                entry.refresh = null;
+            }
+        }
+    }
+
+    private void refresh(Entry entry) {
+        if (!entry.used) {
+            logger.debug("Not refreshing the registration token for {}: unused since the last fetch",
+                    entry.repository);
+            entries.remove(entry.repository, entry);
+            return;
+        }
+        entry.used = false;
+        refreshes.incrementAndGet();
+        fetch(entry);
+    }
+
+    private boolean schedule(Runnable task, Duration delay) {
+        try {
+            scheduler.schedule(task, delay.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the cache counters and the expiry of every cached token.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("hits", hits.get());
+        body.put("misses", misses.get());
+        body.put("joinedFetches", joined.get());
+        body.put("fetches", fetches.get());
+        body.put("refreshes", refreshes.get());
+        body.put("rateLimited", rateLimited.get());
+        body.put("failures", failures.get());
+        Map<String, Object> repositories = new TreeMap<>();
+        entries.forEach((repository, entry) -> {
+            RegistrationToken token = entry.token;
+            repositories.put(repository, token == null ? null : token.expiresAt().toString());
+        });
+        body.put("expiresAt", repositories);
+        return body;
+    }
+
+    @Override
+    public void start() {
+        // The scheduler runs from construction, so tokens requested before start are refreshed
+    }
+
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return !scheduler.isShutdown();
+    }
+
+    /**
+     * The cached token of one repository and the fetch in progress for it, if any.
+     */
+    private static final class Entry {
+        final String repository;
+        volatile RegistrationToken token;
+        volatile boolean used;
+        /** Guarded by this entry. */
+        CompletableFuture<RegistrationToken> inFlight;
+        /** Guarded by this entry. */
+        ScheduledFuture<?> refresh;
+
+        Entry(String repository) {
+            this.repository = repository;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.zhai.hw.service.metrics;
+
+import com.zhai.hw.config.MetricsProperties;
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.service.pool.JobLifecycleTracker;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmPoolManager;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * The service's Micrometer meters, exposed on {@code /actuator/prometheus}.
+ * <p>
+ * Every tag value comes from a fixed set, so the number of series cannot grow with traffic:
+ * {@code action} is one of the handled actions or {@code other}, {@code reason} is a
+ * {@link Rejection}, {@code stage} is a {@link Stage}, {@code shard} is a dispatch shard,
+ * {@code outcome} is a {@link JobLifecycleTracker.Outcome}, and {@code label} is a
+ * configured mapping label, at most {@code maxLabels} of them. All counters and timers are
+ * created up front and looked up without building tags, so recording on the request path
+ * does not allocate. Pool gauges are read when scraped and follow configuration reloads.
+ */
+@Component
+public class HwMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(HwMetrics.class);
+    private static final String OTHER = "other";
+
+    /**
+     * Steps of handling a webhook request.
+     */
+    public enum Stage {
+        VERIFY, PARSE, DISPATCH;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Why a webhook delivery was not dispatched.
+     */
+    public enum Rejection {
+        SIGNATURE, INVALID_PAYLOAD, TOO_LARGE, DUPLICATE, UNHANDLED_ACTION, QUEUE_FULL, RECONCILING, ERROR;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final MeterRegistry registry;
+    private final VmPoolManager vmPoolManager;
+    private final MetricsProperties properties;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<Rejection, Counter> rejections = new EnumMap<>(Rejection.class);
+    private final Map<String, Counter> actions = new HashMap<>();
+    private final Counter otherAction;
+    private final Timer readyLatency;
+    /** Gauges registered per lower-cased label. Guarded by this. */
+    private final Map<String, List<Meter>> poolGauges = new HashMap<>();
+
+    public HwMetrics(MeterRegistry registry, VmPoolManager vmPoolManager,
+                     ConfigurationLoaderService configurationLoaderService, MetricsProperties properties,
+                     @Value("${app.webhook.handled-actions:queued,in_progress,completed}")
+                     Set<String> handledActions) {
+        this.registry = registry;
+        this.vmPoolManager = vmPoolManager;
+        this.properties = properties;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("hw.webhook.stage")
+                    .description("Time spent in each step of handling a webhook request")
+                    .tag("stage", stage.tag)
+                    .register(registry));
+        }
+        for (Rejection rejection : Rejection.values()) {
+            rejections.put(rejection, Counter.builder("hw.webhook.rejected")
+                    .description("Webhook deliveries that were not dispatched, by reason")
+                    .tag("reason", rejection.tag)
+                    .register(registry));
+        }
+        for (String action : handledActions) {
+            actions.put(action, actionCounter(action));
+        }
+        this.otherAction = actionCounter(OTHER);
+        this.readyLatency = Timer.builder("hw.job.ready.latency")
+                .description("Time from a queued job being processed to a runner being up for it")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(30))
+                .register(registry);
+        configurationLoaderService.addSnapshotListener(this::registerPoolGauges);
+        registerPoolGauges(configurationLoaderService.getSnapshot());
+    }
+
+    private Counter actionCounter(String action) {
+        return Counter.builder("hw.webhook.events")
+                .description("Webhook events dispatched, by workflow job action")
+                .tag("action", action)
+                .register(registry);
+    }
+
+    /**
+     * Records the time a request stage took.
+     *
+     * @param startNanos The {@link System#nanoTime()} the stage started at
+     */
+    public void recordStage(Stage stage, long startNanos) {
+        stageTimers.get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRejection(Rejection rejection) {
+        rejections.get(rejection).increment();
+    }
+
+    /**
+     * Counts a dispatched event. Actions outside the handled set are counted as {@code other}.
+     */
+    public void recordEvent(String action) {
+        Counter counter = actions.get(action);
+        (counter == null ? otherAction : counter).increment();
+    }
+
+    /**
+     * Records the time from a queued job being processed to a runner being up for it: the
+     * runner of its VM first reporting online, or the job starting, whichever came first.
+     *
+     * @param queuedNanos The {@link System#nanoTime()} the job was processed at
+     */
+    public void recordReady(long queuedNanos) {
+        readyLatency.record(System.nanoTime() - queuedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Exports the queue depth of each dispatch shard as {@code hw.dispatch.queue.depth}.
+     *
+     * @param depth Returns the number of events waiting in a shard
+     */
+    public void registerDispatchShards(int shards, IntUnaryOperator depth) {
+        for (int shard = 0; shard < shards; shard++) {
+            int index = shard;
+            Gauge.builder("hw.dispatch.queue.depth", () -> depth.applyAsInt(index))
+                    .description("Events waiting in each dispatch shard's queue")
+                    .tag("shard", Integer.toString(shard))
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Registers a gauge for the runner status polls per minute the VMs' schedules add up to,
+     * and counters for the polls sent and the polls a fixed interval would have sent.
+     */
+    public void registerStatusPolling(DoubleSupplier scheduled, LongSupplier sent, LongSupplier fixed) {
+        Gauge.builder("hw.runner.status.polls.scheduled", scheduled, DoubleSupplier::getAsDouble)
+                .description("Runner status polls per minute, as currently scheduled")
+                .register(registry);
+        FunctionCounter.builder("hw.runner.status.polls", sent, LongSupplier::getAsLong)
+                .description("Runner status polls sent")
+                .register(registry);
+        FunctionCounter.builder("hw.runner.status.polls.fixed", fixed, LongSupplier::getAsLong)
+                .description("Runner status polls that polling every VM once per interval would have sent")
+                .register(registry);
+    }
+
+    /**
+     * Registers a counter per job lifecycle outcome, read from the tracker when scraped.
+     */
+    public void registerJobLifecycle(ToLongFunction<JobLifecycleTracker.Outcome> count) {
+        for (JobLifecycleTracker.Outcome outcome : JobLifecycleTracker.Outcome.values()) {
+            FunctionCounter.builder("hw.job.lifecycle", outcome, count::applyAsLong)
+                    .description("Job lifecycle events and status polls applied to VMs, by what they did")
+                    .tag("outcome", outcome.tag)
+                    .register(registry);
+        }
+    }
+
+    synchronized void registerPoolGauges(ConfigSnapshot snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        Map<String, String> configured = new LinkedHashMap<>();
+        for (LabelVmMapping mapping : snapshot.config().getLabelVmMappings()) {
+            configured.put(mapping.getLabel().toLowerCase(Locale.ROOT), mapping.getLabel());
+        }
+        // Removed first, so that labels replacing them are not turned away by the limit
+        poolGauges.entrySet().removeIf(entry -> {
+            String label = configured.get(entry.getKey());
+            if (label != null && label.equals(entry.getValue().get(0).getId().getTag("label"))) {
+                return false;
+            }
+            entry.getValue().forEach(registry::remove);
+            return true;
+        });
+        for (Map.Entry<String, String> entry : configured.entrySet()) {
+            String key = entry.getKey();
+            if (poolGauges.containsKey(key)) {
+                continue;
+            }
+            if (poolGauges.size() >= properties.getMaxLabels()) {
+                logger.warn("Not exporting pool gauges for {}: the limit of {} labels is reached",
+                        entry.getValue(), properties.getMaxLabels());
+                continue;
+            }
+            List<Meter> gauges = new ArrayList<>(3);
+            gauges.add(poolGauge(key, entry.getValue(), "warm", VmPool::getWarmCount));
+            gauges.add(poolGauge(key, entry.getValue(), "busy", VmPool::getBusyCount));
+            gauges.add(poolGauge(key, entry.getValue(), "provisioning", VmPool::getProvisioningCount));
+            poolGauges.put(key, gauges);
+        }
+    }
+
+    private Gauge poolGauge(String key, String label, String state, ToIntFunction<VmPool> value) {
+        return Gauge.builder("hw.pool.vms", vmPoolManager, manager -> {
+                    VmPool pool = manager.getPool(key);
+                    return pool == null ? 0 : value.applyAsInt(pool);
+                })
+                .description("VMs in each pool, by state")
+                .tag("label", label)
+                .tag("state", state)
+                .register(registry);
+    }
+}
@@ -0,0 +1,151 @@
+package com.zhai.hw.service.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Retires VMs that have been idle for longer than their mapping's {@code idleTimeout}.
+ * <p>
+ * A VM gets an expiry on a {@link TimingWheel} each time it becomes idle, and the expiry is
+ * cancelled when the VM is claimed, so the reaper never scans the pools. When an expiry
+ * fires, the VM is retired unless its pool is at its warm target, which is never below
+ * {@code minimumWarmVms}; in that case it is kept and checked again after another idle timeout.
+ * A VM whose label has been removed from the configuration, or whose runner's repository is
+ * not known and so can be handed no job, is retired regardless.
+ */
+@Component
+public class IdleVmReaper implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdleVmReaper.class);
+
+    private final VmPoolManager vmPoolManager;
+    private final TimingWheel<ManagedVm> wheel;
+    private final Duration tick;
+    private final List<Consumer<ManagedVm>> retiredListeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService ticker;
+
+    @Autowired
+    public IdleVmReaper(VmPoolManager vmPoolManager,
+                        @Value("${app.pool.idle-reaper.tick:PT1S}") Duration tick,
+                        @Value("${app.pool.idle-reaper.wheel-size:512}") int wheelSize) {
+        this(vmPoolManager, tick, wheelSize, Clock.systemUTC());
+    }
+
+    IdleVmReaper(VmPoolManager vmPoolManager, Duration tick, int wheelSize, Clock clock) {
+        this.vmPoolManager = vmPoolManager;
+        this.tick = tick;
+        this.wheel = new TimingWheel<>(tick, wheelSize, clock);
+        vmPoolManager.addIdleListener(this::scheduleExpiry);
+    }
+
+    /**
+     * Registers a callback for VMs retired by the reaper. It runs on the reaper thread.
+     */
+    public void addRetiredListener(Consumer<ManagedVm> listener) {
+        retiredListeners.add(listener);
+    }
+
+    /**
+     * @return The number of idle VMs with a pending expiry
+     */
+    public int getScheduledCount() {
+        return wheel.size();
+    }
+
+    private void scheduleExpiry(VmPool pool, ManagedVm vm) {
+        vm.setIdleExpiry(wheel.schedule(vm, pool.getMapping().getPoolParameters().getIdleTimeout()));
+    }
+
+    /**
+     * Fires every expiry that is due.
+     *
+     * @return The number of VMs retired
+     */
+    int advance() {
+        int[] retired = new int[1];
+        wheel.advance(vm -> {
+            if (expire(vm)) {
+                retired[0]++;
+            }
+        });
+        return retired[0];
+    }
+
+    private boolean expire(ManagedVm vm) {
+        TimingWheel.Timeout<?> expiry = vm.getIdleExpiry();
+        if (expiry == null || !expiry.isExpired()) {
+            // The VM went idle again after this expiry was scheduled
+            return false;
+        }
+        VmPool pool = vm.getPool();
+        // A pool whose label a reload removed, or replaced, has no warm target to keep
+        boolean configured = vmPoolManager.getPool(vm.getLabel()) == pool;
+        // Nor can a VM whose repository is not known take a job
+        boolean claimable = configured && vm.getRepository() != null;
+        if (pool.retireIdle(vm, claimable ? pool.getWarmTarget() : 0)) {
+            if (claimable) {
+                logger.info("Retired VM {} after idling for {}", vm.getName(),
+                        pool.getMapping().getPoolParameters().getIdleTimeout());
+            } else if (configured) {
+                logger.info("Retired VM {}: the repository its runner registered with is not known", vm.getName());
+            } else {
+                logger.info("Retired VM {}: label {} is no longer configured", vm.getName(), vm.getLabel());
+            }
+            for (Consumer<ManagedVm> listener : retiredListeners) {
+                try {
+                    listener.accept(vm);
+                } catch (RuntimeException e) {
+                    logger.error("Retired VM listener failed for {}", vm.getName(), e);
+                }
+            }
+            return true;
+        }
+        if (vm.getState() == VmState.IDLE) {
+            // Kept to honour the warm target
+            scheduleExpiry(pool, vm);
+        }
+        return false;
+    }
+
+    @Override
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idle-vm-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                advance();
+            } catch (RuntimeException e) {
+                logger.error("Idle VM reaper tick failed", e);
+            }
+        }, tick.toMillis(), tick.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return ticker != null;
+    }
+}
@@ -0,0 +1,451 @@
+package com.zhai.hw.service.pool;
+
+import com.zhai.hw.config.LifecycleProperties;
+import com.zhai.hw.service.metrics.HwMetrics;
+import com.zhai.hw.service.status.RunnerStatus;
+import com.zhai.hw.service.status.RunnerStatusPoller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Follows every managed VM through the jobs it runs, driven by the {@code queued},
+ * {@code in_progress} and {@code completed} webhook events.
+ * <p>
+ * A VM is claimed for a job when the job is queued, but GitHub starts the job on whichever
+ * matching runner is free and only names that runner in {@code in_progress} and
+ * {@code completed}. Each VM therefore keeps the jobs claimed for it or running on it, keyed
+ * by {@code workflow_job.id}, and is found from a runner name by the VM's name, with or
+ * without a {@code -<n>} suffix for VMs that host several runners. A job that completes, or
+ * starts on a different runner, gives its VM back to the warm pool as soon as the event is
+ * handled, not on the next status poll.
+ * <p>
+ * Events can be late, repeated or missing. A {@code completed} for a job the VM no longer
+ * holds is counted as out of order and changes nothing; a {@code completed} without an
+ * {@code in_progress} is applied and counted as a missed start; a runner that starts another
+ * job while it still holds one counts as a missed {@code completed}. The runner status poll
+ * is the fallback: a busy VM whose runner reports {@code idle} is released once its jobs are
+ * older than {@code completed-grace} if they started, or {@code claim-timeout} if they never
+ * did, and an idle VM whose runner reports {@code busy} is taken out of the warm pool.
+ * <p>
+ * A job is ready, for {@code hw.job.ready.latency}, once the VM claimed for it has a runner
+ * up: when a poll first finds the runner online, at the claim if that happened before, or
+ * when the job starts, whichever comes first. A job cancelled before then is never ready.
+ * <p>
+ * Events of one VM can arrive on several dispatch workers, since runners serve more than one
+ * repository, and polls arrive on the poller's thread, so each VM's jobs are guarded by the
+ * VM's own entry.
+ */
+@Component
+public class JobLifecycleTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobLifecycleTracker.class);
+
+    static final String BUSY = "busy";
+    static final String IDLE = "idle";
+
+    /**
+     * What the tracker did with an event or poll.
+     */
+    public enum Outcome {
+        /** An {@code in_progress} was applied. */
+        STARTED,
+        /** A {@code completed} was applied. */
+        COMPLETED,
+        /** A VM was returned to the warm pool by an event. */
+        RELEASED_BY_EVENT,
+        /** A VM was returned to the warm pool, or taken out of it, by a status poll. */
+        CORRECTED_BY_POLL,
+        /** A job started on another runner than the VM claimed for it. */
+        REASSIGNED,
+        /** A {@code completed} for a job its runner no longer holds. */
+        OUT_OF_ORDER,
+        /** A job completed, or a runner was busy, without an {@code in_progress}. */
+        MISSED_IN_PROGRESS,
+        /** A runner started a job, or reported idle, without the {@code completed} of the previous one. */
+        MISSED_COMPLETED,
+        /** A VM claimed for a job that never started on it. */
+        EXPIRED_CLAIM,
+        /** An event named a runner that is not a managed VM. */
+        UNKNOWN_RUNNER;
+
+        public final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private enum Phase {
+        CLAIMED, RUNNING
+    }
+
+    private record Job(Phase phase, long since) {
+    }
+
+    /**
+     * A VM and the jobs it holds. Guarded by its own monitor.
+     */
+    private static final class Entry {
+        final VmPool pool;
+        final ManagedVm vm;
+        final Map<Long, Job> jobs = new HashMap<>(4);
+        /** Whether a poll has found the VM's runner up. */
+        boolean online;
+
+        Entry(VmPool pool, ManagedVm vm) {
+            this.pool = pool;
+            this.vm = vm;
+        }
+    }
+
+    private final VmPoolManager vmPoolManager;
+    private final LifecycleProperties properties;
+    private final HwMetrics metrics;
+    private final Clock clock;
+    private final Map<String, Entry> vms = new ConcurrentHashMap<>();
+    /** VMs claimed for queued jobs that have not started yet. */
+    private final Map<Long, Entry> claims = new ConcurrentHashMap<>();
+    /** Queued jobs waiting for a VM to be provisioned; {@code true} once they started or completed. */
+    private final Map<Long, Boolean> provisioning = new ConcurrentHashMap<>();
+    /** {@link System#nanoTime()} each queued job was processed at, until its runner is up. */
+    private final Map<Long, Long> awaitingReady = new ConcurrentHashMap<>();
+    private final Map<Outcome, LongAdder> counts = new EnumMap<>(Outcome.class);
+
+    @Autowired
+    public JobLifecycleTracker(VmPoolManager vmPoolManager, IdleVmReaper idleVmReaper,
+                               RunnerStatusPoller runnerStatusPoller, LifecycleProperties properties,
+                               HwMetrics metrics) {
+        this(vmPoolManager, idleVmReaper, properties, metrics, Clock.systemUTC());
+        runnerStatusPoller.addBatchListener(this::onStatuses);
+        metrics.registerJobLifecycle(this::count);
+    }
+
+    JobLifecycleTracker(VmPoolManager vmPoolManager, IdleVmReaper idleVmReaper, LifecycleProperties properties,
+                        HwMetrics metrics, Clock clock) {
+        this.vmPoolManager = vmPoolManager;
+        this.properties = properties;
+        this.metrics = metrics;
+        this.clock = clock;
+        for (Outcome outcome : Outcome.values()) {
+            counts.put(outcome, new LongAdder());
+        }
+        vmPoolManager.addIdleListener((pool, vm) -> vms.computeIfAbsent(vm.getName(), name -> new Entry(pool, vm)));
+        idleVmReaper.addRetiredListener(vm -> vms.remove(vm.getName()));
+    }
+
+    /**
+     * Records that a VM was claimed for a queued job.
+     *
+     * @param queuedNanos The {@link System#nanoTime()} the job was processed at
+     */
+    public void claimed(long jobId, ManagedVm vm, long queuedNanos) {
+        Entry entry = vms.get(vm.getName());
+        if (entry == null) {
+            // Provisioned straight into this job, so the VM has never been idle
+            VmPool pool = vmPoolManager.getPool(vm.getLabel());
+            if (pool == null || vm.getState() == VmState.RETIRED) {
+                return;
+            }
+            entry = vms.computeIfAbsent(vm.getName(), name -> new Entry(pool, vm));
+        }
+        synchronized (entry) {
+            if (Boolean.TRUE.equals(provisioning.remove(jobId))) {
+                // The job ran somewhere else while this VM was being provisioned for it
+                record(Outcome.REASSIGNED);
+                releaseIfFree(entry, Outcome.RELEASED_BY_EVENT);
+                return;
+            }
+            // Released by an earlier claim's job, or by a poll, between the pool handing it out and now
+            if (entry.vm.getState() != VmState.BUSY && !entry.pool.claim(entry.vm)) {
+                return;
+            }
+            entry.jobs.put(jobId, new Job(Phase.CLAIMED, clock.millis()));
+            claims.put(jobId, entry);
+            if (entry.online) {
+                awaitingReady.remove(jobId);
+                metrics.recordReady(queuedNanos);
+            } else {
+                awaitingReady.put(jobId, queuedNanos);
+            }
+        }
+    }
+
+    /**
+     * Records that a queued job is waiting for a VM to be provisioned.
+     *
+     * @param queuedNanos The {@link System#nanoTime()} the job was processed at
+     */
+    public void provisioning(long jobId, long queuedNanos) {
+        provisioning.put(jobId, Boolean.FALSE);
+        awaitingReady.put(jobId, queuedNanos);
+    }
+
+    /**
+     * Records that no VM will be provisioned for a queued job.
+     */
+    public void abandoned(long jobId) {
+        provisioning.remove(jobId);
+        awaitingReady.remove(jobId);
+    }
+
+    /**
+     * Applies an {@code in_progress} event.
+     *
+     * @param runnerName The runner GitHub started the job on
+     */
+    public void started(long jobId, String runnerName) {
+        record(Outcome.STARTED);
+        provisioning.replace(jobId, Boolean.TRUE);
+        // Whichever runner it started on is up
+        Long queuedNanos = awaitingReady.remove(jobId);
+        if (queuedNanos != null) {
+            metrics.recordReady(queuedNanos);
+        }
+        Entry runner = find(runnerName);
+        Entry claimed = claims.remove(jobId);
+        if (claimed != null && claimed != runner) {
+            record(Outcome.REASSIGNED);
+            drop(claimed, jobId);
+        }
+        if (runner == null) {
+            return;
+        }
+        synchronized (runner) {
+            if (runner.vm.getState() == VmState.RETIRED) {
+                return;
+            }
+            if (runner.vm.getState() == VmState.IDLE) {
+                runner.pool.claim(runner.vm);
+            }
+            runner.jobs.put(jobId, new Job(Phase.RUNNING, clock.millis()));
+            // Each runner runs one job at a time, so jobs beyond that have finished unseen
+            int excess = running(runner) - Math.max(1, runner.pool.getMapping().getRunnersPerVm());
+            if (excess > 0) {
+                evictOldestRunning(runner, jobId, excess);
+            }
+        }
+    }
+
+    /**
+     * Applies a {@code completed} event.
+     *
+     * @param runnerName The runner the job ran on, or {@code null} if it never started
+     */
+    public void completed(long jobId, String runnerName) {
+        record(Outcome.COMPLETED);
+        provisioning.replace(jobId, Boolean.TRUE);
+        Long queuedNanos = awaitingReady.remove(jobId);
+        if (queuedNanos != null && runnerName != null && !runnerName.isEmpty()) {
+            // Ran without an in_progress, so a runner was up for it by now; a cancelled job never was
+            metrics.recordReady(queuedNanos);
+        }
+        Entry runner = find(runnerName);
+        Entry claimed = claims.remove(jobId);
+        if (claimed != null && claimed != runner) {
+            // Cancelled before it started, or run elsewhere without an in_progress
+            if (runner != null) {
+                record(Outcome.REASSIGNED);
+            }
+            drop(claimed, jobId);
+        }
+        if (runner == null) {
+            return;
+        }
+        synchronized (runner) {
+            Job job = runner.jobs.remove(jobId);
+            if (job == null) {
+                // Either it never reported starting here, or it was let go by a later event or a poll
+                record(claimed != null ? Outcome.MISSED_IN_PROGRESS : Outcome.OUT_OF_ORDER);
+                return;
+            }
+            if (job.phase() == Phase.CLAIMED) {
+                record(Outcome.MISSED_IN_PROGRESS);
+            }
+            releaseIfFree(runner, Outcome.RELEASED_BY_EVENT);
+        }
+    }
+
+    /**
+     * Reconciles VMs with their runners' reported state. Runs on the poller's thread.
+     */
+    void onStatuses(List<RunnerStatus> batch) {
+        long now = clock.millis();
+        long grace = properties.getCompletedGrace().toMillis();
+        long claimTimeout = properties.getClaimTimeout().toMillis();
+        for (RunnerStatus status : batch) {
+            if (!status.runnerOnline()) {
+                continue;
+            }
+            Entry entry = vms.get(status.vmName());
+            if (entry == null) {
+                continue;
+            }
+            boolean idle = IDLE.equals(status.runnerState());
+            synchronized (entry) {
+                if (!entry.online) {
+                    entry.online = true;
+                    ready(entry);
+                }
+                if (idle && entry.vm.getState() == VmState.BUSY) {
+                    expire(entry, now, grace, claimTimeout);
+                    releaseIfFree(entry, Outcome.CORRECTED_BY_POLL);
+                } else if (BUSY.equals(status.runnerState()) && entry.vm.getState() == VmState.IDLE
+                        && entry.pool.claim(entry.vm)) {
+                    logger.info("VM {} reports a running job that was never reported started", entry.vm.getName());
+                    record(Outcome.MISSED_IN_PROGRESS);
+                    record(Outcome.CORRECTED_BY_POLL);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return How many times the tracker reached an outcome
+     */
+    public long count(Outcome outcome) {
+        return counts.get(outcome).sum();
+    }
+
+    /**
+     * @return The number of queued jobs that have no runner up for them yet
+     */
+    public int getAwaitingReadyCount() {
+        return awaitingReady.size();
+    }
+
+    /**
+     * Returns the tracked VMs and jobs and the count of every outcome.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("vms", vms.size());
+        body.put("claimed", claims.size());
+        body.put("provisioning", provisioning.size());
+        body.put("awaitingReady", awaitingReady.size());
+        Map<String, Long> outcomes = new LinkedHashMap<>();
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome.tag, count(outcome));
+        }
+        body.put("outcomes", outcomes);
+        return body;
+    }
+
+    private Entry find(String runnerName) {
+        if (runnerName == null || runnerName.isEmpty()) {
+            return null;
+        }
+        Entry entry = vms.get(runnerName);
+        if (entry == null) {
+            int dash = runnerName.lastIndexOf('-');
+            if (dash > 0 && isDigits(runnerName, dash + 1)) {
+                entry = vms.get(runnerName.substring(0, dash));
+            }
+        }
+        if (entry == null) {
+            record(Outcome.UNKNOWN_RUNNER);
+        }
+        return entry;
+    }
+
+    private void drop(Entry entry, long jobId) {
+        synchronized (entry) {
+            if (entry.jobs.remove(jobId) != null) {
+                releaseIfFree(entry, Outcome.RELEASED_BY_EVENT);
+            }
+        }
+    }
+
+    /**
+     * Records the jobs claimed for a VM as ready, now that its runner is up. Must hold the
+     * entry's monitor.
+     */
+    private void ready(Entry entry) {
+        for (Long jobId : entry.jobs.keySet()) {
+            Long queuedNanos = awaitingReady.remove(jobId);
+            if (queuedNanos != null) {
+                metrics.recordReady(queuedNanos);
+            }
+        }
+    }
+
+    /** Must hold the entry's monitor. */
+    private void releaseIfFree(Entry entry, Outcome outcome) {
+        if (entry.jobs.isEmpty() && entry.pool.release(entry.vm)) {
+            logger.debug("VM {} returned to pool {}", entry.vm.getName(), entry.pool.getLabel());
+            record(outcome);
+        }
+    }
+
+    /** Must hold the entry's monitor. */
+    private void expire(Entry entry, long now, long grace, long claimTimeout) {
+        Iterator<Map.Entry<Long, Job>> jobs = entry.jobs.entrySet().iterator();
+        while (jobs.hasNext()) {
+            Map.Entry<Long, Job> held = jobs.next();
+            Job job = held.getValue();
+            if (job.phase() == Phase.RUNNING && now - job.since() >= grace) {
+                record(Outcome.MISSED_COMPLETED);
+                jobs.remove();
+            } else if (job.phase() == Phase.CLAIMED && now - job.since() >= claimTimeout) {
+                record(Outcome.EXPIRED_CLAIM);
+                claims.remove(held.getKey(), entry);
+                awaitingReady.remove(held.getKey());
+                jobs.remove();
+            }
+        }
+    }
+
+    /** Must hold the entry's monitor. */
+    private void evictOldestRunning(Entry entry, long keep, int count) {
+        for (int i = 0; i < count; i++) {
+            Long oldest = null;
+            long since = Long.MAX_VALUE;
+            for (Map.Entry<Long, Job> held : entry.jobs.entrySet()) {
+                if (held.getValue().phase() == Phase.RUNNING && held.getKey() != keep
+                        && held.getValue().since() < since) {
+                    oldest = held.getKey();
+                    since = held.getValue().since();
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            entry.jobs.remove(oldest);
+            record(Outcome.MISSED_COMPLETED);
+        }
+    }
+
+    private static int running(Entry entry) {
+        int running = 0;
+        for (Job job : entry.jobs.values()) {
+            if (job.phase() == Phase.RUNNING) {
+                running++;
+            }
+        }
+        return running;
+    }
+
+    private static boolean isDigits(String value, int from) {
+        if (from >= value.length()) {
+            return false;
+        }
+        for (int i = from; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void record(Outcome outcome) {
+        counts.get(outcome).increment();
+    }
+}
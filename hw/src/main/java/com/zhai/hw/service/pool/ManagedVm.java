@@ -0,0 +1,107 @@
+package com.zhai.hw.service.pool;
+
+import com.zhai.hw.service.status.RunnerStatus;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A VM owned by a {@link VmPool}.
+ * <p>
+ * State changes are compare-and-set, so two threads can never both claim the same VM
+ * and a VM that is being retired cannot be handed out.
+ */
+public final class ManagedVm {
+
+    private final String name;
+    private final VmPool pool;
+    private final String repository;
+    private final AtomicReference<VmState> state = new AtomicReference<>(VmState.IDLE);
+    private volatile RunnerStatus lastStatus;
+    private volatile TimingWheel.Timeout<?> idleExpiry;
+
+    ManagedVm(String name, VmPool pool, String repository) {
+        this.name = name;
+        this.pool = pool;
+        this.repository = repository;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLabel() {
+        return pool.getLabel();
+    }
+
+    /**
+     * @return The repository the VM's runner is registered with, or {@code null} if it is not known
+     */
+    public String getRepository() {
+        return repository;
+    }
+
+    /**
+     * @return The pool the VM belongs to, which may no longer be configured
+     */
+    public VmPool getPool() {
+        return pool;
+    }
+
+    public VmState getState() {
+        return state.get();
+    }
+
+    /**
+     * @return The most recent poll of the VM's runner, or {@code null} if it has not been polled
+     */
+    public RunnerStatus getLastStatus() {
+        return lastStatus;
+    }
+
+    public void recordStatus(RunnerStatus status) {
+        this.lastStatus = status;
+    }
+
+    /**
+     * @return When the VM is next due to be considered for retirement while idle, in epoch
+     *         milliseconds, or {@code -1} if no idle expiry is pending
+     */
+    public long getIdleDeadlineMillis() {
+        TimingWheel.Timeout<?> current = idleExpiry;
+        if (current == null || current.isCancelled() || current.isExpired()) {
+            return -1;
+        }
+        return current.getDeadlineMillis();
+    }
+
+    TimingWheel.Timeout<?> getIdleExpiry() {
+        return idleExpiry;
+    }
+
+    /**
+     * Replaces the VM's idle expiry, cancelling the previous one.
+     */
+    void setIdleExpiry(TimingWheel.Timeout<?> idleExpiry) {
+        TimingWheel.Timeout<?> previous = this.idleExpiry;
+        this.idleExpiry = idleExpiry;
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    void cancelIdleExpiry() {
+        TimingWheel.Timeout<?> current = idleExpiry;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    boolean transition(VmState expected, VmState next) {
+        return state.compareAndSet(expected, next);
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + pool.getLabel() + ", " + state.get() + "]";
+    }
+}
@@ -0,0 +1,20 @@
+package com.zhai.hw.service.pool;
+
+/**
+ * Receives the scale-up signal of a {@link VmPool}.
+ */
+@FunctionalInterface
+public interface ScaleUpListener {
+
+    /**
+     * Called once each time the number of warm VMs in a pool falls to or below its
+     * {@code scaleUpTriggerThreshold}. The signal is re-armed when the warm count rises
+     * above the threshold again.
+     * <p>
+     * Runs on the thread that claimed or retired the VM, so it must not block.
+     *
+     * @param pool      The pool that needs capacity
+     * @param warmCount The number of idle VMs when the threshold was crossed
+     */
+    void onScaleUp(VmPool pool, int warmCount);
+}
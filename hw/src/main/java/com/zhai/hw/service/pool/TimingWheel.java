@@ -0,0 +1,211 @@
+package com.zhai.hw.service.pool;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel: scheduling and cancelling are O(1), and advancing only visits the
+ * buckets of the ticks that have passed.
+ * <p>
+ * Any thread may schedule or cancel. New timeouts go through a lock-free queue and are
+ * placed in their bucket by the next {@link #advance}, and cancelling only flips the
+ * timeout's state; the entry is unlinked when its bucket is next visited. Advancing must
+ * always happen on the same thread. Deadlines are rounded up to the next tick.
+ *
+ * @param <T> The type of item a timeout carries
+ */
+public class TimingWheel<T> {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickMillis;
+    private final int mask;
+    private final Bucket<T>[] buckets;
+    private final Clock clock;
+    private final long startMillis;
+    private final Queue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private long currentTick;
+
+    /**
+     * @param tick      The resolution of the wheel
+     * @param wheelSize The number of buckets, rounded up to a power of two
+     * @param clock     The time source
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(Duration tick, int wheelSize, Clock clock) {
+        if (tick.toMillis() < 1 || wheelSize < 1) {
+            throw new IllegalArgumentException("Tick must be at least 1 ms and the wheel must have buckets");
+        }
+        this.tickMillis = tick.toMillis();
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket<>();
+        }
+        this.clock = clock;
+        this.startMillis = clock.millis();
+    }
+
+    /**
+     * Schedules {@code item} to expire after {@code delay}.
+     */
+    public Timeout<T> schedule(T item, Duration delay) {
+        Timeout<T> timeout = new Timeout<>(this, item, clock.millis() + Math.max(0, delay.toMillis()));
+        pendingCount.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Processes every tick up to the clock's current time, handing each expired item to
+     * {@code expired}.
+     *
+     * @return The number of items that expired
+     */
+    public int advance(Consumer<T> expired) {
+        long nowTick = (clock.millis() - startMillis) / tickMillis;
+        transferScheduled();
+        int count = 0;
+        while (currentTick <= nowTick) {
+            count += expireBucket(buckets[(int) (currentTick & mask)], expired);
+            currentTick++;
+        }
+        return count;
+    }
+
+    /**
+     * @return Timeouts that have been scheduled and have neither expired nor been cancelled
+     */
+    public int size() {
+        return pendingCount.get();
+    }
+
+    private void transferScheduled() {
+        Timeout<T> timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state.get() == CANCELLED) {
+                continue;
+            }
+            // Ceiling division, so nothing fires before its deadline
+            long deadlineTick = (timeout.deadlineMillis - startMillis + tickMillis - 1) / tickMillis;
+            long ticks = Math.max(deadlineTick, currentTick);
+            timeout.remainingRounds = (ticks - currentTick) / buckets.length;
+            buckets[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private int expireBucket(Bucket<T> bucket, Consumer<T> expired) {
+        int count = 0;
+        Timeout<T> timeout = bucket.head;
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            if (timeout.state.get() == CANCELLED) {
+                bucket.remove(timeout);
+            } else if (timeout.remainingRounds <= 0) {
+                bucket.remove(timeout);
+                if (timeout.state.compareAndSet(PENDING, EXPIRED)) {
+                    pendingCount.decrementAndGet();
+                    expired.accept(timeout.item);
+                    count++;
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+        return count;
+    }
+
+    /**
+     * A scheduled expiry.
+     *
+     * @param <T> The type of item it carries
+     */
+    public static final class Timeout<T> {
+
+        private final TimingWheel<T> wheel;
+        private final T item;
+        private final long deadlineMillis;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long remainingRounds;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(TimingWheel<T> wheel, T item, long deadlineMillis) {
+            this.wheel = wheel;
+            this.item = item;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        /**
+         * Cancels the timeout.
+         *
+         * @return {@code false} if it had already expired or been cancelled
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(PENDING, CANCELLED)) {
+                wheel.pendingCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    /**
+     * A doubly linked list of timeouts, touched only by the advancing thread.
+     */
+    private static final class Bucket<T> {
+
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        void add(Timeout<T> timeout) {
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.zhai.hw.service.pool;
+
+/**
+ * Told whenever a VM becomes idle, so it can arrange the VM's idle expiry.
+ */
+@FunctionalInterface
+public interface VmIdleListener {
+
+    /**
+     * Called when a VM is added to its pool warm or released by a job, before it can be
+     * claimed again. Runs on the caller's thread and must not block.
+     *
+     * @param pool The pool the VM belongs to
+     * @param vm   The idle VM
+     */
+    void onIdle(VmPool pool, ManagedVm vm);
+}
@@ -0,0 +1,305 @@
+package com.zhai.hw.service.pool;
+
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The warm pool of one {@link LabelVmMapping}.
+ * <p>
+ * Nothing here takes a lock. Idle VMs sit on lock-free stacks, one per repository, since a
+ * runner registers with a single repository and can only take that repository's jobs; they
+ * are claimed with a compare-and-set on their state. Capacity is counted in a single atomic that covers
+ * outstanding reservations as well as live VMs, so {@code maximumPoolSize} holds no matter
+ * how many threads reserve at once. The most recently released VM is claimed first, which
+ * keeps the warmest VMs busy and lets the oldest idle ones age out.
+ */
+public class VmPool {
+
+    private final String label;
+    private final ScaleUpListener scaleUpListener;
+    private final VmIdleListener idleListener;
+    /** Idle VMs by the repository their runners are registered with; {@code ""} if not known. */
+    private final Map<String, Deque<ManagedVm>> idle = new ConcurrentHashMap<>();
+    private final AtomicInteger warm = new AtomicInteger();
+    private final AtomicInteger busy = new AtomicInteger();
+    /** Reservations not yet fulfilled plus every VM that has not been retired. */
+    private final AtomicInteger used = new AtomicInteger();
+    private final AtomicBoolean scaleUpArmed = new AtomicBoolean(true);
+
+    private volatile LabelVmMapping mapping;
+    /** Warm target set by the demand forecast, or -1 to use {@code minimumWarmVms} alone. */
+    private volatile int forecastWarmTarget = -1;
+
+    public VmPool(LabelVmMapping mapping, ScaleUpListener scaleUpListener) {
+        this(mapping, scaleUpListener, (pool, vm) -> { });
+    }
+
+    public VmPool(LabelVmMapping mapping, ScaleUpListener scaleUpListener, VmIdleListener idleListener) {
+        this.label = mapping.getLabel();
+        this.mapping = mapping;
+        this.scaleUpListener = scaleUpListener;
+        this.idleListener = idleListener;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public LabelVmMapping getMapping() {
+        return mapping;
+    }
+
+    /**
+     * Replaces the mapping after a configuration reload. Capacity already in use is kept
+     * even if the new maximum is lower; it drains as VMs are retired.
+     */
+    public void updateMapping(LabelVmMapping mapping) {
+        this.mapping = mapping;
+    }
+
+    /**
+     * Claims an idle VM whose runner is registered with the repository.
+     *
+     * @return The VM, now {@link VmState#BUSY}, or {@code null} if no VM is warm for the repository
+     */
+    public ManagedVm claim(String repository) {
+        Deque<ManagedVm> stack = idle.get(key(repository));
+        ManagedVm vm;
+        while (stack != null && (vm = stack.pollFirst()) != null) {
+            // Retiring an idle VM takes it off the stack, but it can be popped here first
+            if (vm.transition(VmState.IDLE, VmState.BUSY)) {
+                vm.cancelIdleExpiry();
+                busy.incrementAndGet();
+                warmDecreased(warm.decrementAndGet());
+                return vm;
+            }
+        }
+        // A job that finds the pool empty is also a reason to scale up
+        warmDecreased(warm.get());
+        return null;
+    }
+
+    /**
+     * Claims a particular idle VM, one GitHub has started a job on without the pool handing
+     * it out.
+     *
+     * @return {@code false} if the VM was not idle
+     */
+    public boolean claim(ManagedVm vm) {
+        if (!vm.transition(VmState.IDLE, VmState.BUSY)) {
+            return false;
+        }
+        vm.cancelIdleExpiry();
+        busy.incrementAndGet();
+        warmDecreased(warm.decrementAndGet());
+        // Taken off the stack so that releasing it later does not push it twice
+        stack(vm).removeFirstOccurrence(vm);
+        return true;
+    }
+
+    /**
+     * Returns a busy VM to the warm pool.
+     *
+     * @return {@code false} if the VM was not busy
+     */
+    public boolean release(ManagedVm vm) {
+        if (!vm.transition(VmState.BUSY, VmState.IDLE)) {
+            return false;
+        }
+        busy.decrementAndGet();
+        warmIncreased(warm.incrementAndGet());
+        idleListener.onIdle(this, vm);
+        stack(vm).offerFirst(vm);
+        return true;
+    }
+
+    /**
+     * Reserves capacity for VMs that are about to be provisioned.
+     *
+     * @param count The number of VMs wanted
+     * @return The number granted, between zero and {@code count}
+     */
+    public int reserve(int count) {
+        if (count <= 0) {
+            return 0;
+        }
+        while (true) {
+            int current = used.get();
+            int granted = Math.min(count, mapping.getPoolParameters().getMaximumPoolSize() - current);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (used.compareAndSet(current, current + granted)) {
+                return granted;
+            }
+        }
+    }
+
+    /**
+     * Gives back reservations that will not be fulfilled, for example because provisioning failed.
+     */
+    public void cancelReservations(int count) {
+        used.addAndGet(-count);
+    }
+
+    /**
+     * Fulfils one reservation with a VM that is ready to take a job.
+     *
+     * @param vmName     The VM's name
+     * @param repository The repository its runner registers with, or {@code null} if not known
+     * @return The VM, in state {@link VmState#IDLE}
+     */
+    public ManagedVm addWarmVm(String vmName, String repository) {
+        ManagedVm vm = new ManagedVm(vmName, this, repository);
+        warmIncreased(warm.incrementAndGet());
+        idleListener.onIdle(this, vm);
+        stack(vm).offerFirst(vm);
+        return vm;
+    }
+
+    /**
+     * Fulfils one reservation with a VM that goes straight to the job it was provisioned for.
+     * It is never on the idle stack, so no other job can claim it first.
+     *
+     * @param vmName     The VM's name
+     * @param repository The repository its runner registers with
+     * @return The VM, in state {@link VmState#BUSY}
+     */
+    public ManagedVm addBusyVm(String vmName, String repository) {
+        ManagedVm vm = new ManagedVm(vmName, this, repository);
+        vm.transition(VmState.IDLE, VmState.BUSY);
+        busy.incrementAndGet();
+        return vm;
+    }
+
+    /**
+     * Removes a VM from the pool and returns its capacity.
+     *
+     * @return {@code false} if the VM was already retired
+     */
+    public boolean retire(ManagedVm vm) {
+        if (vm.transition(VmState.IDLE, VmState.RETIRED)) {
+            vm.cancelIdleExpiry();
+            used.decrementAndGet();
+            warmDecreased(warm.decrementAndGet());
+            stack(vm).removeFirstOccurrence(vm);
+            return true;
+        }
+        if (vm.transition(VmState.BUSY, VmState.RETIRED)) {
+            used.decrementAndGet();
+            busy.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Retires an idle VM unless that would leave fewer than {@code floor} warm VMs. The
+     * floor check and the retirement are one atomic step with respect to other retirements.
+     *
+     * @return {@code true} if the VM was retired
+     */
+    public boolean retireIdle(ManagedVm vm, int floor) {
+        int current;
+        do {
+            current = warm.get();
+            if (current <= floor) {
+                return false;
+            }
+        } while (!warm.compareAndSet(current, current - 1));
+        if (!vm.transition(VmState.IDLE, VmState.RETIRED)) {
+            // Claimed or retired in the meantime
+            warm.incrementAndGet();
+            return false;
+        }
+        used.decrementAndGet();
+        warmDecreased(current - 1);
+        stack(vm).removeFirstOccurrence(vm);
+        return true;
+    }
+
+    /**
+     * @return The number of idle VMs
+     */
+    public int getWarmCount() {
+        return warm.get();
+    }
+
+    /**
+     * @return The number of VMs claimed for jobs
+     */
+    public int getBusyCount() {
+        return busy.get();
+    }
+
+    /**
+     * @return Live VMs plus outstanding reservations, as counted against {@code maximumPoolSize}
+     */
+    public int getUsedCapacity() {
+        return used.get();
+    }
+
+    /**
+     * Sets the warm target derived from forecast demand, or clears it with {@code -1}.
+     */
+    public void setForecastWarmTarget(int forecastWarmTarget) {
+        this.forecastWarmTarget = forecastWarmTarget;
+    }
+
+    /**
+     * @return The number of idle VMs the pool aims to keep: {@code minimumWarmVms} raised to the
+     *         forecast target, if there is one, and capped at {@code maximumPoolSize}
+     */
+    public int getWarmTarget() {
+        VmPoolParameters parameters = mapping.getPoolParameters();
+        return Math.min(parameters.getMaximumPoolSize(),
+                Math.max(parameters.getMinimumWarmVms(), forecastWarmTarget));
+    }
+
+    /**
+     * @return The number of VMs reserved and still being provisioned
+     */
+    public int getProvisioningCount() {
+        return Math.max(0, used.get() - warm.get() - busy.get());
+    }
+
+    /**
+     * @return The number of VMs that would have to be provisioned to reach the warm target,
+     *         limited by the remaining capacity
+     */
+    public int getWarmDeficit() {
+        VmPoolParameters parameters = mapping.getPoolParameters();
+        int pending = used.get() - warm.get() - busy.get();
+        int deficit = getWarmTarget() - warm.get() - pending;
+        return Math.max(0, Math.min(deficit, parameters.getMaximumPoolSize() - used.get()));
+    }
+
+    private Deque<ManagedVm> stack(ManagedVm vm) {
+        return idle.computeIfAbsent(key(vm.getRepository()), key -> new ConcurrentLinkedDeque<>());
+    }
+
+    private static String key(String repository) {
+        return repository == null ? "" : repository.toLowerCase(Locale.ROOT);
+    }
+
+    private void warmDecreased(int warmCount) {
+        if (warmCount <= mapping.getPoolParameters().getScaleUpTriggerThreshold()
+                && scaleUpArmed.compareAndSet(true, false)) {
+            scaleUpListener.onScaleUp(this, warmCount);
+        }
+    }
+
+    private void warmIncreased(int warmCount) {
+        if (warmCount > mapping.getPoolParameters().getScaleUpTriggerThreshold()) {
+            scaleUpArmed.set(true);
+        }
+    }
+}
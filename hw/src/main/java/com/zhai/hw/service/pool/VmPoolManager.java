@@ -0,0 +1,124 @@
+package com.zhai.hw.service.pool;
+
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps one {@link VmPool} per {@link LabelVmMapping} in the current configuration.
+ * <p>
+ * Pools survive configuration reloads: a mapping whose label is still present keeps its
+ * pool and VMs and only picks up the new parameters. Pools for removed labels are
+ * dropped from lookup; their VMs are left for the idle reaper, which retires each one once
+ * it has been idle for its old mapping's {@code idleTimeout}.
+ */
+@Service
+public class VmPoolManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(VmPoolManager.class);
+
+    private final Map<String, VmPool> pools = new ConcurrentHashMap<>();
+    private final List<ScaleUpListener> scaleUpListeners = new CopyOnWriteArrayList<>();
+    private final List<VmIdleListener> idleListeners = new CopyOnWriteArrayList<>();
+    private final ScaleUpListener dispatchScaleUp = this::fireScaleUp;
+    private final VmIdleListener dispatchIdle = this::fireIdle;
+    private long appliedVersion;
+
+    public VmPoolManager(ConfigurationLoaderService configurationLoaderService) {
+        // Loads the configuration if nothing has yet, so the pools exist before any bean that
+        // depends on them, such as the startup reconciler, looks at them
+        configurationLoaderService.getConfiguration();
+        configurationLoaderService.addSnapshotListener(this::apply);
+        ConfigSnapshot current = configurationLoaderService.getSnapshot();
+        if (current != null) {
+            apply(current);
+        }
+    }
+
+    /**
+     * Returns the pool for a mapping's label, ignoring case.
+     *
+     * @return The pool, or {@code null} if the label is not configured
+     */
+    public VmPool getPool(String label) {
+        return pools.get(label.toLowerCase(Locale.ROOT));
+    }
+
+    public Collection<VmPool> getPools() {
+        return Collections.unmodifiableCollection(pools.values());
+    }
+
+    /**
+     * Registers a callback for the scale-up signal of every pool.
+     */
+    public void addScaleUpListener(ScaleUpListener listener) {
+        scaleUpListeners.add(listener);
+    }
+
+    /**
+     * Registers a callback for VMs becoming idle in any pool.
+     */
+    public void addIdleListener(VmIdleListener listener) {
+        idleListeners.add(listener);
+    }
+
+    synchronized void apply(ConfigSnapshot snapshot) {
+        if (snapshot.version() <= appliedVersion) {
+            return;
+        }
+        appliedVersion = snapshot.version();
+        Set<String> configured = new HashSet<>();
+        for (LabelVmMapping mapping : snapshot.config().getLabelVmMappings()) {
+            String key = mapping.getLabel().toLowerCase(Locale.ROOT);
+            configured.add(key);
+            VmPool existing = pools.get(key);
+            if (existing == null) {
+                pools.put(key, new VmPool(mapping, dispatchScaleUp, dispatchIdle));
+            } else {
+                existing.updateMapping(mapping);
+            }
+        }
+        pools.keySet().removeIf(key -> {
+            if (configured.contains(key)) {
+                return false;
+            }
+            logger.info("Label {} is no longer configured; its pool is no longer used", key);
+            return true;
+        });
+        logger.debug("Applied configuration version {} to {} VM pools", snapshot.version(), pools.size());
+    }
+
+    private void fireScaleUp(VmPool pool, int warmCount) {
+        logger.debug("Pool {} needs capacity: {} warm VMs", pool.getLabel(), warmCount);
+        for (ScaleUpListener listener : scaleUpListeners) {
+            try {
+                listener.onScaleUp(pool, warmCount);
+            } catch (RuntimeException e) {
+                logger.error("Scale-up listener failed for pool {}", pool.getLabel(), e);
+            }
+        }
+    }
+
+    private void fireIdle(VmPool pool, ManagedVm vm) {
+        for (VmIdleListener listener : idleListeners) {
+            try {
+                listener.onIdle(pool, vm);
+            } catch (RuntimeException e) {
+                logger.error("Idle listener failed for VM {}", vm.getName(), e);
+            }
+        }
+    }
+}
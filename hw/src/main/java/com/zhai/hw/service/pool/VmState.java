@@ -0,0 +1,13 @@
+package com.zhai.hw.service.pool;
+
+/**
+ * Lifecycle state of a VM tracked by a {@link VmPool}.
+ */
+public enum VmState {
+    /** Registered with the runner service and waiting for a job. */
+    IDLE,
+    /** Claimed for a job. */
+    BUSY,
+    /** Removed from the pool; its capacity has been returned. */
+    RETIRED
+}
@@ -0,0 +1,144 @@
+package com.zhai.hw.service.provision;
+
+import com.zhai.hw.exception.ProvisioningException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process provisioner that creates no real VMs, for tests and local runs.
+ * <p>
+ * Requests complete after a fixed latency. Every request is recorded, and failures can be
+ * injected for the next calls. The inventory lists the VMs created and not yet deleted, in
+ * pages of {@code pageSize}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.provisioning.provider", havingValue = "fake", matchIfMissing = true)
+public class FakeVmProvisioner implements VmProvisioner {
+
+    private static final int DEFAULT_PAGE_SIZE = 500;
+
+    private final Duration latency;
+    private final int pageSize;
+    private final String addressPrefix;
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicInteger failuresToInject = new AtomicInteger();
+    private final List<ProvisionRequest> requests = new CopyOnWriteArrayList<>();
+    /** Live VMs by name, with the label they were created for. */
+    private final Map<String, LiveVm> live = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FakeVmProvisioner(@Value("${app.provisioning.fake.latency:PT2S}") Duration latency,
+                             @Value("${app.provisioning.fake.address-prefix:10.0}") String addressPrefix) {
+        this(latency, DEFAULT_PAGE_SIZE, addressPrefix);
+    }
+
+    public FakeVmProvisioner(Duration latency) {
+        this(latency, DEFAULT_PAGE_SIZE, "10.0");
+    }
+
+    public FakeVmProvisioner(Duration latency, int pageSize) {
+        this(latency, pageSize, "10.0");
+    }
+
+    /**
+     * @param addressPrefix The first two octets of the VMs' addresses; a {@code 127.} prefix
+     *                      makes every VM's status endpoint reachable on the loopback interface
+     */
+    public FakeVmProvisioner(Duration latency, int pageSize, String addressPrefix) {
+        this.latency = latency;
+        this.pageSize = pageSize;
+        this.addressPrefix = addressPrefix;
+    }
+
+    @Override
+    public CompletableFuture<List<ProvisionedVm>> provision(ProvisionRequest request) {
+        requests.add(request);
+        boolean fail = failuresToInject.getAndUpdate(n -> Math.max(0, n - 1)) > 0;
+        return CompletableFuture.supplyAsync(() -> {
+            if (fail) {
+                throw new ProvisioningException("Injected failure for " + request.requestId());
+            }
+            List<ProvisionedVm> vms = new ArrayList<>(request.count());
+            for (NewVm requested : request.vms()) {
+                int n = sequence.incrementAndGet();
+                ProvisionedVm vm = new ProvisionedVm(requested.name(),
+                        addressPrefix + "." + (n >> 8 & 0xff) + "." + (n & 0xff));
+                live.put(requested.name(), new LiveVm(request.mapping().getLabel(), vm));
+                vms.add(vm);
+            }
+            return vms;
+        }, delayed());
+    }
+
+    @Override
+    public CompletableFuture<Void> deprovision(String vmName) {
+        return CompletableFuture.runAsync(() -> live.remove(vmName), delayed());
+    }
+
+    @Override
+    public CompletableFuture<InventoryPage> listVms(String label, String pageToken) {
+        return CompletableFuture.supplyAsync(() -> {
+            // Pages continue after the last name of the previous one, so VMs deleted meanwhile
+            // do not shift the rest
+            List<ProvisionedVm> page = live.values().stream()
+                    .filter(vm -> vm.label().equalsIgnoreCase(label))
+                    .map(LiveVm::vm)
+                    .filter(vm -> pageToken == null || vm.name().compareTo(pageToken) > 0)
+                    .sorted(Comparator.comparing(ProvisionedVm::name))
+                    .limit(pageSize + 1L)
+                    .toList();
+            if (page.size() <= pageSize) {
+                return new InventoryPage(page, null);
+            }
+            List<ProvisionedVm> vms = page.subList(0, pageSize);
+            return new InventoryPage(vms, vms.get(pageSize - 1).name());
+        }, delayed());
+    }
+
+    /**
+     * Adds a VM to the inventory as if it had been created by an earlier run.
+     */
+    public void addExisting(String label, ProvisionedVm vm) {
+        live.put(vm.name(), new LiveVm(label, vm));
+    }
+
+    /**
+     * Makes the next {@code count} provision calls fail.
+     */
+    public void failNext(int count) {
+        failuresToInject.set(count);
+    }
+
+    public List<ProvisionRequest> getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return The names of VMs created and not yet deleted
+     */
+    public Set<String> getLiveVms() {
+        return live.keySet();
+    }
+
+    private Executor delayed() {
+        return CompletableFuture.delayedExecutor(latency.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private record LiveVm(String label, ProvisionedVm vm) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.zhai.hw.service.provision;
+
+import java.util.List;
+
+/**
+ * One page of a {@link VmProvisioner}'s inventory for a label.
+ *
+ * @param vms           The VMs on this page
+ * @param nextPageToken The token for the next page, or {@code null} if this is the last one
+ */
+public record InventoryPage(List<ProvisionedVm> vms, String nextPageToken) {
+}
@@ -0,0 +1,10 @@
+package com.zhai.hw.service.provision;
+
+/**
+ * One VM to be created as part of a {@link ProvisionRequest}.
+ *
+ * @param name       The VM's name, which is also the name its runner registers under
+ * @param customData The runner startup script, base64-encoded, to pass as the VM's custom data
+ */
+public record NewVm(String name, byte[] customData) {
+}
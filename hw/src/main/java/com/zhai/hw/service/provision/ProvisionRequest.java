@@ -0,0 +1,22 @@
+package com.zhai.hw.service.provision;
+
+import com.zhai.hw.model.LabelVmMapping;
+
+import java.util.List;
+
+/**
+ * One batched request for VMs of a single mapping.
+ *
+ * @param requestId Identifies the batch in logs and provider calls
+ * @param mapping   The VM shape and placement
+ * @param vms       The VMs to create, each with its own name and startup script
+ */
+public record ProvisionRequest(String requestId, LabelVmMapping mapping, List<NewVm> vms) {
+
+    /**
+     * @return The number of VMs to create
+     */
+    public int count() {
+        return vms.size();
+    }
+}
@@ -0,0 +1,10 @@
+package com.zhai.hw.service.provision;
+
+/**
+ * A VM created by a {@link VmProvisioner}.
+ *
+ * @param name           The VM's name in the provider
+ * @param privateAddress The address the runner status endpoint is reached on
+ */
+public record ProvisionedVm(String name, String privateAddress) {
+}
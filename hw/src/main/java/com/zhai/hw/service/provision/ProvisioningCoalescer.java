@@ -0,0 +1,428 @@
+package com.zhai.hw.service.provision;
+
+import com.zhai.hw.config.ProvisioningProperties;
+import com.zhai.hw.exception.ProvisioningException;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.service.bootstrap.StartupScriptRenderer;
+import com.zhai.hw.service.github.RegistrationToken;
+import com.zhai.hw.service.github.RegistrationTokenCache;
+import com.zhai.hw.service.pool.IdleVmReaper;
+import com.zhai.hw.service.pool.ManagedVm;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmPoolManager;
+import com.zhai.hw.service.reconcile.StartupReconciler;
+import com.zhai.hw.service.retry.RetryScheduler;
+import com.zhai.hw.service.state.VmStateRecorder;
+import com.zhai.hw.service.status.RunnerStatusPoller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns bursts of demand for one label into a single batched {@link VmProvisioner} call.
+ * <p>
+ * Jobs that find no warm VM, and pools that signal a scale-up, register demand for their
+ * label. The first demand opens a short window; when it closes, the jobs collected for the
+ * label first take any VMs that are warm by then for their repository, and the rest becomes
+ * one request for one VM for every {@code runnersPerVm} waiting jobs of a repository plus the
+ * pool's warm deficit, reserved against {@code maximumPoolSize}. When the VMs arrive, the waiting jobs get
+ * the batch's own VMs, added to the pool as busy so that no other claim can take them first;
+ * only the rest join the warm pool. Jobs left over because the pool is full stay queued on the
+ * label and are served by the next window after a VM of the label is released or retired.
+ * <p>
+ * Every VM is named here, so that its runner registers under the name the pool knows it by,
+ * and gets its own startup script with a registration token from the
+ * {@link RegistrationTokenCache}. A VM for waiting jobs registers with their repository; a warm
+ * VM with the repository of its label's most recently queued job, or the configured default
+ * repository before there is one. Without either, the label's warm VMs wait for its first job.
+ * A warm VM is only ever handed to jobs of the repository it registered with.
+ * <p>
+ * Pools are also topped up to their warm target periodically, which covers targets raised by
+ * the demand forecast, and as soon as the {@link StartupReconciler} has adopted a label's
+ * existing VMs. Pools are not topped up before that, so startup does not create VMs that
+ * are already running.
+ * <p>
+ * Provider calls go through the {@link RetryScheduler}, so a failed batch is retried with
+ * backoff and its jobs keep waiting rather than failing on the first error. A batch whose
+ * tokens cannot be fetched is not sent, and its jobs fail.
+ */
+@Component
+public class ProvisioningCoalescer implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProvisioningCoalescer.class);
+
+    private final VmProvisioner provisioner;
+    private final VmPoolManager vmPoolManager;
+    private final RunnerStatusPoller runnerStatusPoller;
+    private final RetryScheduler retryScheduler;
+    private final VmStateRecorder vmStateRecorder;
+    private final StartupReconciler startupReconciler;
+    private final StartupScriptRenderer startupScriptRenderer;
+    private final RegistrationTokenCache registrationTokenCache;
+    private final ProvisioningProperties properties;
+    private final Map<String, Demand> demand = new ConcurrentHashMap<>();
+    private final AtomicLong batches = new AtomicLong();
+    /** Sets this process's VM names apart from those created before a restart. */
+    private final String instance = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicInteger vmSequence = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    public ProvisioningCoalescer(VmProvisioner provisioner, VmPoolManager vmPoolManager,
+                                 RunnerStatusPoller runnerStatusPoller, IdleVmReaper idleVmReaper,
+                                 RetryScheduler retryScheduler, VmStateRecorder vmStateRecorder,
+                                 StartupReconciler startupReconciler, StartupScriptRenderer startupScriptRenderer,
+                                 RegistrationTokenCache registrationTokenCache, ProvisioningProperties properties) {
+        this.provisioner = provisioner;
+        this.vmPoolManager = vmPoolManager;
+        this.runnerStatusPoller = runnerStatusPoller;
+        this.retryScheduler = retryScheduler;
+        this.vmStateRecorder = vmStateRecorder;
+        this.startupReconciler = startupReconciler;
+        this.startupScriptRenderer = startupScriptRenderer;
+        this.registrationTokenCache = registrationTokenCache;
+        this.properties = properties;
+        // Created here rather than in start, since jobs can ask for VMs before this starts
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vm-provisioning");
+            thread.setDaemon(true);
+            return thread;
+        });
+        vmPoolManager.addScaleUpListener((pool, warmCount) -> requestWarm(pool));
+        vmPoolManager.addIdleListener((pool, vm) -> wakeWaiters(pool));
+        startupReconciler.addReconciledListener(pool -> {
+            // Before start, the first top-up picks the pool up
+            if (isRunning()) {
+                requestWarm(pool);
+            }
+        });
+        idleVmReaper.addRetiredListener(vm -> {
+            deprovision(vm);
+            VmPool pool = vmPoolManager.getPool(vm.getLabel());
+            if (pool != null) {
+                wakeWaiters(pool);
+            }
+        });
+    }
+
+    /**
+     * Notes that a job of the pool's label was queued for a repository. Warm VMs of the label
+     * register with that repository from now on, and its registration token is fetched ahead
+     * of the VM that will need it.
+     *
+     * @param repository The job's repository, as {@code owner/name}
+     */
+    public void jobQueued(VmPool pool, String repository) {
+        demandFor(pool).repository = repository;
+        registrationTokenCache.prefetch(repository);
+    }
+
+    /**
+     * Asks for a VM for a queued job whose pool had none warm.
+     *
+     * @param repository The job's repository, as {@code owner/name}
+     * @return A future completed with a claimed VM once one is provisioned or released; it
+     *         fails if provisioning fails
+     */
+    public CompletableFuture<ManagedVm> requestVm(VmPool pool, String repository) {
+        Waiter waiter = new Waiter(repository, new CompletableFuture<>());
+        Demand labelDemand = demandFor(pool);
+        labelDemand.waiters.add(waiter);
+        schedule(labelDemand);
+        return waiter.vm();
+    }
+
+    /**
+     * Asks for the pool to be brought up to its warm target in the next batch.
+     */
+    public void requestWarm(VmPool pool) {
+        schedule(demandFor(pool));
+    }
+
+    /**
+     * @return The number of provider calls made
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    private Demand demandFor(VmPool pool) {
+        return demand.computeIfAbsent(pool.getLabel().toLowerCase(Locale.ROOT), key -> new Demand(pool));
+    }
+
+    private void schedule(Demand labelDemand) {
+        if (!labelDemand.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            scheduler.schedule(() -> flush(labelDemand), properties.getCoalesceWindow().toMillis(),
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            labelDemand.scheduled.set(false);
+            ProvisioningException stopped = new ProvisioningException("VM provisioning has stopped", e);
+            Waiter waiter;
+            while ((waiter = labelDemand.waiters.poll()) != null) {
+                waiter.vm().completeExceptionally(stopped);
+            }
+        }
+    }
+
+    /**
+     * Opens a window for jobs of the pool still waiting for a VM, after one of its VMs was
+     * released or retired.
+     */
+    private void wakeWaiters(VmPool pool) {
+        Demand labelDemand = demand.get(pool.getLabel().toLowerCase(Locale.ROOT));
+        if (labelDemand != null && !labelDemand.waiters.isEmpty()) {
+            schedule(labelDemand);
+        }
+    }
+
+    void flush(Demand labelDemand) {
+        // Cleared before draining, so demand that arrives from here on opens a new window
+        labelDemand.scheduled.set(false);
+        List<Waiter> waiters = new ArrayList<>();
+        Waiter waiter;
+        while ((waiter = labelDemand.waiters.poll()) != null) {
+            waiters.add(waiter);
+        }
+        VmPool pool = labelDemand.pool;
+        LabelVmMapping mapping = pool.getMapping();
+        int runnersPerVm = mapping.getRunnersPerVm();
+        // VMs released since the jobs asked, or left warm by an earlier batch, go to jobs of the
+        // repository their runners are registered with
+        int served = 0;
+        List<List<Waiter>> forJobs = new ArrayList<>();
+        for (List<Waiter> jobs : chunk(waiters, runnersPerVm)) {
+            ManagedVm vm = pool.claim(jobs.get(0).repository());
+            if (vm == null) {
+                forJobs.add(jobs);
+            } else {
+                handOut(vm, jobs);
+                served += jobs.size();
+            }
+        }
+        String warmRepository = labelDemand.repository;
+        if (warmRepository == null && StringUtils.hasText(properties.getDefaultRepository())) {
+            warmRepository = properties.getDefaultRepository();
+        }
+        int deficit = warmRepository == null ? 0 : pool.getWarmDeficit();
+        int granted = pool.reserve(forJobs.size() + deficit);
+        if (granted < forJobs.size()) {
+            List<Waiter> left = new ArrayList<>();
+            forJobs.subList(granted, forJobs.size()).forEach(left::addAll);
+            logger.warn("Pool {} is at its maximum of {} VMs; {} jobs wait for a released VM", pool.getLabel(),
+                    mapping.getPoolParameters().getMaximumPoolSize(), left.size());
+            labelDemand.waiters.addAll(left);
+            forJobs = forJobs.subList(0, granted);
+        }
+        if (granted == 0) {
+            return;
+        }
+        List<Slot> slots = new ArrayList<>(granted);
+        for (List<Waiter> jobs : forJobs) {
+            slots.add(new Slot(vmName(pool), jobs.get(0).repository(), jobs));
+        }
+        while (slots.size() < granted) {
+            slots.add(new Slot(vmName(pool), warmRepository, List.of()));
+        }
+        String requestId = pool.getLabel() + "-" + batches.incrementAndGet();
+        logger.info("Provisioning {} VMs for {} ({} waiting jobs) as {}", granted, pool.getLabel(),
+                waiters.size() - served, requestId);
+        provision(labelDemand, requestId, slots);
+    }
+
+    /**
+     * Splits waiting jobs into the groups that will share a VM: up to {@code runnersPerVm}
+     * jobs of the same repository, in the order the jobs were queued.
+     */
+    private static List<List<Waiter>> chunk(List<Waiter> waiters, int runnersPerVm) {
+        Map<String, List<Waiter>> byRepository = new LinkedHashMap<>();
+        for (Waiter waiter : waiters) {
+            byRepository.computeIfAbsent(waiter.repository(), key -> new ArrayList<>()).add(waiter);
+        }
+        List<List<Waiter>> chunks = new ArrayList<>();
+        for (List<Waiter> jobs : byRepository.values()) {
+            for (int i = 0; i < jobs.size(); i += runnersPerVm) {
+                chunks.add(jobs.subList(i, Math.min(i + runnersPerVm, jobs.size())));
+            }
+        }
+        return chunks;
+    }
+
+    private String vmName(VmPool pool) {
+        return pool.getLabel().toLowerCase(Locale.ROOT) + "-" + instance + "-" + vmSequence.incrementAndGet();
+    }
+
+    /**
+     * Fetches a registration token for every repository in the batch, renders each VM's
+     * startup script and sends the batch to the provider.
+     */
+    private void provision(Demand labelDemand, String requestId, List<Slot> slots) {
+        VmPool pool = labelDemand.pool;
+        LabelVmMapping mapping = pool.getMapping();
+        Map<String, CompletableFuture<RegistrationToken>> tokens = new HashMap<>();
+        for (Slot slot : slots) {
+            tokens.computeIfAbsent(slot.repository(), registrationTokenCache::getToken);
+        }
+        CompletableFuture<List<ProvisionedVm>> created = CompletableFuture
+                .allOf(tokens.values().toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> {
+                    List<NewVm> vms = new ArrayList<>(slots.size());
+                    for (Slot slot : slots) {
+                        String token = tokens.get(slot.repository()).join().token();
+                        vms.add(new NewVm(slot.name(), startupScriptRenderer.renderBase64(pool.getLabel(),
+                                slot.name(), slot.repository(), token)));
+                    }
+                    return new ProvisionRequest(requestId, mapping, vms);
+                })
+                .thenCompose(request -> retryScheduler.execute("provision", requestId, mapping.getRegion(),
+                        () -> provisioner.provision(request)));
+        created.whenComplete((vms, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                pool.cancelReservations(slots.size());
+                logger.error("Provisioning request {} failed", requestId, cause);
+                slots.forEach(slot -> slot.waiters().forEach(w -> w.vm().completeExceptionally(cause)));
+                return;
+            }
+            fanOut(labelDemand, slots, vms);
+        });
+    }
+
+    private static void handOut(ManagedVm vm, List<Waiter> waiters) {
+        for (Waiter waiter : waiters) {
+            waiter.vm().complete(vm);
+        }
+    }
+
+    private void fanOut(Demand labelDemand, List<Slot> slots, List<ProvisionedVm> vms) {
+        VmPool pool = labelDemand.pool;
+        if (vms.size() < slots.size()) {
+            logger.warn("Provider created {} of {} VMs for {}", vms.size(), slots.size(), pool.getLabel());
+            pool.cancelReservations(slots.size() - vms.size());
+        }
+        Map<String, ProvisionedVm> byName = new HashMap<>();
+        vms.forEach(vm -> byName.put(vm.name(), vm));
+        Map<ManagedVm, List<Waiter>> claimed = new LinkedHashMap<>();
+        List<Waiter> unserved = new ArrayList<>();
+        for (Slot slot : slots) {
+            ProvisionedVm created = byName.get(slot.name());
+            if (created == null) {
+                unserved.addAll(slot.waiters());
+                continue;
+            }
+            ManagedVm vm;
+            if (slot.waiters().isEmpty()) {
+                vm = pool.addWarmVm(created.name(), slot.repository());
+            } else {
+                vm = pool.addBusyVm(created.name(), slot.repository());
+                claimed.put(vm, slot.waiters());
+            }
+            vmStateRecorder.provisioned(vm, created.privateAddress());
+            runnerStatusPoller.register(vm, runnerStatusPoller.statusUri(created.privateAddress()));
+        }
+        claimed.forEach(ProvisioningCoalescer::handOut);
+        if (!unserved.isEmpty()) {
+            // The provider came up short; these jobs go into the next window
+            labelDemand.waiters.addAll(unserved);
+            schedule(labelDemand);
+        }
+    }
+
+    private void deprovision(ManagedVm vm) {
+        runnerStatusPoller.unregister(vm);
+        // The VM's own pool, which still knows the region after its label is removed
+        String region = vm.getPool().getMapping().getRegion();
+        CompletableFuture<Void> deleted =
+                retryScheduler.execute("deprovision", vm.getName(), region, () -> provisioner.deprovision(vm.getName()));
+        deleted.whenComplete((ignored, error) -> {
+            if (error != null) {
+                logger.error("Deleting VM {} failed", vm.getName(), error);
+            } else {
+                vmStateRecorder.deprovisioned(vm.getName());
+            }
+        });
+    }
+
+    private void topUp() {
+        try {
+            for (VmPool pool : vmPoolManager.getPools()) {
+                if (pool.getWarmDeficit() > 0 && startupReconciler.isReconciled(pool.getLabel())) {
+                    requestWarm(pool);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Warm pool top-up failed", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        long topUpMillis = properties.getTopUpInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::topUp, 0, topUpMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Demand collected for one label during the current window, and jobs still waiting for a
+     * VM because the pool was full.
+     */
+    static final class Demand {
+        final VmPool pool;
+        final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        /** The repository of the label's most recently queued job. */
+        volatile String repository;
+
+        Demand(VmPool pool) {
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * A job waiting for a VM, and the repository its runner must register with.
+     */
+    private record Waiter(String repository, CompletableFuture<ManagedVm> vm) {
+    }
+
+    /**
+     * One VM of a batch: its name, the repository its runner registers with and the jobs it
+     * is for, none if it is to be warm.
+     */
+    private record Slot(String name, String repository, List<Waiter> waiters) {
+    }
+}
@@ -0,0 +1,32 @@
+package com.zhai.hw.service.provision;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Creates and deletes runner VMs in a cloud provider.
+ * <p>
+ * Implementations must not block the calling thread; the returned futures complete when
+ * the provider has finished. A provision request may be fulfilled only in part, in which
+ * case the list holds the VMs that were created.
+ */
+public interface VmProvisioner {
+
+    /**
+     * Creates the requested VMs for a mapping in one call to the provider, each under its
+     * requested name and with its startup script as custom data.
+     */
+    CompletableFuture<List<ProvisionedVm>> provision(ProvisionRequest request);
+
+    /**
+     * Deletes a VM and its disks and network interface.
+     */
+    CompletableFuture<Void> deprovision(String vmName);
+
+    /**
+     * Lists one page of the VMs that exist in the provider for a label.
+     *
+     * @param pageToken The token from the previous page, or {@code null} for the first page
+     */
+    CompletableFuture<InventoryPage> listVms(String label, String pageToken);
+}
@@ -0,0 +1,322 @@
+package com.zhai.hw.service.reconcile;
+
+import com.zhai.hw.config.ReconcileProperties;
+import com.zhai.hw.model.LabelMatchIndex;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.service.pool.ManagedVm;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmPoolManager;
+import com.zhai.hw.service.provision.InventoryPage;
+import com.zhai.hw.service.provision.ProvisionedVm;
+import com.zhai.hw.service.provision.VmProvisioner;
+import com.zhai.hw.service.retry.RetryScheduler;
+import com.zhai.hw.service.state.StateStore;
+import com.zhai.hw.service.state.VmRecord;
+import com.zhai.hw.service.status.RunnerStatusPoller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Matches the provider's inventory against the stored VM state at startup, label by label.
+ * <p>
+ * Each label's inventory is listed page by page, with the next page requested while the
+ * current one is joined by VM name against the stored records of that label. A VM in both is
+ * adopted into its pool and polled again: as warm if its runner last reported {@code idle},
+ * otherwise as busy, since it may still be running the job it had before the restart and
+ * must not be handed to one of the jobs GitHub redelivers once the label opens. The first
+ * poll that finds it idle, or its job's {@code completed}, gives it back to the pool. It keeps
+ * the repository its record says its runner registered with; one recorded before that was
+ * stored is handed no jobs and is retired once idle. A VM
+ * only in the provider, or beyond the pool's {@code maximumPoolSize}, is an orphan and is
+ * deleted; a record with no VM behind it is removed. Up to {@code parallelism} labels are
+ * reconciled at once.
+ * <p>
+ * Queued jobs for a label are turned away until its reconciliation has finished, so a job is
+ * never handed a VM the pool does not know about yet, and the label is then topped up to its
+ * warm target. Labels do not wait for each other. A label whose inventory cannot be listed is
+ * opened anyway after the retries run out, since blocking its jobs for good would be worse.
+ */
+@Component
+public class StartupReconciler implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupReconciler.class);
+    private static final String IDLE = "idle";
+
+    private final VmProvisioner provisioner;
+    private final VmPoolManager vmPoolManager;
+    private final StateStore stateStore;
+    private final RunnerStatusPoller runnerStatusPoller;
+    private final RetryScheduler retryScheduler;
+    private final ConfigurationLoaderService configurationLoaderService;
+    private final ReconcileProperties properties;
+    /** Labels present at startup, by lower-cased label. */
+    private final Map<String, LabelState> labels = new ConcurrentHashMap<>();
+    private final List<Consumer<VmPool>> reconciledListeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private volatile boolean allReconciled;
+    private volatile boolean running;
+
+    public StartupReconciler(VmProvisioner provisioner, VmPoolManager vmPoolManager, StateStore stateStore,
+                             RunnerStatusPoller runnerStatusPoller, RetryScheduler retryScheduler,
+                             ConfigurationLoaderService configurationLoaderService,
+                             ReconcileProperties properties) {
+        this.provisioner = provisioner;
+        this.vmPoolManager = vmPoolManager;
+        this.stateStore = stateStore;
+        this.runnerStatusPoller = runnerStatusPoller;
+        this.retryScheduler = retryScheduler;
+        this.configurationLoaderService = configurationLoaderService;
+        this.properties = properties;
+        // The gates close here, before the web server can deliver anything
+        if (properties.isEnabled()) {
+            for (VmPool pool : vmPoolManager.getPools()) {
+                labels.put(pool.getLabel().toLowerCase(Locale.ROOT), new LabelState(pool));
+            }
+        }
+        remaining.set(labels.size());
+        if (labels.isEmpty()) {
+            allReconciled = true;
+            done.complete(null);
+        }
+    }
+
+    /**
+     * Registers a callback that runs once for each label when its reconciliation has finished.
+     */
+    public void addReconciledListener(Consumer<VmPool> listener) {
+        reconciledListeners.add(listener);
+    }
+
+    /**
+     * @return {@code true} if the label has been reconciled or was not configured at startup
+     */
+    public boolean isReconciled(String label) {
+        if (allReconciled) {
+            return true;
+        }
+        LabelState state = labels.get(label.toLowerCase(Locale.ROOT));
+        return state == null || state.reconciled;
+    }
+
+    /**
+     * Tells whether a queued job with these labels can be accepted yet.
+     *
+     * @return {@code false} only if the labels resolve to a pool still being reconciled
+     */
+    public boolean accepts(List<String> jobLabels) {
+        if (allReconciled) {
+            return true;
+        }
+        LabelMatchIndex index = configurationLoaderService.getLabelMatchIndex();
+        int id = index.resolveId(jobLabels);
+        return id < 0 || isReconciled(index.mapping(id).getLabel());
+    }
+
+    /**
+     * @return A future completed once every label has been reconciled
+     */
+    public CompletableFuture<Void> whenReconciled() {
+        return done;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (labels.isEmpty()) {
+            return;
+        }
+        Map<String, Map<String, VmRecord>> stored = new HashMap<>();
+        for (VmRecord record : stateStore.records()) {
+            stored.computeIfAbsent(record.label().toLowerCase(Locale.ROOT), key -> new HashMap<>())
+                    .put(record.name(), record);
+        }
+        Queue<LabelState> queue = new ConcurrentLinkedQueue<>();
+        for (Map.Entry<String, LabelState> entry : labels.entrySet()) {
+            LabelState state = entry.getValue();
+            state.stored = stored.getOrDefault(entry.getKey(), new HashMap<>());
+            queue.add(state);
+        }
+        stored.keySet().stream().filter(label -> !labels.containsKey(label)).forEach(label ->
+                logger.warn("{} stored VM records are for label {}, which is no longer configured; they are kept",
+                        stored.get(label).size(), label));
+        logger.info("Reconciling {} labels against {} stored VM records", labels.size(), stateStore.records().size());
+        for (int i = 0; i < Math.max(1, properties.getParallelism()); i++) {
+            next(queue);
+        }
+    }
+
+    private void next(Queue<LabelState> queue) {
+        LabelState state = queue.poll();
+        if (state == null) {
+            return;
+        }
+        state.startedAt = System.nanoTime();
+        join(state, list(state, null))
+                .whenComplete((ignored, error) -> {
+                    finish(state, error);
+                    next(queue);
+                });
+    }
+
+    private CompletableFuture<InventoryPage> list(LabelState state, String pageToken) {
+        String label = state.pool.getLabel();
+        return retryScheduler.execute("list-inventory", label, state.pool.getMapping().getRegion(),
+                () -> provisioner.listVms(label, pageToken));
+    }
+
+    /**
+     * Joins each page as it arrives, with the next one already requested. Pages of a label are
+     * joined one after another, so the label's state needs no locking.
+     */
+    private CompletableFuture<Void> join(LabelState state, CompletableFuture<InventoryPage> page) {
+        return page.thenCompose(current -> {
+            CompletableFuture<InventoryPage> next = current.nextPageToken() == null
+                    ? null : list(state, current.nextPageToken());
+            state.pages++;
+            for (ProvisionedVm vm : current.vms()) {
+                joinVm(state, vm);
+            }
+            return next == null ? CompletableFuture.<Void>completedFuture(null) : join(state, next);
+        });
+    }
+
+    private void joinVm(LabelState state, ProvisionedVm vm) {
+        VmRecord record = state.stored.remove(vm.name());
+        if (record == null || state.pool.reserve(1) == 0) {
+            state.orphaned++;
+            String region = state.pool.getMapping().getRegion();
+            retryScheduler.execute("deprovision", vm.name(), region, () -> provisioner.deprovision(vm.name()))
+                    .whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            logger.error("Deleting orphaned VM {} failed", vm.name(), error);
+                        } else {
+                            stateStore.remove(vm.name());
+                        }
+                    });
+            return;
+        }
+        ManagedVm adopted = state.pool.addWarmVm(vm.name(), record.repository());
+        if (!IDLE.equals(record.runnerState()) && state.pool.claim(adopted)) {
+            state.adoptedBusy++;
+        }
+        if (!vm.privateAddress().equals(record.address())) {
+            stateStore.put(new VmRecord(record.name(), record.label(), vm.privateAddress(), record.runnerState(),
+                    record.lastOutcome(), record.updatedAtMillis(), record.repository()));
+        }
+        runnerStatusPoller.register(adopted, runnerStatusPoller.statusUri(vm.privateAddress()));
+        state.adopted++;
+    }
+
+    private void finish(LabelState state, Throwable error) {
+        if (error == null) {
+            // Whatever is left has no VM behind it
+            for (String name : state.stored.keySet()) {
+                stateStore.remove(name);
+            }
+            state.missing = state.stored.size();
+        } else {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            state.error = cause.getMessage();
+            logger.error("Reconciling {} failed; accepting its jobs without it", state.pool.getLabel(), error);
+        }
+        state.stored = Map.of();
+        state.finishedAt = System.nanoTime();
+        state.reconciled = true;
+        logger.info("Reconciled {} in {} ms: {} pages, {} VMs adopted ({} busy), {} orphans deleted, "
+                        + "{} missing records removed", state.pool.getLabel(), state.millis(), state.pages,
+                state.adopted, state.adoptedBusy, state.orphaned, state.missing);
+        for (Consumer<VmPool> listener : reconciledListeners) {
+            try {
+                listener.accept(state.pool);
+            } catch (RuntimeException e) {
+                logger.error("Reconciled listener failed for {}", state.pool.getLabel(), e);
+            }
+        }
+        if (remaining.decrementAndGet() == 0) {
+            allReconciled = true;
+            done.complete(null);
+        }
+    }
+
+    /**
+     * Returns each label's reconciliation progress and counts.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("complete", allReconciled);
+        Map<String, Object> perLabel = new TreeMap<>();
+        labels.forEach((key, state) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("reconciled", state.reconciled);
+            entry.put("pages", state.pages);
+            entry.put("adopted", state.adopted);
+            entry.put("adoptedBusy", state.adoptedBusy);
+            entry.put("orphaned", state.orphaned);
+            entry.put("missing", state.missing);
+            entry.put("millis", state.millis());
+            entry.put("error", state.error);
+            perLabel.put(state.pool.getLabel(), entry);
+        });
+        body.put("labels", perLabel);
+        return body;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Reconciliation progress of one label. Its counters are only written by the label's own
+     * page chain and read for diagnostics.
+     */
+    private static final class LabelState {
+        final VmPool pool;
+        Map<String, VmRecord> stored = Map.of();
+        volatile boolean reconciled;
+        volatile int pages;
+        volatile int adopted;
+        volatile int adoptedBusy;
+        volatile int orphaned;
+        volatile int missing;
+        volatile long startedAt;
+        volatile long finishedAt;
+        volatile String error;
+
+        LabelState(VmPool pool) {
+            this.pool = pool;
+        }
+
+        long millis() {
+            if (startedAt == 0) {
+                return 0;
+            }
+            long end = finishedAt == 0 ? System.nanoTime() : finishedAt;
+            return TimeUnit.NANOSECONDS.toMillis(end - startedAt);
+        }
+    }
+}
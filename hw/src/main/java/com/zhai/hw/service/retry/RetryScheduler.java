@@ -0,0 +1,231 @@
+package com.zhai.hw.service.retry;
+
+import com.zhai.hw.config.RetryProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Runs asynchronous cloud operations with retries, without holding a thread while waiting.
+ * <p>
+ * Every attempt first takes a token from its region's bucket. When the bucket is empty the
+ * attempt is parked on the timer until a token is due, which does not count as a retry. A
+ * failed attempt is parked for an exponential backoff, from {@code initialBackoff} doubling
+ * up to {@code maxBackoff}, and the operation fails once {@code maxRetries} retries have
+ * failed. Each region has its own bucket, so a region whose calls keep failing only spends
+ * its own tokens and cannot slow the others down. The timer thread only starts attempts; the
+ * operations themselves run wherever their futures complete.
+ */
+@Component
+public class RetryScheduler implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryScheduler.class);
+
+    private final RetryProperties properties;
+    private final Clock clock;
+    private final LongSupplier nanoClock;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Operation<?>> operations = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final ScheduledExecutorService timer;
+
+    @Autowired
+    public RetryScheduler(RetryProperties properties) {
+        this(properties, Clock.systemUTC(), System::nanoTime);
+    }
+
+    RetryScheduler(RetryProperties properties, Clock clock, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.clock = clock;
+        this.nanoClock = nanoClock;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retry-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs an operation, retrying it on failure.
+     *
+     * @param kind   What the operation does, for example {@code provision}
+     * @param target What it acts on, for example a VM or request name
+     * @param region The region whose token bucket the calls draw from
+     * @param call   Starts one attempt
+     * @return A future completed with the first successful result, or failed with the error of
+     *         the last attempt
+     */
+    public <T> CompletableFuture<T> execute(String kind, String target, String region,
+                                            Supplier<CompletableFuture<T>> call) {
+        String id = kind + ":" + target + "#" + sequence.incrementAndGet();
+        Operation<T> operation = new Operation<>(id, kind, target, region, call);
+        operations.put(id, operation);
+        attempt(operation);
+        return operation.result;
+    }
+
+    private <T> void attempt(Operation<T> operation) {
+        long waitNanos = bucket(operation.region).tryAcquire();
+        if (waitNanos > 0) {
+            throttled.incrementAndGet();
+            park(operation, waitNanos);
+            return;
+        }
+        operation.attempts++;
+        operation.nextAttemptAt = null;
+        CompletableFuture<T> future;
+        try {
+            future = operation.call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                operations.remove(operation.id);
+                succeeded.incrementAndGet();
+                operation.result.complete(value);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            operation.lastError = cause.getMessage();
+            if (operation.attempts > properties.getMaxRetries()) {
+                operations.remove(operation.id);
+                failed.incrementAndGet();
+                logger.error("{} {} failed after {} attempts: {}", operation.kind, operation.target,
+                        operation.attempts, cause.getMessage());
+                operation.result.completeExceptionally(cause);
+                return;
+            }
+            long backoffNanos = backoffNanos(operation.attempts);
+            retries.incrementAndGet();
+            logger.warn("{} {} failed (attempt {}), retrying in {} s: {}", operation.kind, operation.target,
+                    operation.attempts, TimeUnit.NANOSECONDS.toSeconds(backoffNanos), cause.getMessage());
+            park(operation, backoffNanos);
+        });
+    }
+
+    private void park(Operation<?> operation, long delayNanos) {
+        operation.nextAttemptAt = clock.instant().plusNanos(delayNanos);
+        try {
+            timer.schedule(() -> attempt(operation), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            // The timer has been shut down
+            operations.remove(operation.id);
+            operation.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @param attempts The attempts made so far, at least 1
+     * @return The delay before the next attempt
+     */
+    long backoffNanos(int attempts) {
+        long initial = properties.getInitialBackoff().toNanos();
+        long max = properties.getMaxBackoff().toNanos();
+        long backoff = Math.min(initial, max);
+        for (int i = 1; i < attempts && backoff < max; i++) {
+            backoff = Math.min(max, backoff * 2);
+        }
+        double jitter = properties.getJitter();
+        if (jitter > 0) {
+            backoff += (long) (backoff * jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1));
+        }
+        return Math.max(0, backoff);
+    }
+
+    private TokenBucket bucket(String region) {
+        return buckets.computeIfAbsent(region, key -> new TokenBucket(properties.getRegionBurst(),
+                properties.getRegionCallsPerSecond(), nanoClock));
+    }
+
+    /**
+     * Returns the operations waiting for a retry or a token, and every region's bucket level.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("succeeded", succeeded.get());
+        body.put("failed", failed.get());
+        body.put("retries", retries.get());
+        body.put("throttled", throttled.get());
+        List<Map<String, Object>> pending = new ArrayList<>();
+        operations.values().stream()
+                .sorted(Comparator.comparing(operation -> operation.id))
+                .forEach(operation -> {
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("kind", operation.kind);
+                    entry.put("target", operation.target);
+                    entry.put("region", operation.region);
+                    entry.put("attempts", operation.attempts);
+                    Instant next = operation.nextAttemptAt;
+                    entry.put("nextAttemptAt", next == null ? null : next.toString());
+                    entry.put("lastError", operation.lastError);
+                    pending.add(entry);
+                });
+        body.put("operations", pending);
+        Map<String, Object> regions = new TreeMap<>();
+        buckets.forEach((region, bucket) ->
+                regions.put(region, Map.of("available", bucket.available(), "capacity", bucket.capacity())));
+        body.put("regionBuckets", regions);
+        return body;
+    }
+
+    @Override
+    public void start() {
+        // The timer runs from construction, so operations submitted before start are not lost
+    }
+
+    @Override
+    public void stop() {
+        timer.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return !timer.isShutdown();
+    }
+
+    private static final class Operation<T> {
+        final String id;
+        final String kind;
+        final String target;
+        final String region;
+        final Supplier<CompletableFuture<T>> call;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        volatile int attempts;
+        volatile Instant nextAttemptAt;
+        volatile String lastError;
+
+        Operation(String id, String kind, String target, String region, Supplier<CompletableFuture<T>> call) {
+            this.id = id;
+            this.kind = kind;
+            this.target = target;
+            this.region = region;
+            this.call = call;
+        }
+    }
+}
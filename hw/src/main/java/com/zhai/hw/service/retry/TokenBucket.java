@@ -0,0 +1,55 @@
+package com.zhai.hw.service.retry;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket that refills continuously at a fixed rate up to its capacity.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(int capacity, double tokensPerSecond, LongSupplier nanoClock) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes one token if one is available.
+     *
+     * @return {@code 0} if a token was taken, otherwise the nanoseconds until one will be
+     */
+    public synchronized long tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * @return The tokens currently available, rounded down
+     */
+    public synchronized int available() {
+        refill();
+        return (int) tokens;
+    }
+
+    public int capacity() {
+        return (int) capacity;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,144 @@
+package com.zhai.hw.service.startup;
+
+import com.zhai.hw.config.StartupProperties;
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.service.reconcile.StartupReconciler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.event.SpringApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Milestones of the service's startup, in milliseconds since the JVM started.
+ * <p>
+ * The service accepts webhooks once the application is ready and every label has been
+ * reconciled; that point is checked against {@code app.startup.budget} and the timeline is
+ * logged, at WARN if the budget was exceeded. The first webhook actually accepted is added
+ * to the timeline when it arrives. Each milestone is recorded once, so restarts can be
+ * compared by their logs alone.
+ */
+@Component
+public class StartupTimeline implements ApplicationListener<SpringApplicationEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupTimeline.class);
+
+    public static final String CONFIG_LOADED = "config-loaded";
+    public static final String CONTEXT_STARTED = "context-started";
+    public static final String RECONCILED = "reconciled";
+    public static final String READY = "ready";
+    public static final String ACCEPTING = "accepting";
+    public static final String FIRST_WEBHOOK = "first-webhook-accepted";
+
+    private final StartupProperties properties;
+    private final LongSupplier clockMillis;
+    private final long jvmStartMillis;
+    /** Milestone to milliseconds since JVM start, in the order reached. Guarded by this. */
+    private final Map<String, Long> milestones = new LinkedHashMap<>();
+    private volatile boolean firstWebhookSeen;
+
+    @Autowired
+    public StartupTimeline(StartupProperties properties, StartupReconciler startupReconciler,
+                           ConfigurationLoaderService configurationLoaderService) {
+        this(properties, startupReconciler, configurationLoaderService, System::currentTimeMillis,
+                ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    StartupTimeline(StartupProperties properties, StartupReconciler startupReconciler,
+                    ConfigurationLoaderService configurationLoaderService, LongSupplier clockMillis,
+                    long jvmStartMillis) {
+        this.properties = properties;
+        this.clockMillis = clockMillis;
+        this.jvmStartMillis = jvmStartMillis;
+        ConfigSnapshot current = configurationLoaderService.getSnapshot();
+        if (current != null) {
+            record(CONFIG_LOADED, current.loadedAt().toEpochMilli() - jvmStartMillis);
+        } else {
+            configurationLoaderService.addSnapshotListener(snapshot ->
+                    record(CONFIG_LOADED, snapshot.loadedAt().toEpochMilli() - jvmStartMillis));
+        }
+        startupReconciler.whenReconciled().thenRun(() -> reached(RECONCILED));
+    }
+
+    @Override
+    public void onApplicationEvent(SpringApplicationEvent event) {
+        if (event instanceof ApplicationStartedEvent) {
+            reached(CONTEXT_STARTED);
+        } else if (event instanceof ApplicationReadyEvent) {
+            reached(READY);
+        }
+    }
+
+    /**
+     * Called for every accepted webhook; only the first one is recorded.
+     */
+    public void webhookAccepted() {
+        if (firstWebhookSeen) {
+            return;
+        }
+        firstWebhookSeen = true;
+        long millis = uptimeMillis();
+        record(FIRST_WEBHOOK, millis);
+        logger.info("First webhook accepted {} ms after JVM start", millis);
+    }
+
+    private void reached(String milestone) {
+        record(milestone, uptimeMillis());
+        Long accepting = null;
+        synchronized (this) {
+            if (!milestones.containsKey(ACCEPTING) && milestones.containsKey(READY)
+                    && milestones.containsKey(RECONCILED)) {
+                accepting = Math.max(milestones.get(READY), milestones.get(RECONCILED));
+                milestones.put(ACCEPTING, accepting);
+            }
+        }
+        if (accepting != null) {
+            long budget = properties.getBudget().toMillis();
+            if (accepting > budget) {
+                logger.warn("Accepting webhooks {} ms after JVM start, over the startup budget of {} ms: {}",
+                        accepting, budget, timeline());
+            } else {
+                logger.info("Accepting webhooks {} ms after JVM start, within the startup budget of {} ms: {}",
+                        accepting, budget, timeline());
+            }
+        }
+    }
+
+    private synchronized void record(String milestone, long millis) {
+        milestones.putIfAbsent(milestone, millis);
+    }
+
+    private long uptimeMillis() {
+        return clockMillis.getAsLong() - jvmStartMillis;
+    }
+
+    /**
+     * Returns the milestones reached so far, in milliseconds since JVM start.
+     */
+    public synchronized Map<String, Long> timeline() {
+        return new LinkedHashMap<>(milestones);
+    }
+
+    /**
+     * Returns the timeline with the budget and whether startup stayed within it.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Long> timeline = timeline();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("milestones", timeline);
+        long budget = properties.getBudget().toMillis();
+        body.put("budgetMillis", budget);
+        Long accepting = timeline.get(ACCEPTING);
+        body.put("withinBudget", accepting == null ? null : accepting <= budget);
+        return body;
+    }
+}
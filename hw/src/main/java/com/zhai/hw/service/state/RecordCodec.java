@@ -0,0 +1,117 @@
+package com.zhai.hw.service.state;
+
+import com.zhai.hw.service.status.RunnerStatus;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of journal entries and snapshot records.
+ * <p>
+ * An entry is an operation byte, the sequence number and the VM name; a put is followed by the
+ * rest of the {@link VmRecord}. Strings are a signed short length, {@code -1} for null, and
+ * UTF-8 bytes. The repository comes last and may be missing from entries written before it
+ * was recorded, which then decode with a {@code null} repository.
+ */
+final class RecordCodec {
+
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+
+    private static final RunnerStatus.Outcome[] OUTCOMES = RunnerStatus.Outcome.values();
+
+    private RecordCodec() {
+    }
+
+    /**
+     * A decoded journal entry. {@code record} is {@code null} for a remove.
+     */
+    record Entry(long sequence, byte operation, String name, VmRecord record) {
+    }
+
+    static byte[] encodePut(long sequence, VmRecord record) {
+        byte[] name = utf8(record.name());
+        byte[] label = utf8(record.label());
+        byte[] address = utf8(record.address());
+        byte[] runnerState = utf8(record.runnerState());
+        byte[] repository = utf8(record.repository());
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + size(name) + size(label) + size(address)
+                + size(runnerState) + 1 + 8 + size(repository));
+        buffer.put(PUT).putLong(sequence);
+        putString(buffer, name);
+        putString(buffer, label);
+        putString(buffer, address);
+        putString(buffer, runnerState);
+        buffer.put(record.lastOutcome() == null ? -1 : (byte) record.lastOutcome().ordinal());
+        buffer.putLong(record.updatedAtMillis());
+        putString(buffer, repository);
+        return buffer.array();
+    }
+
+    static byte[] encodeRemove(long sequence, String vmName) {
+        byte[] name = utf8(vmName);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + size(name));
+        buffer.put(REMOVE).putLong(sequence);
+        putString(buffer, name);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes one entry from the buffer's remaining bytes.
+     *
+     * @throws IllegalArgumentException if the bytes are not a valid entry
+     */
+    static Entry decode(ByteBuffer buffer) {
+        try {
+            byte operation = buffer.get();
+            long sequence = buffer.getLong();
+            String name = getString(buffer);
+            if (operation == REMOVE) {
+                return new Entry(sequence, operation, name, null);
+            }
+            if (operation != PUT) {
+                throw new IllegalArgumentException("Unknown journal operation " + operation);
+            }
+            String label = getString(buffer);
+            String address = getString(buffer);
+            String runnerState = getString(buffer);
+            byte outcome = buffer.get();
+            long updatedAtMillis = buffer.getLong();
+            String repository = buffer.hasRemaining() ? getString(buffer) : null;
+            return new Entry(sequence, operation, name, new VmRecord(name, label, address, runnerState,
+                    outcome < 0 ? null : OUTCOMES[outcome], updatedAtMillis, repository));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed journal entry", e);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int size(byte[] value) {
+        return 2 + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        if (value.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String of " + value.length + " bytes is too long to store");
+        }
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,180 @@
+package com.zhai.hw.service.state;
+
+import com.zhai.hw.exception.StateStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact snapshots of every VM record, each covering the journal up to a sequence number.
+ * <p>
+ * A snapshot is a header with the sequence number and record count, the records in the
+ * journal's put encoding, and a CRC32 of everything before it. It is written to a temporary
+ * file, forced and then renamed, so a snapshot file is either complete or absent.
+ */
+final class SnapshotFile {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotFile.class);
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+    private static final int MAGIC = 0x48575353;
+    private static final int VERSION = 1;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * A loaded snapshot.
+     */
+    record Loaded(long sequence, Map<String, VmRecord> records) {
+    }
+
+    static void write(Path directory, long sequence, Collection<VmRecord> records) {
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32 crc = new CRC32();
+            OutputStream channelOut = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(channelOut, 64 * 1024), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            out.writeInt(records.size());
+            for (VmRecord record : records) {
+                byte[] payload = RecordCodec.encodePut(sequence, record);
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+            out.flush();
+            new DataOutputStream(channelOut).writeLong(crc.getValue());
+            channel.force(true);
+        } catch (IOException e) {
+            throw new StateStoreException("Cannot write state snapshot " + target.getFileName(), e);
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory(directory);
+        } catch (IOException e) {
+            throw new StateStoreException("Cannot publish state snapshot " + target.getFileName(), e);
+        }
+    }
+
+    /**
+     * Loads the newest snapshot that is intact, skipping damaged ones.
+     *
+     * @return The snapshot, or {@code null} if there is none
+     */
+    static Loaded loadLatest(Path directory) {
+        List<Path> snapshots = snapshots(directory);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path path = snapshots.get(i);
+            try {
+                return load(path);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("State snapshot {} is damaged, trying an older one: {}", path.getFileName(), e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private static Loaded load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.limit() < 28) {
+                throw new IOException("too short");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(map.slice(0, map.limit() - 8));
+            if (crc.getValue() != map.getLong(map.limit() - 8)) {
+                throw new IOException("checksum mismatch");
+            }
+            ByteBuffer buffer = map.slice(0, map.limit() - 8);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("not a state snapshot");
+            }
+            long sequence = buffer.getLong();
+            int count = buffer.getInt();
+            Map<String, VmRecord> records = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                RecordCodec.Entry entry = RecordCodec.decode(buffer.slice(buffer.position(), length));
+                buffer.position(buffer.position() + length);
+                records.put(entry.name(), entry.record());
+            }
+            return new Loaded(sequence, records);
+        }
+    }
+
+    /**
+     * Deletes all but the newest {@code keep} snapshots, and any left half-written.
+     *
+     * @return The sequence number of the oldest snapshot kept, or {@code 0} if there is none
+     */
+    static long prune(Path directory, int keep) {
+        List<Path> snapshots = snapshots(directory);
+        try {
+            for (Path path : snapshots.subList(0, Math.max(0, snapshots.size() - keep))) {
+                Files.deleteIfExists(path);
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path path : files.filter(p -> p.getFileName().toString().endsWith(SUFFIX + ".tmp")).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not delete old state snapshots", e);
+        }
+        List<Path> kept = snapshots.subList(Math.max(0, snapshots.size() - keep), snapshots.size());
+        return kept.isEmpty() ? 0 : sequence(kept.get(0));
+    }
+
+    private static long sequence(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static List<Path> snapshots(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted(Comparator.comparing(path -> path.getFileName().toString()))
+                    .toList();
+        } catch (IOException e) {
+            throw new StateStoreException("Cannot list state snapshots in " + directory, e);
+        }
+    }
+
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform; the rename is still atomic
+            logger.debug("Could not force directory {}", directory, e);
+        }
+    }
+}
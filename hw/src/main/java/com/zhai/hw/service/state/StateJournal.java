@@ -0,0 +1,292 @@
+package com.zhai.hw.service.state;
+
+import com.zhai.hw.exception.StateStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * The append-only journal of state changes, kept in memory-mapped segment files.
+ * <p>
+ * Each segment is preallocated to a fixed size and named after the first sequence number in
+ * it. An entry is framed as its length, a CRC32 of its bytes and the bytes themselves; a zero
+ * length marks the end of the written part. Appends only copy into the mapping, and
+ * {@link #pendingForce()} hands out the range written since the last force, so the caller can
+ * flush many appends to disk with one call.
+ * <p>
+ * Not thread-safe: the {@link StateStore} calls it under its lock.
+ */
+final class StateJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(StateJournal.class);
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    static final int FRAME_HEADER = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private Path segment;
+    private int position;
+    private int forcedPosition;
+    private long lastSequence;
+    private long rolledSequence;
+
+    private StateJournal(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Replays the journal and opens it for appending after the last intact entry.
+     * <p>
+     * Entries up to {@code afterSequence}, which a snapshot already holds, are skipped. Replay
+     * stops at the first torn or corrupt entry; the rest of that segment is cleared, and any
+     * later segments are renamed with a {@code .corrupt} suffix, since they cannot be applied
+     * in order.
+     *
+     * @param entries Receives every entry after {@code afterSequence}, in order
+     */
+    static StateJournal open(Path directory, int segmentSize, long afterSequence,
+                             Consumer<RecordCodec.Entry> entries) {
+        StateJournal journal = new StateJournal(directory, segmentSize);
+        try {
+            journal.recover(afterSequence, entries);
+        } catch (IOException e) {
+            throw new StateStoreException("Cannot open the state journal in " + directory, e);
+        }
+        return journal;
+    }
+
+    private void recover(long afterSequence, Consumer<RecordCodec.Entry> entries) throws IOException {
+        List<Path> segments = segments(directory);
+        long last = afterSequence;
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            boolean lastSegment = i == segments.size() - 1;
+            if (!lastSegment && firstSequence(segments.get(i + 1)) <= afterSequence + 1) {
+                // Every entry in this segment is already in the snapshot
+                continue;
+            }
+            try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer map = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+                int end = 0;
+                boolean intact = true;
+                while (end + FRAME_HEADER <= map.limit()) {
+                    int length = map.getInt(end);
+                    if (length == 0) {
+                        break;
+                    }
+                    ByteBuffer payload = length > 0 && end + FRAME_HEADER + length <= map.limit()
+                            ? map.slice(end + FRAME_HEADER, length) : null;
+                    if (payload == null || map.getInt(end + 4) != crc(payload.duplicate())) {
+                        intact = false;
+                        break;
+                    }
+                    RecordCodec.Entry entry;
+                    try {
+                        entry = RecordCodec.decode(payload);
+                    } catch (IllegalArgumentException e) {
+                        intact = false;
+                        break;
+                    }
+                    if (entry.sequence() > last) {
+                        entries.accept(entry);
+                        last = entry.sequence();
+                    }
+                    end += FRAME_HEADER + length;
+                }
+                if (!intact) {
+                    logger.warn("State journal {} has a torn or corrupt entry at offset {}; replay stops there",
+                            path.getFileName(), end);
+                    for (Path later : segments.subList(i + 1, segments.size())) {
+                        Files.move(later, later.resolveSibling(later.getFileName() + ".corrupt"),
+                                StandardCopyOption.REPLACE_EXISTING);
+                        logger.warn("Set aside state journal {} written after the corrupt entry", later.getFileName());
+                    }
+                }
+                if (!intact || lastSegment) {
+                    lastSequence = last;
+                    openSegment(path, end, !intact);
+                    return;
+                }
+            }
+        }
+        lastSequence = last;
+        openSegment(directory.resolve(segmentName(last + 1)), 0, false);
+    }
+
+    private void openSegment(Path path, int start, boolean clearTail) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), segmentSize);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segment = path;
+        position = start;
+        if (clearTail) {
+            byte[] zeros = new byte[64 * 1024];
+            for (int i = start; i < buffer.limit(); i += zeros.length) {
+                buffer.put(i, zeros, 0, Math.min(zeros.length, buffer.limit() - i));
+            }
+            buffer.force();
+        }
+        forcedPosition = start;
+    }
+
+    /**
+     * @return The sequence number the next entry must carry
+     */
+    long nextSequence() {
+        return lastSequence + 1;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Appends an entry encoded with {@link #nextSequence()}.
+     */
+    void append(long sequence, byte[] payload) {
+        int frame = FRAME_HEADER + payload.length;
+        if (position + frame + FRAME_HEADER > buffer.limit()) {
+            if (frame + FRAME_HEADER > segmentSize) {
+                throw new StateStoreException("A state journal entry of " + payload.length
+                        + " bytes does not fit in a segment");
+            }
+            roll(sequence);
+        }
+        buffer.put(position + FRAME_HEADER, payload);
+        buffer.putInt(position + 4, crc(ByteBuffer.wrap(payload)));
+        // The length goes last, so a write cut short reads as the end of the journal
+        buffer.putInt(position, payload.length);
+        position += frame;
+        lastSequence = sequence;
+    }
+
+    /**
+     * Forces the current segment and starts a new one, so that the next entry begins a segment.
+     */
+    void roll() {
+        roll(lastSequence + 1);
+    }
+
+    private void roll(long firstSequence) {
+        if (position == 0) {
+            return;
+        }
+        buffer.force();
+        rolledSequence = lastSequence;
+        try {
+            channel.close();
+            openSegment(directory.resolve(segmentName(firstSequence)), 0, false);
+        } catch (IOException e) {
+            throw new StateStoreException("Cannot start a new state journal segment", e);
+        }
+    }
+
+    /**
+     * Takes the range written since the last call, to be forced outside the caller's lock.
+     *
+     * @return The range, or {@code null} if nothing was written
+     */
+    ForceRange pendingForce() {
+        if (position == forcedPosition) {
+            return null;
+        }
+        ForceRange range = new ForceRange(buffer, forcedPosition, position - forcedPosition, lastSequence);
+        forcedPosition = position;
+        return range;
+    }
+
+    /**
+     * @return The last sequence number forced to disk when a segment was rolled over
+     */
+    long rolledSequence() {
+        return rolledSequence;
+    }
+
+    /**
+     * Deletes the segments whose entries are all at or below a sequence number, never the
+     * segment being written.
+     */
+    void deleteSegmentsUpTo(long sequence) {
+        try {
+            List<Path> segments = segments(directory);
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                Path path = segments.get(i);
+                if (path.equals(segment) || firstSequence(segments.get(i + 1)) - 1 > sequence) {
+                    break;
+                }
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not delete old state journal segments", e);
+        }
+    }
+
+    /**
+     * @return The bytes in use in the current segment
+     */
+    int position() {
+        return position;
+    }
+
+    void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Closing the state journal failed", e);
+        }
+    }
+
+    private static int crc(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX);
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * A written range of a segment that has not been forced to disk yet.
+     */
+    record ForceRange(MappedByteBuffer buffer, int offset, int length, long lastSequence) {
+
+        void force() {
+            buffer.force(offset, length);
+        }
+    }
+}
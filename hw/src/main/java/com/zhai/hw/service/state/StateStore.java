@@ -0,0 +1,281 @@
+package com.zhai.hw.service.state;
+
+import com.zhai.hw.config.StateStoreProperties;
+import com.zhai.hw.exception.StateStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the state of every managed VM in memory and persists each change.
+ * <p>
+ * Changes are appended to a memory-mapped {@link StateJournal} and applied to the in-memory
+ * map under one lock, which costs a copy into the mapping rather than a disk write. A commit
+ * thread forces everything appended since its last run to disk with a single call, every
+ * {@code commitInterval}, and then completes the futures of the changes it covered, so
+ * callers that need durability can wait for it and the rest do not. Every
+ * {@code snapshotInterval}, or after {@code snapshotAfter} changes, the map is written as a
+ * {@link SnapshotFile} and journal segments older than the two newest snapshots are deleted.
+ * <p>
+ * On startup the newest intact snapshot is loaded and the journal after it is replayed.
+ */
+@Component
+public class StateStore implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(StateStore.class);
+    private static final int SNAPSHOTS_KEPT = 2;
+
+    private final StateStoreProperties properties;
+    private final Path directory;
+    private final Map<String, VmRecord> records = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    /** Futures waiting for their change to be forced, in sequence order. Guarded by the lock. */
+    private final Queue<Pending> pending = new ArrayDeque<>();
+    private final StateJournal journal;
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final long recoveryMillis;
+    private final int recoveredEntries;
+    private volatile long snapshotSequence;
+    private volatile long lastSnapshotAt;
+    private ScheduledExecutorService committer;
+
+    public StateStore(StateStoreProperties properties) {
+        this.properties = properties;
+        this.directory = Paths.get(properties.getDirectory());
+        long started = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new StateStoreException("Cannot create the state directory " + directory, e);
+        }
+        SnapshotFile.Loaded snapshot = SnapshotFile.loadLatest(directory);
+        if (snapshot != null) {
+            records.putAll(snapshot.records());
+            snapshotSequence = snapshot.sequence();
+        }
+        int[] replayed = new int[1];
+        this.journal = StateJournal.open(directory, properties.getSegmentSize(), snapshotSequence, entry -> {
+            if (entry.operation() == RecordCodec.PUT) {
+                records.put(entry.name(), entry.record());
+            } else {
+                records.remove(entry.name());
+            }
+            replayed[0]++;
+        });
+        this.recoveredEntries = replayed[0];
+        this.recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        this.lastSnapshotAt = System.nanoTime();
+        logger.info("Recovered {} VM records from {} (snapshot at {}, {} journal entries replayed) in {} ms",
+                records.size(), directory, snapshotSequence, recoveredEntries, recoveryMillis);
+    }
+
+    /**
+     * Stores a VM record, replacing any with the same name.
+     *
+     * @return A future completed once the change is on disk
+     */
+    public CompletableFuture<Void> put(VmRecord record) {
+        synchronized (lock) {
+            long sequence = journal.nextSequence();
+            journal.append(sequence, RecordCodec.encodePut(sequence, record));
+            records.put(record.name(), record);
+            return awaitCommit(sequence);
+        }
+    }
+
+    /**
+     * Removes a VM record.
+     *
+     * @return A future completed once the change is on disk
+     */
+    public CompletableFuture<Void> remove(String vmName) {
+        synchronized (lock) {
+            if (!records.containsKey(vmName)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            long sequence = journal.nextSequence();
+            journal.append(sequence, RecordCodec.encodeRemove(sequence, vmName));
+            records.remove(vmName);
+            return awaitCommit(sequence);
+        }
+    }
+
+    private CompletableFuture<Void> awaitCommit(long sequence) {
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        pending.add(new Pending(sequence, committed));
+        return committed;
+    }
+
+    public VmRecord get(String vmName) {
+        return records.get(vmName);
+    }
+
+    /**
+     * @return A live, unmodifiable view of every record
+     */
+    public Collection<VmRecord> records() {
+        return Collections.unmodifiableCollection(records.values());
+    }
+
+    /**
+     * Forces every change appended so far to disk and completes their futures.
+     */
+    public void commit() {
+        StateJournal.ForceRange range;
+        long durable;
+        synchronized (lock) {
+            range = journal.pendingForce();
+            // Segments are forced as they are rolled over
+            durable = journal.rolledSequence();
+        }
+        if (range != null) {
+            range.force();
+            commits.incrementAndGet();
+            durable = range.lastSequence();
+        }
+        List<Pending> done = new ArrayList<>();
+        synchronized (lock) {
+            while (!pending.isEmpty() && pending.peek().sequence <= durable) {
+                done.add(pending.poll());
+            }
+        }
+        done.forEach(p -> p.committed.complete(null));
+    }
+
+    /**
+     * Writes a snapshot of every record if anything changed since the last one, then deletes
+     * the journal segments no kept snapshot needs.
+     */
+    public void snapshot() {
+        List<VmRecord> copy;
+        long sequence;
+        synchronized (lock) {
+            sequence = journal.lastSequence();
+            if (sequence == snapshotSequence) {
+                return;
+            }
+            copy = new ArrayList<>(records.values());
+            // The snapshot covers everything written so far, so later entries start a new segment
+            journal.roll();
+        }
+        // The roll forced the journal, so this completes the futures of every change the snapshot covers
+        commit();
+        SnapshotFile.write(directory, sequence, copy);
+        snapshotSequence = sequence;
+        lastSnapshotAt = System.nanoTime();
+        snapshots.incrementAndGet();
+        long oldestKept = SnapshotFile.prune(directory, SNAPSHOTS_KEPT);
+        synchronized (lock) {
+            journal.deleteSegmentsUpTo(oldestKept);
+        }
+        logger.debug("Wrote a state snapshot of {} VM records at sequence {}", copy.size(), sequence);
+    }
+
+    private void tick() {
+        try {
+            commit();
+            boolean due = System.nanoTime() - lastSnapshotAt >= properties.getSnapshotInterval().toNanos();
+            if (due || journal.lastSequence() - snapshotSequence >= properties.getSnapshotAfter()) {
+                snapshot();
+            }
+        } catch (RuntimeException e) {
+            logger.error("State store commit failed", e);
+        }
+    }
+
+    /**
+     * Returns the record count, journal position and recovery statistics.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("records", records.size());
+        synchronized (lock) {
+            body.put("lastSequence", journal.lastSequence());
+            body.put("segmentBytesUsed", journal.position());
+            body.put("uncommitted", pending.size());
+        }
+        body.put("snapshotSequence", snapshotSequence);
+        body.put("commits", commits.get());
+        body.put("snapshots", snapshots.get());
+        body.put("recoveredJournalEntries", recoveredEntries);
+        body.put("recoveryMillis", recoveryMillis);
+        return body;
+    }
+
+    /**
+     * @return How long loading the snapshot and replaying the journal took at startup
+     */
+    public long getRecoveryMillis() {
+        return recoveryMillis;
+    }
+
+    @Override
+    public void start() {
+        committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "state-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getCommitInterval().toMillis();
+        committer.scheduleWithFixedDelay(this::tick, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (committer != null) {
+            committer.shutdownNow();
+            committer = null;
+        }
+        commit();
+        synchronized (lock) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Stops the commit thread without forcing or closing anything, as a crash would.
+     */
+    void abandon() {
+        if (committer != null) {
+            committer.shutdownNow();
+            committer = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return committer != null;
+    }
+
+    /**
+     * Stop after the components that write to the store.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 1000;
+    }
+
+    private record Pending(long sequence, CompletableFuture<Void> committed) {
+    }
+}
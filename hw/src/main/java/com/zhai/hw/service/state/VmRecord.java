@@ -0,0 +1,18 @@
+package com.zhai.hw.service.state;
+
+import com.zhai.hw.service.status.RunnerStatus;
+
+/**
+ * The persisted state of one managed VM and its runner.
+ *
+ * @param name            The VM name
+ * @param label           The label of the mapping the VM belongs to
+ * @param address         The VM's private address
+ * @param runnerState     The runner state from the last successful poll, or {@code null}
+ * @param lastOutcome     The outcome of the last poll, or {@code null} if it has not been polled
+ * @param updatedAtMillis When the record last changed, in epoch milliseconds
+ * @param repository      The repository the VM's runner registers with, or {@code null} if not known
+ */
+public record VmRecord(String name, String label, String address, String runnerState,
+                       RunnerStatus.Outcome lastOutcome, long updatedAtMillis, String repository) {
+}
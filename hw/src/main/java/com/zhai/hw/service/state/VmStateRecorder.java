@@ -0,0 +1,51 @@
+package com.zhai.hw.service.state;
+
+import com.zhai.hw.service.pool.ManagedVm;
+import com.zhai.hw.service.status.RunnerStatus;
+import com.zhai.hw.service.status.RunnerStatusPoller;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writes VM lifecycle and runner status changes to the {@link StateStore}.
+ * <p>
+ * A VM is recorded when it is provisioned and removed once it has been deleted. Status polls
+ * only write when the runner state or poll outcome differs from the stored record, so a
+ * fleet of steady runners costs no writes between changes.
+ */
+@Component
+public class VmStateRecorder {
+
+    private final StateStore stateStore;
+    private final Clock clock;
+
+    public VmStateRecorder(StateStore stateStore, RunnerStatusPoller runnerStatusPoller) {
+        this.stateStore = stateStore;
+        this.clock = Clock.systemUTC();
+        runnerStatusPoller.addBatchListener(this::recordStatuses);
+    }
+
+    public void provisioned(ManagedVm vm, String address) {
+        stateStore.put(new VmRecord(vm.getName(), vm.getLabel(), address, null, null, clock.millis(),
+                vm.getRepository()));
+    }
+
+    public void deprovisioned(String vmName) {
+        stateStore.remove(vmName);
+    }
+
+    void recordStatuses(List<RunnerStatus> batch) {
+        for (RunnerStatus status : batch) {
+            VmRecord stored = stateStore.get(status.vmName());
+            if (stored == null || (stored.lastOutcome() == status.outcome()
+                    && Objects.equals(stored.runnerState(), status.runnerState()))) {
+                continue;
+            }
+            stateStore.put(new VmRecord(stored.name(), stored.label(), stored.address(), status.runnerState(),
+                    status.outcome(), status.polledAt().toEpochMilli(), stored.repository()));
+        }
+    }
+}
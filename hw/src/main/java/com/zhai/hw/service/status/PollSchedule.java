@@ -0,0 +1,84 @@
+package com.zhai.hw.service.status;
+
+import com.zhai.hw.model.VmPoolParameters;
+import com.zhai.hw.service.pool.ManagedVm;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmState;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Decides how long to wait before polling a VM's runner again, from what the last poll found
+ * and what the VM is doing.
+ * <p>
+ * A runner that has not answered since its VM was registered is booting: within the
+ * readiness window it is probed at the boot interval, doubling with each probe up to the
+ * minimum interval, so a fast boot is seen within seconds and a slow one costs no more than
+ * polling at the minimum. A runner that is not answering otherwise is probed at the minimum
+ * interval, or, when the caller is backing it off, at double the previous delay up to the
+ * maximum. The poller backs off only runners that stopped answering, so a VM still booting
+ * after the window is seen as soon as fixed polling at the minimum would see it. A busy VM is polled at the maximum interval: the job's
+ * {@code completed} event, not the poll, is what normally frees it. An idle VM is polled at a
+ * quarter of the time left before its idle expiry, but never more often than the minimum, so
+ * a job its runner picked up unseen is noticed before the VM is retired under it. The bounds
+ * come from the VM's pool parameters, falling back to the service defaults; a maximum below
+ * the minimum is raised to it.
+ */
+final class PollSchedule {
+
+    private final Duration defaultMinimum;
+    private final Duration defaultMaximum;
+    private final Duration bootInterval;
+    private final Function<String, VmPool> pools;
+
+    PollSchedule(Duration defaultMinimum, Duration defaultMaximum, Duration bootInterval,
+                 Function<String, VmPool> pools) {
+        this.defaultMinimum = defaultMinimum;
+        this.defaultMaximum = defaultMaximum;
+        this.bootInterval = bootInterval;
+        this.pools = pools;
+    }
+
+    /**
+     * Returns the delay before the next poll of a VM.
+     *
+     * @param vm            The polled VM
+     * @param status        The result of its last poll
+     * @param backoffMillis The previous delay if the VM was already backing off, otherwise {@code 0}
+     * @param booting       Whether the runner has not answered yet and is within the readiness window
+     * @param nowMillis     The current time, in epoch milliseconds
+     */
+    long nextDelayMillis(ManagedVm vm, RunnerStatus status, long backoffMillis, boolean booting, long nowMillis) {
+        long minimum = defaultMinimum.toMillis();
+        long maximum = defaultMaximum.toMillis();
+        VmPool pool = pools.apply(vm.getLabel());
+        if (pool != null) {
+            VmPoolParameters parameters = pool.getMapping().getPoolParameters();
+            if (parameters.getMinimumPollInterval() != null) {
+                minimum = parameters.getMinimumPollInterval().toMillis();
+            }
+            if (parameters.getMaximumPollInterval() != null) {
+                maximum = parameters.getMaximumPollInterval().toMillis();
+            }
+        }
+        minimum = Math.max(1, minimum);
+        maximum = Math.max(minimum, maximum);
+
+        if (!status.runnerOnline() && booting) {
+            long delay = backoffMillis <= 0 ? bootInterval.toMillis() : backoffMillis * 2;
+            return Math.max(1, Math.min(minimum, delay));
+        }
+        if (!status.runnerOnline()) {
+            return backoffMillis <= 0 ? minimum : Math.min(maximum, Math.max(minimum, backoffMillis * 2));
+        }
+        if (vm.getState() != VmState.IDLE) {
+            return maximum;
+        }
+        long deadline = vm.getIdleDeadlineMillis();
+        if (deadline < 0) {
+            return maximum;
+        }
+        return Math.min(maximum, Math.max(minimum, (deadline - nowMillis) / 4));
+    }
+}
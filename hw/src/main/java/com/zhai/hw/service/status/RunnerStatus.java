@@ -0,0 +1,35 @@
+package com.zhai.hw.service.status;
+
+import java.time.Instant;
+
+/**
+ * The outcome of one poll of a runner's status endpoint.
+ *
+ * @param vmName        The polled VM
+ * @param outcome       Whether the runner answered, and if not, why
+ * @param httpStatus    The response status, or {@code 0} if there was no response
+ * @param runnerState   The {@code status} field of the response body, or {@code null}
+ * @param latencyMillis Time from sending the request to completion
+ * @param polledAt      When the poll completed
+ */
+public record RunnerStatus(String vmName, Outcome outcome, int httpStatus, String runnerState,
+                           long latencyMillis, Instant polledAt) {
+
+    public enum Outcome {
+        /** The endpoint answered with a 2xx response. */
+        OK,
+        /** The endpoint answered with a non-2xx response. */
+        HTTP_ERROR,
+        /** No response within the request timeout. */
+        TIMEOUT,
+        /** The connection failed. */
+        UNREACHABLE
+    }
+
+    /**
+     * @return Whether the poll found the runner up and reporting its state
+     */
+    public boolean runnerOnline() {
+        return outcome == Outcome.OK && runnerState != null && !"offline".equals(runnerState);
+    }
+}
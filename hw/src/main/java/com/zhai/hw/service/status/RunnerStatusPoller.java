@@ -0,0 +1,519 @@
+package com.zhai.hw.service.status;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.zhai.hw.config.RunnerStatusProperties;
+import com.zhai.hw.service.metrics.HwMetrics;
+import com.zhai.hw.service.pool.ManagedVm;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmPoolManager;
+import com.zhai.hw.service.pool.VmState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Polls the runner status endpoint of every registered VM, each on its own schedule.
+ * <p>
+ * Time is divided into slots of one tick each, arranged in a ring, and every VM waits in the
+ * slot of the tick it is due on; slots are revisited once per turn of the ring, and a VM due
+ * on a later turn is passed over. A new VM is placed in the less loaded of two random slots
+ * within its first interval, so polls are spread evenly instead of arriving together. With
+ * {@code adaptive} off, a VM is polled every {@code interval}, staying in its slot. With it
+ * on, the VM's next poll is timed by a {@link PollSchedule} once its result is in, and the
+ * VM moves to that slot. Either way, {@link #stats()} reports the polls sent next to the
+ * polls that polling every registered VM once per {@code interval} would have sent over the
+ * same ticks, and the difference as the polls saved.
+ * Requests go through one asynchronous {@link HttpClient}, which keeps connections alive
+ * between polls. A semaphore caps the requests in flight: when the cap is reached the rest
+ * of the slot is deferred to the next tick, and a VM still deferred when its slot comes
+ * round again is skipped and counted. A VM whose previous poll has not finished is not
+ * polled again. Results are collected as they complete and applied to the VMs in
+ * batches on the ticker thread, followed by the batch listeners.
+ */
+@Component
+public class RunnerStatusPoller implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunnerStatusPoller.class);
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final RunnerStatusProperties properties;
+    private final PollSchedule schedule;
+    private final Clock clock;
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+    private final Queue<RunnerStatus> completed = new ConcurrentLinkedQueue<>();
+    private final List<Consumer<List<RunnerStatus>>> batchListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong polls = new AtomicLong();
+    /** Registered VMs summed over every tick; divided by the interval, the polls a fixed schedule sends. */
+    private final AtomicLong targetTicks = new AtomicLong();
+    /** Polls of booting runners that did not find them up; part of {@code polls}. */
+    private final AtomicLong bootPolls = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    /** Targets whose slot came up while the in-flight cap was reached. Ticker thread only. */
+    private final Queue<Target> backlog = new ArrayDeque<>();
+    private volatile int backlogSize;
+
+    private Set<Target>[] slots;
+    private AtomicInteger[] slotLoad;
+    private long intervalTicks;
+    private Semaphore inFlight;
+    private ScheduledExecutorService ticker;
+    private ExecutorService workers;
+    private HttpClient httpClient;
+    /** The tick being polled. Advanced by the ticker thread only. */
+    private volatile long cursor;
+    private volatile boolean running;
+
+    @Autowired
+    public RunnerStatusPoller(RunnerStatusProperties properties, VmPoolManager vmPoolManager, HwMetrics metrics) {
+        this(properties, vmPoolManager::getPool, Clock.systemUTC());
+        metrics.registerStatusPolling(this::scheduledPollsPerMinute, polls::get, this::fixedSchedulePolls);
+    }
+
+    RunnerStatusPoller(RunnerStatusProperties properties, Function<String, VmPool> pools, Clock clock) {
+        this.properties = properties;
+        this.schedule = new PollSchedule(properties.getMinInterval(), properties.getMaxInterval(),
+                properties.getBootInterval(), pools);
+        this.clock = clock;
+        initSlots();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void initSlots() {
+        long tickMillis = properties.getTick().toMillis();
+        intervalTicks = Math.max(1, properties.getInterval().toMillis() / tickMillis);
+        // Adaptive schedules are longest at the maximum interval; one turn of the ring covers it
+        long slotCount = properties.isAdaptive()
+                ? Math.max(intervalTicks, properties.getMaxInterval().toMillis() / tickMillis)
+                : intervalTicks;
+        slots = new Set[(int) slotCount];
+        slotLoad = new AtomicInteger[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = ConcurrentHashMap.newKeySet();
+            slotLoad[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Builds the status endpoint of a VM from its private address.
+     */
+    public URI statusUri(String address) {
+        return URI.create("http://" + address + ":" + properties.getPort() + properties.getPath());
+    }
+
+    /**
+     * Starts polling a VM. Registering a VM again replaces its endpoint.
+     */
+    public void register(ManagedVm vm, URI endpoint) {
+        // Booting runners are first probed within the boot interval
+        long spread = intervalTicks;
+        if (properties.isAdaptive()) {
+            long firstMillis = Math.min(properties.getBootInterval().toMillis(), properties.getMinInterval().toMillis());
+            spread = Math.max(1, Math.min(intervalTicks, firstMillis / properties.getTick().toMillis()));
+        }
+        long base = cursor + 1;
+        long a = base + ThreadLocalRandom.current().nextLong(spread);
+        long b = base + ThreadLocalRandom.current().nextLong(spread);
+        long due = slotLoad[slotOf(a)].get() <= slotLoad[slotOf(b)].get() ? a : b;
+        Target target = new Target(vm, endpoint, intervalTicks * properties.getTick().toMillis(), clock.millis());
+        Target previous = targets.put(vm.getName(), target);
+        if (previous != null) {
+            removeFromSlot(previous);
+        }
+        addToSlot(target, due);
+    }
+
+    /**
+     * Stops polling a VM. Retired VMs are also dropped automatically when their slot comes up.
+     */
+    public void unregister(ManagedVm vm) {
+        Target target = targets.remove(vm.getName());
+        if (target != null) {
+            removeFromSlot(target);
+        }
+    }
+
+    /**
+     * Registers a callback that receives every batch of results after it has been applied.
+     * It runs on the ticker thread and must not block.
+     */
+    public void addBatchListener(Consumer<List<RunnerStatus>> listener) {
+        batchListeners.add(listener);
+    }
+
+    public int getTargetCount() {
+        return targets.size();
+    }
+
+    /**
+     * Returns the poller's counters.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("targets", targets.size());
+        stats.put("slots", slots.length);
+        stats.put("busiestSlot", busiestSlot());
+        stats.put("inFlight", inFlight == null ? 0 : properties.getMaxInFlight() - inFlight.availablePermits());
+        stats.put("polls", polls.get());
+        stats.put("failures", failures.get());
+        stats.put("deferred", backlogSize);
+        stats.put("skipped", skipped.get());
+        stats.put("adaptive", properties.isAdaptive());
+        stats.put("pollsPerMinute", Math.round(scheduledPollsPerMinute()));
+        long sent = polls.get();
+        long fixed = fixedSchedulePolls();
+        stats.put("fixedSchedulePolls", fixed);
+        stats.put("bootPolls", bootPolls.get());
+        // Net of the boot probes, which are counted in the polls sent
+        stats.put("savedPolls", fixed - sent);
+        return stats;
+    }
+
+    private int busiestSlot() {
+        int busiest = 0;
+        for (AtomicInteger load : slotLoad) {
+            busiest = Math.max(busiest, load.get());
+        }
+        return busiest;
+    }
+
+    /**
+     * @return The polls per minute the current schedules add up to
+     */
+    public double scheduledPollsPerMinute() {
+        double perMinute = 0;
+        for (Target target : targets.values()) {
+            perMinute += 60_000.0 / target.delayMillis;
+        }
+        return perMinute;
+    }
+
+    /**
+     * @return The polls that polling every registered VM once per {@code interval} would have
+     *         sent since the poller started
+     */
+    public long fixedSchedulePolls() {
+        return targetTicks.get() / intervalTicks;
+    }
+
+    @Override
+    public void start() {
+        if (!properties.isEnabled()) {
+            logger.info("Runner status polling is disabled");
+            return;
+        }
+        inFlight = new Semaphore(properties.getMaxInFlight());
+        workers = Executors.newFixedThreadPool(properties.getWorkerThreads(), daemon("runner-status-http-"));
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(properties.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(workers)
+                .build();
+        ticker = Executors.newSingleThreadScheduledExecutor(daemon("runner-status-ticker-"));
+        long tickMillis = properties.getTick().toMillis();
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        running = true;
+        logger.info("Polling runner status every {} across {} slots, at most {} requests in flight",
+                properties.getInterval(), slots.length, properties.getMaxInFlight());
+        if (properties.isAdaptive() && properties.getMinInterval().compareTo(properties.getInterval()) < 0) {
+            logger.warn("Adaptive runner status polling may poll VMs more often than every {}: its minimum is {}",
+                    properties.getInterval(), properties.getMinInterval());
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void tick() {
+        try {
+            pollSlot(slots[slotOf(cursor)]);
+            targetTicks.addAndGet(targets.size());
+            cursor++;
+            flush();
+        } catch (RuntimeException e) {
+            // An exception would cancel the schedule
+            logger.error("Runner status tick failed", e);
+        }
+    }
+
+    private void pollSlot(Set<Target> slot) {
+        // Polls that did not fit under the in-flight cap last tick go first
+        Target next;
+        while ((next = backlog.peek()) != null) {
+            if (!tryPoll(next)) {
+                break;
+            }
+            backlog.poll();
+            next.deferred = false;
+        }
+        long now = cursor;
+        for (Target target : slot) {
+            if (target.vm.getState() == VmState.RETIRED) {
+                unregister(target.vm);
+            } else if (targets.get(target.vm.getName()) != target) {
+                // Unregistered while being moved to this slot
+                removeFromSlot(target);
+            } else if (target.dueTick > now) {
+                // Due on a later turn of the ring
+                continue;
+            } else if (target.deferred) {
+                // Still waiting from the previous interval; polling it twice would not help
+                skipped.incrementAndGet();
+            } else {
+                // Rescheduled from its result when adaptive; otherwise due again next interval
+                target.dueTick = properties.isAdaptive() ? Long.MAX_VALUE : now + intervalTicks;
+                if (!backlog.isEmpty() || !tryPoll(target)) {
+                    target.deferred = true;
+                    backlog.add(target);
+                }
+            }
+        }
+        backlogSize = backlog.size();
+    }
+
+    /**
+     * @return {@code false} if the in-flight cap has been reached
+     */
+    private boolean tryPoll(Target target) {
+        if (!target.polling.compareAndSet(false, true)) {
+            // The previous poll is still running
+            return true;
+        }
+        if (!inFlight.tryAcquire()) {
+            target.polling.set(false);
+            return false;
+        }
+        poll(target);
+        return true;
+    }
+
+    private void poll(Target target) {
+        HttpRequest request = HttpRequest.newBuilder(target.endpoint)
+                .timeout(properties.getRequestTimeout())
+                .GET()
+                .build();
+        long started = System.nanoTime();
+        polls.incrementAndGet();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, error) -> {
+                    try {
+                        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                        completed.add(toStatus(target.vm.getName(), response, error, latencyMillis));
+                    } finally {
+                        target.polling.set(false);
+                        inFlight.release();
+                    }
+                });
+    }
+
+    private RunnerStatus toStatus(String vmName, HttpResponse<byte[]> response, Throwable error, long latencyMillis) {
+        if (error != null) {
+            failures.incrementAndGet();
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            RunnerStatus.Outcome outcome = cause instanceof HttpTimeoutException
+                    ? RunnerStatus.Outcome.TIMEOUT
+                    : RunnerStatus.Outcome.UNREACHABLE;
+            if (!(cause instanceof HttpTimeoutException) && !(cause instanceof ConnectException)) {
+                logger.debug("Runner status poll of {} failed", vmName, cause);
+            }
+            return new RunnerStatus(vmName, outcome, 0, null, latencyMillis, clock.instant());
+        }
+        int status = response.statusCode();
+        if (status < 200 || status >= 300) {
+            failures.incrementAndGet();
+            return new RunnerStatus(vmName, RunnerStatus.Outcome.HTTP_ERROR, status, null, latencyMillis, clock.instant());
+        }
+        return new RunnerStatus(vmName, RunnerStatus.Outcome.OK, status, runnerState(response.body()),
+                latencyMillis, clock.instant());
+    }
+
+    /**
+     * Reads the top-level {@code status} field of a status response, if it is JSON.
+     */
+    static String runnerState(byte[] body) {
+        if (body == null || body.length == 0) {
+            return null;
+        }
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("status".equals(field) && value == JsonToken.VALUE_STRING) {
+                    return parser.getText();
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            logger.debug("Runner status response is not JSON", e);
+        }
+        return null;
+    }
+
+    private void flush() {
+        int batchSize = properties.getBatchSize();
+        List<RunnerStatus> batch = new ArrayList<>(Math.min(batchSize, 64));
+        RunnerStatus status;
+        while ((status = completed.poll()) != null) {
+            batch.add(status);
+            if (batch.size() == batchSize) {
+                apply(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            apply(batch);
+        }
+    }
+
+    private void apply(List<RunnerStatus> batch) {
+        for (RunnerStatus status : batch) {
+            Target target = targets.get(status.vmName());
+            if (target != null) {
+                target.vm.recordStatus(status);
+                if (properties.isAdaptive()) {
+                    reschedule(target, status);
+                }
+            }
+        }
+        for (Consumer<List<RunnerStatus>> listener : batchListeners) {
+            try {
+                listener.accept(batch);
+            } catch (RuntimeException e) {
+                logger.error("Runner status batch listener failed", e);
+            }
+        }
+    }
+
+    private void reschedule(Target target, RunnerStatus status) {
+        long now = clock.millis();
+        boolean booting = !target.answered
+                && now - target.registeredAtMillis < properties.getBootWindow().toMillis();
+        if (booting && !status.runnerOnline()) {
+            bootPolls.incrementAndGet();
+        }
+        long delayMillis = schedule.nextDelayMillis(target.vm, status, target.backoffMillis, booting, now);
+        if (status.runnerOnline()) {
+            target.answered = true;
+            target.backoffMillis = 0;
+        } else if (target.answered || booting) {
+            // Stopped answering, or booting and slowing towards the minimum
+            target.backoffMillis = delayMillis;
+        } else {
+            // Still booting after the readiness window; stays at the minimum
+            target.backoffMillis = 0;
+        }
+        target.delayMillis = delayMillis;
+        long delayTicks = Math.max(1, delayMillis / properties.getTick().toMillis());
+        removeFromSlot(target);
+        addToSlot(target, cursor + delayTicks);
+        if (targets.get(target.vm.getName()) != target) {
+            // Unregistered meanwhile
+            removeFromSlot(target);
+        }
+    }
+
+    private int slotOf(long tick) {
+        return (int) (tick % slots.length);
+    }
+
+    private void addToSlot(Target target, long dueTick) {
+        int slot = slotOf(dueTick);
+        target.dueTick = dueTick;
+        target.slot = slot;
+        slotLoad[slot].incrementAndGet();
+        slots[slot].add(target);
+    }
+
+    private void removeFromSlot(Target target) {
+        int slot = target.slot;
+        if (slots[slot].remove(target)) {
+            slotLoad[slot].decrementAndGet();
+        }
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Target {
+        final ManagedVm vm;
+        final URI endpoint;
+        final long registeredAtMillis;
+        final AtomicBoolean polling = new AtomicBoolean();
+        volatile int slot;
+        volatile long dueTick;
+        /** Time between its polls, as last scheduled; read when reporting. */
+        volatile long delayMillis;
+        /** The current backoff while the runner is not answering, otherwise {@code 0}. Ticker thread only. */
+        long backoffMillis;
+        /** Whether the runner has answered since the VM was registered. Ticker thread only. */
+        boolean answered;
+        boolean deferred;
+
+        Target(ManagedVm vm, URI endpoint, long delayMillis, long registeredAtMillis) {
+            this.vm = vm;
+            this.endpoint = endpoint;
+            this.delayMillis = delayMillis;
+            this.registeredAtMillis = registeredAtMillis;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.zhai.hw.service.webhook;
+
+import com.zhai.hw.config.DeduplicationProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Detects webhook deliveries that GitHub has already sent.
+ * <p>
+ * GitHub redelivers on timeouts and on manual redelivery, always with the same
+ * {@code X-GitHub-Delivery} ID. The delivery ID is checked straight after signature
+ * verification, before the payload is parsed; a second check on
+ * {@code (workflow_job.id, action)} catches the same transition arriving under a new
+ * delivery ID. Both key sets are bounded and expire entries after the configured TTL.
+ */
+@Component
+public class DeliveryDeduplicator {
+
+    private final ExpiringKeySet<String> deliveryIds;
+    private final ExpiringKeySet<JobActionKey> jobActions;
+
+    private final LongAdder deliveryHits = new LongAdder();
+    private final LongAdder deliveryMisses = new LongAdder();
+    private final LongAdder jobActionHits = new LongAdder();
+    private final LongAdder jobActionMisses = new LongAdder();
+
+    @Autowired
+    public DeliveryDeduplicator(DeduplicationProperties properties) {
+        this(properties.getTtl(), properties.getMaxEntries(), System::nanoTime);
+    }
+
+    DeliveryDeduplicator(Duration ttl, int maxEntries, LongSupplier nanoClock) {
+        this.deliveryIds = new ExpiringKeySet<>(ttl.toNanos(), maxEntries, nanoClock);
+        this.jobActions = new ExpiringKeySet<>(ttl.toNanos(), maxEntries, nanoClock);
+    }
+
+    /**
+     * Records a delivery ID and reports whether it has been seen before.
+     * Deliveries without an ID are never treated as duplicates.
+     *
+     * @param deliveryId The value of the X-GitHub-Delivery header
+     * @return {@code true} if the delivery is a duplicate
+     */
+    public boolean isDuplicateDelivery(String deliveryId) {
+        if (deliveryId == null || deliveryId.isEmpty()) {
+            return false;
+        }
+        if (deliveryIds.checkAndAdd(deliveryId)) {
+            deliveryHits.increment();
+            return true;
+        }
+        deliveryMisses.increment();
+        return false;
+    }
+
+    /**
+     * Records a job transition and reports whether it has been seen before.
+     *
+     * @param jobId  The workflow_job.id
+     * @param action The event action
+     * @return {@code true} if the transition is a duplicate
+     */
+    public boolean isDuplicateJobAction(long jobId, String action) {
+        if (jobActions.checkAndAdd(new JobActionKey(jobId, action))) {
+            jobActionHits.increment();
+            return true;
+        }
+        jobActionMisses.increment();
+        return false;
+    }
+
+    /**
+     * Forgets a delivery that was recorded but could not be accepted, so that
+     * GitHub's redelivery of it is processed normally.
+     */
+    public void forget(String deliveryId, long jobId, String action) {
+        if (deliveryId != null && !deliveryId.isEmpty()) {
+            deliveryIds.remove(deliveryId);
+        }
+        jobActions.remove(new JobActionKey(jobId, action));
+    }
+
+    /**
+     * Returns the hit and miss counters and the number of keys currently held.
+     */
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("deliveryHits", deliveryHits.sum());
+        stats.put("deliveryMisses", deliveryMisses.sum());
+        stats.put("jobActionHits", jobActionHits.sum());
+        stats.put("jobActionMisses", jobActionMisses.sum());
+        stats.put("deliveryKeys", (long) deliveryIds.size());
+        stats.put("jobActionKeys", (long) jobActions.size());
+        return stats;
+    }
+
+    private record JobActionKey(long jobId, String action) {
+    }
+}
@@ -0,0 +1,95 @@
+package com.zhai.hw.service.webhook;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * A concurrent set of recently seen keys with bounded memory.
+ * <p>
+ * Keys are kept in two generations. New keys go into the current generation; once it
+ * is older than the TTL or holds half of the capacity, it becomes the previous
+ * generation and the old previous one is dropped wholesale. A key is therefore
+ * remembered for at least the TTL unless a burst fills the capacity first, and
+ * memory never exceeds {@code maxEntries} keys no matter how long the burst lasts.
+ */
+final class ExpiringKeySet<K> {
+
+    private final long ttlNanos;
+    private final int generationCapacity;
+    private final LongSupplier nanoClock;
+    private final AtomicReference<Generations<K>> generations;
+
+    ExpiringKeySet(long ttlNanos, int maxEntries, LongSupplier nanoClock) {
+        if (ttlNanos <= 0 || maxEntries < 2) {
+            throw new IllegalArgumentException("TTL must be positive and capacity at least 2");
+        }
+        this.ttlNanos = ttlNanos;
+        this.generationCapacity = maxEntries / 2;
+        this.nanoClock = nanoClock;
+        this.generations = new AtomicReference<>(
+                new Generations<>(new Generation<>(nanoClock.getAsLong()), new Generation<>(nanoClock.getAsLong())));
+    }
+
+    /**
+     * Records the key and reports whether it had already been seen.
+     *
+     * @return {@code true} if the key was already present
+     */
+    boolean checkAndAdd(K key) {
+        Generations<K> gens = current();
+        if (gens.previous.keys.contains(key)) {
+            return true;
+        }
+        if (!gens.current.keys.add(key)) {
+            return true;
+        }
+        gens.current.size.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Forgets a key so that it is treated as new the next time it is seen.
+     */
+    void remove(K key) {
+        Generations<K> gens = generations.get();
+        if (gens.current.keys.remove(key)) {
+            gens.current.size.decrementAndGet();
+        }
+        gens.previous.keys.remove(key);
+    }
+
+    int size() {
+        Generations<K> gens = generations.get();
+        return gens.current.keys.size() + gens.previous.keys.size();
+    }
+
+    private Generations<K> current() {
+        while (true) {
+            Generations<K> gens = generations.get();
+            long now = nanoClock.getAsLong();
+            if (now - gens.current.startedAt < ttlNanos && gens.current.size.get() < generationCapacity) {
+                return gens;
+            }
+            Generations<K> rotated = new Generations<>(new Generation<>(now), gens.current);
+            if (generations.compareAndSet(gens, rotated)) {
+                return rotated;
+            }
+        }
+    }
+
+    private static final class Generation<K> {
+        private final Set<K> keys = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger size = new AtomicInteger();
+        private final long startedAt;
+
+        private Generation(long startedAt) {
+            this.startedAt = startedAt;
+        }
+    }
+
+    private record Generations<K>(Generation<K> current, Generation<K> previous) {
+    }
+}
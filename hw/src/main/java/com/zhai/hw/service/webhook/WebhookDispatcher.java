@@ -0,0 +1,281 @@
+package com.zhai.hw.service.webhook;
+
+import com.zhai.hw.config.DispatchProperties;
+import com.zhai.hw.model.github.Repository;
+import com.zhai.hw.model.github.WorkflowJob;
+import com.zhai.hw.model.github.WorkflowJobEvent;
+import com.zhai.hw.service.WorkflowJobService;
+import com.zhai.hw.service.metrics.HwMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands accepted webhook events from request threads to a fixed set of single-writer shards.
+ * <p>
+ * Each shard is a bounded queue drained by one worker thread. Events are routed by a jump
+ * consistent hash of their repository's full name, or of their label set, so every event
+ * of a job lands on the same shard and is processed in arrival order, and state a handler
+ * keeps per shard is only ever touched by that shard's worker and needs no locks. Changing
+ * the shard count moves only about {@code 1/shards} of the keys. When a shard's queue is
+ * full the event is refused and the endpoint pushes back on GitHub instead of buffering
+ * without limit.
+ */
+@Component
+public class WebhookDispatcher implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookDispatcher.class);
+
+    /**
+     * What events are routed to a shard by.
+     */
+    public enum ShardKey {
+        /** The repository's full name, ignoring case. */
+        REPOSITORY,
+        /** The job's labels, ignoring case and order. */
+        LABELS
+    }
+
+    /**
+     * Processes an event on the worker of the shard it was routed to.
+     */
+    @FunctionalInterface
+    public interface ShardHandler {
+        void handle(WorkflowJobEvent event, int shard);
+    }
+
+    private final Shard[] shards;
+    private final ShardKey shardKey;
+    private final int queueCapacity;
+    private final ShardHandler handler;
+    private final long shutdownTimeoutMillis;
+    private volatile boolean running;
+
+    @Autowired
+    public WebhookDispatcher(DispatchProperties properties, WorkflowJobService workflowJobService, HwMetrics metrics) {
+        this(properties.getShards(), properties.getQueueCapacity(),
+                ShardKey.valueOf(properties.getShardKey().toUpperCase(Locale.ROOT)),
+                TimeUnit.SECONDS.toMillis(properties.getShutdownTimeoutSeconds()), workflowJobService::handle);
+        metrics.registerDispatchShards(shards.length, this::queueDepth);
+    }
+
+    WebhookDispatcher(int shardCount, int queueCapacity, ShardKey shardKey, long shutdownTimeoutMillis,
+                      ShardHandler handler) {
+        if (shardCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Dispatch shards and queue capacity must be at least 1");
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, queueCapacity);
+        }
+        this.shardKey = shardKey;
+        this.queueCapacity = queueCapacity;
+        this.handler = handler;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    /**
+     * @return The number of shards, which is fixed for the dispatcher's lifetime
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Enqueues an event for asynchronous processing without blocking.
+     *
+     * @param event The parsed event
+     * @return {@code true} if the event was queued, {@code false} if its shard is full
+     *         or the dispatcher is not running
+     */
+    public boolean offer(WorkflowJobEvent event) {
+        if (!running) {
+            return false;
+        }
+        return shards[shardFor(event.getWorkflowJob())].queue.offer(event);
+    }
+
+    /**
+     * Returns the number of events waiting in each shard.
+     */
+    public int[] queueDepths() {
+        int[] depths = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            depths[i] = shards[i].queue.size();
+        }
+        return depths;
+    }
+
+    int queueDepth(int shard) {
+        return shards[shard].queue.size();
+    }
+
+    /**
+     * Returns the shard key and each shard's queue depth and processed count.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("shardKey", shardKey.name().toLowerCase(Locale.ROOT));
+        body.put("queueCapacity", queueCapacity);
+        List<Map<String, Object>> perShard = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("depth", shard.queue.size());
+            entry.put("processed", shard.processed);
+            perShard.add(entry);
+        }
+        body.put("shards", perShard);
+        return body;
+    }
+
+    int shardFor(WorkflowJob job) {
+        if (job == null) {
+            return 0;
+        }
+        long key;
+        if (shardKey == ShardKey.LABELS) {
+            if (job.getLabels() == null) {
+                return 0;
+            }
+            // Summing the label hashes makes the key independent of label order
+            key = 0;
+            for (String label : job.getLabels()) {
+                key += mix(hashIgnoreCase(label));
+            }
+        } else {
+            Repository repository = job.getRepository();
+            if (repository == null || repository.getFullName() == null) {
+                return 0;
+            }
+            key = hashIgnoreCase(repository.getFullName());
+        }
+        return jumpHash(mix(key), shards.length);
+    }
+
+    /**
+     * A 64-bit hash of a string that ignores case, computed without allocating.
+     */
+    private static long hashIgnoreCase(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            h = (h ^ Character.toLowerCase(value.charAt(i))) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Lamping and Veach's jump consistent hash: maps a key to one of {@code buckets} so that
+     * going from n to n + 1 buckets moves only the keys that land in the new one.
+     */
+    static int jumpHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    /**
+     * Starts before and stops after the embedded web server, so no request can be
+     * accepted while the workers are down. The server starts and stops in the phase 1024
+     * below graceful shutdown; this runs one phase lower, since lifecycles sharing a phase
+     * have no guaranteed order.
+     */
+    @Override
+    public int getPhase() {
+        return WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE - 1024 - 1;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        for (Shard shard : shards) {
+            shard.worker = new Thread(() -> drain(shard), "webhook-dispatch-" + shard.index);
+            shard.worker.setDaemon(true);
+            shard.worker.start();
+        }
+        logger.info("Started {} webhook dispatch workers", shards.length);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMillis;
+        for (Shard shard : shards) {
+            try {
+                shard.worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (shard.worker.isAlive()) {
+                logger.warn("Dispatch worker {} did not drain in time; {} events dropped",
+                        shard.index, shard.queue.size());
+                shard.worker.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void drain(Shard shard) {
+        // Keep draining after stop() so events already acknowledged with 202 are not lost
+        while (running || !shard.queue.isEmpty()) {
+            WorkflowJobEvent event;
+            try {
+                event = shard.queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (event == null) {
+                continue;
+            }
+            try {
+                handler.handle(event, shard.index);
+            } catch (Exception e) {
+                logger.error("Error dispatching workflow job event {}", event.getWorkflowJob().getId(), e);
+            }
+            shard.processed++;
+        }
+    }
+
+    private static final class Shard {
+        private final int index;
+        private final BlockingQueue<WorkflowJobEvent> queue;
+        private Thread worker;
+        /** Written only by the worker. */
+        private volatile long processed;
+
+        private Shard(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.zhai.hw.service.webhook;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Per-thread, reusable byte buffer that holds a webhook request body.
+ * <p>
+ * The body is read once from the request stream and the same bytes are used
+ * for HMAC verification and JSON parsing, so a delivery is never copied into
+ * intermediate Strings. Buffers that had to grow past {@link #RETAINED_CAPACITY}
+ * are dropped on {@link #release()} so one oversized payload does not pin
+ * memory on every request thread.
+ */
+public final class WebhookPayloadBuffer {
+
+    static final int INITIAL_CAPACITY = 32 * 1024;
+    static final int RETAINED_CAPACITY = 256 * 1024;
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private static final ThreadLocal<WebhookPayloadBuffer> BUFFERS =
+            ThreadLocal.withInitial(WebhookPayloadBuffer::new);
+
+    private byte[] data = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    private WebhookPayloadBuffer() {
+    }
+
+    /**
+     * Returns the buffer bound to the calling thread.
+     */
+    public static WebhookPayloadBuffer forCurrentThread() {
+        return BUFFERS.get();
+    }
+
+    /**
+     * Reads the whole stream into this buffer, replacing any previous content.
+     *
+     * @param in            The request body stream
+     * @param lengthHint    The declared Content-Length, or a negative value if unknown
+     * @param maxLength     The largest body that will be accepted
+     * @return The number of bytes read
+     * @throws PayloadTooLargeException if the body exceeds {@code maxLength}
+     * @throws IOException              if the stream cannot be read
+     */
+    public int readFrom(InputStream in, int lengthHint, int maxLength) throws IOException {
+        if (lengthHint > maxLength) {
+            throw new PayloadTooLargeException(lengthHint, maxLength);
+        }
+        if (lengthHint >= data.length) {
+            // Leave room for the end-of-stream read so a body of exactly lengthHint never regrows
+            data = new byte[(int) Math.min((long) lengthHint + 1, MAX_ARRAY_LENGTH)];
+        }
+        int total = 0;
+        while (true) {
+            if (total == data.length) {
+                // One byte of headroom past the limit is enough to detect an oversized body
+                long grown = Math.min((long) maxLength + 1, (long) data.length * 2);
+                data = Arrays.copyOf(data, (int) Math.min(grown, MAX_ARRAY_LENGTH));
+            }
+            int read = in.read(data, total, data.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+            if (total > maxLength) {
+                throw new PayloadTooLargeException(total, maxLength);
+            }
+        }
+        length = total;
+        return total;
+    }
+
+    /**
+     * Returns the backing array. Only the first {@link #length()} bytes are valid.
+     */
+    public byte[] array() {
+        return data;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Marks the buffer as free for the next request on this thread.
+     */
+    public void release() {
+        length = 0;
+        if (data.length > RETAINED_CAPACITY) {
+            data = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Thrown when a webhook body exceeds the configured maximum size.
+     */
+    public static class PayloadTooLargeException extends IOException {
+
+        public PayloadTooLargeException(long length, int maxLength) {
+            super("Payload of " + length + " bytes exceeds limit of " + maxLength + " bytes");
+        }
+    }
+}
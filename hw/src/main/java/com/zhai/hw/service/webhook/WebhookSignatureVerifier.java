@@ -0,0 +1,150 @@
+package com.zhai.hw.service.webhook;
+
+import com.zhai.hw.exception.WebhookValidationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+
+/**
+ * Verifies the {@code X-Hub-Signature-256} header of GitHub webhook deliveries.
+ * <p>
+ * Each thread keeps an initialised {@link Mac} and a digest scratch array, and the
+ * header's hex digits are compared against the raw digest in place, so verifying
+ * a delivery allocates nothing beyond the header String the container already built.
+ */
+@Component
+public class WebhookSignatureVerifier {
+
+    private static final String HMAC_SHA256 = "HmacSHA256";
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final int DIGEST_LENGTH = 32;
+
+    private final boolean enabled;
+    private final ThreadLocal<MacState> macs;
+
+    public WebhookSignatureVerifier(@Value("${GITHUB_WEBHOOK_SECRET:}") String webhookSecret) {
+        this.enabled = StringUtils.hasText(webhookSecret);
+        if (enabled) {
+            SecretKeySpec key = new SecretKeySpec(webhookSecret.getBytes(StandardCharsets.UTF_8), HMAC_SHA256);
+            this.macs = ThreadLocal.withInitial(() -> new MacState(key));
+        } else {
+            this.macs = null;
+        }
+    }
+
+    /**
+     * Returns whether a webhook secret is configured.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Verifies the signature of a payload held in a byte array.
+     *
+     * @param payload   The buffer holding the raw request body
+     * @param length    The number of valid bytes in {@code payload}
+     * @param signature The value of the X-Hub-Signature-256 header
+     * @throws WebhookValidationException if the header is missing or does not match
+     */
+    public void verify(byte[] payload, int length, String signature) {
+        MacState state = begin(signature);
+        state.mac.update(payload, 0, length);
+        finish(state, signature);
+    }
+
+    /**
+     * Verifies the signature of a payload held in a sequence of buffers, such as the chunks
+     * of a request body read by a non-blocking server, without copying them together.
+     *
+     * @param payload   The buffers holding the raw request body, in order; their positions
+     *                  are advanced to their limits
+     * @param signature The value of the X-Hub-Signature-256 header
+     * @throws WebhookValidationException if the header is missing or does not match
+     */
+    public void verify(Iterator<ByteBuffer> payload, String signature) {
+        MacState state = begin(signature);
+        while (payload.hasNext()) {
+            state.mac.update(payload.next());
+        }
+        finish(state, signature);
+    }
+
+    private MacState begin(String signature) {
+        if (!StringUtils.hasText(signature)) {
+            throw new WebhookValidationException("Missing X-Hub-Signature-256 header");
+        }
+        if (!enabled) {
+            throw new WebhookValidationException("GitHub webhook secret is not configured");
+        }
+        return macs.get();
+    }
+
+    private static void finish(MacState state, String signature) {
+        byte[] digest = state.digest;
+        try {
+            state.mac.doFinal(digest, 0);
+        } catch (ShortBufferException e) {
+            throw new WebhookValidationException("Error validating webhook signature", e);
+        }
+        if (!matches(signature, digest)) {
+            throw new WebhookValidationException("Invalid signature");
+        }
+    }
+
+    /**
+     * Compares a {@code sha256=<hex>} header against a raw digest without
+     * short-circuiting on the first differing byte.
+     */
+    static boolean matches(String signature, byte[] digest) {
+        if (signature.length() != SIGNATURE_PREFIX.length() + DIGEST_LENGTH * 2
+                || !signature.startsWith(SIGNATURE_PREFIX)) {
+            return false;
+        }
+        int diff = 0;
+        int pos = SIGNATURE_PREFIX.length();
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int hi = hexValue(signature.charAt(pos++));
+            int lo = hexValue(signature.charAt(pos++));
+            // An invalid digit yields -1, which sets bits outside the low byte
+            diff |= ((hi << 4) | lo) ^ (digest[i] & 0xff);
+            diff |= (hi | lo) & ~0xf;
+        }
+        return diff == 0;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static final class MacState {
+        private final Mac mac;
+        private final byte[] digest = new byte[DIGEST_LENGTH];
+
+        private MacState(SecretKeySpec key) {
+            try {
+                this.mac = Mac.getInstance(HMAC_SHA256);
+                this.mac.init(key);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        }
+    }
+}
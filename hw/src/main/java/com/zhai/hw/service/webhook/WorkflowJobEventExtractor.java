@@ -0,0 +1,193 @@
+package com.zhai.hw.service.webhook;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zhai.hw.exception.InvalidWebhookPayloadException;
+import com.zhai.hw.model.github.Repository;
+import com.zhai.hw.model.github.WorkflowJob;
+import com.zhai.hw.model.github.WorkflowJobEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pulls the handful of fields the service uses out of a {@code workflow_job} payload.
+ * <p>
+ * Walks the payload with Jackson's streaming parser instead of binding the whole
+ * document: only {@code action}, {@code workflow_job.id}, {@code run_id}, {@code status},
+ * {@code labels}, {@code runner_name} and the repository's {@code full_name} are
+ * materialised, and every other object is skipped without building Strings. GitHub sends
+ * {@code action} first, so deliveries for actions the service does not handle are
+ * rejected after a few tokens.
+ */
+@Component
+public class WorkflowJobEventExtractor {
+
+    private final JsonFactory jsonFactory;
+    private final Set<String> handledActions;
+
+    @Autowired
+    public WorkflowJobEventExtractor(ObjectMapper objectMapper,
+                                     @Value("${app.webhook.handled-actions:queued,in_progress,completed}")
+                                     Set<String> handledActions) {
+        this(objectMapper.getFactory(), handledActions);
+    }
+
+    public WorkflowJobEventExtractor(JsonFactory jsonFactory, Set<String> handledActions) {
+        this.jsonFactory = jsonFactory;
+        this.handledActions = Set.copyOf(handledActions);
+    }
+
+    /**
+     * Returns whether events with the given action are processed.
+     */
+    public boolean handles(String action) {
+        return action != null && handledActions.contains(action);
+    }
+
+    /**
+     * Extracts an event from a raw payload.
+     *
+     * @param payload The buffer holding the JSON payload
+     * @param offset  The offset of the payload in the buffer
+     * @param length  The payload length
+     * @return The event, or {@code null} if its action is not handled
+     * @throws IOException                    if the payload is not valid JSON
+     * @throws InvalidWebhookPayloadException if a required field is missing
+     */
+    public WorkflowJobEvent extract(byte[] payload, int offset, int length) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(payload, offset, length)) {
+            return extract(parser);
+        }
+    }
+
+    /**
+     * Extracts an event from a raw payload read from a stream, such as a view over the
+     * buffers of a request body that were never copied into one array.
+     *
+     * @param payload The JSON payload; it is read up to the end of the top-level object
+     * @return The event, or {@code null} if its action is not handled
+     * @throws IOException                    if the payload is not valid JSON
+     * @throws InvalidWebhookPayloadException if a required field is missing
+     */
+    public WorkflowJobEvent extract(InputStream payload) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            return extract(parser);
+        }
+    }
+
+    private WorkflowJobEvent extract(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new InvalidWebhookPayloadException("Payload is not a JSON object");
+        }
+        String action = null;
+        WorkflowJob job = null;
+        String topLevelRepository = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "action" -> {
+                    action = parser.getValueAsString();
+                    if (action != null && !handledActions.contains(action)) {
+                        return null;
+                    }
+                }
+                case "workflow_job" -> job = readJob(parser, value);
+                case "repository" -> topLevelRepository = readFullName(parser, value);
+                default -> parser.skipChildren();
+            }
+        }
+        return toEvent(action, job, topLevelRepository);
+    }
+
+    private WorkflowJob readJob(JsonParser parser, JsonToken start) throws IOException {
+        if (start != JsonToken.START_OBJECT) {
+            throw new InvalidWebhookPayloadException("workflow_job is not an object");
+        }
+        WorkflowJob job = new WorkflowJob();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> job.setId(parser.getValueAsLong());
+                case "run_id" -> job.setRunId(parser.getValueAsLong());
+                case "status" -> job.setStatus(parser.getValueAsString());
+                case "labels" -> job.setLabels(readLabels(parser, value));
+                case "runner_name" -> job.setRunnerName(parser.getValueAsString());
+                case "repository" -> {
+                    String fullName = readFullName(parser, value);
+                    job.setRepository(fullName == null ? null : new Repository(fullName));
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return job;
+    }
+
+    private List<String> readLabels(JsonParser parser, JsonToken start) throws IOException {
+        if (start == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (start != JsonToken.START_ARRAY) {
+            throw new InvalidWebhookPayloadException("workflow_job.labels is not an array");
+        }
+        List<String> labels = new ArrayList<>(4);
+        JsonToken element;
+        while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (element != JsonToken.VALUE_STRING) {
+                // A nested array or object would otherwise be read token by token as labels
+                throw new InvalidWebhookPayloadException("workflow_job.labels holds a " + element + ", not a string");
+            }
+            labels.add(parser.getText());
+        }
+        return labels;
+    }
+
+    private String readFullName(JsonParser parser, JsonToken start) throws IOException {
+        if (start != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String fullName = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("full_name".equals(field)) {
+                fullName = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return fullName;
+    }
+
+    private WorkflowJobEvent toEvent(String action, WorkflowJob job, String topLevelRepository) {
+        if (action == null || action.isBlank()) {
+            throw new InvalidWebhookPayloadException("Action cannot be blank");
+        }
+        if (job == null) {
+            throw new InvalidWebhookPayloadException("Workflow job cannot be null");
+        }
+        if (job.getLabels() == null) {
+            throw new InvalidWebhookPayloadException("Labels cannot be null");
+        }
+        // GitHub sends the repository at the top level; older fixtures nest it in the job
+        if (job.getRepository() == null && topLevelRepository != null) {
+            job.setRepository(new Repository(topLevelRepository));
+        }
+        if (job.getRepository() == null || job.getRepository().getFullName() == null
+                || job.getRepository().getFullName().isBlank()) {
+            throw new InvalidWebhookPayloadException("Repository full name cannot be blank");
+        }
+        return new WorkflowJobEvent(action, job);
+    }
+}
@@ -0,0 +1,55 @@
+#!/bin/bash
+# Bootstraps a self-hosted GitHub Actions runner on a new VM.
+# Placeholders are substituted by StartupScriptRenderer before the script is passed as custom data.
+set -euo pipefail
+
+RUNNER_HOME=/opt/actions-runner
+RUNNER_USER=runner
+
+id -u "$RUNNER_USER" >/dev/null 2>&1 || useradd --create-home --shell /bin/bash "$RUNNER_USER"
+mkdir -p "$RUNNER_HOME"
+cd "$RUNNER_HOME"
+
+if [ ! -x ./config.sh ]; then
+  RUNNER_VERSION=$(curl -fsSL https://api.github.com/repos/actions/runner/releases/latest | grep -oP '"tag_name": "v\K[^"]+')
+  curl -fsSL -o runner.tar.gz \
+    "https://github.com/actions/runner/releases/download/v${RUNNER_VERSION}/actions-runner-linux-x64-${RUNNER_VERSION}.tar.gz"
+  tar xzf runner.tar.gz && rm runner.tar.gz
+fi
+chown -R "$RUNNER_USER" "$RUNNER_HOME"
+
+sudo -u "$RUNNER_USER" ./config.sh --unattended --replace \
+  --url "%%GITHUB_REPO_URL%%" \
+  --token "%%RUNNER_REGISTRATION_TOKEN%%" \
+  --name "%%RUNNER_NAME%%" \
+  --labels "%%RUNNER_LABELS%%"
+
+./svc.sh install "$RUNNER_USER"
+./svc.sh start
+
+# Serves the runner service state at /runner/status for the status poller: idle, busy or offline
+cat > /usr/local/bin/runner-status-server.py <<'PY'
+import http.server, json, subprocess
+
+class Handler(http.server.BaseHTTPRequestHandler):
+    def do_GET(self):
+        if self.path != "/runner/status":
+            self.send_error(404)
+            return
+        active = subprocess.run(["systemctl", "is-active", "--quiet", "actions.runner.*"]).returncode == 0
+        # The runner starts a Runner.Worker process for each job it runs
+        busy = active and subprocess.run(["pgrep", "-f", "Runner.Worker"], stdout=subprocess.DEVNULL).returncode == 0
+        status = ("busy" if busy else "idle") if active else "offline"
+        body = json.dumps({"status": status, "name": "%%RUNNER_NAME%%"}).encode()
+        self.send_response(200)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
+    def log_message(self, *args):
+        pass
+
+http.server.ThreadingHTTPServer(("0.0.0.0", %%STATUS_SERVER_PORT%%), Handler).serve_forever()
+PY
+nohup python3 /usr/local/bin/runner-status-server.py >/var/log/runner-status-server.log 2>&1 &
@@ -1,13 +1,32 @@
 package com.zhai.hw;
 
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.service.ConfigurationLoaderService;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
 @SpringBootTest
 class HwApplicationTests {
 
+	@Autowired
+	private ConfigurationLoaderService configurationLoaderService;
+
+	@Autowired
+	private AppConfig appConfig;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void testConfigurationIsParsedOnceAtStartup() {
+		// Every load publishes a new version, so a second parse would show up here
+		assertEquals(1, configurationLoaderService.getSnapshot().version());
+		assertSame(configurationLoaderService.getSnapshot().config(), appConfig);
+	}
+
 }
@@ -0,0 +1,233 @@
+package com.zhai.hw.controller;
+
+import com.zhai.hw.service.webhook.WebhookDispatcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs against the servlet stack through MockMvc; {@link ReactiveGitHubWebhookControllerTest}
+ * runs the same cases against the reactive stack.
+ */
+@SpringBootTest(properties = "app.webhook.max-payload-bytes=1048576")
+@AutoConfigureMockMvc
+class GitHubWebhookControllerTest {
+
+    // Matches GITHUB_WEBHOOK_SECRET in src/test/resources/application.properties
+    private static final String SECRET = "test-secret";
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoSpyBean
+    private WebhookDispatcher dispatcher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private static byte[] payload(String resource) throws IOException {
+        try (InputStream in = new ClassPathResource(resource).getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] payload(String resource, long jobId) throws IOException {
+        String json = new String(payload(resource), StandardCharsets.UTF_8);
+        return json.replace("12345678", Long.toString(jobId)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sign(byte[] payload) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return "sha256=" + HexFormat.of().formatHex(mac.doFinal(payload));
+    }
+
+    @Test
+    void testQueuedEventIsAccepted() throws Exception {
+        byte[] body = payload("github/workflow_job_queued.json", 1001);
+
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(body))
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isAccepted();
+    }
+
+    @Test
+    void testAcceptedAndRejectedEventsAreCounted() throws Exception {
+        double queued = meterRegistry.counter("hw.webhook.events", "action", "queued").count();
+        double unsigned = meterRegistry.counter("hw.webhook.rejected", "reason", "signature").count();
+        long verified = meterRegistry.timer("hw.webhook.stage", "stage", "verify").count();
+        byte[] body = payload("github/workflow_job_queued.json", 1005);
+
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(body))
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isAccepted();
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isUnauthorized();
+
+        assertEquals(queued + 1, meterRegistry.counter("hw.webhook.events", "action", "queued").count());
+        assertEquals(unsigned + 1, meterRegistry.counter("hw.webhook.rejected", "reason", "signature").count());
+        assertEquals(verified + 1, meterRegistry.timer("hw.webhook.stage", "stage", "verify").count());
+    }
+
+    @Test
+    void testUnhandledActionIsIgnored() throws Exception {
+        byte[] body = new String(payload("github/workflow_job_completed.json", 1002), StandardCharsets.UTF_8)
+                .replace("\"action\": \"completed\"", "\"action\": \"waiting\"")
+                .getBytes(StandardCharsets.UTF_8);
+
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(body))
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk();
+        verify(dispatcher, never()).offer(any());
+    }
+
+    @Test
+    void testPayloadMissingRequiredFieldsIsBadRequest() throws Exception {
+        byte[] body = new String(payload("github/workflow_job_invalid.json"), StandardCharsets.UTF_8)
+                .replace("\"action\": \"\"", "\"action\": \"queued\"")
+                .getBytes(StandardCharsets.UTF_8);
+
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(body))
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void testFullDispatchQueueIsServiceUnavailable() throws Exception {
+        byte[] body = payload("github/workflow_job_queued.json", 1003);
+        doReturn(false).when(dispatcher).offer(any());
+
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(body))
+                .header("X-GitHub-Delivery", "delivery-1003")
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().valueEquals("Retry-After", "5");
+
+        // The rejected delivery must not be remembered, so GitHub's redelivery goes through
+        doCallRealMethod().when(dispatcher).offer(any());
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(body))
+                .header("X-GitHub-Delivery", "delivery-1003")
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isAccepted();
+    }
+
+    @Test
+    void testRedeliveredEventIsIgnored() throws Exception {
+        byte[] body = payload("github/workflow_job_queued.json", 1004);
+
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(body))
+                .header("X-GitHub-Delivery", "delivery-1004")
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isAccepted();
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(body))
+                .header("X-GitHub-Delivery", "delivery-1004")
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk();
+        // Same job transition under a fresh delivery ID
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(body))
+                .header("X-GitHub-Delivery", "delivery-1004-manual")
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk();
+        verify(dispatcher, times(1)).offer(any());
+    }
+
+    @Test
+    void testMissingSignatureIsUnauthorized() throws Exception {
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(payload("github/workflow_job_queued.json"))
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    @Test
+    void testInvalidSignatureIsUnauthorized() throws Exception {
+        byte[] body = payload("github/workflow_job_queued.json");
+        byte[] other = payload("github/workflow_job_completed.json");
+
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(other))
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    @Test
+    void testMalformedPayloadIsBadRequest() throws Exception {
+        byte[] body = payload("github/workflow_job_malformed.json");
+
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(body))
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void testOversizedPayloadIsRejected() throws Exception {
+        byte[] body = new byte[2 * 1024 * 1024];
+        Arrays.fill(body, (byte) ' ');
+
+        webTestClient.post().uri("/webhook/github")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Hub-Signature-256", sign(body))
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+}
@@ -0,0 +1,35 @@
+package com.zhai.hw.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.reactive.context.ReactiveWebApplicationContext;
+import org.springframework.context.ApplicationContext;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The webhook contract on the reactive stack: the cases of {@link GitHubWebhookControllerTest}
+ * against {@link ReactiveGitHubWebhookController}.
+ */
+@SpringBootTest(properties = {
+        "spring.main.web-application-type=reactive",
+        "app.webhook.max-payload-bytes=1048576",
+        "app.state.directory=target/test-state-reactive"
+})
+@AutoConfigureWebTestClient
+class ReactiveGitHubWebhookControllerTest extends GitHubWebhookControllerTest {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    void testReactiveControllerServesTheEndpoint() {
+        assertInstanceOf(ReactiveWebApplicationContext.class, context);
+        assertNotNull(context.getBean(ReactiveGitHubWebhookController.class));
+        assertTrue(context.getBeansOfType(GitHubWebhookController.class).isEmpty());
+    }
+}
@@ -0,0 +1,81 @@
+package com.zhai.hw.model;
+
+import com.zhai.hw.exception.InvalidConfigurationException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LabelMatchIndexTest {
+
+    private static LabelVmMapping mapping(String label) {
+        return new LabelVmMapping(label, "size", "os", "region", "vnet", "subnet", "nsg", "disk", 1,
+                new VmPoolParameters(1, 5, 1, Duration.ofHours(1)));
+    }
+
+    @Test
+    void testResolvesAmongGenericLabels() {
+        LabelVmMapping gpu = mapping("gpu-intensive");
+        LabelVmMapping memory = mapping("memory-optimized");
+        LabelMatchIndex index = LabelMatchIndex.build(List.of(gpu, memory));
+
+        assertSame(gpu, index.resolve(List.of("self-hosted", "linux", "gpu-intensive")));
+        assertSame(memory, index.resolve(List.of("memory-optimized", "self-hosted")));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testMatchingIsCaseInsensitive() {
+        LabelVmMapping gpu = mapping("gpu-intensive");
+        LabelMatchIndex index = LabelMatchIndex.build(List.of(gpu));
+
+        assertSame(gpu, index.resolve(List.of("GPU-Intensive")));
+        assertEquals(0, index.idOf("gpu-INTENSIVE"));
+    }
+
+    @Test
+    void testUnknownAndAmbiguousLabels() {
+        LabelMatchIndex index = LabelMatchIndex.build(List.of(mapping("a"), mapping("b")));
+
+        assertEquals(LabelMatchIndex.NO_MATCH, index.resolveId(List.of("self-hosted", "linux")));
+        assertEquals(LabelMatchIndex.NO_MATCH, index.resolveId(List.of()));
+        assertEquals(LabelMatchIndex.AMBIGUOUS, index.resolveId(List.of("a", "b")));
+        assertNull(index.resolve(List.of("a", "b")));
+        // Repeating the same label is not ambiguous
+        assertEquals(0, index.resolveId(List.of("a", "A")));
+        assertEquals(LabelMatchIndex.NO_MATCH, index.idOf(null));
+    }
+
+    @Test
+    void testDuplicateLabelsAreRejected() {
+        InvalidConfigurationException exception = assertThrows(InvalidConfigurationException.class,
+                () -> LabelMatchIndex.build(List.of(mapping("gpu"), mapping("other"), mapping("GPU"))));
+        assertTrue(exception.getMessage().contains("labelVmMappings[2]"));
+        assertTrue(exception.getMessage().contains("labelVmMappings[0]"));
+    }
+
+    @Test
+    void testReservedLabelsAreRejected() {
+        assertThrows(InvalidConfigurationException.class,
+                () -> LabelMatchIndex.build(List.of(mapping("Self-Hosted"))));
+        assertThrows(InvalidConfigurationException.class,
+                () -> LabelMatchIndex.build(List.of(mapping("linux"))));
+    }
+
+    @Test
+    void testLargeIndexResolvesEveryLabel() {
+        List<LabelVmMapping> mappings = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            mappings.add(mapping("label-" + i));
+        }
+        LabelMatchIndex index = LabelMatchIndex.build(mappings);
+
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, index.resolveId(List.of("self-hosted", "label-" + i)));
+        }
+        assertEquals(LabelMatchIndex.NO_MATCH, index.idOf("label-5000"));
+    }
+}
@@ -31,6 +31,7 @@ public class VmPoolParametersTest {
         assertEquals(12, params.getMaximumPoolSize());
         assertEquals(3, params.getScaleUpTriggerThreshold());
         assertEquals(idleTimeout, params.getIdleTimeout());
+        assertTrue(params.isForecastEnabled());
     }
 
     @Test
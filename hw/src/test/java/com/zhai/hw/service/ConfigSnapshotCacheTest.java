@@ -0,0 +1,118 @@
+package com.zhai.hw.service;
+
+import com.zhai.hw.config.AppProperties;
+import com.zhai.hw.config.ConfigCacheProperties;
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.model.ConfigSnapshot;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ConfigSnapshotCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private Path configFile;
+    private ConfigSnapshotCache cache;
+    private Validator validator;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        configFile = directory.resolve("config.yml");
+        try (var in = new ClassPathResource("test-config.yml").getInputStream()) {
+            Files.write(configFile, in.readAllBytes());
+        }
+        ConfigCacheProperties properties = new ConfigCacheProperties();
+        properties.setEnabled(true);
+        properties.setDirectory(directory.resolve("cache").toString());
+        cache = new ConfigSnapshotCache(properties);
+        validator = Validation.buildDefaultValidatorFactory().getValidator();
+    }
+
+    private ConfigurationLoaderService loader(Validator validator) {
+        AppProperties appProperties = new AppProperties();
+        appProperties.setConfigPath("file:" + configFile);
+        return new ConfigurationLoaderService(appProperties, validator, cache);
+    }
+
+    private List<Path> cacheFiles() throws IOException {
+        try (var files = Files.list(directory.resolve("cache"))) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    void testRestartWithUnchangedYamlSkipsParsingAndValidation() {
+        ConfigSnapshot parsed = load(loader(validator));
+
+        Validator spy = spy(validator);
+        ConfigSnapshot cached = load(loader(spy));
+
+        verify(spy, never()).validate(any());
+        assertEquals(parsed.config(), cached.config());
+        assertNotSame(parsed.config(), cached.config());
+        assertEquals(parsed.contentHash(), cached.contentHash());
+        assertEquals(parsed.labelMatchIndex().size(), cached.labelMatchIndex().size());
+        assertSame(cached.config().getLabelVmMappings().get(1),
+                cached.labelMatchIndex().resolve(List.of("self-hosted", "TEST-MEM")));
+        assertEquals(-1, cached.labelMatchIndex().idOf("unknown"));
+    }
+
+    @Test
+    void testChangedYamlIsParsedAndReplacesTheCopy() throws IOException {
+        load(loader(validator));
+        Files.writeString(configFile, Files.readString(configFile).replace("Test App", "Changed App"));
+
+        Validator spy = spy(validator);
+        ConfigSnapshot reloaded = load(loader(spy));
+
+        verify(spy).validate(any());
+        assertEquals("Changed App", reloaded.config().getAppName());
+        List<Path> files = cacheFiles();
+        assertEquals(1, files.size());
+        assertTrue(files.get(0).getFileName().toString().contains(reloaded.contentHash()));
+    }
+
+    @Test
+    void testDamagedCopyFallsBackToParsing() throws IOException {
+        ConfigSnapshot parsed = load(loader(validator));
+        Path file = cacheFiles().get(0);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x5a;
+        Files.write(file, bytes);
+
+        Validator spy = spy(validator);
+        ConfigSnapshot reloaded = load(loader(spy));
+
+        verify(spy).validate(any());
+        assertEquals(parsed.config(), reloaded.config());
+        assertNotNull(cache.load(parsed.contentHash()), "A damaged copy is replaced by the next parse");
+    }
+
+    @Test
+    void testCopyIsNotUsedForAnotherHash() {
+        ConfigSnapshot parsed = load(loader(validator));
+
+        assertNotNull(cache.load(parsed.contentHash()));
+        assertNull(cache.load("0".repeat(64)));
+    }
+
+    private static ConfigSnapshot load(ConfigurationLoaderService loader) {
+        AppConfig config = loader.loadConfiguration();
+        assertSame(config, loader.getSnapshot().config());
+        return loader.getSnapshot();
+    }
+}
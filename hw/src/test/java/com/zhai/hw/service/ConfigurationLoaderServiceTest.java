@@ -3,17 +3,23 @@ package com.zhai.hw.service;
 import com.zhai.hw.config.AppProperties;
 import com.zhai.hw.exception.InvalidConfigurationException;
 import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.model.ConfigSnapshot;
 import jakarta.validation.Validation;
 import jakarta.validation.Validator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.io.ClassPathResource;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.when;
@@ -61,6 +67,9 @@ public class ConfigurationLoaderServiceTest {
         assertEquals("test-mem", appConfig.getLabelVmMappings().get(1).getLabel());
         assertEquals("test-mem-vm", appConfig.getLabelVmMappings().get(1).getVmSeriesSize());
         assertEquals(3, appConfig.getLabelVmMappings().get(1).getRunnersPerVm());
+        assertNull(appConfig.getLabelVmMappings().get(0).getPoolParameters().getMaximumPollInterval());
+        assertEquals(Duration.ofMinutes(2),
+                appConfig.getLabelVmMappings().get(1).getPoolParameters().getMaximumPollInterval());
     }
 
     @Test
@@ -152,4 +161,85 @@ public class ConfigurationLoaderServiceTest {
         assertNotNull(appConfig);
         assertEquals(Duration.ofMinutes(15), appConfig.getVmPool().getIdleTimeout());
     }
+
+    @Test
+    void testLoadConfiguration_BuildsLabelMatchIndex() {
+        // When
+        AppConfig appConfig = configurationLoaderService.loadConfiguration("classpath:test-config.yml");
+
+        // Then
+        assertNotNull(configurationLoaderService.getLabelMatchIndex());
+        assertEquals(appConfig.getLabelVmMappings().get(1),
+                configurationLoaderService.getLabelMatchIndex().resolve(List.of("self-hosted", "test-mem")));
+    }
+
+    @Test
+    void testLoadConfiguration_DuplicateLabels() {
+        // When/Then
+        InvalidConfigurationException exception = assertThrows(
+                InvalidConfigurationException.class,
+                () -> configurationLoaderService.loadConfiguration("classpath:duplicate-label-config.yml")
+        );
+        assertTrue(exception.getMessage().contains("duplicates"));
+        assertNull(configurationLoaderService.getLabelMatchIndex());
+    }
+
+    @Test
+    void testReload_PublishesNewSnapshot(@TempDir Path dir) throws IOException {
+        // Given
+        Path config = dir.resolve("config.yml");
+        Files.write(config, new ClassPathResource("test-config.yml").getInputStream().readAllBytes());
+        when(appProperties.getConfigPath()).thenReturn("file:" + config);
+        configurationLoaderService.loadConfiguration();
+        ConfigSnapshot first = configurationLoaderService.getSnapshot();
+        List<ConfigSnapshot> published = new ArrayList<>();
+        configurationLoaderService.addSnapshotListener(published::add);
+
+        // When
+        Files.writeString(config, Files.readString(config).replace("maxSize: 50", "maxSize: 75"));
+        boolean reloaded = configurationLoaderService.reload();
+
+        // Then
+        assertTrue(reloaded);
+        ConfigSnapshot second = configurationLoaderService.getSnapshot();
+        assertEquals(first.version() + 1, second.version());
+        assertEquals(75, second.config().getVmPool().getMaxSize());
+        assertNotEquals(first.contentHash(), second.contentHash());
+        assertEquals(List.of(second), published);
+        assertNull(configurationLoaderService.getLastReloadFailure());
+    }
+
+    @Test
+    void testReload_UnchangedContentIsSkipped(@TempDir Path dir) throws IOException {
+        // Given
+        Path config = dir.resolve("config.yml");
+        Files.write(config, new ClassPathResource("test-config.yml").getInputStream().readAllBytes());
+        when(appProperties.getConfigPath()).thenReturn("file:" + config);
+        configurationLoaderService.loadConfiguration();
+        ConfigSnapshot first = configurationLoaderService.getSnapshot();
+
+        // When/Then
+        assertFalse(configurationLoaderService.reload());
+        assertSame(first, configurationLoaderService.getSnapshot());
+    }
+
+    @Test
+    void testReload_InvalidConfigurationKeepsPreviousSnapshot(@TempDir Path dir) throws IOException {
+        // Given
+        Path config = dir.resolve("config.yml");
+        Files.write(config, new ClassPathResource("test-config.yml").getInputStream().readAllBytes());
+        when(appProperties.getConfigPath()).thenReturn("file:" + config);
+        configurationLoaderService.loadConfiguration();
+        ConfigSnapshot first = configurationLoaderService.getSnapshot();
+
+        // When
+        Files.write(config, new ClassPathResource("invalid-config.yml").getInputStream().readAllBytes());
+        boolean reloaded = configurationLoaderService.reload();
+
+        // Then
+        assertFalse(reloaded);
+        assertSame(first, configurationLoaderService.getSnapshot());
+        assertNotNull(configurationLoaderService.getLastReloadFailure());
+        assertTrue(configurationLoaderService.getLastReloadFailure().message().contains("Invalid configuration"));
+    }
 }
@@ -0,0 +1,77 @@
+package com.zhai.hw.service;
+
+import com.zhai.hw.config.AppProperties;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigurationWatcherTest {
+
+    private ConfigurationWatcher watcher;
+
+    @AfterEach
+    void tearDown() {
+        if (watcher != null) {
+            watcher.stop();
+        }
+    }
+
+    private ConfigurationWatcher watcher(AppProperties appProperties, ConfigurationLoaderService loader) {
+        ConfigurationWatcher configurationWatcher = new ConfigurationWatcher(appProperties, loader);
+        ReflectionTestUtils.setField(configurationWatcher, "enabled", true);
+        ReflectionTestUtils.setField(configurationWatcher, "debounce", Duration.ofMillis(50));
+        return configurationWatcher;
+    }
+
+    private static void awaitVersion(ConfigurationLoaderService loader, long version) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (loader.getSnapshot().version() < version && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void testFileChangeIsReloaded(@TempDir Path dir) throws IOException, InterruptedException {
+        Path config = dir.resolve("config.yml");
+        Files.write(config, new ClassPathResource("test-config.yml").getInputStream().readAllBytes());
+        AppProperties appProperties = new AppProperties();
+        appProperties.setConfigPath("file:" + config);
+        ConfigurationLoaderService loader = new ConfigurationLoaderService(appProperties,
+                Validation.buildDefaultValidatorFactory().getValidator());
+        loader.loadConfiguration();
+        watcher = watcher(appProperties, loader);
+        watcher.start();
+        assertTrue(watcher.isRunning());
+
+        // Write to a temporary file and move it into place, as editors and deploy tools do
+        Path staged = dir.resolve("config.yml.tmp");
+        Files.writeString(staged, Files.readString(config).replace("appName: \"Test App\"", "appName: \"Reloaded\""));
+        Files.move(staged, config, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        awaitVersion(loader, 2);
+
+        assertEquals("Reloaded", loader.getSnapshot().config().getAppName());
+    }
+
+    @Test
+    void testClasspathConfigurationIsNotWatched() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.setConfigPath("classpath:test-config.yml");
+        ConfigurationLoaderService loader = new ConfigurationLoaderService(appProperties,
+                Validation.buildDefaultValidatorFactory().getValidator());
+        watcher = watcher(appProperties, loader);
+
+        watcher.start();
+
+        assertFalse(watcher.isRunning());
+    }
+}
@@ -0,0 +1,40 @@
+package com.zhai.hw.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobLedgerTest {
+
+    @Test
+    void testLateAndRepeatedActionsAreStale() {
+        JobLedger ledger = new JobLedger(100);
+
+        assertTrue(ledger.advance(1, "queued"));
+        assertTrue(ledger.advance(1, "in_progress"));
+        assertFalse(ledger.advance(1, "queued"));
+        assertFalse(ledger.advance(1, "in_progress"));
+        assertTrue(ledger.advance(1, "completed"));
+        // A job first seen part-way through is taken from there
+        assertTrue(ledger.advance(2, "completed"));
+        assertFalse(ledger.advance(2, "queued"));
+        // Actions without a stage are never stale
+        assertTrue(ledger.advance(1, "something-new"));
+
+        assertEquals(4, ledger.advanced());
+        assertEquals(3, ledger.stale());
+    }
+
+    @Test
+    void testOldestJobsAreForgottenAtCapacity() {
+        JobLedger ledger = new JobLedger(3);
+        for (long id = 1; id <= 4; id++) {
+            ledger.advance(id, "queued");
+        }
+
+        assertEquals(3, ledger.size());
+        // Job 1 was forgotten, so its redelivered queued event is applied again
+        assertTrue(ledger.advance(1, "queued"));
+        assertFalse(ledger.advance(4, "queued"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.zhai.hw.service.bootstrap;
+
+import com.zhai.hw.exception.InvalidConfigurationException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StartupScriptTemplateTest {
+
+    private static final String TEMPLATE = """
+            #!/bin/bash
+            ./config.sh --url "%%GITHUB_REPO_URL%%" --token "%%RUNNER_REGISTRATION_TOKEN%%" \\
+              --name "%%RUNNER_NAME%%" --labels "%%RUNNER_LABELS%%"
+            echo "%%RUNNER_NAME%%" listens on %%STATUS_SERVER_PORT%%
+            """;
+
+    private static final String REPO_URL = "https://github.com/example/repo";
+
+    private static Map<Placeholder, String> labelValues() {
+        Map<Placeholder, String> values = new EnumMap<>(Placeholder.class);
+        values.put(Placeholder.RUNNER_LABELS, "android-small");
+        values.put(Placeholder.STATUS_SERVER_PORT, "8080");
+        return values;
+    }
+
+    @Test
+    void testRenderMatchesPlainSubstitution() {
+        PreparedScript script = StartupScriptTemplate.compile(TEMPLATE).prepare(labelValues());
+
+        String expected = TEMPLATE
+                .replace("%%GITHUB_REPO_URL%%", REPO_URL)
+                .replace("%%RUNNER_LABELS%%", "android-small")
+                .replace("%%STATUS_SERVER_PORT%%", "8080")
+                .replace("%%RUNNER_NAME%%", "vm-1")
+                .replace("%%RUNNER_REGISTRATION_TOKEN%%", "AABBCC");
+        assertEquals(expected, new String(script.render("vm-1", REPO_URL, "AABBCC"), StandardCharsets.UTF_8));
+        assertEquals(expected, new String(Base64.getDecoder().decode(script.renderBase64("vm-1", REPO_URL, "AABBCC")),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testNonAsciiValuesAreEncodedAsUtf8() {
+        PreparedScript script = StartupScriptTemplate.compile("name=%%RUNNER_NAME%%;token=%%RUNNER_REGISTRATION_TOKEN%%")
+                .prepare(Map.of());
+
+        assertEquals("name=vm-ü;token=t", new String(script.render("vm-ü", REPO_URL, "t"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testTemplateWithoutPlaceholders() {
+        PreparedScript script = StartupScriptTemplate.compile("echo hello\n").prepare(Map.of());
+
+        assertEquals("echo hello\n", new String(script.render("vm-1", REPO_URL, "token"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testUnknownPlaceholderFailsCompile() {
+        InvalidConfigurationException e = assertThrows(InvalidConfigurationException.class,
+                () -> StartupScriptTemplate.compile("echo %%RUNNER_GROUP%%"));
+        assertTrue(e.getMessage().contains("%%RUNNER_GROUP%%"));
+    }
+
+    @Test
+    void testMissingLabelValueFailsPrepare() {
+        Map<Placeholder, String> values = labelValues();
+        values.put(Placeholder.RUNNER_LABELS, "");
+        StartupScriptTemplate template = StartupScriptTemplate.compile(TEMPLATE);
+
+        InvalidConfigurationException e = assertThrows(InvalidConfigurationException.class,
+                () -> template.prepare(values));
+        assertTrue(e.getMessage().contains("%%RUNNER_LABELS%%"));
+    }
+
+    @Test
+    void testMissingVmValueFailsRender() {
+        PreparedScript script = StartupScriptTemplate.compile(TEMPLATE).prepare(labelValues());
+
+        assertThrows(IllegalArgumentException.class, () -> script.render("vm-1", REPO_URL, null));
+        assertThrows(IllegalArgumentException.class, () -> script.renderBase64("", REPO_URL, "AABBCC"));
+        // The repository is per VM too, so it is not fixed when the label's script is prepared
+        assertThrows(IllegalArgumentException.class, () -> script.render("vm-1", null, "AABBCC"));
+    }
+}
@@ -0,0 +1,187 @@
+package com.zhai.hw.service.forecast;
+
+import com.zhai.hw.config.ForecastProperties;
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.model.LabelMatchIndex;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmPoolManager;
+import com.zhai.hw.support.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DemandForecasterTest {
+
+    // A Monday, midnight UTC
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-01-06T00:00:00Z"));
+
+    private static LabelVmMapping mapping(String label, boolean forecastEnabled) {
+        return new LabelVmMapping(label, "Standard_D4s_v5", "ubuntu-22.04", "eastus", "vnet", "subnet", "nsg",
+                "Premium_LRS-128", 2, new VmPoolParameters(1, 20, 0, Duration.ofMinutes(30), forecastEnabled));
+    }
+
+    private static VmPoolManager manager(LabelVmMapping... mappings) {
+        ConfigurationLoaderService loader = mock(ConfigurationLoaderService.class);
+        AppConfig config = new AppConfig("Test", "1", new AppConfig.ServerConfig("localhost", 8080), Map.of(),
+                new AppConfig.VmPoolConfig(10, Duration.ofMinutes(15), "ubuntu"), List.of(mappings));
+        when(loader.getSnapshot()).thenReturn(new ConfigSnapshot(1, "test", "hash", Instant.EPOCH, config,
+                LabelMatchIndex.build(List.of(mappings))));
+        return new VmPoolManager(loader);
+    }
+
+    private static ForecastProperties properties(boolean enabled) {
+        ForecastProperties properties = new ForecastProperties();
+        properties.setEnabled(enabled);
+        properties.setStep(Duration.ofMinutes(1));
+        properties.setLeadTime(Duration.ofMinutes(5));
+        properties.setEwmaAlpha(0.3);
+        properties.setProfileAlpha(0.3);
+        return properties;
+    }
+
+    private void step(DemandForecaster forecaster, String label, int queued) {
+        for (int i = 0; i < queued; i++) {
+            forecaster.recordQueued(label);
+        }
+        clock.advance(Duration.ofMinutes(1));
+        forecaster.update();
+    }
+
+    @Test
+    void testSteadyRateRaisesWarmTarget() {
+        VmPoolManager manager = manager(mapping("android-small", true));
+        DemandForecaster forecaster = new DemandForecaster(properties(true), manager, clock);
+        VmPool pool = manager.getPool("android-small");
+        assertEquals(1, pool.getWarmTarget());
+
+        for (int minute = 0; minute < 30; minute++) {
+            step(forecaster, "android-small", 4);
+        }
+
+        // 4 jobs/min over a 5 minute lead time, 2 runners per VM
+        assertEquals(10, pool.getWarmTarget());
+        Map<?, ?> entry = (Map<?, ?>) forecaster.snapshot().get("android-small");
+        assertEquals(10, entry.get("warmTarget"));
+        assertEquals(4.0, (Double) entry.get("recentJobsPerMinute"), 0.01);
+    }
+
+    @Test
+    void testTargetStaysWithinConfiguredBounds() {
+        VmPoolManager manager = manager(mapping("android-small", true));
+        DemandForecaster forecaster = new DemandForecaster(properties(true), manager, clock);
+        VmPool pool = manager.getPool("android-small");
+
+        for (int minute = 0; minute < 30; minute++) {
+            step(forecaster, "android-small", 100);
+        }
+        assertEquals(20, pool.getWarmTarget());
+
+        for (int minute = 0; minute < 60; minute++) {
+            step(forecaster, "android-small", 0);
+        }
+        // Move past the hours whose profile remembers the burst
+        clock.advance(Duration.ofHours(2));
+        forecaster.update();
+        for (int minute = 0; minute < 60; minute++) {
+            step(forecaster, "android-small", 0);
+        }
+        assertEquals(1, pool.getWarmTarget());
+    }
+
+    @Test
+    void testProfilePreWarmsAheadOfWeeklyRush() {
+        VmPoolManager manager = manager(mapping("android-small", true));
+        DemandForecaster forecaster = new DemandForecaster(properties(true), manager, clock);
+        VmPool pool = manager.getPool("android-small");
+
+        // One week in which Monday 08:00-09:00 sees 2 jobs a minute and nothing else happens
+        for (int minute = 0; minute < 7 * 24 * 60; minute++) {
+            boolean rush = minute >= 8 * 60 && minute < 9 * 60;
+            step(forecaster, "android-small", rush ? 2 : 0);
+        }
+        // The following Monday, 07:56: no recent demand, but the lead time reaches into the rush hour
+        clock.advance(Duration.ofHours(7).plusMinutes(55));
+        forecaster.update();
+        assertTrue(pool.getWarmTarget() >= 4, "target " + pool.getWarmTarget());
+
+        // Tuesday at the same time stays at the minimum
+        clock.advance(Duration.ofDays(1));
+        forecaster.update();
+        assertEquals(1, pool.getWarmTarget());
+    }
+
+    @Test
+    void testProfileAveragesTheHourAndRemembersEarlierWeeks() {
+        VmPoolManager manager = manager(mapping("android-small", true));
+        DemandForecaster forecaster = new DemandForecaster(properties(true), manager, clock);
+        VmPool pool = manager.getPool("android-small");
+
+        // Monday 08:00-09:00 sees 3 jobs a minute for 50 minutes, then nothing for the last 10
+        for (int minute = 0; minute < 7 * 24 * 60; minute++) {
+            boolean rush = minute >= 8 * 60 && minute < 8 * 60 + 50;
+            step(forecaster, "android-small", rush ? 3 : 0);
+        }
+        clock.advance(Duration.ofHours(7).plusMinutes(55));
+        forecaster.update();
+        Map<?, ?> entry = (Map<?, ?>) forecaster.snapshot().get("android-small");
+        assertEquals(2.5, (Double) entry.get("usualJobsPerMinute"), 0.01);
+        // 2.5 jobs/min over a 5 minute lead time, 2 runners per VM
+        assertEquals(7, pool.getWarmTarget());
+
+        // A quiet second week only weakens the memory of the first
+        for (int minute = 7 * 60 + 55; minute < 7 * 24 * 60; minute++) {
+            step(forecaster, "android-small", 0);
+        }
+        clock.advance(Duration.ofHours(7).plusMinutes(55));
+        forecaster.update();
+        entry = (Map<?, ?>) forecaster.snapshot().get("android-small");
+        assertEquals(1.75, (Double) entry.get("usualJobsPerMinute"), 0.01);
+    }
+
+    @Test
+    void testForecastCanBeDisabledPerLabel() {
+        VmPoolManager manager = manager(mapping("android-small", true), mapping("android-large", false));
+        DemandForecaster forecaster = new DemandForecaster(properties(true), manager, clock);
+
+        for (int minute = 0; minute < 30; minute++) {
+            forecaster.recordQueued("android-large");
+            step(forecaster, "android-small", 4);
+        }
+
+        assertEquals(10, manager.getPool("android-small").getWarmTarget());
+        assertEquals(1, manager.getPool("android-large").getWarmTarget());
+        assertEquals(false, ((Map<?, ?>) forecaster.snapshot().get("android-large")).get("enabled"));
+    }
+
+    @Test
+    void testForecastCanBeDisabledGlobally() {
+        VmPoolManager manager = manager(mapping("android-small", true));
+        DemandForecaster forecaster = new DemandForecaster(properties(false), manager, clock);
+        forecaster.start();
+
+        for (int minute = 0; minute < 30; minute++) {
+            step(forecaster, "android-small", 4);
+        }
+
+        assertFalse(forecaster.isRunning());
+        assertEquals(1, manager.getPool("android-small").getWarmTarget());
+    }
+
+    @Test
+    void testHourOfWeek() {
+        assertEquals(0, DemandForecaster.hourOfWeek(Instant.parse("2025-01-06T00:30:00Z")));
+        assertEquals(8, DemandForecaster.hourOfWeek(Instant.parse("2025-01-06T08:00:00Z")));
+        assertEquals(167, DemandForecaster.hourOfWeek(Instant.parse("2025-01-12T23:59:59Z")));
+    }
+}
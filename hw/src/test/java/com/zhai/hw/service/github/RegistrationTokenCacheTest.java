@@ -0,0 +1,213 @@
+package com.zhai.hw.service.github;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.zhai.hw.config.GitHubProperties;
+import com.zhai.hw.exception.GitHubApiException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the cache against a local stand-in for the GitHub API that can be slowed down and
+ * made to answer 429.
+ */
+class RegistrationTokenCacheTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private RegistrationTokenCache cache;
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private final AtomicInteger issued = new AtomicInteger();
+    /** Responses to send before issuing tokens, as HTTP status codes. */
+    private final Queue<Integer> injected = new ConcurrentLinkedQueue<>();
+    private volatile long latencyMillis;
+    private volatile Duration tokenLifetime = Duration.ofHours(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        serverExecutor = Executors.newFixedThreadPool(16);
+        server.setExecutor(serverExecutor);
+        server.createContext("/repos/", this::handle);
+        server.start();
+        GitHubProperties properties = new GitHubProperties();
+        properties.setApiUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        properties.setApiToken("test-token");
+        properties.setRequestTimeout(Duration.ofSeconds(5));
+        properties.setRefreshBefore(Duration.ofMinutes(10));
+        properties.setMinRemaining(Duration.ofMinutes(5));
+        properties.setMaxAttempts(3);
+        properties.setMaxRetryAfter(Duration.ofSeconds(5));
+        properties.setRefreshRetry(Duration.ofSeconds(30));
+        cache = new RegistrationTokenCache(new GitHubApiClient(properties), properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.stop();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String repository = path.substring("/repos/".length(), path.indexOf("/actions/"));
+        calls.computeIfAbsent(repository, key -> new AtomicInteger()).incrementAndGet();
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Integer status = injected.poll();
+        byte[] body;
+        if (status != null) {
+            exchange.getResponseHeaders().add("Retry-After", "0");
+            body = "{\"message\":\"You have exceeded a secondary rate limit\"}".getBytes(StandardCharsets.UTF_8);
+        } else {
+            status = 201;
+            if (!"Bearer test-token".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                status = 401;
+            }
+            body = ("{\"token\":\"" + repository.replace('/', '-') + "-" + issued.incrementAndGet()
+                    + "\",\"expires_at\":\"" + Instant.now().plus(tokenLifetime) + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private int calls(String repository) {
+        AtomicInteger count = calls.get(repository);
+        return count == null ? 0 : count.get();
+    }
+
+    @Test
+    void testConcurrentMissesShareOneFetch() throws Exception {
+        latencyMillis = 300;
+        List<CompletableFuture<RegistrationToken>> tokens = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            tokens.add(cache.getToken("octo/app"));
+        }
+
+        for (CompletableFuture<RegistrationToken> token : tokens) {
+            assertEquals("octo-app-1", token.get(5, TimeUnit.SECONDS).token());
+        }
+        assertEquals(1, calls("octo/app"));
+        assertEquals(49L, cache.stats().get("joinedFetches"));
+
+        // Cached from now on
+        assertTrue(cache.getToken("octo/app").isDone());
+        assertEquals(1, calls("octo/app"));
+    }
+
+    @Test
+    void testRepositoriesAreCachedSeparately() throws Exception {
+        assertEquals("octo-app-1", cache.getToken("octo/app").get(5, TimeUnit.SECONDS).token());
+        assertEquals("octo-lib-2", cache.getToken("octo/lib").get(5, TimeUnit.SECONDS).token());
+        assertEquals("octo-app-1", cache.getToken("octo/app").get(5, TimeUnit.SECONDS).token());
+
+        assertEquals(1, calls("octo/app"));
+        assertEquals(1, calls("octo/lib"));
+    }
+
+    @Test
+    void testRateLimitedFetchIsRetried() throws Exception {
+        injected.add(429);
+        injected.add(429);
+
+        RegistrationToken token = cache.getToken("octo/app").get(5, TimeUnit.SECONDS);
+
+        assertEquals("octo-app-1", token.token());
+        assertEquals(3, calls("octo/app"));
+        assertEquals(2L, cache.stats().get("rateLimited"));
+    }
+
+    @Test
+    void testFetchFailsAfterMaxAttempts() {
+        injected.add(429);
+        injected.add(429);
+        injected.add(429);
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> cache.getToken("octo/app").get(5, TimeUnit.SECONDS));
+
+        GitHubApiException cause = assertInstanceOf(GitHubApiException.class, failure.getCause());
+        assertEquals(429, cause.getStatusCode());
+        assertEquals(3, calls("octo/app"));
+        assertEquals(1L, cache.stats().get("failures"));
+    }
+
+    @Test
+    void testTokenIsRefreshedBeforeItExpires() throws Exception {
+        // Ten minutes and a second: due for refresh a second after it is fetched
+        tokenLifetime = Duration.ofMinutes(10).plusSeconds(1);
+        assertEquals("octo-app-1", cache.getToken("octo/app").get(5, TimeUnit.SECONDS).token());
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (calls("octo/app") < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, calls("octo/app"));
+        tokenLifetime = Duration.ofHours(1);
+        deadline = System.currentTimeMillis() + 5_000;
+        while (!"octo-app-2".equals(cache.getToken("octo/app").join().token())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals("octo-app-2", cache.getToken("octo/app").join().token());
+        assertEquals(1L, cache.stats().get("refreshes"));
+    }
+
+    @Test
+    void testNearlyExpiredTokenIsNotHandedOut() throws Exception {
+        // Less than the five minutes a new VM needs
+        tokenLifetime = Duration.ofMinutes(4);
+        cache.getToken("octo/app").get(5, TimeUnit.SECONDS);
+        tokenLifetime = Duration.ofHours(1);
+
+        assertEquals("octo-app-2", cache.getToken("octo/app").get(5, TimeUnit.SECONDS).token());
+        assertEquals(2, calls("octo/app"));
+    }
+
+    @Test
+    void testUnusedTokenIsNotRefreshed() throws Exception {
+        tokenLifetime = Duration.ofMinutes(10).plusSeconds(1);
+        cache.getToken("octo/app").get(5, TimeUnit.SECONDS);
+        // First refresh: the token was used since it was fetched
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (calls("octo/app") < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, calls("octo/app"));
+
+        // Nothing asked for it since, so the second refresh drops it instead
+        Thread.sleep(1_500);
+        assertEquals(2, calls("octo/app"));
+        assertEquals(Map.of(), cache.stats().get("expiresAt"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.zhai.hw.service.metrics;
+
+import com.zhai.hw.config.MetricsProperties;
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.model.LabelMatchIndex;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmPoolManager;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class HwMetricsTest {
+
+    private static final String REPOSITORY = "octo-org/app";
+
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private final ConfigurationLoaderService loader = mock(ConfigurationLoaderService.class);
+    private VmPoolManager manager;
+
+    private static LabelVmMapping mapping(String label) {
+        return new LabelVmMapping(label, "Standard_D4s_v5", "ubuntu-22.04", "eastus", "vnet", "subnet", "nsg",
+                "Premium_LRS-128", 1, new VmPoolParameters(0, 10, 0, Duration.ofMinutes(30), false));
+    }
+
+    private static ConfigSnapshot snapshot(long version, String... labels) {
+        List<LabelVmMapping> mappings = Arrays.stream(labels).map(HwMetricsTest::mapping).toList();
+        AppConfig config = new AppConfig("Test", "1", new AppConfig.ServerConfig("localhost", 8080), Map.of(),
+                new AppConfig.VmPoolConfig(10, Duration.ofMinutes(15), "ubuntu"), mappings);
+        return new ConfigSnapshot(version, "test", "hash", Instant.EPOCH, config, LabelMatchIndex.build(mappings));
+    }
+
+    private HwMetrics metrics(int maxLabels, String... labels) {
+        when(loader.getSnapshot()).thenReturn(snapshot(1, labels));
+        manager = new VmPoolManager(loader);
+        MetricsProperties properties = new MetricsProperties();
+        properties.setMaxLabels(maxLabels);
+        return new HwMetrics(registry, manager, loader, properties, Set.of("queued", "completed"));
+    }
+
+    @Test
+    void testActionsOutsideTheHandledSetShareOneTag() {
+        HwMetrics metrics = metrics(10, "android-small");
+
+        metrics.recordEvent("queued");
+        metrics.recordEvent("something-new");
+        metrics.recordEvent("another-one");
+
+        assertEquals(1, registry.counter("hw.webhook.events", "action", "queued").count());
+        assertEquals(2, registry.counter("hw.webhook.events", "action", "other").count());
+        assertEquals(3, registry.find("hw.webhook.events").counters().size());
+    }
+
+    @Test
+    void testPoolGaugesFollowThePoolAndConfiguration() {
+        HwMetrics metrics = metrics(10, "android-small");
+        VmPool pool = manager.getPool("android-small");
+        pool.reserve(3);
+        pool.addWarmVm("vm-1", REPOSITORY);
+        pool.addWarmVm("vm-2", REPOSITORY);
+        pool.claim(REPOSITORY);
+
+        assertEquals(1, registry.get("hw.pool.vms").tags("label", "android-small", "state", "warm").gauge().value());
+        assertEquals(1, registry.get("hw.pool.vms").tags("label", "android-small", "state", "busy").gauge().value());
+        assertEquals(1, registry.get("hw.pool.vms").tags("label", "android-small", "state", "provisioning").gauge().value());
+        assertTrue(registry.scrape().contains("hw_pool_vms{label=\"android-small\",state=\"warm\"} 1.0"));
+
+        // A reload that drops the label removes its series
+        metrics.registerPoolGauges(snapshot(2, "android-large"));
+        assertNull(registry.find("hw.pool.vms").tag("label", "android-small").gauge());
+        assertNotNull(registry.find("hw.pool.vms").tag("label", "android-large").gauge());
+    }
+
+    @Test
+    void testPoolLabelsAreCapped() {
+        HwMetrics metrics = metrics(2, "a", "b", "c");
+
+        assertEquals(6, registry.find("hw.pool.vms").gauges().size());
+        assertNull(registry.find("hw.pool.vms").tag("label", "c").gauge());
+
+        // A label that replaces a removed one fits under the cap, tagged as configured
+        metrics.registerPoolGauges(snapshot(2, "a", "Android-Large"));
+        assertEquals(6, registry.find("hw.pool.vms").gauges().size());
+        assertNull(registry.find("hw.pool.vms").tag("label", "b").gauge());
+        assertNotNull(registry.find("hw.pool.vms").tag("label", "Android-Large").gauge());
+    }
+}
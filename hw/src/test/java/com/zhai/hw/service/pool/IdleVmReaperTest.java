@@ -0,0 +1,119 @@
+package com.zhai.hw.service.pool;
+
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.model.LabelMatchIndex;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.support.MutableClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class IdleVmReaperTest {
+
+    private static final String REPOSITORY = "octo-org/app";
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-01-06T00:00:00Z"));
+    private VmPoolManager manager;
+    private IdleVmReaper reaper;
+    private VmPool pool;
+    private final List<ManagedVm> retired = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        LabelVmMapping mapping = new LabelVmMapping("android-small", "Standard_D4s_v5", "ubuntu-22.04", "eastus",
+                "vnet", "subnet", "nsg", "Premium_LRS-128", 1,
+                new VmPoolParameters(1, 10, 0, Duration.ofMinutes(30)));
+        AppConfig config = new AppConfig("Test", "1", new AppConfig.ServerConfig("localhost", 8080), Map.of(),
+                new AppConfig.VmPoolConfig(10, Duration.ofMinutes(15), "ubuntu"), List.of(mapping));
+        manager = new VmPoolManager(mock(ConfigurationLoaderService.class));
+        reaper = new IdleVmReaper(manager, Duration.ofSeconds(1), 64, clock);
+        reaper.addRetiredListener(retired::add);
+        manager.apply(new ConfigSnapshot(1, "test", "hash", clock.instant(), config,
+                LabelMatchIndex.build(List.of(mapping))));
+        pool = manager.getPool("android-small");
+        pool.reserve(3);
+    }
+
+    private int advance(Duration duration) {
+        clock.advance(duration);
+        return reaper.advance();
+    }
+
+    @Test
+    void testIdleVmsExpireDownToMinimumWarm() {
+        ManagedVm a = pool.addWarmVm("vm-a", REPOSITORY);
+        ManagedVm b = pool.addWarmVm("vm-b", REPOSITORY);
+        ManagedVm c = pool.addWarmVm("vm-c", REPOSITORY);
+        assertEquals(3, reaper.getScheduledCount());
+
+        assertEquals(0, advance(Duration.ofMinutes(29)));
+        assertEquals(2, advance(Duration.ofMinutes(1)));
+
+        assertEquals(1, pool.getWarmCount());
+        assertEquals(2, retired.size());
+        assertEquals(1, List.of(a, b, c).stream().filter(vm -> vm.getState() == VmState.IDLE).count());
+        // The survivor is checked again after another idle timeout, not on every tick
+        assertEquals(1, reaper.getScheduledCount());
+        assertEquals(0, advance(Duration.ofMinutes(30)));
+        assertEquals(1, pool.getWarmCount());
+    }
+
+    @Test
+    void testClaimCancelsExpiry() {
+        pool.addWarmVm("vm-a", REPOSITORY);
+        pool.addWarmVm("vm-b", REPOSITORY);
+        ManagedVm claimed = pool.claim(REPOSITORY);
+        assertEquals(1, reaper.getScheduledCount());
+
+        advance(Duration.ofMinutes(31));
+
+        assertEquals(VmState.BUSY, claimed.getState());
+        assertTrue(retired.isEmpty());
+    }
+
+    @Test
+    void testReleaseRestartsIdleTimeout() {
+        pool.addWarmVm("vm-a", REPOSITORY);
+        ManagedVm vm = pool.addWarmVm("vm-b", REPOSITORY);
+        assertSame(vm, pool.claim(REPOSITORY));
+        advance(Duration.ofMinutes(20));
+        pool.release(vm);
+
+        // vm-a has been idle for 30 minutes; vm-b only for 10
+        advance(Duration.ofMinutes(10));
+        assertEquals(1, retired.size());
+        assertNotSame(vm, retired.get(0));
+        assertEquals(VmState.IDLE, vm.getState());
+        assertEquals(0, advance(Duration.ofMinutes(20)));
+    }
+
+    @Test
+    void testVmsOfARemovedLabelAreRetiredBelowTheWarmTarget() {
+        ManagedVm vm = pool.addWarmVm("vm-a", REPOSITORY);
+        LabelVmMapping other = new LabelVmMapping("android-large", "Standard_D8s_v5", "ubuntu-22.04", "eastus",
+                "vnet", "subnet", "nsg", "Premium_LRS-128", 1,
+                new VmPoolParameters(1, 10, 0, Duration.ofMinutes(30)));
+        AppConfig config = new AppConfig("Test", "1", new AppConfig.ServerConfig("localhost", 8080), Map.of(),
+                new AppConfig.VmPoolConfig(10, Duration.ofMinutes(15), "ubuntu"), List.of(other));
+        manager.apply(new ConfigSnapshot(2, "test", "hash", clock.instant(), config,
+                LabelMatchIndex.build(List.of(other))));
+        assertNull(manager.getPool("android-small"));
+
+        // minimumWarmVms would have kept it
+        assertEquals(1, advance(Duration.ofMinutes(30)));
+        assertEquals(List.of(vm), retired);
+        assertEquals(VmState.RETIRED, vm.getState());
+        assertEquals(0, reaper.getScheduledCount());
+    }
+}
@@ -0,0 +1,229 @@
+package com.zhai.hw.service.pool;
+
+import com.zhai.hw.config.LifecycleProperties;
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.model.LabelMatchIndex;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.service.metrics.HwMetrics;
+import com.zhai.hw.service.status.RunnerStatus;
+import com.zhai.hw.support.MutableClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class JobLifecycleTrackerTest {
+
+    private static final String REPOSITORY = "octo-org/app";
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-01-06T00:00:00Z"));
+    private final HwMetrics metrics = mock(HwMetrics.class);
+    private JobLifecycleTracker tracker;
+    private VmPool pool;
+    private ManagedVm a;
+    private ManagedVm b;
+
+    @BeforeEach
+    void setUp() {
+        LabelVmMapping mapping = new LabelVmMapping("android-small", "Standard_D4s_v5", "ubuntu-22.04", "eastus",
+                "vnet", "subnet", "nsg", "Premium_LRS-128", 1,
+                new VmPoolParameters(0, 10, 0, Duration.ofMinutes(30)));
+        AppConfig config = new AppConfig("Test", "1", new AppConfig.ServerConfig("localhost", 8080), Map.of(),
+                new AppConfig.VmPoolConfig(10, Duration.ofMinutes(15), "ubuntu"), List.of(mapping));
+        VmPoolManager manager = new VmPoolManager(mock(ConfigurationLoaderService.class));
+        IdleVmReaper reaper = new IdleVmReaper(manager, Duration.ofSeconds(1), 64, clock);
+        LifecycleProperties properties = new LifecycleProperties();
+        properties.setClaimTimeout(Duration.ofMinutes(10));
+        properties.setCompletedGrace(Duration.ofMinutes(1));
+        tracker = new JobLifecycleTracker(manager, reaper, properties, metrics, clock);
+        manager.apply(new ConfigSnapshot(1, "test", "hash", clock.instant(), config,
+                LabelMatchIndex.build(List.of(mapping))));
+        pool = manager.getPool("android-small");
+        pool.reserve(3);
+        a = pool.addWarmVm("vm-a", REPOSITORY);
+        b = pool.addWarmVm("vm-b", REPOSITORY);
+    }
+
+    private void poll(ManagedVm vm, String state) {
+        tracker.onStatuses(List.of(new RunnerStatus(vm.getName(), RunnerStatus.Outcome.OK, 200, state, 3,
+                clock.instant())));
+    }
+
+    @Test
+    void testCompletedReturnsVmToPool() {
+        ManagedVm vm = pool.claim(REPOSITORY);
+        tracker.claimed(1, vm, 0);
+        tracker.started(1, vm.getName());
+        assertEquals(VmState.BUSY, vm.getState());
+
+        tracker.completed(1, vm.getName());
+
+        assertEquals(VmState.IDLE, vm.getState());
+        assertEquals(2, pool.getWarmCount());
+        assertEquals(1, tracker.count(JobLifecycleTracker.Outcome.RELEASED_BY_EVENT));
+    }
+
+    @Test
+    void testJobStartedOnAnotherRunnerReleasesClaimedVm() {
+        assertSame(b, pool.claim(REPOSITORY));
+        tracker.claimed(1, b, 0);
+
+        tracker.started(1, "vm-a-1");
+
+        assertEquals(VmState.IDLE, b.getState());
+        assertEquals(VmState.BUSY, a.getState());
+        assertEquals(1, tracker.count(JobLifecycleTracker.Outcome.REASSIGNED));
+        // The idle stack no longer holds vm-a, so the next claim gets vm-b
+        assertSame(b, pool.claim(REPOSITORY));
+        assertNull(pool.claim(REPOSITORY));
+
+        tracker.completed(1, "vm-a-1");
+        assertEquals(VmState.IDLE, a.getState());
+    }
+
+    @Test
+    void testLateAndMissingEventsAreCounted() {
+        tracker.started(1, "vm-a");
+        // vm-a runs one job at a time, so job 1 finished without a completed
+        tracker.started(2, "vm-a");
+        assertEquals(1, tracker.count(JobLifecycleTracker.Outcome.MISSED_COMPLETED));
+
+        tracker.completed(1, "vm-a");
+        assertEquals(1, tracker.count(JobLifecycleTracker.Outcome.OUT_OF_ORDER));
+        assertEquals(VmState.BUSY, a.getState());
+
+        tracker.completed(2, "vm-a");
+        assertEquals(VmState.IDLE, a.getState());
+
+        // Claimed and completed, never reported started
+        tracker.claimed(3, pool.claim(REPOSITORY), 0);
+        tracker.completed(3, "vm-a");
+        assertEquals(1, tracker.count(JobLifecycleTracker.Outcome.MISSED_IN_PROGRESS));
+        assertEquals(2, pool.getWarmCount());
+
+        tracker.started(4, "github-hosted-7");
+        assertEquals(1, tracker.count(JobLifecycleTracker.Outcome.UNKNOWN_RUNNER));
+    }
+
+    @Test
+    void testCancelledJobReleasesClaimedVm() {
+        ManagedVm vm = pool.claim(REPOSITORY);
+        tracker.claimed(1, vm, 0);
+
+        tracker.completed(1, null);
+
+        assertEquals(VmState.IDLE, vm.getState());
+    }
+
+    @Test
+    void testPollReconcilesLostEvents() {
+        tracker.started(1, "vm-a");
+        clock.advance(Duration.ofSeconds(30));
+        poll(a, JobLifecycleTracker.IDLE);
+        assertEquals(VmState.BUSY, a.getState());
+
+        clock.advance(Duration.ofSeconds(30));
+        poll(a, JobLifecycleTracker.IDLE);
+        assertEquals(VmState.IDLE, a.getState());
+        assertEquals(1, tracker.count(JobLifecycleTracker.Outcome.MISSED_COMPLETED));
+
+        poll(b, JobLifecycleTracker.BUSY);
+        assertEquals(VmState.BUSY, b.getState());
+        assertEquals(1, tracker.count(JobLifecycleTracker.Outcome.MISSED_IN_PROGRESS));
+        poll(b, JobLifecycleTracker.IDLE);
+        assertEquals(VmState.IDLE, b.getState());
+        assertEquals(3, tracker.count(JobLifecycleTracker.Outcome.CORRECTED_BY_POLL));
+    }
+
+    @Test
+    void testClaimThatNeverStartsExpires() {
+        ManagedVm vm = pool.claim(REPOSITORY);
+        tracker.claimed(1, vm, 0);
+        clock.advance(Duration.ofMinutes(9));
+        poll(vm, JobLifecycleTracker.IDLE);
+        assertEquals(VmState.BUSY, vm.getState());
+
+        clock.advance(Duration.ofMinutes(1));
+        poll(vm, JobLifecycleTracker.IDLE);
+
+        assertEquals(VmState.IDLE, vm.getState());
+        assertEquals(1, tracker.count(JobLifecycleTracker.Outcome.EXPIRED_CLAIM));
+    }
+
+    @Test
+    void testVmProvisionedForJobThatRanElsewhereIsReleased() {
+        tracker.provisioning(1, 0);
+        tracker.started(1, "vm-a");
+
+        ManagedVm provisioned = pool.addWarmVm("vm-c", REPOSITORY);
+        assertSame(provisioned, pool.claim(REPOSITORY));
+        tracker.claimed(1, provisioned, 0);
+
+        assertEquals(VmState.IDLE, provisioned.getState());
+        assertEquals(VmState.BUSY, a.getState());
+        assertEquals(1, tracker.count(JobLifecycleTracker.Outcome.REASSIGNED));
+    }
+
+    @Test
+    void testVmProvisionedStraightIntoAJobIsTracked() {
+        pool.reserve(1);
+        ManagedVm provisioned = pool.addBusyVm("vm-c", REPOSITORY);
+        tracker.claimed(1, provisioned, 0);
+        tracker.started(1, "vm-c");
+
+        tracker.completed(1, "vm-c");
+
+        assertEquals(VmState.IDLE, provisioned.getState());
+        assertEquals(3, pool.getWarmCount());
+        assertEquals(1, tracker.count(JobLifecycleTracker.Outcome.RELEASED_BY_EVENT));
+    }
+
+    @Test
+    void testJobIsReadyWhenItsRunnerFirstReportsOnline() {
+        assertSame(b, pool.claim(REPOSITORY));
+        tracker.claimed(1, b, 100);
+        verify(metrics, never()).recordReady(anyLong());
+
+        poll(b, "offline");
+        verify(metrics, never()).recordReady(anyLong());
+        poll(b, JobLifecycleTracker.IDLE);
+        verify(metrics).recordReady(100);
+        poll(b, JobLifecycleTracker.IDLE);
+        tracker.started(1, "vm-b");
+        verify(metrics, times(1)).recordReady(anyLong());
+
+        // A runner already seen up is ready for the next job as soon as it is claimed
+        tracker.completed(1, "vm-b");
+        assertSame(b, pool.claim(REPOSITORY));
+        tracker.claimed(2, b, 200);
+        verify(metrics).recordReady(200);
+    }
+
+    @Test
+    void testJobIsReadyWhenItStartsBeforeAnyPoll() {
+        tracker.provisioning(1, 100);
+        tracker.started(1, "vm-a");
+        verify(metrics).recordReady(100);
+
+        // Ran without an in_progress
+        tracker.provisioning(2, 200);
+        tracker.completed(2, "vm-b");
+        verify(metrics).recordReady(200);
+
+        // Cancelled before any runner was up for it
+        tracker.provisioning(3, 300);
+        tracker.completed(3, null);
+        poll(a, JobLifecycleTracker.BUSY);
+        verify(metrics, times(2)).recordReady(anyLong());
+        assertEquals(0, tracker.getAwaitingReadyCount());
+    }
+}
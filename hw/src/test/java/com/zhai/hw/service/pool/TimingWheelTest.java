@@ -0,0 +1,80 @@
+package com.zhai.hw.service.pool;
+
+import com.zhai.hw.support.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-01-06T00:00:00Z"));
+    private final TimingWheel<String> wheel = new TimingWheel<>(Duration.ofSeconds(1), 8, clock);
+    private final List<String> expired = new ArrayList<>();
+
+    private void advance(Duration duration) {
+        clock.advance(duration);
+        wheel.advance(expired::add);
+    }
+
+    @Test
+    void testExpiresAtDeadlineNotBefore() {
+        wheel.schedule("a", Duration.ofSeconds(3));
+        wheel.schedule("b", Duration.ofMillis(3500));
+
+        advance(Duration.ofMillis(2999));
+        assertTrue(expired.isEmpty());
+        advance(Duration.ofMillis(1));
+        assertEquals(List.of("a"), expired);
+        // Deadlines round up to the next tick
+        advance(Duration.ofMillis(999));
+        assertEquals(List.of("a"), expired);
+        advance(Duration.ofMillis(1));
+        assertEquals(List.of("a", "b"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testDeadlinesBeyondOneRevolution() {
+        // 8 buckets of 1s: 20s needs two full rounds
+        wheel.schedule("far", Duration.ofSeconds(20));
+        wheel.schedule("near", Duration.ofSeconds(4));
+
+        for (int second = 1; second < 20; second++) {
+            advance(Duration.ofSeconds(1));
+            assertEquals(second >= 4 ? List.of("near") : List.of(), expired, "after " + second + "s");
+        }
+        advance(Duration.ofSeconds(1));
+        assertEquals(List.of("near", "far"), expired);
+    }
+
+    @Test
+    void testCancelledTimeoutsDoNotFire() {
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", Duration.ofSeconds(2));
+        wheel.schedule("kept", Duration.ofSeconds(2));
+        assertEquals(2, wheel.size());
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertEquals(1, wheel.size());
+        advance(Duration.ofSeconds(5));
+
+        assertEquals(List.of("kept"), expired);
+        assertTrue(cancelled.isCancelled());
+    }
+
+    @Test
+    void testLargeClockJumpFiresEverythingDue() {
+        for (int i = 0; i < 100; i++) {
+            wheel.schedule("t" + i, Duration.ofSeconds(i));
+        }
+
+        clock.advance(Duration.ofMinutes(5));
+        assertEquals(100, wheel.advance(expired::add));
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,210 @@
+package com.zhai.hw.service.pool;
+
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VmPoolTest {
+
+    private static final String REPOSITORY = "octo-org/app";
+
+    private static LabelVmMapping mapping(int minimumWarmVms, int maximumPoolSize, int scaleUpTriggerThreshold) {
+        return new LabelVmMapping("android-small", "Standard_D4s_v5", "ubuntu-22.04", "eastus", "vnet", "subnet",
+                "nsg", "Premium_LRS-128", 1,
+                new VmPoolParameters(minimumWarmVms, maximumPoolSize, scaleUpTriggerThreshold, Duration.ofMinutes(30)));
+    }
+
+    private static VmPool warmPool(int vms, int maximumPoolSize, int threshold, ScaleUpListener listener) {
+        VmPool pool = new VmPool(mapping(0, maximumPoolSize, threshold), listener);
+        assertEquals(vms, pool.reserve(vms));
+        for (int i = 0; i < vms; i++) {
+            pool.addWarmVm("vm-" + i, REPOSITORY);
+        }
+        return pool;
+    }
+
+    @Test
+    void testClaimAndRelease() {
+        VmPool pool = warmPool(2, 5, 0, (p, warm) -> { });
+
+        ManagedVm first = pool.claim(REPOSITORY);
+        assertNotNull(first);
+        assertEquals(VmState.BUSY, first.getState());
+        assertEquals(1, pool.getWarmCount());
+        assertEquals(1, pool.getBusyCount());
+
+        assertTrue(pool.release(first));
+        assertFalse(pool.release(first));
+        assertEquals(VmState.IDLE, first.getState());
+        // The most recently released VM is claimed first
+        assertSame(first, pool.claim(REPOSITORY));
+    }
+
+    @Test
+    void testWarmVmsAreClaimedOnlyForTheirRepository() {
+        VmPool pool = new VmPool(mapping(0, 5, 0), (p, warm) -> { });
+        pool.reserve(2);
+        ManagedVm app = pool.addWarmVm("vm-app", REPOSITORY);
+        ManagedVm web = pool.addWarmVm("vm-web", "octo-org/web");
+
+        assertSame(web, pool.claim("Octo-Org/Web"));
+        assertNull(pool.claim("octo-org/web"));
+        assertNull(pool.claim("octo-org/other"));
+        assertSame(app, pool.claim(REPOSITORY));
+        assertEquals(0, pool.getWarmCount());
+
+        // Released back to its own repository's stack
+        assertTrue(pool.release(web));
+        assertNull(pool.claim(REPOSITORY));
+        assertSame(web, pool.claim("octo-org/web"));
+    }
+
+    @Test
+    void testReservationsNeverExceedMaximum() {
+        VmPool pool = new VmPool(mapping(0, 5, 0), (p, warm) -> { });
+
+        assertEquals(3, pool.reserve(3));
+        assertEquals(2, pool.reserve(3));
+        assertEquals(0, pool.reserve(1));
+
+        pool.cancelReservations(2);
+        assertEquals(3, pool.getUsedCapacity());
+        assertEquals(2, pool.reserve(10));
+    }
+
+    @Test
+    void testRetiredVmIsNotClaimedAndFreesCapacity() {
+        VmPool pool = warmPool(2, 2, 0, (p, warm) -> { });
+        ManagedVm busy = pool.claim(REPOSITORY);
+        ManagedVm idle = pool.claim(REPOSITORY);
+        pool.release(idle);
+
+        assertTrue(pool.retire(idle));
+        assertFalse(pool.retire(idle));
+        assertNull(pool.claim(REPOSITORY));
+        assertTrue(pool.retire(busy));
+
+        assertEquals(0, pool.getUsedCapacity());
+        assertEquals(0, pool.getWarmCount());
+        assertEquals(0, pool.getBusyCount());
+        assertEquals(2, pool.reserve(2));
+    }
+
+    @Test
+    void testScaleUpSignalFiresOncePerCrossing() {
+        List<Integer> signals = new ArrayList<>();
+        VmPool pool = warmPool(5, 10, 2, (p, warm) -> signals.add(warm));
+
+        ManagedVm a = pool.claim(REPOSITORY);
+        ManagedVm b = pool.claim(REPOSITORY);
+        assertTrue(signals.isEmpty());
+        ManagedVm c = pool.claim(REPOSITORY);
+        assertEquals(List.of(2), signals);
+        pool.claim(REPOSITORY);
+        pool.claim(REPOSITORY);
+        assertNull(pool.claim(REPOSITORY));
+        assertEquals(List.of(2), signals);
+
+        // Back above the threshold re-arms the signal
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        pool.claim(REPOSITORY);
+        assertEquals(List.of(2, 2), signals);
+    }
+
+    @Test
+    void testWarmDeficitCountsPendingReservations() {
+        VmPool pool = new VmPool(mapping(3, 4, 0), (p, warm) -> { });
+        assertEquals(3, pool.getWarmDeficit());
+
+        pool.reserve(2);
+        assertEquals(1, pool.getWarmDeficit());
+        pool.addWarmVm("vm-1", REPOSITORY);
+        pool.addWarmVm("vm-2", REPOSITORY);
+        assertEquals(1, pool.getWarmDeficit());
+
+        pool.claim(REPOSITORY);
+        pool.claim(REPOSITORY);
+        // Two busy VMs leave room for two more, not three
+        assertEquals(2, pool.getWarmDeficit());
+    }
+
+    @Test
+    void testConcurrentClaimsHandOutEachVmOnce() throws Exception {
+        int vms = 1000;
+        int threads = 16;
+        AtomicInteger signals = new AtomicInteger();
+        VmPool pool = warmPool(vms, vms, 10, (p, warm) -> signals.incrementAndGet());
+        Set<ManagedVm> claimed = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int count = 0;
+                    ManagedVm vm;
+                    while ((vm = pool.claim(REPOSITORY)) != null) {
+                        assertTrue(claimed.add(vm));
+                        count++;
+                    }
+                    return count;
+                }));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(vms, total);
+            assertEquals(vms, claimed.size());
+            assertEquals(0, pool.getWarmCount());
+            assertEquals(vms, pool.getBusyCount());
+            assertEquals(1, signals.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConcurrentReservationsRespectMaximum() throws Exception {
+        VmPool pool = new VmPool(mapping(0, 100, 0), (p, warm) -> { });
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    int granted = 0;
+                    for (int i = 0; i < 50; i++) {
+                        granted += pool.reserve(1);
+                    }
+                    return granted;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(100, total);
+            assertEquals(100, pool.getUsedCapacity());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
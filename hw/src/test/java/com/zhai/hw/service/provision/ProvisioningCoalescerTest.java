@@ -0,0 +1,350 @@
+package com.zhai.hw.service.provision;
+
+import com.zhai.hw.config.ProvisioningProperties;
+import com.zhai.hw.config.RetryProperties;
+import com.zhai.hw.exception.ProvisioningException;
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.model.LabelMatchIndex;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.service.bootstrap.StartupScriptRenderer;
+import com.zhai.hw.service.github.RegistrationToken;
+import com.zhai.hw.service.github.RegistrationTokenCache;
+import com.zhai.hw.service.pool.IdleVmReaper;
+import com.zhai.hw.service.pool.ManagedVm;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmPoolManager;
+import com.zhai.hw.service.pool.VmState;
+import com.zhai.hw.service.reconcile.StartupReconciler;
+import com.zhai.hw.service.retry.RetryScheduler;
+import com.zhai.hw.service.state.VmStateRecorder;
+import com.zhai.hw.service.status.RunnerStatusPoller;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ProvisioningCoalescerTest {
+
+    private final FakeVmProvisioner provisioner = new FakeVmProvisioner(Duration.ofMillis(50));
+    private static final String REPOSITORY = "octo-org/app";
+
+    private final RunnerStatusPoller poller = mock(RunnerStatusPoller.class);
+    private final StartupScriptRenderer renderer = mock(StartupScriptRenderer.class);
+    private final RegistrationTokenCache tokens = mock(RegistrationTokenCache.class);
+    private ProvisioningCoalescer coalescer;
+    private RetryScheduler retryScheduler;
+    private VmPoolManager manager;
+
+    @AfterEach
+    void tearDown() {
+        coalescer.stop();
+        retryScheduler.stop();
+    }
+
+    private VmPool pool(int minimumWarmVms, int maximumPoolSize, int runnersPerVm) {
+        return pool(minimumWarmVms, maximumPoolSize, runnersPerVm, 0);
+    }
+
+    private VmPool pool(int minimumWarmVms, int maximumPoolSize, int runnersPerVm, int maxRetries) {
+        LabelVmMapping mapping = new LabelVmMapping("android-small", "Standard_D4s_v5", "ubuntu-22.04", "eastus",
+                "vnet", "subnet", "nsg", "Premium_LRS-128", runnersPerVm,
+                new VmPoolParameters(minimumWarmVms, maximumPoolSize, 0, Duration.ofMinutes(30), false));
+        ConfigurationLoaderService loader = mock(ConfigurationLoaderService.class);
+        AppConfig config = new AppConfig("Test", "1", new AppConfig.ServerConfig("localhost", 8080), Map.of(),
+                new AppConfig.VmPoolConfig(10, Duration.ofMinutes(15), "ubuntu"), List.of(mapping));
+        when(loader.getSnapshot()).thenReturn(new ConfigSnapshot(1, "test", "hash", Instant.EPOCH, config,
+                LabelMatchIndex.build(List.of(mapping))));
+        manager = new VmPoolManager(loader);
+        ProvisioningProperties properties = new ProvisioningProperties();
+        properties.setCoalesceWindow(Duration.ofMillis(100));
+        // Long enough that the periodic top-up only runs once, at start
+        properties.setTopUpInterval(Duration.ofHours(1));
+        properties.setDefaultRepository(REPOSITORY);
+        RetryProperties retryProperties = new RetryProperties();
+        retryProperties.setMaxRetries(maxRetries);
+        retryProperties.setInitialBackoff(Duration.ofMillis(20));
+        retryProperties.setMaxBackoff(Duration.ofMillis(100));
+        retryProperties.setRegionCallsPerSecond(100);
+        retryProperties.setRegionBurst(10);
+        retryScheduler = new RetryScheduler(retryProperties);
+        StartupReconciler reconciler = mock(StartupReconciler.class);
+        when(reconciler.isReconciled(any())).thenReturn(true);
+        when(tokens.getToken(anyString())).thenAnswer(invocation -> CompletableFuture.completedFuture(
+                new RegistrationToken("token-for-" + invocation.getArgument(0), Instant.now().plusSeconds(3600))));
+        // The "script" lists the values it was rendered with
+        when(renderer.renderBase64(anyString(), anyString(), anyString(), anyString())).thenAnswer(invocation ->
+                String.join(" ", invocation.getArgument(1, String.class), invocation.getArgument(2, String.class),
+                        invocation.getArgument(3, String.class)).getBytes(StandardCharsets.US_ASCII));
+        coalescer = new ProvisioningCoalescer(provisioner, manager, poller, mock(IdleVmReaper.class),
+                retryScheduler, mock(VmStateRecorder.class), reconciler, renderer, tokens, properties);
+        return manager.getPool("android-small");
+    }
+
+    private List<CompletableFuture<ManagedVm>> requestConcurrently(VmPool pool, int jobs) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<CompletableFuture<ManagedVm>>> submitted = new ArrayList<>();
+            for (int i = 0; i < jobs; i++) {
+                submitted.add(CompletableFuture.supplyAsync(() -> coalescer.requestVm(pool, REPOSITORY), executor));
+            }
+            List<CompletableFuture<ManagedVm>> waiters = new ArrayList<>();
+            for (CompletableFuture<CompletableFuture<ManagedVm>> future : submitted) {
+                waiters.add(future.get(5, TimeUnit.SECONDS));
+            }
+            return waiters;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testBurstIsCoalescedIntoOneRequest() throws Exception {
+        VmPool pool = pool(0, 50, 2);
+        coalescer.start();
+
+        List<CompletableFuture<ManagedVm>> waiters = requestConcurrently(pool, 40);
+        CompletableFuture.allOf(waiters.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, provisioner.getRequests().size());
+        // 40 jobs at 2 runners per VM
+        assertEquals(20, provisioner.getRequests().get(0).count());
+        assertEquals(20, pool.getBusyCount());
+        assertEquals(0, pool.getWarmCount());
+        // Each VM is handed to two jobs
+        Map<ManagedVm, Long> perVm = waiters.stream().map(CompletableFuture::join)
+                .collect(Collectors.groupingBy(vm -> vm, Collectors.counting()));
+        assertEquals(20, perVm.size());
+        assertTrue(perVm.values().stream().allMatch(count -> count == 2));
+        assertTrue(perVm.keySet().stream().allMatch(vm -> vm.getState() == VmState.BUSY));
+        verify(poller, times(20)).register(any(ManagedVm.class), any());
+    }
+
+    @Test
+    void testJobsBeyondMaximumPoolSizeWaitForAReleasedVm() throws Exception {
+        VmPool pool = pool(0, 5, 1);
+        coalescer.start();
+
+        List<CompletableFuture<ManagedVm>> waiters = requestConcurrently(pool, 8);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (waiters.stream().filter(CompletableFuture::isDone).count() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(5, provisioner.getRequests().get(0).count());
+        List<ManagedVm> served = waiters.stream().filter(CompletableFuture::isDone).map(CompletableFuture::join).toList();
+        assertEquals(5, served.size());
+        assertTrue(served.stream().allMatch(vm -> vm != null && vm.getState() == VmState.BUSY));
+        assertEquals(5, pool.getUsedCapacity());
+
+        // A full pool does not call the provider; the job waits with the others
+        CompletableFuture<ManagedVm> late = coalescer.requestVm(pool, REPOSITORY);
+        Thread.sleep(300);
+        assertFalse(late.isDone());
+        assertEquals(1, provisioner.getRequests().size());
+
+        assertTrue(pool.release(served.get(0)));
+        ManagedVm reused = CompletableFuture.anyOf(waiters.stream().filter(w -> !w.isDone())
+                .toArray(CompletableFuture[]::new)).thenApply(ManagedVm.class::cast).get(5, TimeUnit.SECONDS);
+        assertSame(served.get(0), reused);
+        assertEquals(VmState.BUSY, reused.getState());
+        assertEquals(1, provisioner.getRequests().size());
+    }
+
+    @Test
+    void testJobsGetTheBatchVmsBeforeTheRestGoWarm() throws Exception {
+        VmPool pool = pool(2, 10, 1);
+        // Not started: a job may ask before the coalescer starts, and no top-up has run yet
+        CompletableFuture<ManagedVm> waiter = coalescer.requestVm(pool, REPOSITORY);
+
+        ManagedVm vm = waiter.get(5, TimeUnit.SECONDS);
+        assertEquals(VmState.BUSY, vm.getState());
+        // One VM for the job and two for the warm target, in one request
+        assertEquals(3, provisioner.getRequests().get(0).count());
+        assertEquals(2, pool.getWarmCount());
+        assertEquals(1, pool.getBusyCount());
+        ManagedVm first = pool.claim(REPOSITORY);
+        ManagedVm second = pool.claim(REPOSITORY);
+        assertNotSame(vm, first);
+        assertNotSame(vm, second);
+    }
+
+    @Test
+    void testRequestsAfterStopFail() {
+        VmPool pool = pool(0, 5, 1);
+        coalescer.start();
+        coalescer.stop();
+
+        CompletableFuture<ManagedVm> waiter = coalescer.requestVm(pool, REPOSITORY);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ProvisioningException.class, failure.getCause());
+        assertTrue(provisioner.getRequests().isEmpty());
+    }
+
+    @Test
+    void testWarmDeficitIsIncludedInTheBatch() throws Exception {
+        VmPool pool = pool(3, 10, 1);
+        coalescer.start();
+
+        // The top-up at start fills the pool to its minimum
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.getWarmCount() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, pool.getWarmCount());
+        assertEquals(3, provisioner.getRequests().get(0).count());
+
+        // Claiming them all leaves a deficit that rides along with the next job's request
+        pool.claim(REPOSITORY);
+        pool.claim(REPOSITORY);
+        pool.claim(REPOSITORY);
+        assertNotNull(coalescer.requestVm(pool, REPOSITORY).get(5, TimeUnit.SECONDS));
+        assertEquals(4, provisioner.getRequests().get(1).count());
+        assertEquals(3, pool.getWarmCount());
+    }
+
+    @Test
+    void testFailedRequestReturnsReservations() throws Exception {
+        VmPool pool = pool(0, 5, 1);
+        coalescer.start();
+        provisioner.failNext(1);
+
+        CompletableFuture<ManagedVm> waiter = coalescer.requestVm(pool, REPOSITORY);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ProvisioningException.class, failure.getCause());
+        assertEquals(0, pool.getUsedCapacity());
+        verify(poller, never()).register(any(ManagedVm.class), any());
+    }
+
+    @Test
+    void testFailedRequestIsRetried() throws Exception {
+        VmPool pool = pool(0, 5, 1, 2);
+        coalescer.start();
+        provisioner.failNext(2);
+
+        assertNotNull(coalescer.requestVm(pool, REPOSITORY).get(5, TimeUnit.SECONDS));
+        // One batch, sent three times
+        assertEquals(1, coalescer.getBatchCount());
+        assertEquals(3, provisioner.getRequests().size());
+        assertEquals(1, provisioner.getRequests().stream().map(ProvisionRequest::requestId).distinct().count());
+        assertEquals(1, pool.getBusyCount());
+        assertEquals(2L, retryScheduler.snapshot().get("retries"));
+    }
+
+    private static String script(NewVm vm) {
+        return new String(vm.customData(), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void testEachVmRegistersWithItsJobsRepository() throws Exception {
+        VmPool pool = pool(1, 10, 2);
+        coalescer.jobQueued(pool, "octo-org/web");
+
+        List<CompletableFuture<ManagedVm>> app = List.of(coalescer.requestVm(pool, REPOSITORY),
+                coalescer.requestVm(pool, REPOSITORY), coalescer.requestVm(pool, REPOSITORY));
+        CompletableFuture<ManagedVm> web = coalescer.requestVm(pool, "octo-org/web");
+        CompletableFuture.allOf(app.get(0), app.get(1), app.get(2), web).get(5, TimeUnit.SECONDS);
+
+        // Two VMs for the three app jobs, one for the web job and one warm, in one request
+        ProvisionRequest request = provisioner.getRequests().get(0);
+        assertEquals(4, request.count());
+        Map<String, String> scripts = request.vms().stream().collect(Collectors.toMap(NewVm::name,
+                ProvisioningCoalescerTest::script));
+        assertEquals(4, scripts.size());
+        for (CompletableFuture<ManagedVm> job : app) {
+            String name = job.join().getName();
+            assertEquals(name + " " + REPOSITORY + " token-for-" + REPOSITORY, scripts.get(name));
+        }
+        String webVm = web.join().getName();
+        assertEquals(webVm + " octo-org/web token-for-octo-org/web", scripts.get(webVm));
+        assertFalse(app.stream().anyMatch(job -> job.join() == web.join()));
+        // The warm VM registers with the label's latest repository, and only its jobs can claim it
+        assertNull(pool.claim(REPOSITORY));
+        ManagedVm warm = pool.claim("octo-org/web");
+        assertEquals(warm.getName() + " octo-org/web token-for-octo-org/web", scripts.get(warm.getName()));
+        assertTrue(warm.getName().startsWith("android-small-"));
+        verify(tokens, times(1)).getToken(REPOSITORY);
+        verify(tokens, times(1)).getToken("octo-org/web");
+    }
+
+    @Test
+    void testWarmVmsGoOnlyToJobsOfTheirRepository() throws Exception {
+        VmPool pool = pool(1, 10, 1);
+        coalescer.jobQueued(pool, "octo-org/web");
+        coalescer.start();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.getWarmCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        String warm = provisioner.getRequests().get(0).vms().get(0).name();
+
+        ManagedVm app = coalescer.requestVm(pool, REPOSITORY).get(5, TimeUnit.SECONDS);
+        ManagedVm web = coalescer.requestVm(pool, "octo-org/web").get(5, TimeUnit.SECONDS);
+
+        assertNotEquals(warm, app.getName());
+        assertEquals(REPOSITORY, app.getRepository());
+        assertEquals(warm, web.getName());
+        assertEquals("octo-org/web", web.getRepository());
+    }
+
+    @Test
+    void testJobsFailWhenNoRegistrationTokenCanBeFetched() {
+        VmPool pool = pool(0, 5, 1);
+        when(tokens.getToken(REPOSITORY)).thenReturn(CompletableFuture.failedFuture(
+                new ProvisioningException("no token")));
+        coalescer.start();
+
+        CompletableFuture<ManagedVm> waiter = coalescer.requestVm(pool, REPOSITORY);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertEquals("no token", failure.getCause().getMessage());
+        assertEquals(0, pool.getUsedCapacity());
+        assertTrue(provisioner.getRequests().isEmpty());
+    }
+
+    @Test
+    void testWarmVmsWaitForARepository() throws Exception {
+        VmPool pool = pool(2, 10, 1);
+        ProvisioningProperties properties = new ProvisioningProperties();
+        properties.setCoalesceWindow(Duration.ofMillis(100));
+        properties.setTopUpInterval(Duration.ofHours(1));
+        coalescer.stop();
+        StartupReconciler reconciler = mock(StartupReconciler.class);
+        when(reconciler.isReconciled(any())).thenReturn(true);
+        coalescer = new ProvisioningCoalescer(provisioner, manager, poller, mock(IdleVmReaper.class),
+                retryScheduler, mock(VmStateRecorder.class), reconciler, renderer, tokens, properties);
+        coalescer.start();
+
+        Thread.sleep(300);
+        assertTrue(provisioner.getRequests().isEmpty());
+
+        coalescer.jobQueued(pool, REPOSITORY);
+        verify(tokens).prefetch(REPOSITORY);
+        coalescer.requestWarm(pool);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.getWarmCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, pool.getWarmCount());
+    }
+}
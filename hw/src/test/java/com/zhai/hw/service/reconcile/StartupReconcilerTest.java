@@ -0,0 +1,263 @@
+package com.zhai.hw.service.reconcile;
+
+import com.zhai.hw.config.ReconcileProperties;
+import com.zhai.hw.config.RetryProperties;
+import com.zhai.hw.config.StateStoreProperties;
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.model.LabelMatchIndex;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.service.pool.ManagedVm;
+import com.zhai.hw.service.pool.VmPool;
+import com.zhai.hw.service.pool.VmPoolManager;
+import com.zhai.hw.service.provision.FakeVmProvisioner;
+import com.zhai.hw.service.provision.InventoryPage;
+import com.zhai.hw.service.provision.ProvisionedVm;
+import com.zhai.hw.service.provision.VmProvisioner;
+import com.zhai.hw.service.retry.RetryScheduler;
+import com.zhai.hw.service.state.StateStore;
+import com.zhai.hw.service.state.VmRecord;
+import com.zhai.hw.service.status.RunnerStatusPoller;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class StartupReconcilerTest {
+
+    private static final String REPOSITORY = "octo-org/app";
+
+    @TempDir
+    Path directory;
+
+    private final RunnerStatusPoller poller = mock(RunnerStatusPoller.class);
+    private StateStore stateStore;
+    private RetryScheduler retryScheduler;
+    private VmPoolManager manager;
+    private ConfigurationLoaderService loader;
+
+    @AfterEach
+    void tearDown() {
+        retryScheduler.stop();
+        stateStore.stop();
+    }
+
+    private void setUp(int maximumPoolSize, String... labels) {
+        List<LabelVmMapping> mappings = Arrays.stream(labels)
+                .map(label -> new LabelVmMapping(label, "Standard_D4s_v5", "ubuntu-22.04", "eastus",
+                        "vnet", "subnet", "nsg", "Premium_LRS-128", 1,
+                        new VmPoolParameters(0, maximumPoolSize, 0, Duration.ofMinutes(30), false)))
+                .toList();
+        loader = mock(ConfigurationLoaderService.class);
+        AppConfig config = new AppConfig("Test", "1", new AppConfig.ServerConfig("localhost", 8080), Map.of(),
+                new AppConfig.VmPoolConfig(10, Duration.ofMinutes(15), "ubuntu"), mappings);
+        LabelMatchIndex index = LabelMatchIndex.build(mappings);
+        when(loader.getSnapshot()).thenReturn(new ConfigSnapshot(1, "test", "hash", Instant.EPOCH, config, index));
+        when(loader.getLabelMatchIndex()).thenReturn(index);
+        manager = new VmPoolManager(loader);
+        when(poller.statusUri(any())).thenAnswer(call -> URI.create("http://" + call.getArgument(0) + ":8081/status"));
+
+        StateStoreProperties stateProperties = new StateStoreProperties();
+        stateProperties.setDirectory(directory.toString());
+        stateProperties.setSegmentSize(16 * 1024 * 1024);
+        stateProperties.setCommitInterval(Duration.ofMillis(5));
+        stateProperties.setSnapshotInterval(Duration.ofHours(1));
+        stateProperties.setSnapshotAfter(Integer.MAX_VALUE);
+        stateStore = new StateStore(stateProperties);
+        stateStore.start();
+
+        RetryProperties retryProperties = new RetryProperties();
+        retryProperties.setMaxRetries(0);
+        retryProperties.setRegionCallsPerSecond(1_000_000);
+        retryProperties.setRegionBurst(1_000_000);
+        retryScheduler = new RetryScheduler(retryProperties);
+    }
+
+    private StartupReconciler reconciler(VmProvisioner provisioner, int parallelism) {
+        ReconcileProperties properties = new ReconcileProperties();
+        properties.setEnabled(true);
+        properties.setParallelism(parallelism);
+        return new StartupReconciler(provisioner, manager, stateStore, poller, retryScheduler, loader, properties);
+    }
+
+    private static ProvisionedVm vm(String label, int i) {
+        return new ProvisionedVm(label + "-vm-" + i, "10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff));
+    }
+
+    private static VmRecord record(String label, ProvisionedVm vm) {
+        return record(label, vm, "idle");
+    }
+
+    private static VmRecord record(String label, ProvisionedVm vm, String runnerState) {
+        return new VmRecord(vm.name(), label, vm.privateAddress(), runnerState, null, 1_700_000_000_000L, REPOSITORY);
+    }
+
+    @Test
+    void testInventoryOf20kVmsIsJoinedAgainstStoredState() throws Exception {
+        String[] labels = {"label-a", "label-b", "label-c", "label-d"};
+        setUp(10_000, labels);
+        FakeVmProvisioner provisioner = new FakeVmProvisioner(Duration.ofMillis(2), 250);
+        for (String label : labels) {
+            for (int i = 0; i < 5_000; i++) {
+                ProvisionedVm vm = vm(label, i);
+                provisioner.addExisting(label, vm);
+                // The last 250 of each label were lost from the store, so they are orphans
+                if (i < 4_750) {
+                    stateStore.put(record(label, vm));
+                }
+            }
+            // Records whose VM is gone
+            for (int i = 0; i < 100; i++) {
+                stateStore.put(record(label, vm(label, 100_000 + i)));
+            }
+        }
+        StartupReconciler reconciler = reconciler(provisioner, 4);
+        List<String> reconciled = new CopyOnWriteArrayList<>();
+        reconciler.addReconciledListener(pool -> reconciled.add(pool.getLabel()));
+        assertFalse(reconciler.isReconciled("label-a"));
+
+        reconciler.start();
+        reconciler.whenReconciled().get(30, TimeUnit.SECONDS);
+
+        assertEquals(4, reconciled.size());
+        for (String label : labels) {
+            VmPool pool = manager.getPool(label);
+            assertEquals(4_750, pool.getWarmCount());
+            assertEquals(4_750, pool.getUsedCapacity());
+            assertTrue(reconciler.isReconciled(label));
+        }
+        verify(poller, times(19_000)).register(any(ManagedVm.class), any());
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> perLabel = (Map<String, Map<String, Object>>) reconciler.stats().get("labels");
+        assertEquals(20, perLabel.get("label-a").get("pages"));
+        assertEquals(250, perLabel.get("label-a").get("orphaned"));
+        assertEquals(100, perLabel.get("label-a").get("missing"));
+
+        // Orphans are deleted in the background
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (provisioner.getLiveVms().size() > 19_000 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(19_000, provisioner.getLiveVms().size());
+        assertEquals(19_000, stateStore.records().size());
+    }
+
+    @Test
+    void testLabelsAreGatedIndependently() throws Exception {
+        setUp(10, "fast", "slow");
+        FakeVmProvisioner inventory = new FakeVmProvisioner(Duration.ofMillis(1), 10);
+        inventory.addExisting("fast", vm("fast", 1));
+        stateStore.put(record("fast", vm("fast", 1)));
+        CompletableFuture<Void> slowListing = new CompletableFuture<>();
+        VmProvisioner provisioner = mock(VmProvisioner.class);
+        when(provisioner.listVms(any(), any())).thenAnswer(call -> {
+            String label = call.getArgument(0);
+            CompletableFuture<InventoryPage> page = inventory.listVms(label, call.getArgument(1));
+            return "slow".equals(label) ? slowListing.thenCompose(ignored -> page) : page;
+        });
+        StartupReconciler reconciler = reconciler(provisioner, 2);
+        List<String> reconciled = new CopyOnWriteArrayList<>();
+        reconciler.addReconciledListener(pool -> reconciled.add(pool.getLabel()));
+
+        assertFalse(reconciler.accepts(List.of("fast")));
+        // Jobs that match no pool are not held back
+        assertTrue(reconciler.accepts(List.of("gpu")));
+
+        reconciler.start();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!reconciler.isReconciled("fast") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(reconciler.accepts(List.of("fast")));
+        assertFalse(reconciler.accepts(List.of("slow")));
+        assertEquals(List.of("fast"), reconciled);
+        assertEquals(1, manager.getPool("fast").getWarmCount());
+
+        slowListing.complete(null);
+        reconciler.whenReconciled().get(5, TimeUnit.SECONDS);
+        assertTrue(reconciler.accepts(List.of("slow")));
+        assertEquals(List.of("fast", "slow"), reconciled);
+    }
+
+    @Test
+    void testVmsBeyondMaximumPoolSizeAreOrphans() throws Exception {
+        setUp(3, "small");
+        FakeVmProvisioner provisioner = new FakeVmProvisioner(Duration.ofMillis(1), 2);
+        for (int i = 0; i < 5; i++) {
+            provisioner.addExisting("small", vm("small", i));
+            stateStore.put(record("small", vm("small", i)));
+        }
+        StartupReconciler reconciler = reconciler(provisioner, 1);
+
+        reconciler.start();
+        reconciler.whenReconciled().get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, manager.getPool("small").getWarmCount());
+        assertEquals(0, manager.getPool("small").reserve(1));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (provisioner.getLiveVms().size() > 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(3, provisioner.getLiveVms().size());
+    }
+
+    @Test
+    void testVmsThatMayBeRunningAJobAreAdoptedBusy() throws Exception {
+        setUp(10, "small");
+        FakeVmProvisioner provisioner = new FakeVmProvisioner(Duration.ofMillis(1), 10);
+        String[] states = {"idle", "busy", "offline", null};
+        for (int i = 0; i < states.length; i++) {
+            provisioner.addExisting("small", vm("small", i));
+            stateStore.put(record("small", vm("small", i), states[i]));
+        }
+        StartupReconciler reconciler = reconciler(provisioner, 1);
+
+        reconciler.start();
+        reconciler.whenReconciled().get(5, TimeUnit.SECONDS);
+
+        VmPool pool = manager.getPool("small");
+        assertEquals(1, pool.getWarmCount());
+        assertEquals(3, pool.getBusyCount());
+        // Only the VM whose runner last reported idle is handed out
+        ManagedVm claimed = pool.claim(REPOSITORY);
+        assertEquals("small-vm-0", claimed.getName());
+        assertNull(pool.claim(REPOSITORY));
+        verify(poller, times(4)).register(any(ManagedVm.class), any());
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> perLabel = (Map<String, Map<String, Object>>) reconciler.stats().get("labels");
+        assertEquals(3, perLabel.get("small").get("adoptedBusy"));
+    }
+
+    @Test
+    void testListingFailureOpensTheLabel() throws Exception {
+        setUp(10, "broken");
+        VmProvisioner provisioner = mock(VmProvisioner.class);
+        when(provisioner.listVms(any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("provider down")));
+        StartupReconciler reconciler = reconciler(provisioner, 1);
+
+        reconciler.start();
+        reconciler.whenReconciled().get(5, TimeUnit.SECONDS);
+
+        assertTrue(reconciler.isReconciled("broken"));
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> perLabel = (Map<String, Map<String, Object>>) reconciler.stats().get("labels");
+        assertEquals("provider down", perLabel.get("broken").get("error"));
+    }
+}
@@ -0,0 +1,135 @@
+package com.zhai.hw.service.retry;
+
+import com.zhai.hw.config.RetryProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetrySchedulerTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private RetryScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    private RetryScheduler scheduler(Duration initialBackoff, Duration maxBackoff, double callsPerSecond, int burst) {
+        RetryProperties properties = new RetryProperties();
+        properties.setMaxRetries(5);
+        properties.setInitialBackoff(initialBackoff);
+        properties.setMaxBackoff(maxBackoff);
+        properties.setJitter(0);
+        properties.setRegionCallsPerSecond(callsPerSecond);
+        properties.setRegionBurst(burst);
+        scheduler = new RetryScheduler(properties, Clock.systemUTC(), nanoTime::get);
+        return scheduler;
+    }
+
+    private static CompletableFuture<String> failing(String message) {
+        return CompletableFuture.failedFuture(new IllegalStateException(message));
+    }
+
+    @Test
+    void testBackoffDoublesUpToTheCap() {
+        RetryScheduler scheduler = scheduler(Duration.ofSeconds(10), Duration.ofMinutes(5), 5, 10);
+
+        List<Long> seconds = List.of(1, 2, 3, 4, 5, 6, 7, 100).stream()
+                .map(attempts -> TimeUnit.NANOSECONDS.toSeconds(scheduler.backoffNanos(attempts)))
+                .toList();
+
+        assertEquals(List.of(10L, 20L, 40L, 80L, 160L, 300L, 300L, 300L), seconds);
+    }
+
+    @Test
+    void testSucceedsAfterFailures() throws Exception {
+        scheduler(Duration.ofMillis(10), Duration.ofMillis(50), 1000, 100);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> result = scheduler.execute("provision", "req-1", "eastus",
+                () -> calls.incrementAndGet() <= 3 ? failing("busy") : CompletableFuture.completedFuture("done"));
+
+        assertEquals("done", result.get(5, TimeUnit.SECONDS));
+        assertEquals(4, calls.get());
+        Map<String, Object> snapshot = scheduler.snapshot();
+        assertEquals(3L, snapshot.get("retries"));
+        assertEquals(1L, snapshot.get("succeeded"));
+        assertEquals(List.of(), snapshot.get("operations"));
+    }
+
+    @Test
+    void testFailsAfterMaxRetries() {
+        scheduler(Duration.ofMillis(1), Duration.ofMillis(5), 1000, 100);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> result = scheduler.execute("deprovision", "vm-1", "eastus", () -> {
+            calls.incrementAndGet();
+            return failing("gone");
+        });
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertEquals("gone", failure.getCause().getMessage());
+        // The first attempt and five retries
+        assertEquals(6, calls.get());
+        assertEquals(1L, scheduler.snapshot().get("failed"));
+    }
+
+    @Test
+    void testThrownExceptionIsRetried() throws Exception {
+        scheduler(Duration.ofMillis(1), Duration.ofMillis(5), 1000, 100);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> result = scheduler.execute("provision", "req-1", "eastus", () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("rejected");
+            }
+            return CompletableFuture.completedFuture("done");
+        });
+
+        assertEquals("done", result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testExhaustedRegionDoesNotHoldUpOthers() throws Exception {
+        // The fake nano clock stands still, so eastus gets no tokens back until it is moved
+        scheduler(Duration.ofHours(1), Duration.ofHours(1), 10, 2);
+        AtomicInteger eastusCalls = new AtomicInteger();
+
+        List<CompletableFuture<String>> eastus = List.of(1, 2, 3).stream()
+                .map(i -> scheduler.execute("provision", "east-" + i, "eastus", () -> {
+                    eastusCalls.incrementAndGet();
+                    return CompletableFuture.completedFuture("east-" + i);
+                }))
+                .toList();
+        CompletableFuture<String> westus = scheduler.execute("provision", "west-1", "westus",
+                () -> CompletableFuture.completedFuture("west-1"));
+
+        assertEquals("west-1", westus.get(5, TimeUnit.SECONDS));
+        assertEquals(2, eastusCalls.get());
+        assertFalse(eastus.get(2).isDone());
+        Map<String, Object> snapshot = scheduler.snapshot();
+        assertTrue((Long) snapshot.get("throttled") >= 1);
+        assertEquals(0L, snapshot.get("retries"));
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> buckets = (Map<String, Map<String, Object>>) snapshot.get("regionBuckets");
+        assertEquals(0, buckets.get("eastus").get("available"));
+        assertEquals(1, buckets.get("westus").get("available"));
+
+        // A token comes back after 100 ms at 10 calls a second
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals("east-3", eastus.get(2).get(5, TimeUnit.SECONDS));
+        assertEquals(3, eastusCalls.get());
+    }
+}
@@ -0,0 +1,39 @@
+package com.zhai.hw.service.retry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testBurstThenWaitForRefill() {
+        TokenBucket bucket = new TokenBucket(3, 2, now::get);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        // Two tokens a second: the next one is half a second away
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), bucket.tryAcquire());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.available());
+    }
+
+    @Test
+    void testRefillIsCappedAtCapacity() {
+        TokenBucket bucket = new TokenBucket(3, 2, now::get);
+        bucket.tryAcquire();
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        assertEquals(3, bucket.available());
+        assertEquals(3, bucket.capacity());
+    }
+}
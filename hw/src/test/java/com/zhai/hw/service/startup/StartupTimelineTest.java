@@ -0,0 +1,86 @@
+package com.zhai.hw.service.startup;
+
+import com.zhai.hw.config.StartupProperties;
+import com.zhai.hw.model.AppConfig;
+import com.zhai.hw.model.ConfigSnapshot;
+import com.zhai.hw.model.LabelMatchIndex;
+import com.zhai.hw.service.ConfigurationLoaderService;
+import com.zhai.hw.service.reconcile.StartupReconciler;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StartupTimelineTest {
+
+    private static final long JVM_START = 1_700_000_000_000L;
+
+    private final AtomicLong now = new AtomicLong(JVM_START);
+    private final CompletableFuture<Void> reconciled = new CompletableFuture<>();
+    private final ConfigurationLoaderService loader = mock(ConfigurationLoaderService.class);
+
+    private StartupTimeline timeline(Duration budget) {
+        StartupProperties properties = new StartupProperties();
+        properties.setBudget(budget);
+        StartupReconciler reconciler = mock(StartupReconciler.class);
+        when(reconciler.whenReconciled()).thenReturn(reconciled);
+        AppConfig config = new AppConfig("Test", "1", new AppConfig.ServerConfig("localhost", 8080), Map.of(),
+                new AppConfig.VmPoolConfig(10, Duration.ofMinutes(15), "ubuntu"), List.of());
+        when(loader.getSnapshot()).thenReturn(new ConfigSnapshot(1, "test", "hash",
+                Instant.ofEpochMilli(JVM_START + 1_200), config, LabelMatchIndex.build(List.of())));
+        return new StartupTimeline(properties, reconciler, loader, now::get, JVM_START);
+    }
+
+    private static ApplicationReadyEvent ready() {
+        return new ApplicationReadyEvent(mock(SpringApplication.class), new String[0], null, Duration.ZERO);
+    }
+
+    @Test
+    void testAcceptingIsTheLaterOfReadyAndReconciled() {
+        StartupTimeline timeline = timeline(Duration.ofSeconds(5));
+
+        now.set(JVM_START + 2_000);
+        timeline.onApplicationEvent(new ApplicationStartedEvent(mock(SpringApplication.class), new String[0], null,
+                Duration.ZERO));
+        now.set(JVM_START + 2_500);
+        timeline.onApplicationEvent(ready());
+        assertNull(timeline.timeline().get(StartupTimeline.ACCEPTING));
+
+        now.set(JVM_START + 4_000);
+        reconciled.complete(null);
+
+        Map<String, Long> milestones = timeline.timeline();
+        assertEquals(1_200, milestones.get(StartupTimeline.CONFIG_LOADED));
+        assertEquals(2_000, milestones.get(StartupTimeline.CONTEXT_STARTED));
+        assertEquals(2_500, milestones.get(StartupTimeline.READY));
+        assertEquals(4_000, milestones.get(StartupTimeline.RECONCILED));
+        assertEquals(4_000, milestones.get(StartupTimeline.ACCEPTING));
+        assertEquals(Boolean.TRUE, timeline.stats().get("withinBudget"));
+    }
+
+    @Test
+    void testOverBudgetAndOnlyTheFirstWebhookIsRecorded() {
+        StartupTimeline timeline = timeline(Duration.ofSeconds(3));
+        reconciled.complete(null);
+        now.set(JVM_START + 3_500);
+        timeline.onApplicationEvent(ready());
+        assertEquals(Boolean.FALSE, timeline.stats().get("withinBudget"));
+
+        now.set(JVM_START + 9_000);
+        timeline.webhookAccepted();
+        now.set(JVM_START + 9_500);
+        timeline.webhookAccepted();
+
+        assertEquals(9_000, timeline.timeline().get(StartupTimeline.FIRST_WEBHOOK));
+    }
+}
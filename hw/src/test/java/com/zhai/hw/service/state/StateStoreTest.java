@@ -0,0 +1,267 @@
+package com.zhai.hw.service.state;
+
+import com.zhai.hw.config.StateStoreProperties;
+import com.zhai.hw.service.status.RunnerStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Crash recovery of the state store. A crash is simulated by abandoning a store without
+ * forcing or closing it and opening a new one on the same directory.
+ */
+class StateStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<StateStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(StateStore::abandon);
+    }
+
+    private StateStore open() {
+        return open(1024 * 1024);
+    }
+
+    private StateStore open(int segmentSize) {
+        StateStoreProperties properties = new StateStoreProperties();
+        properties.setDirectory(directory.toString());
+        properties.setSegmentSize(segmentSize);
+        properties.setCommitInterval(Duration.ofMillis(5));
+        properties.setSnapshotInterval(Duration.ofHours(1));
+        properties.setSnapshotAfter(Integer.MAX_VALUE);
+        StateStore store = new StateStore(properties);
+        opened.add(store);
+        return store;
+    }
+
+    private static VmRecord record(int i, String runnerState) {
+        return new VmRecord("vm-" + i, "android-small", "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff),
+                runnerState, runnerState == null ? null : RunnerStatus.Outcome.OK, 1_700_000_000_000L + i,
+                "octo-org/app-" + (i % 7));
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+    }
+
+    @Test
+    void testChangesSurviveCrash() {
+        StateStore store = open();
+        for (int i = 0; i < 100; i++) {
+            store.put(record(i, null));
+        }
+        store.put(record(7, "busy"));
+        store.remove("vm-8");
+        store.abandon();
+
+        StateStore recovered = open();
+
+        assertEquals(99, recovered.records().size());
+        assertEquals(record(7, "busy"), recovered.get("vm-7"));
+        assertNull(recovered.get("vm-8"));
+        assertEquals(record(99, null), recovered.get("vm-99"));
+    }
+
+    @Test
+    void testFuturesCompleteOnGroupCommit() throws Exception {
+        StateStore store = open();
+        store.start();
+        List<CompletableFuture<Void>> committed = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            committed.add(store.put(record(i, null)));
+        }
+
+        CompletableFuture.allOf(committed.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        // Many changes per force
+        assertTrue((Long) store.stats().get("commits") < 1000);
+    }
+
+    @Test
+    void testTornTailIsDiscarded() throws IOException {
+        StateStore store = open();
+        for (int i = 0; i < 10; i++) {
+            store.put(record(i, null));
+        }
+        store.commit();
+        int end = (Integer) store.stats().get("segmentBytesUsed");
+        store.abandon();
+        // A frame whose length was written but whose bytes never made it
+        try (RandomAccessFile file = new RandomAccessFile(files("journal-").get(0).toFile(), "rw")) {
+            file.seek(end);
+            file.writeInt(60);
+            file.writeInt(0x12345678);
+            file.write(new byte[]{1, 0, 0, 0});
+        }
+
+        StateStore recovered = open();
+        assertEquals(10, recovered.records().size());
+
+        // Appends continue where the intact entries end and survive the next crash
+        recovered.put(record(10, "idle"));
+        recovered.abandon();
+        StateStore again = open();
+        assertEquals(11, again.records().size());
+        assertEquals(record(10, "idle"), again.get("vm-10"));
+    }
+
+    @Test
+    void testCorruptEntryStopsReplay() throws IOException {
+        StateStore store = open();
+        store.put(record(0, null));
+        store.commit();
+        int second = (Integer) store.stats().get("segmentBytesUsed");
+        store.put(record(1, null));
+        store.put(record(2, null));
+        store.abandon();
+        try (RandomAccessFile file = new RandomAccessFile(files("journal-").get(0).toFile(), "rw")) {
+            // Flip a byte inside the second entry's payload
+            file.seek(second + StateJournal.FRAME_HEADER + 12);
+            int b = file.read();
+            file.seek(second + StateJournal.FRAME_HEADER + 12);
+            file.write(b ^ 0xff);
+        }
+
+        StateStore recovered = open();
+
+        assertEquals(1, recovered.records().size());
+        assertNotNull(recovered.get("vm-0"));
+    }
+
+    @Test
+    void testSnapshotThenJournalTail() throws IOException {
+        StateStore store = open();
+        for (int i = 0; i < 50; i++) {
+            store.put(record(i, null));
+        }
+        store.snapshot();
+        store.put(record(50, null));
+        store.remove("vm-0");
+        store.abandon();
+
+        StateStore recovered = open();
+
+        assertEquals(50, recovered.records().size());
+        assertNull(recovered.get("vm-0"));
+        assertNotNull(recovered.get("vm-50"));
+        assertEquals(2, recovered.stats().get("recoveredJournalEntries"));
+        assertEquals(1, files("snapshot-").size());
+    }
+
+    @Test
+    void testDamagedSnapshotFallsBackToOlderOne() throws IOException {
+        StateStore store = open();
+        for (int i = 0; i < 20; i++) {
+            store.put(record(i, null));
+        }
+        store.snapshot();
+        for (int i = 20; i < 30; i++) {
+            store.put(record(i, null));
+        }
+        store.snapshot();
+        store.put(record(30, null));
+        store.abandon();
+        List<Path> snapshots = files("snapshot-");
+        assertEquals(2, snapshots.size());
+        try (RandomAccessFile file = new RandomAccessFile(snapshots.get(1).toFile(), "rw")) {
+            file.seek(30);
+            file.write(0x7f);
+        }
+
+        StateStore recovered = open();
+
+        // The older snapshot plus the journal segments kept for it
+        assertEquals(31, recovered.records().size());
+    }
+
+    @Test
+    void testHalfWrittenSnapshotIsIgnored() throws IOException {
+        StateStore store = open();
+        for (int i = 0; i < 5; i++) {
+            store.put(record(i, null));
+        }
+        store.abandon();
+        Files.write(directory.resolve("snapshot-00000000000000000005.bin.tmp"), new byte[]{1, 2, 3});
+
+        StateStore recovered = open();
+
+        assertEquals(5, recovered.records().size());
+    }
+
+    @Test
+    void testSegmentsRollAndOldOnesAreDeleted() throws IOException {
+        // Small segments: about 150 entries each
+        StateStore store = open(8 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            store.put(record(i, null));
+        }
+        assertTrue(files("journal-").size() > 3);
+        store.snapshot();
+        store.put(record(1000, null));
+        store.snapshot();
+        store.put(record(1001, null));
+        store.snapshot();
+        store.abandon();
+
+        // Only the segments after the older of the two kept snapshots remain
+        assertTrue(files("journal-").size() <= 3);
+        StateStore recovered = open(8 * 1024);
+        assertEquals(1002, recovered.records().size());
+    }
+
+    @Test
+    void testFiftyThousandRecordsRecover() {
+        StateStore store = open(64 * 1024 * 1024);
+        for (int i = 0; i < 40_000; i++) {
+            store.put(record(i, null));
+        }
+        store.snapshot();
+        for (int i = 0; i < 50_000; i++) {
+            store.put(record(i, i % 2 == 0 ? "idle" : "busy"));
+        }
+        store.abandon();
+
+        StateStore recovered = open(64 * 1024 * 1024);
+
+        assertEquals(50_000, recovered.records().size());
+        assertEquals(record(49_999, "busy"), recovered.get("vm-49999"));
+        assertEquals(record(49_998, "idle"), recovered.get("vm-49998"));
+    }
+
+    @Test
+    void testEntriesWrittenBeforeRepositoriesWereRecordedDecode() {
+        VmRecord record = record(1, "idle");
+        byte[] current = RecordCodec.encodePut(7, record);
+        // The older encoding stopped after updatedAtMillis
+        int length = 2 + record.repository().length();
+        byte[] old = Arrays.copyOf(current, current.length - length);
+
+        RecordCodec.Entry entry = RecordCodec.decode(ByteBuffer.wrap(old));
+
+        assertEquals(7, entry.sequence());
+        assertEquals(new VmRecord(record.name(), record.label(), record.address(), record.runnerState(),
+                record.lastOutcome(), record.updatedAtMillis(), null), entry.record());
+        assertEquals(record, RecordCodec.decode(ByteBuffer.wrap(current)).record());
+    }
+}
@@ -0,0 +1,99 @@
+package com.zhai.hw.service.status;
+
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+import com.zhai.hw.service.pool.ManagedVm;
+import com.zhai.hw.service.pool.VmPool;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollScheduleTest {
+
+    private static final String REPOSITORY = "octo-org/app";
+    private static final long NOW = 1_700_000_000_000L;
+
+    private static VmPool pool(String label, VmPoolParameters parameters) {
+        VmPool pool = new VmPool(new LabelVmMapping(label, "Standard_D4s_v5", "ubuntu-22.04", "eastus",
+                "vnet", "subnet", "nsg", "Premium_LRS-128", 1, parameters), (p, warm) -> { });
+        pool.reserve(2);
+        return pool;
+    }
+
+    private static RunnerStatus status(ManagedVm vm, RunnerStatus.Outcome outcome, String state) {
+        return new RunnerStatus(vm.getName(), outcome, outcome == RunnerStatus.Outcome.OK ? 200 : 0, state, 3,
+                Instant.ofEpochMilli(NOW));
+    }
+
+    @Test
+    void testBootingRunnerIsProbedOnDoublingBackoff() {
+        VmPool pool = pool("android-small", new VmPoolParameters(0, 2, 0, Duration.ofMinutes(30)));
+        ManagedVm vm = pool.addWarmVm("vm-1", REPOSITORY);
+        PollSchedule schedule = new PollSchedule(Duration.ofSeconds(5), Duration.ofMinutes(5), Duration.ofSeconds(1), label -> pool);
+        RunnerStatus unreachable = status(vm, RunnerStatus.Outcome.UNREACHABLE, null);
+
+        long delay = 0;
+        long[] delays = new long[8];
+        for (int i = 0; i < delays.length; i++) {
+            delay = schedule.nextDelayMillis(vm, unreachable, delay, false, NOW);
+            delays[i] = delay;
+        }
+
+        assertArrayEquals(new long[]{5_000, 10_000, 20_000, 40_000, 80_000, 160_000, 300_000, 300_000}, delays);
+        assertEquals(5_000, schedule.nextDelayMillis(vm, status(vm, RunnerStatus.Outcome.OK, "offline"), 0, false, NOW));
+    }
+
+    @Test
+    void testBootingRunnerIsProbedFastThenSlowsToTheMinimum() {
+        VmPool pool = pool("android-small", new VmPoolParameters(0, 2, 0, Duration.ofMinutes(30)));
+        ManagedVm vm = pool.addWarmVm("vm-1", REPOSITORY);
+        PollSchedule schedule = new PollSchedule(Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofSeconds(5),
+                label -> pool);
+        RunnerStatus unreachable = status(vm, RunnerStatus.Outcome.UNREACHABLE, null);
+
+        long delay = 0;
+        long[] delays = new long[6];
+        for (int i = 0; i < delays.length; i++) {
+            delay = schedule.nextDelayMillis(vm, unreachable, delay, true, NOW);
+            delays[i] = delay;
+        }
+
+        assertArrayEquals(new long[]{5_000, 10_000, 20_000, 30_000, 30_000, 30_000}, delays);
+        // Past the readiness window it is probed at the minimum
+        assertEquals(30_000, schedule.nextDelayMillis(vm, unreachable, 0, false, NOW));
+    }
+
+    @Test
+    void testReadyRunnersArePolledByVmState() {
+        VmPool pool = pool("android-small", new VmPoolParameters(0, 2, 0, Duration.ofMinutes(30)));
+        ManagedVm idle = pool.addWarmVm("vm-1", REPOSITORY);
+        ManagedVm busy = pool.addWarmVm("vm-2", REPOSITORY);
+        assertSame(busy, pool.claim(REPOSITORY));
+        PollSchedule schedule = new PollSchedule(Duration.ofSeconds(5), Duration.ofMinutes(5), Duration.ofSeconds(1), label -> pool);
+
+        assertEquals(300_000, schedule.nextDelayMillis(busy, status(busy, RunnerStatus.Outcome.OK, "busy"), 0, false, NOW));
+        // No idle expiry pending, so nothing to watch for
+        assertEquals(300_000, schedule.nextDelayMillis(idle, status(idle, RunnerStatus.Outcome.OK, "idle"), 0, false, NOW));
+        // A backoff ends as soon as the runner answers
+        assertEquals(300_000, schedule.nextDelayMillis(idle, status(idle, RunnerStatus.Outcome.OK, "idle"), 40_000, false, NOW));
+    }
+
+    @Test
+    void testMappingOverridesIntervalBounds() {
+        VmPoolParameters parameters = new VmPoolParameters(0, 2, 0, Duration.ofMinutes(30), true,
+                Duration.ofSeconds(2), Duration.ofSeconds(60));
+        VmPool pool = pool("android-large", parameters);
+        ManagedVm vm = pool.addWarmVm("vm-1", REPOSITORY);
+        PollSchedule schedule = new PollSchedule(Duration.ofSeconds(5), Duration.ofMinutes(5), Duration.ofSeconds(1),
+                label -> "android-large".equals(label) ? pool : null);
+
+        assertEquals(2_000, schedule.nextDelayMillis(vm, status(vm, RunnerStatus.Outcome.TIMEOUT, null), 0, false, NOW));
+        assertEquals(60_000, schedule.nextDelayMillis(vm, status(vm, RunnerStatus.Outcome.OK, "idle"), 0, false, NOW));
+
+        parameters.setMaximumPollInterval(Duration.ofSeconds(1));
+        assertEquals(2_000, schedule.nextDelayMillis(vm, status(vm, RunnerStatus.Outcome.OK, "idle"), 0, false, NOW));
+    }
+}
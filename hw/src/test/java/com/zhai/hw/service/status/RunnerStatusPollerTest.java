@@ -0,0 +1,232 @@
+package com.zhai.hw.service.status;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.zhai.hw.config.RunnerStatusProperties;
+import com.zhai.hw.model.LabelVmMapping;
+import com.zhai.hw.model.VmPoolParameters;
+import com.zhai.hw.service.pool.ManagedVm;
+import com.zhai.hw.service.pool.VmPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunnerStatusPollerTest {
+
+    private static final String REPOSITORY = "octo-org/app";
+
+    private static final int ENDPOINTS = 5000;
+    private static final int MAX_IN_FLIGHT = 64;
+    private static final Duration INTERVAL = Duration.ofSeconds(5);
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private RunnerStatusPoller poller;
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, AtomicInteger> pollsByVm = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 512);
+        serverExecutor = Executors.newFixedThreadPool(32);
+        server.setExecutor(serverExecutor);
+        // /vm-<n>/runner/status: every 500th VM hangs, every 250th answers 503, the rest report idle
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (poller != null) {
+            poller.stop();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int now = concurrent.incrementAndGet();
+        maxConcurrent.accumulateAndGet(now, Math::max);
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        try {
+            String path = exchange.getRequestURI().getPath();
+            int vm = Integer.parseInt(path.substring("/vm-".length(), path.indexOf('/', 1)));
+            pollsByVm.computeIfAbsent(vm, key -> new AtomicInteger()).incrementAndGet();
+            if (vm % 500 == 0) {
+                Thread.sleep(1000);
+            }
+            byte[] body = "{\"name\":\"runner\",\"labels\":[\"a\"],\"status\":\"idle\"}".getBytes(StandardCharsets.UTF_8);
+            int status = vm % 250 == 1 ? 503 : 200;
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrent.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private RunnerStatusProperties properties(Duration interval) {
+        RunnerStatusProperties properties = new RunnerStatusProperties();
+        properties.setEnabled(true);
+        properties.setPort(8080);
+        properties.setPath("/runner/status");
+        properties.setInterval(interval);
+        properties.setTick(Duration.ofMillis(50));
+        properties.setMaxInFlight(MAX_IN_FLIGHT);
+        properties.setConnectTimeout(Duration.ofSeconds(1));
+        properties.setRequestTimeout(Duration.ofMillis(300));
+        properties.setWorkerThreads(2);
+        properties.setBatchSize(256);
+        return properties;
+    }
+
+    private static List<ManagedVm> vms(int count) {
+        VmPool pool = new VmPool(new LabelVmMapping("android-small", "Standard_D4s_v5", "ubuntu-22.04", "eastus",
+                "vnet", "subnet", "nsg", "Premium_LRS-128", 1,
+                new VmPoolParameters(0, count, 0, Duration.ofMinutes(30))), (p, warm) -> { });
+        pool.reserve(count);
+        List<ManagedVm> vms = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            vms.add(pool.addWarmVm("vm-" + i, REPOSITORY));
+        }
+        return vms;
+    }
+
+    private URI endpoint(int vm) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/vm-" + vm + "/runner/status");
+    }
+
+    @Test
+    void testPollsFiveThousandEndpoints() throws InterruptedException {
+        List<ManagedVm> vms = vms(ENDPOINTS);
+        poller = new RunnerStatusPoller(properties(INTERVAL), label -> null, Clock.systemUTC());
+        List<Integer> batchSizes = new ArrayList<>();
+        AtomicLong batched = new AtomicLong();
+        poller.addBatchListener(batch -> {
+            batchSizes.add(batch.size());
+            batched.addAndGet(batch.size());
+        });
+        for (int i = 0; i < ENDPOINTS; i++) {
+            poller.register(vms.get(i), endpoint(i));
+        }
+        // Polls are spread across the interval instead of arriving together
+        int perSlot = ENDPOINTS / (int) poller.stats().get("slots");
+        assertTrue((int) poller.stats().get("busiestSlot") < perSlot * 2, "slots: " + poller.stats());
+        poller.start();
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (vms.stream().anyMatch(vm -> vm.getLastStatus() == null) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        poller.stop();
+
+        assertTrue(vms.stream().allMatch(vm -> vm.getLastStatus() != null), "every VM has been polled: " + poller.stats());
+        assertEquals(RunnerStatus.Outcome.OK, vms.get(7).getLastStatus().outcome());
+        assertEquals("idle", vms.get(7).getLastStatus().runnerState());
+        assertEquals(RunnerStatus.Outcome.HTTP_ERROR, vms.get(251).getLastStatus().outcome());
+        assertEquals(503, vms.get(251).getLastStatus().httpStatus());
+        assertEquals(RunnerStatus.Outcome.TIMEOUT, vms.get(500).getLastStatus().outcome());
+
+        assertTrue(maxConcurrent.get() <= MAX_IN_FLIGHT, "in-flight cap held: " + maxConcurrent.get());
+        // Connections are kept alive; only timed-out requests force a new one
+        assertTrue(clientPorts.size() < ENDPOINTS / 5, "connections opened: " + clientPorts.size());
+        assertTrue(batchSizes.stream().anyMatch(size -> size > 1));
+        Map<String, Object> stats = poller.stats();
+        assertEquals(ENDPOINTS, stats.get("targets"));
+        assertTrue(batched.get() > 0);
+    }
+
+    @Test
+    void testRetiredVmsAreDropped() throws InterruptedException {
+        VmPool pool = new VmPool(new LabelVmMapping("android-small", "Standard_D4s_v5", "ubuntu-22.04", "eastus",
+                "vnet", "subnet", "nsg", "Premium_LRS-128", 1,
+                new VmPoolParameters(0, 2, 0, Duration.ofMinutes(30))), (p, warm) -> { });
+        pool.reserve(2);
+        ManagedVm kept = pool.addWarmVm("vm-1", REPOSITORY);
+        ManagedVm retired = pool.addWarmVm("vm-2", REPOSITORY);
+        poller = new RunnerStatusPoller(properties(Duration.ofMillis(200)), label -> null, Clock.systemUTC());
+        poller.register(kept, endpoint(1));
+        poller.register(retired, endpoint(2));
+        pool.retire(retired);
+        poller.start();
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while ((kept.getLastStatus() == null || poller.getTargetCount() > 1) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertNotNull(kept.getLastStatus());
+        assertEquals(1, poller.getTargetCount());
+    }
+
+    @Test
+    void testAdaptiveSavingsAreCountedNetOfBootProbes() throws InterruptedException {
+        List<ManagedVm> vms = vms(3);
+        RunnerStatusProperties properties = properties(Duration.ofMillis(500));
+        properties.setAdaptive(true);
+        properties.setMinInterval(Duration.ofMillis(500));
+        properties.setMaxInterval(Duration.ofSeconds(10));
+        properties.setBootInterval(Duration.ofMillis(100));
+        properties.setBootWindow(Duration.ofSeconds(2));
+        // A timed-out first request would rightly keep the ready runner on the minimum too
+        properties.setRequestTimeout(Duration.ofSeconds(2));
+        poller = new RunnerStatusPoller(properties, label -> null, Clock.systemUTC());
+        // vm-1 answers 503 as if still booting; vm-2 is ready and idle
+        poller.register(vms.get(1), endpoint(1));
+        poller.register(vms.get(2), endpoint(2));
+        poller.start();
+
+        Thread.sleep(3_000);
+        Map<String, Object> stats = poller.stats();
+        poller.stop();
+
+        int booting = pollsByVm.get(1).get();
+        int ready = pollsByVm.get(2).get();
+        // Probed 100, 200 and 400 ms apart within the boot window, then every 500 ms like the fixed schedule
+        assertTrue(booting >= 5 && booting <= 10, "booting runner polled " + booting + " times");
+        long bootPolls = (long) stats.get("bootPolls");
+        assertTrue(bootPolls >= 3 && bootPolls < booting, "stats: " + stats);
+        // Ready and idle with no expiry pending: polled once, then not again for the maximum interval
+        assertEquals(1, ready);
+        // Counted, not projected: the fixed schedule's polls over the same ticks, less every poll sent
+        long sent = (long) stats.get("polls");
+        long fixed = (long) stats.get("fixedSchedulePolls");
+        assertTrue(fixed <= 12, "stats: " + stats);
+        assertTrue(sent >= booting + ready, "stats: " + stats);
+        assertEquals(fixed - sent, (long) stats.get("savedPolls"));
+    }
+
+    @Test
+    void testRunnerStateParsing() {
+        assertEquals("busy", RunnerStatusPoller.runnerState(
+                "{\"labels\":[\"x\",{\"status\":\"nested\"}],\"status\":\"busy\"}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(RunnerStatusPoller.runnerState("ok".getBytes(StandardCharsets.UTF_8)));
+        assertNull(RunnerStatusPoller.runnerState(new byte[0]));
+    }
+}
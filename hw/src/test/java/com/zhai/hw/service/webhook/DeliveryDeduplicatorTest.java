@@ -0,0 +1,92 @@
+package com.zhai.hw.service.webhook;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeliveryDeduplicatorTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void testDuplicateDeliveryIsDetected() {
+        DeliveryDeduplicator deduplicator = new DeliveryDeduplicator(Duration.ofMinutes(10), 100, clock::get);
+
+        assertFalse(deduplicator.isDuplicateDelivery("a"));
+        assertTrue(deduplicator.isDuplicateDelivery("a"));
+        assertFalse(deduplicator.isDuplicateDelivery("b"));
+
+        assertEquals(1L, deduplicator.stats().get("deliveryHits"));
+        assertEquals(2L, deduplicator.stats().get("deliveryMisses"));
+    }
+
+    @Test
+    void testMissingDeliveryIdIsNeverDuplicate() {
+        DeliveryDeduplicator deduplicator = new DeliveryDeduplicator(Duration.ofMinutes(10), 100, clock::get);
+
+        assertFalse(deduplicator.isDuplicateDelivery(null));
+        assertFalse(deduplicator.isDuplicateDelivery(null));
+        assertFalse(deduplicator.isDuplicateDelivery(""));
+    }
+
+    @Test
+    void testJobActionIsKeyedByJobAndAction() {
+        DeliveryDeduplicator deduplicator = new DeliveryDeduplicator(Duration.ofMinutes(10), 100, clock::get);
+
+        assertFalse(deduplicator.isDuplicateJobAction(1, "queued"));
+        assertFalse(deduplicator.isDuplicateJobAction(1, "in_progress"));
+        assertFalse(deduplicator.isDuplicateJobAction(2, "queued"));
+        assertTrue(deduplicator.isDuplicateJobAction(1, "queued"));
+        assertEquals(1L, deduplicator.stats().get("jobActionHits"));
+    }
+
+    @Test
+    void testEntriesExpireAfterTtl() {
+        DeliveryDeduplicator deduplicator = new DeliveryDeduplicator(Duration.ofMinutes(10), 100, clock::get);
+        deduplicator.isDuplicateDelivery("a");
+
+        // Still remembered just before the first rotation and right after it
+        clock.addAndGet(Duration.ofMinutes(9).toNanos());
+        assertTrue(deduplicator.isDuplicateDelivery("a"));
+        clock.addAndGet(Duration.ofMinutes(2).toNanos());
+        assertTrue(deduplicator.isDuplicateDelivery("a"));
+
+        // Gone once the generation holding it has been rotated out
+        clock.addAndGet(Duration.ofMinutes(20).toNanos());
+        deduplicator.isDuplicateDelivery("b");
+        clock.addAndGet(Duration.ofMinutes(11).toNanos());
+        assertFalse(deduplicator.isDuplicateDelivery("a"));
+    }
+
+    @Test
+    void testForgetAllowsRedelivery() {
+        DeliveryDeduplicator deduplicator = new DeliveryDeduplicator(Duration.ofMinutes(10), 100, clock::get);
+        deduplicator.isDuplicateDelivery("a");
+        deduplicator.isDuplicateJobAction(7, "queued");
+
+        deduplicator.forget("a", 7, "queued");
+
+        assertFalse(deduplicator.isDuplicateDelivery("a"));
+        assertFalse(deduplicator.isDuplicateJobAction(7, "queued"));
+    }
+
+    @Test
+    void testMemoryStaysBoundedUnderSustainedBurst() {
+        int maxEntries = 1000;
+        DeliveryDeduplicator deduplicator = new DeliveryDeduplicator(Duration.ofHours(1), maxEntries, clock::get);
+
+        for (int i = 0; i < 300_000; i++) {
+            deduplicator.isDuplicateDelivery("delivery-" + i);
+            // Recent deliveries are still caught while the burst runs
+            if (i > 0 && i % 1000 == 0) {
+                assertTrue(deduplicator.isDuplicateDelivery("delivery-" + (i - 1)));
+            }
+            clock.addAndGet(Duration.ofMillis(12).toNanos());
+        }
+
+        assertTrue(deduplicator.stats().get("deliveryKeys") <= maxEntries);
+    }
+}
@@ -0,0 +1,179 @@
+package com.zhai.hw.service.webhook;
+
+import com.zhai.hw.model.github.Repository;
+import com.zhai.hw.model.github.WorkflowJob;
+import com.zhai.hw.model.github.WorkflowJobEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookDispatcherTest {
+
+    private WebhookDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null && dispatcher.isRunning()) {
+            dispatcher.stop();
+        }
+    }
+
+    private static WorkflowJobEvent event(long id, String... labels) {
+        return event("eBayMobile/andr_core", "queued", id, labels);
+    }
+
+    private static WorkflowJobEvent event(String repository, String action, long id, String... labels) {
+        return new WorkflowJobEvent(action,
+                new WorkflowJob(id, 1, action, List.of(labels), new Repository(repository)));
+    }
+
+    private static WorkflowJob job(String repository, String... labels) {
+        return event(repository, "queued", 1, labels).getWorkflowJob();
+    }
+
+    @Test
+    void testEventsAreHandledOnWorkerThreads() throws InterruptedException {
+        ConcurrentLinkedQueue<String> threads = new ConcurrentLinkedQueue<>();
+        CountDownLatch handled = new CountDownLatch(3);
+        dispatcher = new WebhookDispatcher(2, 8, WebhookDispatcher.ShardKey.REPOSITORY, 1000, (e, shard) -> {
+            threads.add(Thread.currentThread().getName());
+            handled.countDown();
+        });
+        dispatcher.start();
+
+        assertTrue(dispatcher.offer(event(1, "android-small")));
+        assertTrue(dispatcher.offer(event(2, "android-large")));
+        assertTrue(dispatcher.offer(event(3, "android-small")));
+
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("webhook-dispatch-")));
+    }
+
+    @Test
+    void testFullShardRejectsWithoutBlocking() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        dispatcher = new WebhookDispatcher(1, 2, WebhookDispatcher.ShardKey.REPOSITORY, 1000, (e, shard) -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        dispatcher.start();
+
+        // The first event occupies the worker, the next two fill the queue
+        assertTrue(dispatcher.offer(event(1, "android-small")));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.offer(event(2, "android-small")));
+        assertTrue(dispatcher.offer(event(3, "android-small")));
+        assertFalse(dispatcher.offer(event(4, "android-small")));
+        assertArrayEquals(new int[]{2}, dispatcher.queueDepths());
+
+        release.countDown();
+    }
+
+    @Test
+    void testRepositoryRoutingIgnoresCase() {
+        dispatcher = new WebhookDispatcher(8, 1, WebhookDispatcher.ShardKey.REPOSITORY, 1000, (e, shard) -> { });
+
+        int shard = dispatcher.shardFor(job("eBayMobile/andr_core", "android-small"));
+        assertEquals(shard, dispatcher.shardFor(job("ebaymobile/ANDR_CORE", "android-large")));
+        assertEquals(0, dispatcher.shardFor(null));
+    }
+
+    @Test
+    void testLabelRoutingIgnoresCaseAndOrder() {
+        dispatcher = new WebhookDispatcher(8, 1, WebhookDispatcher.ShardKey.LABELS, 1000, (e, shard) -> { });
+
+        int shard = dispatcher.shardFor(job("a/one", "self-hosted", "android-small"));
+        assertEquals(shard, dispatcher.shardFor(job("b/two", "Android-Small", "self-hosted")));
+    }
+
+    @Test
+    void testAddingAShardMovesFewKeysAndSpreadsThemEvenly() {
+        int keys = 20_000;
+        int[] perShard = new int[8];
+        int moved = 0;
+        for (int i = 0; i < keys; i++) {
+            long key = i * 0x9E3779B97F4A7C15L;
+            int before = WebhookDispatcher.jumpHash(key, 8);
+            int after = WebhookDispatcher.jumpHash(key, 9);
+            perShard[before]++;
+            if (before != after) {
+                // A key only ever moves to the new shard
+                assertEquals(8, after);
+                moved++;
+            }
+        }
+        assertTrue(moved < keys / 9 * 1.2, moved + " of " + keys + " keys moved");
+        for (int count : perShard) {
+            assertTrue(Math.abs(count - keys / 8) < keys / 8 * 0.1, "Uneven shards: " + count);
+        }
+    }
+
+    @Test
+    void testEventsOfAJobAreHandledInOrderOnOneShard() throws InterruptedException {
+        Map<Long, List<String>> actions = new HashMap<>();
+        Map<Long, Integer> shards = new HashMap<>();
+        CountDownLatch handled = new CountDownLatch(300);
+        // Plain maps: all events of a job reach the same single worker, so nothing races
+        dispatcher = new WebhookDispatcher(4, 512, WebhookDispatcher.ShardKey.REPOSITORY, 1000, (e, shard) -> {
+            long id = e.getWorkflowJob().getId();
+            synchronized (shards) {
+                assertEquals(shards.computeIfAbsent(id, key -> shard), shard);
+                actions.computeIfAbsent(id, key -> new ArrayList<>()).add(e.getAction());
+            }
+            handled.countDown();
+        });
+        dispatcher.start();
+
+        for (String action : List.of("queued", "in_progress", "completed")) {
+            for (long id = 0; id < 100; id++) {
+                assertTrue(dispatcher.offer(event("org/repo-" + id % 10, action, id, "android-small")));
+            }
+        }
+
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        synchronized (shards) {
+            actions.values().forEach(seen -> assertEquals(List.of("queued", "in_progress", "completed"), seen));
+        }
+        assertEquals(300L, ((List<?>) dispatcher.stats().get("shards")).stream()
+                .mapToLong(shard -> (Long) ((Map<?, ?>) shard).get("processed")).sum());
+    }
+
+    @Test
+    void testStopDrainsAcceptedEvents() {
+        ConcurrentLinkedQueue<Long> handled = new ConcurrentLinkedQueue<>();
+        dispatcher = new WebhookDispatcher(1, 16, WebhookDispatcher.ShardKey.REPOSITORY, 5000,
+                (e, shard) -> handled.add(e.getWorkflowJob().getId()));
+        dispatcher.start();
+        for (long id = 1; id <= 10; id++) {
+            assertTrue(dispatcher.offer(event(id, "android-small")));
+        }
+
+        dispatcher.stop();
+
+        assertEquals(10, handled.size());
+        assertFalse(dispatcher.offer(event(11, "android-small")));
+    }
+
+    @Test
+    void testPhaseIsBelowTheWebServer() {
+        dispatcher = new WebhookDispatcher(1, 16, WebhookDispatcher.ShardKey.REPOSITORY, 1000, (e, shard) -> { });
+
+        // Boot starts and stops the embedded server 1024 phases below graceful shutdown
+        assertTrue(dispatcher.getPhase() < WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE - 1024);
+    }
+}
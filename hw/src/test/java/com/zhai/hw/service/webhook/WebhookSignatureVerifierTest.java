@@ -0,0 +1,117 @@
+package com.zhai.hw.service.webhook;
+
+import com.zhai.hw.exception.WebhookValidationException;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookSignatureVerifierTest {
+
+    private static final String SECRET = "test-secret";
+
+    private static String sign(byte[] payload) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return "sha256=" + HexFormat.of().formatHex(mac.doFinal(payload));
+    }
+
+    @Test
+    void testValidSignatureIsAccepted() throws Exception {
+        WebhookSignatureVerifier verifier = new WebhookSignatureVerifier(SECRET);
+        byte[] payload = "{\"action\":\"queued\"}".getBytes(StandardCharsets.UTF_8);
+
+        assertDoesNotThrow(() -> verifier.verify(payload, payload.length, sign(payload)));
+        // A second call on the same thread reuses the Mac and must not carry state over
+        assertDoesNotThrow(() -> verifier.verify(payload, payload.length, sign(payload)));
+    }
+
+    @Test
+    void testUppercaseHexIsAccepted() throws Exception {
+        WebhookSignatureVerifier verifier = new WebhookSignatureVerifier(SECRET);
+        byte[] payload = "{}".getBytes(StandardCharsets.UTF_8);
+        String signature = "sha256=" + sign(payload).substring("sha256=".length()).toUpperCase();
+
+        assertDoesNotThrow(() -> verifier.verify(payload, payload.length, signature));
+    }
+
+    @Test
+    void testOnlyValidLengthIsSigned() throws Exception {
+        WebhookSignatureVerifier verifier = new WebhookSignatureVerifier(SECRET);
+        byte[] payload = "{}".getBytes(StandardCharsets.UTF_8);
+        byte[] buffer = new byte[64];
+        System.arraycopy(payload, 0, buffer, 0, payload.length);
+        buffer[payload.length] = 'x';
+
+        assertDoesNotThrow(() -> verifier.verify(buffer, payload.length, sign(payload)));
+    }
+
+    @Test
+    void testPayloadSplitAcrossBuffersIsVerified() throws Exception {
+        WebhookSignatureVerifier verifier = new WebhookSignatureVerifier(SECRET);
+        byte[] payload = "{\"action\":\"queued\",\"workflow_job\":{}}".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(payload.length - 10).put(payload, 10, payload.length - 10).flip();
+        List<ByteBuffer> chunks = List.of(ByteBuffer.wrap(payload, 0, 10), direct);
+
+        assertDoesNotThrow(() -> verifier.verify(chunks.iterator(), sign(payload)));
+        assertThrows(WebhookValidationException.class,
+                () -> verifier.verify(List.of(ByteBuffer.wrap(payload, 0, 10)).iterator(), sign(payload)));
+    }
+
+    @Test
+    void testTamperedPayloadIsRejected() throws Exception {
+        WebhookSignatureVerifier verifier = new WebhookSignatureVerifier(SECRET);
+        byte[] payload = "{\"action\":\"queued\"}".getBytes(StandardCharsets.UTF_8);
+        String signature = sign(payload);
+        payload[3] = 'X';
+
+        WebhookValidationException exception = assertThrows(WebhookValidationException.class,
+                () -> verifier.verify(payload, payload.length, signature));
+        assertEquals("Invalid signature", exception.getMessage());
+    }
+
+    @Test
+    void testMalformedSignaturesAreRejected() {
+        WebhookSignatureVerifier verifier = new WebhookSignatureVerifier(SECRET);
+        byte[] payload = "{}".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(WebhookValidationException.class, () -> verifier.verify(payload, payload.length, null));
+        assertThrows(WebhookValidationException.class, () -> verifier.verify(payload, payload.length, "sha256=abc"));
+        assertThrows(WebhookValidationException.class,
+                () -> verifier.verify(payload, payload.length, "sha1=" + "0".repeat(66)));
+        assertThrows(WebhookValidationException.class,
+                () -> verifier.verify(payload, payload.length, "sha256=" + "zz".repeat(32)));
+    }
+
+    @Test
+    void testDisabledWithoutSecret() {
+        assertFalse(new WebhookSignatureVerifier("").isEnabled());
+        assertTrue(new WebhookSignatureVerifier(SECRET).isEnabled());
+    }
+
+    @Test
+    void testPayloadBufferGrowsAndEnforcesLimit() throws IOException {
+        WebhookPayloadBuffer buffer = WebhookPayloadBuffer.forCurrentThread();
+        byte[] large = new byte[WebhookPayloadBuffer.INITIAL_CAPACITY * 3];
+        large[large.length - 1] = 42;
+
+        // Unknown content length forces the buffer to grow while reading
+        assertEquals(large.length, buffer.readFrom(new ByteArrayInputStream(large), -1, large.length));
+        assertEquals(42, buffer.array()[large.length - 1]);
+        buffer.release();
+
+        assertThrows(WebhookPayloadBuffer.PayloadTooLargeException.class,
+                () -> buffer.readFrom(new ByteArrayInputStream(large), -1, large.length - 1));
+        assertThrows(WebhookPayloadBuffer.PayloadTooLargeException.class,
+                () -> buffer.readFrom(new ByteArrayInputStream(large), large.length, 16));
+        buffer.release();
+    }
+}
@@ -0,0 +1,115 @@
+package com.zhai.hw.service.webhook;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.zhai.hw.exception.InvalidWebhookPayloadException;
+import com.zhai.hw.model.github.WorkflowJobEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkflowJobEventExtractorTest {
+
+    private final WorkflowJobEventExtractor extractor =
+            new WorkflowJobEventExtractor(new JsonFactory(), Set.of("queued"));
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = new ClassPathResource(name).getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private WorkflowJobEvent extract(String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return extractor.extract(bytes, 0, bytes.length);
+    }
+
+    @Test
+    void testExtractsQueuedPayload() throws IOException {
+        byte[] payload = resource("github/workflow_job_queued.json");
+
+        WorkflowJobEvent event = extractor.extract(payload, 0, payload.length);
+
+        assertNotNull(event);
+        assertEquals("queued", event.getAction());
+        assertEquals(12345678, event.getWorkflowJob().getId());
+        assertEquals(87654321, event.getWorkflowJob().getRunId());
+        assertEquals("queued", event.getWorkflowJob().getStatus());
+        assertEquals(List.of("android-small", "self-hosted"), event.getWorkflowJob().getLabels());
+        assertEquals("eBayMobile/andr_core", event.getWorkflowJob().getRepository().getFullName());
+        assertNull(event.getWorkflowJob().getRunnerName());
+    }
+
+    @Test
+    void testReadsRunnerNameOfCompletedJob() throws IOException {
+        WorkflowJobEventExtractor lifecycle =
+                new WorkflowJobEventExtractor(new JsonFactory(), Set.of("in_progress", "completed"));
+        byte[] payload = resource("github/workflow_job_completed.json");
+
+        WorkflowJobEvent event = lifecycle.extract(payload, 0, payload.length);
+
+        assertEquals("completed", event.getAction());
+        assertEquals("android-small-vm-1", event.getWorkflowJob().getRunnerName());
+        byte[] queued = resource("github/workflow_job_queued.json");
+        assertNull(lifecycle.extract(queued, 0, queued.length));
+    }
+
+    @Test
+    void testUnhandledActionStopsEarly() throws IOException {
+        // Everything after the action is garbage; an early stop never reaches it
+        assertNull(extract("{\"action\":\"completed\",\"workflow_job\":{!!!"));
+        assertFalse(extractor.handles("completed"));
+        assertTrue(extractor.handles("queued"));
+    }
+
+    @Test
+    void testReadsTopLevelRepositoryAndSkipsUnknownFields() throws IOException {
+        WorkflowJobEvent event = extract("{\"action\":\"queued\","
+                + "\"workflow_job\":{\"id\":5,\"steps\":[{\"name\":\"a\",\"number\":1}],"
+                + "\"labels\":[\"self-hosted\",\"linux\"],\"run_id\":6},"
+                + "\"repository\":{\"id\":1,\"owner\":{\"login\":\"x\"},\"full_name\":\"org/repo\"},"
+                + "\"sender\":{\"login\":\"octocat\"}}");
+
+        assertEquals(5, event.getWorkflowJob().getId());
+        assertEquals(6, event.getWorkflowJob().getRunId());
+        assertEquals(List.of("self-hosted", "linux"), event.getWorkflowJob().getLabels());
+        assertEquals("org/repo", event.getWorkflowJob().getRepository().getFullName());
+    }
+
+    @Test
+    void testMissingRequiredFieldsAreRejected() {
+        assertThrows(InvalidWebhookPayloadException.class,
+                () -> extract("{\"action\":\"queued\"}"));
+        assertThrows(InvalidWebhookPayloadException.class,
+                () -> extract("{\"action\":\"queued\",\"workflow_job\":{\"id\":1,\"labels\":null,"
+                        + "\"repository\":{\"full_name\":\"org/repo\"}}}"));
+        assertThrows(InvalidWebhookPayloadException.class,
+                () -> extract("{\"action\":\"queued\",\"workflow_job\":{\"id\":1,\"labels\":[]}}"));
+        assertThrows(InvalidWebhookPayloadException.class,
+                () -> extract("{\"workflow_job\":{\"id\":1,\"labels\":[],\"repository\":{\"full_name\":\"o/r\"}}}"));
+        assertThrows(InvalidWebhookPayloadException.class, () -> extract("[]"));
+    }
+
+    @Test
+    void testLabelsThatAreNotStringsAreRejected() {
+        for (String label : new String[]{"42", "null", "true", "[\"linux\"]", "{\"name\":\"linux\"}"}) {
+            assertThrows(InvalidWebhookPayloadException.class,
+                    () -> extract("{\"action\":\"queued\",\"workflow_job\":{\"id\":1,\"labels\":[\"self-hosted\","
+                            + label + "],\"repository\":{\"full_name\":\"org/repo\"}}}"), label);
+        }
+    }
+
+    @Test
+    void testMalformedJsonIsRejected() throws IOException {
+        byte[] payload = resource("github/workflow_job_malformed.json");
+
+        assertThrows(JsonProcessingException.class, () -> extractor.extract(payload, 0, payload.length));
+    }
+}